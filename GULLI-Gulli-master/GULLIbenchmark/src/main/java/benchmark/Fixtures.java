@@ -0,0 +1,324 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import io.AnalyticalChannel;
+import java.util.Random;
+import model.particle.Material;
+import model.particle.Particle;
+import model.surface.Surface;
+import model.surface.measurement.SurfaceMeasurementTriangleRaster;
+import model.timeline.array.ArrayTimeLineMeasurement;
+import model.timeline.array.ArrayTimeLineMeasurementContainer;
+import model.timeline.array.ArrayTimeLinePipe;
+import model.timeline.array.ArrayTimeLinePipeContainer;
+import model.timeline.array.TimeContainer;
+import model.timeline.array.TimeIndexContainer;
+import model.timeline.array.TimeLineManhole;
+import model.topology.Connection_Manhole_Pipe;
+import model.topology.Manhole;
+import model.topology.Network;
+import model.topology.Pipe;
+import model.topology.Position;
+import model.topology.profile.CircularProfile;
+
+/**
+ * Synthetic networks and meshes for the benchmarks. Everything is built in
+ * code, no input files are needed. Random numbers use fixed seeds, so every
+ * fork works on the same fixture.
+ *
+ * @author saemann
+ */
+public class Fixtures {
+
+    /**
+     * Duration of one time interval of the hydraulic input [ms].
+     */
+    public static final long INTERVAL_MS = 3600000L;
+
+    /**
+     * Times of the hydraulic input with 'numberOfTimes' entries.
+     *
+     * @param numberOfTimes
+     * @return
+     */
+    public static long[] createTimes(int numberOfTimes) {
+        long[] times = new long[numberOfTimes];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = i * INTERVAL_MS;
+        }
+        return times;
+    }
+
+    /**
+     * Straight channel of 'length' meters, built by
+     * {@link AnalyticalChannel#createNetwork(float)}. Every pipe gets a
+     * measurement timeline.
+     *
+     * @param length [m]
+     * @param segmentLength [m]
+     * @param dt transport timestep [s]
+     * @return
+     * @throws Exception
+     */
+    public static Network createChannel(float length, float segmentLength, double dt) throws Exception {
+        AnalyticalChannel channel = new AnalyticalChannel(1, length, 10, INTERVAL_MS / 1000);
+        Network network = channel.createNetwork(segmentLength);
+        ArrayTimeLineMeasurementContainer container = ArrayTimeLineMeasurementContainer.init(createTimes(11), network.getPipes().size(), 1);
+        ArrayTimeLineMeasurementContainer.instance = container;
+        container.setSamplesPerTimeindex(container.getDeltaTimeS() / dt);
+        int number = 0;
+        for (Pipe p : network.getPipes()) {
+            p.setMeasurementTimeLine(new ArrayTimeLineMeasurement(container, number));
+            number++;
+        }
+        return network;
+    }
+
+    /**
+     * Particles waiting for injection at the start of the pipe.
+     *
+     * @param injection
+     * @param material
+     * @param number
+     * @return
+     */
+    public static Particle[] createPipeParticles(Pipe injection, Material material, int number) {
+        Particle[] particles = new Particle[number];
+        for (int i = 0; i < particles.length; i++) {
+            particles[i] = new Particle(injection, 0, 0, 1);
+            particles[i].setMaterial(material);
+        }
+        return particles;
+    }
+
+    /**
+     * Junction manhole with one inflow and 'outgoing' outflow pipes of
+     * different discharge. The manhole is filled to 1m above its sole, all
+     * connections are wet.
+     *
+     * @param outgoing number of outflow pipes
+     * @param numberOfTimes number of hydraulic time intervals
+     * @param random
+     * @return the junction manhole
+     */
+    public static Manhole createJunction(int outgoing, int numberOfTimes, Random random) {
+        CircularProfile profile = new CircularProfile(0.5);
+        final ArrayTimeLinePipeContainer container = new ArrayTimeLinePipeContainer(createTimes(numberOfTimes), outgoing + 1, 1);
+        container.setActualTime(0);
+        TimeLineManhole waterlevel = new FixedWaterlevel(1, container);
+
+        Manhole junction = new Manhole(new Position(0, 0, 0, 0), "Junction", profile);
+        junction.setSole_height(0);
+        junction.setTop_height(2);
+        junction.setSurface_height(2);
+        junction.setStatusTimeline(waterlevel);
+
+        Manhole upstream = new Manhole(new Position(0, 0, -50, 0), "Upstream", profile);
+        upstream.setStatusTimeline(waterlevel);
+        Pipe inflow = new Pipe(new Connection_Manhole_Pipe(upstream, 0), new Connection_Manhole_Pipe(junction, 0), profile);
+        inflow.setLength(50);
+        setConstantFlow(new ArrayTimeLinePipe(container, 0), inflow, outgoing);
+
+        for (int i = 0; i < outgoing; i++) {
+            double angle = Math.PI * (i + 1) / (outgoing + 1) - Math.PI * 0.5;
+            Manhole downstream = new Manhole(new Position(0, 0, 50 * Math.cos(angle), 50 * Math.sin(angle)), "Downstream_" + i, profile);
+            downstream.setStatusTimeline(waterlevel);
+            downstream.setAsOutlet(true);
+            Pipe outflow = new Pipe(new Connection_Manhole_Pipe(junction, 0.1f * i), new Connection_Manhole_Pipe(downstream, 0), profile);
+            outflow.setLength(50);
+            setConstantFlow(new ArrayTimeLinePipe(container, i + 1), outflow, 0.2f + random.nextFloat());
+        }
+        return junction;
+    }
+
+    private static void setConstantFlow(ArrayTimeLinePipe tl, Pipe pipe, float discharge) {
+        for (int t = 0; t < tl.getNumberOfTimes(); t++) {
+            tl.setVelocity(1, t);
+            tl.setWaterlevel(0.3f, t);
+            tl.setDischarge(discharge, t);
+        }
+        pipe.setStatusTimeLine(tl);
+    }
+
+    /**
+     * Triangulated square of 'side' x 'side' cells (2m) with jittered nodes.
+     * Each cell is split into two triangles. The velocity field is a vortex
+     * around the center that changes its speed over time. A
+     * {@link SurfaceMeasurementTriangleRaster} is attached.
+     *
+     * @param side number of cells per side
+     * @param numberOfTimes number of hydraulic time intervals
+     * @param numberOfThreads particle threads for the measurement raster
+     * @return
+     */
+    public static Surface createSurface(int side, int numberOfTimes, int numberOfThreads) {
+        Random random = new Random(0);
+        double spacing = 2.;
+        double[][] vertices = new double[(side + 1) * (side + 1)][];
+        for (int r = 0; r <= side; r++) {
+            for (int c = 0; c <= side; c++) {
+                double jx = (c > 0 && c < side) ? (random.nextDouble() - 0.5) * 0.6 : 0;
+                double jy = (r > 0 && r < side) ? (random.nextDouble() - 0.5) * 0.6 : 0;
+                vertices[r * (side + 1) + c] = new double[]{(c + jx) * spacing, (r + jy) * spacing, 0};
+            }
+        }
+        int[][] triangleNodes = new int[side * side * 2][];
+        int[][] neighbours = new int[triangleNodes.length][];
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int v00 = r * (side + 1) + c;
+                int v01 = v00 + 1;
+                int v10 = v00 + side + 1;
+                int v11 = v10 + 1;
+                int t = (r * side + c) * 2;
+                triangleNodes[t] = new int[]{v00, v01, v11};
+                triangleNodes[t + 1] = new int[]{v00, v11, v10};
+                neighbours[t] = new int[]{r > 0 ? ((r - 1) * side + c) * 2 + 1 : -1, c < side - 1 ? t + 3 : -1, t + 1};
+                neighbours[t + 1] = new int[]{t, r < side - 1 ? ((r + 1) * side + c) * 2 : -1, c > 0 ? t - 2 : -1};
+            }
+        }
+        double[][] mids = new double[triangleNodes.length][3];
+        for (int t = 0; t < triangleNodes.length; t++) {
+            for (int j = 0; j < 3; j++) {
+                mids[t][0] += vertices[triangleNodes[t][j]][0] / 3.;
+                mids[t][1] += vertices[triangleNodes[t][j]][1] / 3.;
+            }
+        }
+        Surface surface = new Surface(vertices, triangleNodes, neighbours, null, "EPSG:25832");
+        surface.setTriangleMids(mids);
+
+        double center = side * spacing * 0.5;
+        float[][][] velocity = new float[triangleNodes.length][numberOfTimes][2];
+        float[][] waterlevels = new float[triangleNodes.length][numberOfTimes];
+        for (int t = 0; t < triangleNodes.length; t++) {
+            double dx = mids[t][0] - center, dy = mids[t][1] - center;
+            double r = Math.sqrt(dx * dx + dy * dy) + 1;
+            for (int i = 0; i < numberOfTimes; i++) {
+                double speed = (0.5 + 0.5 * i / (double) numberOfTimes) / r * side;
+                velocity[t][i][0] = (float) (-dy / r * Math.min(speed, 2));
+                velocity[t][i][1] = (float) (dx / r * Math.min(speed, 2));
+                waterlevels[t][i] = 0.1f + 0.01f * i;
+            }
+        }
+        surface.setTriangleVelocity(velocity);
+        surface.setWaterlevels(waterlevels);
+        TimeIndexContainer times = new TimeIndexContainer(createTimes(numberOfTimes));
+        surface.setTimeContainer(times);
+        surface.setNumberOfMaterials(1);
+        surface.setMeasurementRaster(new SurfaceMeasurementTriangleRaster(surface, 1, times, numberOfThreads));
+        surface.setSimulationTime(INTERVAL_MS / 2);
+        return surface;
+    }
+
+    /**
+     * Particles on the surface in random triangles.
+     *
+     * @param surface
+     * @param material
+     * @param number
+     * @param random
+     * @return
+     */
+    public static Particle[] createSurfaceParticles(Surface surface, Material material, int number, Random random) {
+        double[][] mids = surface.getTriangleMids();
+        Particle[] particles = new Particle[number];
+        for (int i = 0; i < particles.length; i++) {
+            int id = random.nextInt(mids.length);
+            Particle p = new Particle(surface, 0, 0, 1);
+            p.setMaterial(material);
+            p.setOnSurface();
+            p.setSurrounding_actual(surface);
+            p.surfaceCellID = id;
+            p.setPosition3D(mids[id][0], mids[id][1]);
+            particles[i] = p;
+        }
+        return particles;
+    }
+
+    /**
+     * Material with index 0 for all benchmark particles.
+     *
+     * @return
+     */
+    public static Material createMaterial() {
+        Material material = new Material("Benchmark", 1000, true, 0);
+        material.materialIndex = 0;
+        return material;
+    }
+
+    /**
+     * Manhole timeline with a constant waterlevel above sole.
+     */
+    private static class FixedWaterlevel implements TimeLineManhole {
+
+        private final float waterlevel;
+        private final TimeContainer times;
+
+        public FixedWaterlevel(float waterlevel, TimeContainer times) {
+            this.waterlevel = waterlevel;
+            this.times = times;
+        }
+
+        @Override
+        public float getWaterZ(int temporalIndex) {
+            return waterlevel;
+        }
+
+        @Override
+        public boolean isWaterlevelIncreasing() {
+            return false;
+        }
+
+        @Override
+        public float getActualWaterZ() {
+            return waterlevel;
+        }
+
+        @Override
+        public float getActualWaterLevel() {
+            return waterlevel;
+        }
+
+        @Override
+        public float getFlowToSurface(int temporalIndex) {
+            return 0;
+        }
+
+        @Override
+        public float getActualFlowToSurface() {
+            return 0;
+        }
+
+        @Override
+        public int getNumberOfTimes() {
+            return times.getNumberOfTimes();
+        }
+
+        @Override
+        public TimeContainer getTimeContainer() {
+            return times;
+        }
+    }
+}
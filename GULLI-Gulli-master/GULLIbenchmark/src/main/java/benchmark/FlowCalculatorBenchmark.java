@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import control.maths.RandomArray;
+import control.particlecontrol.FlowCalculatorMixed;
+import control.particlecontrol.ManholeRoutingTable;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import model.timeline.array.TimeIndexContainer;
+import model.topology.Connection_Manhole;
+import model.topology.Manhole;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decision for the outflow pipe of a particle at a junction manhole with
+ * {@link FlowCalculatorMixed#whichConnection}, walking through the
+ * connections or using the {@link ManholeRoutingTable} of the timestep.
+ *
+ * @author saemann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FlowCalculatorBenchmark {
+
+    /**
+     * Number of outflow pipes of the junction.
+     */
+    @Param({"2", "4", "8"})
+    public int outgoing;
+
+    @Param({"false", "true"})
+    public boolean routingTable;
+
+    private Manhole junction;
+    private FlowCalculatorMixed calculator;
+    private RandomArray random;
+
+    @Setup(Level.Trial)
+    public void createJunction() {
+        junction = Fixtures.createJunction(outgoing, 10, new Random(1));
+        calculator = new FlowCalculatorMixed();
+        random = new RandomArray(new Random(1), 100000);
+        FlowCalculatorMixed.useRoutingTable = routingTable;
+        if (routingTable) {
+            //The flows of the junction are constant, any time container will do.
+            TimeIndexContainer times = new TimeIndexContainer(Fixtures.createTimes(10));
+            times.setActualTime(0);
+            FlowCalculatorMixed.prepareRoutingTable(Collections.singletonList(junction), times);
+        }
+    }
+
+    @Benchmark
+    public Connection_Manhole whichConnection() {
+        return calculator.whichConnection(junction, random, true);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import io.AnalyticalChannel;
+import io.extran.HE_Database;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import model.timeline.sparse.SparseTimeLinePipeContainer;
+import model.timeline.sparse.SparseTimelinePipe;
+import model.topology.Pipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading of sparse pipe timelines from a HYSTEM EXTRAN result database, one
+ * query per pipe with {@link HE_Database#fillTimelinePipe} against the batched
+ * {@link HE_Database#loadTimelinePipesBatched}. A synthetic SQLite result
+ * database (LAU_GL_EL table) is created as fixture for the pipes of an
+ * analytical channel. Times are given per load of the selected pipes.
+ *
+ * @author saemann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HE_DatabaseTimelineBenchmark {
+
+    private static final int TIMES = 100;
+
+    /**
+     * Interval of the result timesteps [ms].
+     */
+    private static final long DT_MS = 300000L;
+
+    @Param({"2000", "20000"})
+    public int numberOfPipes;
+
+    /**
+     * Fraction of the pipes, whose timelines are requested.
+     */
+    @Param({"0.01", "0.1", "1"})
+    public double fraction;
+
+    private File file;
+    private HE_Database db;
+    private final ArrayList<Pipe> selection = new ArrayList<>();
+    private final long[] timesteps = new long[TIMES];
+
+    @Setup(Level.Trial)
+    public void createDatabase() throws Exception {
+        AnalyticalChannel channel = new AnalyticalChannel(1, numberOfPipes, TIMES, DT_MS / 1000);
+        ArrayList<Pipe> pipes = new ArrayList<>(channel.createNetwork(1).getPipes());
+        file = File.createTempFile("gulli_fixture", ".idbr");
+        file.deleteOnExit();
+        createFixture(file, pipes);
+        for (int i = 0; i < TIMES; i++) {
+            timesteps[i] = i * DT_MS;
+        }
+        Random random = new Random(1);
+        selection.clear();
+        for (Pipe pipe : pipes) {
+            if (random.nextDouble() < fraction) {
+                selection.add(pipe);
+            }
+        }
+        db = new HE_Database(file, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() throws Exception {
+        db.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public SparseTimeLinePipeContainer perPipe() {
+        SparseTimeLinePipeContainer container = new SparseTimeLinePipeContainer(timesteps);
+        for (Pipe pipe : selection) {
+            SparseTimelinePipe tl = new SparseTimelinePipe(container, pipe);
+            db.fillTimelinePipe(pipe.getManualID(), pipe.getName(), tl);
+            pipe.setStatusTimeLine(tl);
+        }
+        return container;
+    }
+
+    @Benchmark
+    public SparseTimeLinePipeContainer batched() {
+        SparseTimeLinePipeContainer container = new SparseTimeLinePipeContainer(timesteps);
+        db.loadTimelinePipesBatched(selection, container);
+        return container;
+    }
+
+    private static void createFixture(File file, ArrayList<Pipe> pipes) throws Exception {
+        file.delete();
+        HE_Database.registerSQLDriver();
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath())) {
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("CREATE TABLE LAU_GL_EL (ID INTEGER, KANTE TEXT, ZEITPUNKT INTEGER, GESCHWINDIGKEIT REAL, DURCHFLUSS REAL, WASSERSTAND REAL)");
+            }
+            c.setAutoCommit(false);
+            Random random = new Random(0);
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO LAU_GL_EL VALUES (?,?,?,?,?,?)")) {
+                for (Pipe pipe : pipes) {
+                    for (int t = 0; t < TIMES; t++) {
+                        ps.setLong(1, pipe.getManualID());
+                        ps.setString(2, pipe.getName());
+                        ps.setLong(3, t * DT_MS);
+                        ps.setFloat(4, random.nextFloat());
+                        ps.setFloat(5, random.nextFloat());
+                        ps.setFloat(6, random.nextFloat());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            c.commit();
+            c.setAutoCommit(true);
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("CREATE INDEX LAU_GL_EL_ID ON LAU_GL_EL (ID,ZEITPUNKT)");
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import control.maths.RandomArray;
+import control.particlecontrol.ParticlePipeComputing;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import model.particle.Material;
+import model.particle.Particle;
+import model.particle.ParticleStore;
+import model.timeline.array.TimeIndexCalculator;
+import model.topology.Network;
+import model.topology.NetworkHydraulicState;
+import model.topology.Pipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One transport step of all particles in a straight channel with
+ * {@link ParticlePipeComputing#moveParticle}, for Particle objects and the
+ * {@link ParticleStore}. The particles are set back to the injection pipe
+ * before every iteration, so they never reach the outlet. With hydraulicState
+ * the pipes read their velocity from the {@link NetworkHydraulicState}
+ * instead of interpolating their timeline.
+ *
+ * @author saemann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PipeTransportBenchmark {
+
+    @Param({"10000", "100000"})
+    public int numberOfParticles;
+
+    @Param({"false", "true"})
+    public boolean hydraulicState;
+
+    private Pipe injection;
+    private Material material;
+    private ParticlePipeComputing pc;
+    private Particle[] particles;
+    private ParticleStore store;
+    private int injectionIndex;
+
+    @Setup(Level.Trial)
+    public void createNetwork() throws Exception {
+        double dt = 1;
+        Network network = Fixtures.createChannel(20000, 10, dt);
+        injection = network.getPipes().iterator().next();
+        material = Fixtures.createMaterial();
+        pc = new ParticlePipeComputing();
+        pc.setDeltaTime(dt);
+        if (hydraulicState) {
+            NetworkHydraulicState.prepare(network.getPipes(), network.getManholes(), (TimeIndexCalculator) injection.getStatusTimeLine().getTimeContainer());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void injectParticles() {
+        pc.setRandomNumberGenerator(new RandomArray(new Random(1), 100000));
+        particles = Fixtures.createPipeParticles(injection, material, numberOfParticles);
+        for (Particle p : particles) {
+            p.setInPipenetwork();
+            p.setSurrounding_actual(p.injectionSurrounding);
+            p.setPosition1d_actual(p.injectionPosition1D);
+        }
+        store = new ParticleStore(Fixtures.createPipeParticles(injection, material, numberOfParticles));
+        injectionIndex = store.indexOf(injection);
+        for (int i = 0; i < store.size; i++) {
+            store.status[i] = ParticleStore.PIPENETWORK;
+            store.capacityIndex[i] = injectionIndex;
+            store.position1d[i] = 0;
+        }
+    }
+
+    @Benchmark
+    public void stepParticleObjects() {
+        for (Particle p : particles) {
+            if (p.isInPipeNetwork()) {
+                pc.moveParticle(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public void stepParticleStore() {
+        for (int i = 0; i < store.size; i++) {
+            if (store.status[i] == ParticleStore.PIPENETWORK) {
+                pc.moveParticle(store, i);
+            }
+        }
+    }
+}
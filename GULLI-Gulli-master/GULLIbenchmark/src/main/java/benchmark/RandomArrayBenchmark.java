@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import control.maths.CounterRandom;
+import control.maths.RandomArray;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random numbers for the particle transport from {@link RandomArray}, either
+ * generated for every call or taken from the pre-initialized arrays, and from
+ * the {@link CounterRandom} keyed for every particle.
+ *
+ * @author saemann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RandomArrayBenchmark {
+
+    @Param({"true", "false"})
+    public boolean alwaysGenerateNew;
+
+    private RandomArray random;
+    private CounterRandom counter;
+    private long particle;
+
+    @Setup(Level.Trial)
+    public void createRandom() {
+        RandomArray.alwaysGenerateNew = alwaysGenerateNew;
+        random = new RandomArray(new Random(1), 100000);
+        counter = new CounterRandom(1);
+    }
+
+    @Benchmark
+    public double nextGaussian() {
+        return random.nextGaussian();
+    }
+
+    @Benchmark
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Key for a particle and the two numbers of a 2D random walk step.
+     *
+     * @return
+     */
+    @Benchmark
+    public double counterParticleStep() {
+        counter.setKey(particle++, 1000);
+        return counter.nextGaussian() + counter.nextGaussian();
+    }
+
+    @Benchmark
+    public double counterGaussian() {
+        return counter.nextGaussian();
+    }
+
+    @Benchmark
+    public double counterDouble() {
+        return counter.nextDouble();
+    }
+}
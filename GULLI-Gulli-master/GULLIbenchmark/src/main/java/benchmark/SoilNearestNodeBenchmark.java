@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import model.underground.Domain3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Nearest node search of the soil transport in a synthetic layered
+ * {@link Domain3D}: linear search against the KD-tree, with and without the
+ * node of the last step as start. The particles have moved about one node
+ * spacing since the last search. Times are given per search.
+ *
+ * @author saemann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SoilNearestNodeBenchmark {
+
+    private static final int QUERIES = 4096;
+
+    /**
+     * The linear search is too slow for the full set of queries.
+     */
+    private static final int LINEAR_QUERIES = 16;
+
+    private static final int LAYERS = 10;
+
+    @Param({"100000", "1000000"})
+    public int numberOfNodes;
+
+    private Domain3D domain;
+    private final Coordinate[] query = new Coordinate[QUERIES];
+    private final int[] lastNode = new int[QUERIES];
+
+    @Setup(Level.Trial)
+    public void createDomain() {
+        //Layered domain 2000m x 2000m x 50m with jittered nodes
+        Random random = new Random(0);
+        int side = (int) Math.sqrt(numberOfNodes / LAYERS);
+        double spacing = 2000. / side;
+        Coordinate[] position = new Coordinate[side * side * LAYERS];
+        int i = 0;
+        for (int l = 0; l < LAYERS; l++) {
+            for (int r = 0; r < side; r++) {
+                for (int c = 0; c < side; c++) {
+                    position[i++] = new Coordinate((c + random.nextDouble() * 0.5) * spacing, (r + random.nextDouble() * 0.5) * spacing, -l * 5 - random.nextDouble());
+                }
+            }
+        }
+        domain = new Domain3D(position, new float[1][position.length][3], new float[position.length], null);
+        //Build the KD-tree before the measurement
+        domain.getNodeTree();
+
+        for (int p = 0; p < QUERIES; p++) {
+            Coordinate last = new Coordinate(random.nextDouble() * 2000, random.nextDouble() * 2000, -random.nextDouble() * 45);
+            lastNode[p] = domain.getNearestCoordinateIndex(last);
+            query[p] = new Coordinate(
+                    Math.max(0, Math.min(2000, last.x + random.nextGaussian() * spacing)),
+                    Math.max(0, Math.min(2000, last.y + random.nextGaussian() * spacing)),
+                    last.z);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINEAR_QUERIES)
+    public void linear(Blackhole bh) {
+        for (int p = 0; p < LINEAR_QUERIES; p++) {
+            bh.consume(domain.searchNearestCoordinateIndexLinear(query[p]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void kdTree(Blackhole bh) {
+        for (int p = 0; p < QUERIES; p++) {
+            bh.consume(domain.getNearestCoordinateIndex(query[p]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void kdTreeFromLastNode(Blackhole bh) {
+        for (int p = 0; p < QUERIES; p++) {
+            bh.consume(domain.getNearestCoordinateIndex(query[p], lastNode[p]));
+        }
+    }
+}
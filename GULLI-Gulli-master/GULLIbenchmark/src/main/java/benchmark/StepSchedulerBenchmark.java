@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import control.Controller;
+import control.scenario.SpillScenario;
+import control.threads.ThreadController;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import model.timeline.array.TimeIndexContainer;
+import model.topology.Manhole;
+import model.topology.Network;
+import model.topology.Pipe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of one simulation step (particle phase, sync phase, listener
+ * phase) of the {@link ThreadController.SCHEDULER}s without any particles.
+ * Each invocation runs a fixed number of empty steps. Times are given per
+ * step.
+ *
+ * The particle threads of the controller are not terminated after the trial,
+ * the forked VM is shut down by JMH.
+ *
+ * @author saemann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StepSchedulerBenchmark {
+
+    private static final int STEPS = 1000;
+
+    private static final double DT = 0.1;
+
+    @Param({"PHASER", "BARRIER"})
+    public ThreadController.SCHEDULER scheduler;
+
+    @Param({"1", "8", "32"})
+    public int numberOfThreads;
+
+    private ThreadController threadController;
+
+    @Setup(Level.Trial)
+    public void createController() throws Exception {
+        long endtime = (long) (STEPS * DT * 1000);
+        ThreadController.SCHEDULER defaultScheduler = ThreadController.defaultScheduler;
+        ThreadController.defaultScheduler = scheduler;
+        Controller control = new Controller(numberOfThreads);
+        ThreadController.defaultScheduler = defaultScheduler;
+        control.loadNetwork(new Network(new ArrayList<Pipe>(0), new ArrayList<Manhole>(0)), null);
+        control.loadScenario(new SpillScenario(new TimeIndexContainer(new long[]{0, endtime}), null), null);
+
+        threadController = control.getThreadController();
+        threadController.setDeltaTime(DT);
+        threadController.setSimulationStartTime(0);
+        //Ends after STEPS steps
+        threadController.setSimulationTimeEnd(endtime - 1);
+        //Wait for the initialization of all threads.
+        Thread.sleep(500);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetController() {
+        threadController.reset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public int emptySteps() {
+        threadController.start();
+        while (threadController.isSimulating()) {
+            LockSupport.parkNanos(10000);
+        }
+        return threadController.getSteps();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.particle.Material;
+import model.particle.ParticleStore;
+import model.surface.Surface;
+import model.surface.measurement.SurfaceMeasurementRaster;
+import model.surface.measurement.SurfaceMeasurementTriangleRaster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SurfaceMeasurementTriangleRaster#measureParticle} with 4 particle
+ * threads counting on the same raster. Few hot triangles let the threads meet
+ * on the same measurements, as in a dense plume. Times are given per measured
+ * particle.
+ *
+ * @author saemann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(SurfaceMeasurementBenchmark.THREADS)
+public class SurfaceMeasurementBenchmark {
+
+    public static final int THREADS = 4;
+
+    private static final int PARTICLES_PER_THREAD = 16384;
+
+    /**
+     * Number of triangles the particles are located in.
+     */
+    @Param({"16", "100000"})
+    public int hotTriangles;
+
+    @Param({"true", "false"})
+    public boolean accumulatePerThread;
+
+    private Surface surface;
+    private SurfaceMeasurementRaster raster;
+    private ParticleStore[] stores;
+    private final AtomicInteger nextThreadIndex = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void createSurface() {
+        SurfaceMeasurementTriangleRaster.accumulatePerThread = accumulatePerThread;
+        surface = Fixtures.createSurface(300, 10, THREADS);
+        raster = surface.getMeasurementRaster();
+        Material material = Fixtures.createMaterial();
+        Random random = new Random(1);
+        int[] hot = new int[hotTriangles];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = random.nextInt(surface.size());
+        }
+        stores = new ParticleStore[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            stores[t] = new ParticleStore(Fixtures.createSurfaceParticles(surface, material, PARTICLES_PER_THREAD, random));
+            for (int i = 0; i < PARTICLES_PER_THREAD; i++) {
+                stores[t].surfaceCellID[i] = hot[random.nextInt(hot.length)];
+            }
+            //Create all measurements before the threads start
+            for (int i = 0; i < PARTICLES_PER_THREAD; i++) {
+                raster.measureParticle(Fixtures.INTERVAL_MS / 2, stores[t], i, t);
+            }
+        }
+        raster.synchronizeMeasurements();
+    }
+
+    @State(Scope.Thread)
+    public static class ParticleThread {
+
+        int threadIndex;
+
+        @Setup(Level.Trial)
+        public void register(SurfaceMeasurementBenchmark benchmark) {
+            threadIndex = benchmark.nextThreadIndex.getAndIncrement() % THREADS;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PARTICLES_PER_THREAD)
+    public void measureParticles(ParticleThread thread) {
+        ParticleStore s = stores[thread.threadIndex];
+        for (int i = 0; i < s.size; i++) {
+            raster.measureParticle(Fixtures.INTERVAL_MS / 2, s, i, thread.threadIndex);
+        }
+    }
+}
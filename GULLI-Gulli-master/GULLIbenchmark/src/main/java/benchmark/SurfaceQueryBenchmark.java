@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import model.surface.Surface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Surface queries of the particle transport for a fixed set of positions:
+ * {@link Surface#getParticleVelocity2D} and
+ * {@link Surface#getTargetTriangleID}. Times are given per query.
+ *
+ * @author saemann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SurfaceQueryBenchmark {
+
+    private static final int QUERIES = 65536;
+
+    @Param({"500"})
+    public int cellsPerSide;
+
+    /**
+     * Step length of the target triangle search in cell sizes.
+     */
+    @Param({"0.5", "3"})
+    public double stepLength;
+
+    @Param({"true", "false"})
+    public boolean cacheStepValues;
+
+    @Param({"true", "false"})
+    public boolean useEdgeTable;
+
+    private Surface surface;
+    private final int[] triangle = new int[QUERIES];
+    private final double[] x = new double[QUERIES], y = new double[QUERIES];
+    private final double[] dx = new double[QUERIES], dy = new double[QUERIES];
+
+    private final double[] velocity = new double[2];
+    private final double[] barycentric = new double[3];
+    private final double[][] vertices = new double[3][];
+    private final double[] position = new double[2];
+
+    @Setup(Level.Trial)
+    public void createSurface() {
+        surface = Fixtures.createSurface(cellsPerSide, 10, 1);
+        surface.cacheStepValues = cacheStepValues;
+        surface.useEdgeTable = useEdgeTable;
+        double[][] mids = surface.getTriangleMids();
+        Random random = new Random(1);
+        for (int i = 0; i < QUERIES; i++) {
+            triangle[i] = random.nextInt(mids.length);
+            x[i] = mids[triangle[i]][0];
+            y[i] = mids[triangle[i]][1];
+            dx[i] = random.nextGaussian() * stepLength * 2;
+            dy[i] = random.nextGaussian() * stepLength * 2;
+        }
+        surface.getEdgeTable();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void particleVelocity(Blackhole bh) {
+        for (int i = 0; i < QUERIES; i++) {
+            surface.getParticleVelocity2D(x[i], y[i], triangle[i], velocity, barycentric);
+            bh.consume(velocity[0]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void targetTriangle(Blackhole bh) {
+        for (int i = 0; i < QUERIES; i++) {
+            bh.consume(surface.getTargetTriangleID(triangle[i], x[i], y[i], x[i] + dx[i], y[i] + dy[i], 10, barycentric, vertices, position));
+        }
+    }
+}
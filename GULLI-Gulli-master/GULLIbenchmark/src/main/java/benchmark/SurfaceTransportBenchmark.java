@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import control.maths.RandomArray;
+import control.particlecontrol.ParticleSurfaceComputing2D;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import model.particle.Material;
+import model.particle.Particle;
+import model.particle.ParticleStore;
+import model.surface.Surface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One transport step of all particles on a synthetic surface with
+ * {@link ParticleSurfaceComputing2D#moveParticle}: velocity interpolation,
+ * diffusion, target triangle search and measurement.
+ *
+ * @author saemann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SurfaceTransportBenchmark {
+
+    @Param({"300"})
+    public int cellsPerSide;
+
+    @Param({"10000", "100000"})
+    public int numberOfParticles;
+
+    @Param({"true", "false"})
+    public boolean enableDiffusion;
+
+    private Surface surface;
+    private Material material;
+    private ParticleSurfaceComputing2D sc;
+    private Particle[] particles;
+    private ParticleStore store;
+
+    @Setup(Level.Trial)
+    public void createSurface() {
+        ParticleSurfaceComputing2D.allowWashToPipesystem = false;
+        surface = Fixtures.createSurface(cellsPerSide, 10, 1);
+        material = Fixtures.createMaterial();
+        sc = new ParticleSurfaceComputing2D(surface, 0);
+        sc.setDeltaTimestep(1);
+        sc.enableDiffusion = enableDiffusion;
+        sc.setSimulationtime(Fixtures.INTERVAL_MS / 2);
+    }
+
+    @Setup(Level.Iteration)
+    public void placeParticles() {
+        sc.setRandomNumberGenerator(new RandomArray(new Random(1), 100000));
+        particles = Fixtures.createSurfaceParticles(surface, material, numberOfParticles, new Random(2));
+        store = new ParticleStore(Fixtures.createSurfaceParticles(surface, material, numberOfParticles, new Random(2)));
+    }
+
+    @Benchmark
+    public void stepParticleObjects() {
+        for (Particle p : particles) {
+            sc.moveParticle(p);
+        }
+    }
+
+    @Benchmark
+    public void stepParticleStore() {
+        for (int i = 0; i < store.size; i++) {
+            sc.moveParticle(store, i);
+        }
+    }
+}
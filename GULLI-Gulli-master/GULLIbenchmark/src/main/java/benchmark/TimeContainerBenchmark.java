@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import model.timeline.array.TimeContainer;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of simulation times to time indices with
+ * {@link TimeContainer#getTimeIndex(long)} and
+ * {@link TimeContainer#getTimeIndexDouble(long)}. Times are given per query.
+ *
+ * @author saemann
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TimeContainerBenchmark {
+
+    private static final int QUERIES = 4096;
+
+    @Param({"100", "10000"})
+    public int numberOfTimes;
+
+    private TimeContainer times;
+    private final long[] query = new long[QUERIES];
+
+    @Setup(Level.Trial)
+    public void createTimes() {
+        //1 minute intervals, the duration must fit into an int
+        long[] t = new long[numberOfTimes];
+        for (int i = 0; i < t.length; i++) {
+            t[i] = i * 60000L;
+        }
+        times = new TimeContainer(t);
+        Random random = new Random(1);
+        long duration = times.getLastTime() - times.getFirstTime();
+        for (int i = 0; i < QUERIES; i++) {
+            query[i] = (long) (random.nextDouble() * duration);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void timeIndex(Blackhole bh) {
+        for (int i = 0; i < QUERIES; i++) {
+            bh.consume(times.getTimeIndex(query[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void timeIndexDouble(Blackhole bh) {
+        for (int i = 0; i < QUERIES; i++) {
+            bh.consume(times.getTimeIndexDouble(query[i]));
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control;
+
+import control.listener.SimulationActionAdapter;
+import control.scenario.Setup;
+import control.threads.ThreadController;
+import io.extran.HE_SurfaceIO;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import model.timeline.array.ArrayTimeLineMeasurement;
+import model.timeline.array.ArrayTimeLineMeasurementContainer;
+import model.topology.Pipe;
+
+/**
+ * Runs a complete simulation without any graphical user interface. Network,
+ * surface and results are loaded through the {@link LoadingCoordinator}, the
+ * {@link ThreadController} runs until the end of the scenario and the
+ * measurements are written as semicolon separated files to an output
+ * directory.
+ *
+ * Usage:
+ * <pre>
+ * java -cp GULLIcore.jar control.BatchRunner &lt;resultfile|GULLI.ini&gt; [options]
+ *   -out &lt;directory&gt;   output directory (default: directory of the result file)
+ *   -dt &lt;seconds&gt;      simulation timestep
+ *   -threads &lt;n&gt;      number of particle threads
+ *   -seed &lt;long&gt;      seed for the random number generators
+ *   -end &lt;seconds&gt;     simulation end after scenario start
+ *   -nosurface        do not load the surface
+ * </pre> The process exits with 0 on success, 1 for wrong arguments, 2 if
+ * loading failed and 3 if the simulation or writing the output failed.
+ *
+ * No AWT or Swing classes are touched by this runner. Only the pure geometry
+ * classes of java.awt.geom are used by the model positions.
+ *
+ * @author saemann
+ */
+public class BatchRunner {
+
+    public static final String FILENAME_PIPES = "pipe_measurements.csv";
+    public static final String FILENAME_SURFACE = "surface_contamination.csv";
+    public static final String FILENAME_STATISTICS = "run_statistics.csv";
+
+    private File inputFile;
+    private File outputDirectory;
+    private double deltaTimeSeconds = -1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = Long.MIN_VALUE;
+    private double endSeconds = -1;
+    private boolean useSurface = true;
+
+    private long timeLoading, timeSimulation, timeOutput;
+    private boolean finishedByTimeout;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BatchRunner runner = new BatchRunner();
+        if (!runner.parseArguments(args)) {
+            printUsage();
+            System.exit(1);
+        }
+        System.exit(runner.run());
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: " + BatchRunner.class.getName() + " <resultfile|GULLI.ini> [options]");
+        System.out.println("  -out <directory>   output directory (default: directory of the result file)");
+        System.out.println("  -dt <seconds>      simulation timestep");
+        System.out.println("  -threads <n>       number of particle threads");
+        System.out.println("  -seed <long>       seed for the random number generators");
+        System.out.println("  -end <seconds>     simulation end after scenario start");
+        System.out.println("  -nosurface         do not load the surface");
+    }
+
+    /**
+     * Reads the command line arguments.
+     *
+     * @param args
+     * @return false if the arguments are not valid.
+     */
+    public boolean parseArguments(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                if (a.equals("-out")) {
+                    outputDirectory = new File(args[++i]);
+                } else if (a.equals("-dt")) {
+                    deltaTimeSeconds = Double.parseDouble(args[++i]);
+                } else if (a.equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (a.equals("-seed")) {
+                    seed = Long.parseLong(args[++i]);
+                } else if (a.equals("-end")) {
+                    endSeconds = Double.parseDouble(args[++i]);
+                } else if (a.equals("-nosurface")) {
+                    useSurface = false;
+                } else if (a.startsWith("-")) {
+                    System.err.println("Unknown option '" + a + "'");
+                    return false;
+                } else {
+                    inputFile = new File(a);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            return false;
+        }
+        if (inputFile == null) {
+            System.err.println("No result file given.");
+            return false;
+        }
+        if (inputFile.getName().toLowerCase().endsWith(".ini")) {
+            //Startparameter file: use the startfile of the last session
+            StartParameters.fileStartParameter = inputFile;
+            StartParameters.loadStartParameter();
+            if (StartParameters.getStartFilePath() == null) {
+                System.err.println("No startFile defined in " + inputFile.getAbsolutePath());
+                return false;
+            }
+            inputFile = new File(StartParameters.getStartFilePath());
+        }
+        if (!inputFile.exists()) {
+            System.err.println("File does not exist: " + inputFile.getAbsolutePath());
+            return false;
+        }
+        if (outputDirectory == null) {
+            outputDirectory = inputFile.getAbsoluteFile().getParentFile();
+        }
+        return true;
+    }
+
+    /**
+     * Load, simulate and write the outputs.
+     *
+     * @return exit status, 0 on success.
+     */
+    public int run() {
+        long start = System.currentTimeMillis();
+        Controller control;
+        try {
+            control = new Controller(threads);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return 3;
+        }
+        LoadingCoordinator lc = control.getLoadingCoordinator();
+        Setup setup = new Setup();
+        setup.resultFile_HE = inputFile;
+        setup.useSurface = useSurface;
+        lc.applySetup(setup);
+        lc.startLoadingRequestedFiles(false);
+        timeLoading = System.currentTimeMillis() - start;
+
+        if (control.getNetwork() == null || control.getScenario() == null) {
+            System.err.println("Loading of '" + inputFile.getAbsolutePath() + "' failed. Network: " + lc.getLoadingpipeNetwork() + ", Results: " + lc.getLoadingPipeResult());
+            return 2;
+        }
+
+        ThreadController tc = control.getThreadController();
+        if (deltaTimeSeconds > 0) {
+            tc.setDeltaTime(deltaTimeSeconds);
+        }
+        if (seed != Long.MIN_VALUE) {
+            tc.setSeed(seed);
+        }
+        if (endSeconds > 0) {
+            tc.setSimulationTimeEnd(control.getScenario().getStartTime() + (long) (endSeconds * 1000));
+        }
+        control.recalculateInjections();
+        control.resetScenario();
+
+        final CountDownLatch finished = new CountDownLatch(1);
+        tc.addSimulationListener(new SimulationActionAdapter() {
+            @Override
+            public void simulationFINISH(boolean timeOut, boolean particlesOut) {
+                finishedByTimeout = timeOut;
+                finished.countDown();
+            }
+        });
+        start = System.currentTimeMillis();
+        try {
+            control.start();
+            finished.await();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return 3;
+        }
+        timeSimulation = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        try {
+            if (!outputDirectory.exists()) {
+                outputDirectory.mkdirs();
+            }
+            writePipeMeasurementsCSV(control, new File(outputDirectory, FILENAME_PIPES));
+            if (control.getSurface() != null) {
+                HE_SurfaceIO.writeSurfaceContaminationCSV(new File(outputDirectory, FILENAME_SURFACE), control.getSurface());
+            }
+            timeOutput = System.currentTimeMillis() - start;
+            writeStatisticsCSV(control, new File(outputDirectory, FILENAME_STATISTICS));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return 3;
+        }
+        System.out.println("Loading: " + timeLoading + "ms, Simulation: " + timeSimulation + "ms (" + tc.getSteps() + " steps), Output: " + timeOutput + "ms");
+        return 0;
+    }
+
+    /**
+     * Writes the sampled pipe measurements of all pipes with at least one
+     * sample. One line per pipe and sampling interval:
+     * Pipe;AutoID;Time[ms];Particles;Mass[kg];Concentration[kg/m³];Mass
+     * per material...
+     *
+     * @param control
+     * @param outputFile
+     * @throws IOException
+     */
+    public static void writePipeMeasurementsCSV(Controller control, File outputFile) throws IOException {
+        Pipe[] pipes = control.getNetwork().getPipes().toArray(new Pipe[control.getNetwork().getPipes().size()]);
+        ArrayTimeLineMeasurement[] timelines = new ArrayTimeLineMeasurement[pipes.length];
+        for (int i = 0; i < pipes.length; i++) {
+            timelines[i] = pipes[i].getMeasurementTimeLine();
+        }
+        writePipeMeasurementsCSV(pipes, timelines, control.getScenario().getMeasurementsPipe(), outputFile);
+    }
+
+    /**
+     * Writes sampled pipe measurements, which are not necessarily the ones
+     * referenced by the pipes. Same format as
+     * {@link #writePipeMeasurementsCSV(control.Controller, java.io.File)}.
+     *
+     * @param pipes
+     * @param timelines timeline of the pipe with the same index
+     * @param container container of the timelines
+     * @param outputFile
+     * @throws IOException
+     */
+    public static void writePipeMeasurementsCSV(Pipe[] pipes, ArrayTimeLineMeasurement[] timelines, ArrayTimeLineMeasurementContainer container, File outputFile) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile))) {
+            bw.write("Pipe;AutoID;Time[ms];Particles;Mass[kg];Concentration[kg/m^3]");
+            int materials = container == null ? 0 : container.getNumberOfContaminants();
+            for (int m = 0; m < materials; m++) {
+                bw.write(";Mass_" + m + "[kg]");
+            }
+            bw.newLine();
+            if (container == null) {
+                return;
+            }
+            int times = container.getNumberOfTimes();
+            for (int i = 0; i < pipes.length; i++) {
+                Pipe pipe = pipes[i];
+                ArrayTimeLineMeasurement tl = timelines[i];
+                if (tl == null) {
+                    continue;
+                }
+                for (int t = 0; t < times; t++) {
+                    if (!tl.hasValues(t)) {
+                        continue;
+                    }
+                    bw.write(pipe.getName() + ";" + pipe.getAutoID() + ";" + container.getTimeMillisecondsAtIndex(t)
+                            + ";" + tl.getParticles(t) + ";" + tl.getMass(t) + ";" + tl.getConcentration(t));
+                    for (int m = 0; m < materials; m++) {
+                        bw.write(";" + tl.getMass(t, m));
+                    }
+                    bw.newLine();
+                }
+            }
+        }
+    }
+
+    private void writeStatisticsCSV(Controller control, File outputFile) throws IOException {
+        ThreadController tc = control.getThreadController();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile))) {
+            bw.write("Input;" + inputFile.getAbsolutePath());
+            bw.newLine();
+            bw.write("Threads;" + threads);
+            bw.newLine();
+            bw.write("Timestep[s];" + String.format(Locale.US, "%.3f", ThreadController.getDeltaTime()));
+            bw.newLine();
+            bw.write("Steps;" + tc.getSteps());
+            bw.newLine();
+            bw.write("Particles;" + tc.getNumberOfTotalParticles());
+            bw.newLine();
+            bw.write("FinishedByTimeEnd;" + finishedByTimeout);
+            bw.newLine();
+            bw.write("Loading[ms];" + timeLoading);
+            bw.newLine();
+            bw.write("Simulation[ms];" + timeSimulation);
+            bw.newLine();
+            bw.write("Calculation[ms];" + tc.getElapsedCalculationTime());
+            bw.newLine();
+            bw.write("Output[ms];" + timeOutput);
+            bw.newLine();
+        }
+    }
+}
@@ -24,6 +24,7 @@
 package control;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import control.listener.AsyncSimulationListener;
 import control.listener.SimulationActionListener;
 import control.particlecontrol.ParticlePipeComputing;
 import control.Action.Action;
@@ -38,6 +39,7 @@ import control.threads.ParticleThread;
 import control.threads.ThreadController;
 import io.NamedPipe_IO;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -95,9 +97,16 @@ public class Controller implements SimulationActionListener, LoadingActionListen
     public int intervallHistoryParticles = 0;
 
     public Controller() throws Exception {
-        int numberOfCores = Runtime.getRuntime().availableProcessors();
-//        numberOfCores=1;
-        threadController = new ThreadController(Math.max(1, numberOfCores), this);
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     *
+     * @param numberOfParticleThreads number of parallel particle threads.
+     * @throws Exception
+     */
+    public Controller(int numberOfParticleThreads) throws Exception {
+        threadController = new ThreadController(Math.max(1, numberOfParticleThreads), this);
 
         threadController.addSimulationListener(this);
         loadingCoordinator = new LoadingCoordinator(this);
@@ -130,6 +139,20 @@ public class Controller implements SimulationActionListener, LoadingActionListen
         threadController.addSimulationListener(listener);
     }
 
+    /**
+     * Adds a listener that is informed on its own thread without slowing down
+     * the simulation.
+     *
+     * @param listener
+     * @param policy handling of step snapshots if the listener can not keep
+     * up
+     * @param capacity number of snapshots that can be queued
+     * @return the asynchronous wrapper of the listener
+     */
+    public AsyncSimulationListener addAsyncSimulationListener(SimulationActionListener listener, AsyncSimulationListener.POLICY policy, int capacity) {
+        return threadController.addAsyncSimulationListener(listener, policy, capacity);
+    }
+
     public boolean removeSimulationListener(SimulationActionListener listener) {
         return threadController.removeSimulationListener(listener);
     }
@@ -687,11 +710,9 @@ public class Controller implements SimulationActionListener, LoadingActionListen
             return;
         }
 
-        int totalNumberParticles = 0;
         int maxMaterialID = -1;
         ArrayList<Material> indexedMaterials = new ArrayList<>();
         for (InjectionInformation injection : scenario.getInjections()) {
-            totalNumberParticles += injection.getNumberOfParticles();
             maxMaterialID = Math.max(maxMaterialID, injection.getMaterial().materialIndex);
             if (!indexedMaterials.contains(injection.getMaterial())) {
                 indexedMaterials.add(injection.getMaterial());
@@ -702,13 +723,44 @@ public class Controller implements SimulationActionListener, LoadingActionListen
         }
         maxMaterialID = indexedMaterials.size() - 1;
 
+        ArrayList<Particle> allParticles = createParticles(scenario.getInjections());
+        if (surface != null) {
+            surface.setNumberOfMaterials(maxMaterialID + 1);
+        }
+        if (scenario != null && scenario.getMeasurementsPipe() != null) {
+            scenario.getMeasurementsPipe().setNumberOfMaterials(maxMaterialID + 1);
+            if (scenario.getTimesPipe() != null && scenario.getTimesPipe() instanceof SparseTimeLinePipeContainer) {
+                ((SparseTimeLinePipeContainer) scenario.getTimesPipe()).numberOfMaterials = maxMaterialID + 1;
+            }
+        }
+
+        this.setParticles(allParticles);
+    }
+
+    /**
+     * Creates the waiting particles for the given injections without handing
+     * them to the particle listeners. The materialIndex of the injected
+     * materials has to be set before. Injections whose capacity or surface
+     * cell can not be found are skipped. Also used by the
+     * {@link control.ensemble.EnsembleRunner} to create the particles of each
+     * ensemble member.
+     *
+     * @param injections
+     * @return particles of all injections in order of the injections (not
+     * sorted by insertion time)
+     */
+    public ArrayList<Particle> createParticles(Collection<InjectionInformation> injections) {
+        int totalNumberParticles = 0;
+        for (InjectionInformation injection : injections) {
+            totalNumberParticles += injection.getNumberOfParticles();
+        }
         ArrayList<Particle> allParticles = new ArrayList<>(totalNumberParticles);
         int counter = 0;
-        for (InjectionInformation injection : scenario.getInjections()) {
+        for (InjectionInformation injection : injections) {
             counter++;
-            currentAction.description = "Injection spill " + counter + "/" + scenario.getInjections().size();
+            currentAction.description = "Injection spill " + counter + "/" + injections.size();
             currentAction.hasProgress = true;
-            currentAction.progress = counter / (float) scenario.getInjections().size();
+            currentAction.progress = counter / (float) injections.size();
             fireAction(currentAction);
 
             //find capacity
@@ -826,17 +878,7 @@ public class Controller implements SimulationActionListener, LoadingActionListen
             }
             injection.resetChanged();
         }
-        if (surface != null) {
-            surface.setNumberOfMaterials(maxMaterialID + 1);
-        }
-        if (scenario != null && scenario.getMeasurementsPipe() != null) {
-            scenario.getMeasurementsPipe().setNumberOfMaterials(maxMaterialID + 1);
-            if (scenario.getTimesPipe() != null && scenario.getTimesPipe() instanceof SparseTimeLinePipeContainer) {
-                ((SparseTimeLinePipeContainer) scenario.getTimesPipe()).numberOfMaterials = maxMaterialID + 1;
-            }
-        }
-
-        this.setParticles(allParticles);
+        return allParticles;
     }
 
     @Override
@@ -35,6 +35,8 @@ import control.scenario.injection.HE_MessdatenInjection;
 import io.extran.CSV_IO;
 import io.extran.HE_Database;
 import io.SHP_IO_GULLI;
+import io.SurfaceMeshCache;
+import io.SurfaceResultCache;
 import io.SparseTimeLineDataProvider;
 import io.swmm.SWMM_IO;
 import io.extran.HE_SurfaceIO;
@@ -49,10 +51,18 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import model.particle.Material;
+import model.surface.MeshTopology;
 import model.surface.Surface;
 import model.surface.SurfaceVelocityLoader;
 import model.surface.SurfaceWaterlevelLoader;
@@ -108,6 +118,12 @@ public class LoadingCoordinator {
 
     public final Action action = new Action("LoadingCoordinator", null, false);
 
+    /**
+     * Action of the loading task of the current thread. Tasks running in
+     * parallel report their progress on their own action.
+     */
+    private final ThreadLocal<Action> loadingTaskAction = new ThreadLocal<>();
+
     /**
      * Load only neccessary timelines for pipes.
      */
@@ -118,6 +134,26 @@ public class LoadingCoordinator {
      */
     public boolean sparseSurfaceLoading = true;
 
+    /**
+     * Serve sparse surface results of GDB databases from a binary cache file
+     * next to the database. The cache is created on first use.
+     */
+    public boolean useSurfaceResultCache = true;
+
+    /**
+     * Load the surface mesh with its topology from a binary cache file inside
+     * the surface model directory. The cache is created after the first
+     * parsing of the text files and renewed if they change.
+     */
+    public boolean useSurfaceMeshCache = true;
+
+    /**
+     * Build node and moore neighbour references of the surface in memory
+     * ({@link MeshTopology}) instead of reading or creating the
+     * NODE2TRIANGLE.dat and MOORE.dat files.
+     */
+    public boolean buildSurfaceTopology = true;
+
     /**
      * Use weights from NODE2TRIANGLe.dat for weighting the nodes' velocities
      * from triangle velocities.
@@ -143,7 +179,31 @@ public class LoadingCoordinator {
 
     private boolean loadGDBVelocity = true;
     private boolean changedPipeNetwork = false;
-    private boolean cancelLoading = false;
+    private volatile boolean cancelLoading = false;
+
+    /**
+     * Load independent files (network, surface grid, surface result database)
+     * in parallel. Otherwise all files are loaded one after another.
+     */
+    public boolean parallelLoading = true;
+
+    /**
+     * Executor of the loading tasks of the running parallel loading. Null if
+     * no parallel loading is running.
+     */
+    private volatile ExecutorService loadingExecutor;
+
+    /**
+     * Duration [ms] of the tasks of the last loading by task name.
+     */
+    private final Map<String, Long> loadingTaskTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+    /**
+     * Surface result database opened in parallel to the surface grid. Is
+     * consumed by loadSurfaceVelocity.
+     */
+    private HE_GDB_IO openedSurfaceGDB;
+    private SurfaceResultCache openedSurfaceCache;
 
     /**
      * Holder of actual "in use" objects (network/surface)
@@ -237,61 +297,76 @@ public class LoadingCoordinator {
                     requestLoading = false;
                     changedPipeNetwork = false;
                     changedSurface = false;
-                    if (loadingpipeNetwork == LOADINGSTATUS.REQUESTED) {
-                        network = loadPipeNetwork();
-                        if (network == null) {
-                            loadingpipeNetwork = LOADINGSTATUS.ERROR;
-                            System.err.println("Network could not be loaded.");
+                    if (parallelLoading) {
+                        try {
+                            if (!loadRequestedFilesParallel()) {
+                                System.out.println("   Loading is cancelled -> break");
+                                break;
+                            }
+                        } catch (InterruptedException ex) {
+                            System.out.println("   LoadingThread is interrupted -> break");
+                            break;
                         }
-                    }
-                    if (isInterrupted()) {
-                        break;
-                    }
-                    scenario = null;
+                    } else {
+                        if (loadingpipeNetwork == LOADINGSTATUS.REQUESTED) {
+                            network = loadPipeNetwork();
+                            if (network == null) {
+                                loadingpipeNetwork = LOADINGSTATUS.ERROR;
+                                System.err.println("Network could not be loaded.");
+                            }
+                        }
+                        if (isInterrupted()) {
+                            break;
+                        }
+                        scenario = null;
 
-                    if (loadingPipeResult == LOADINGSTATUS.REQUESTED) {
-                        loadPipeVelocities(network);
-                    }
-                    if (isInterrupted()) {
-                        System.out.println("   LoadingThread is interrupted -> break");
-                        break;
-                    }
-                    if (network != null) {
-                        for (LoadingActionListener ll : listener) {
-                            ll.loadNetwork(network, this);
+                        if (loadingPipeResult == LOADINGSTATUS.REQUESTED) {
+                            loadPipeVelocities(network);
                         }
-                    }
-                    // Loading Surface topology
-                    if (loadingSurface == LOADINGSTATUS.REQUESTED) {
-                        surface = loadSurface();
-                    }
-                    if (isInterrupted()) {
-                        System.out.println("   LoadingThread is interrupted -> break");
-                        break;
-                    }
-                    // Connect Surface and pipesystem
-                    if (changedSurface || changedPipeNetwork) {
-                        if (surface != null && network != null) {
-                            try {
-                                mapManholes(surface, network);
-                                mapStreetInlets(surface, network);
-                            } catch (TransformException ex) {
-                                Logger.getLogger(LoadingCoordinator.class.getName()).log(Level.SEVERE, null, ex);
+                        if (isInterrupted()) {
+                            System.out.println("   LoadingThread is interrupted -> break");
+                            break;
+                        }
+                        if (network != null) {
+                            for (LoadingActionListener ll : listener) {
+                                ll.loadNetwork(network, this);
                             }
                         }
-                    }
-                    if (isInterrupted()) {
-                        System.out.println("   LoadingThread is interrupted -> break");
-                        break;
-                    }
-                    // Start loading Waterlevels and calculate surface triangle velocities 
-                    if (loadingSurfaceVelocity == LOADINGSTATUS.REQUESTED) {
-                        if (surface != null) {
-                            action.progress = 0f;
-                            loadSurfaceVelocity(surface);
-                        } else {
-                            loadingSurfaceVelocity = LOADINGSTATUS.ERROR;
+                        // Loading Surface topology
+                        if (loadingSurface == LOADINGSTATUS.REQUESTED) {
+                            surface = loadSurface();
+                        }
+                        if (isInterrupted()) {
+                            System.out.println("   LoadingThread is interrupted -> break");
+                            break;
+                        }
+                        // Connect Surface and pipesystem
+                        if (changedSurface) {
+                            resetInjectionTriangleIDs();
+                        }
+                        if (changedSurface || changedPipeNetwork) {
+                            if (surface != null && network != null) {
+                                try {
+                                    mapManholes(surface, network);
+                                    mapStreetInlets(surface, network);
+                                } catch (TransformException ex) {
+                                    Logger.getLogger(LoadingCoordinator.class.getName()).log(Level.SEVERE, null, ex);
+                                }
+                            }
+                        }
+                        if (isInterrupted()) {
+                            System.out.println("   LoadingThread is interrupted -> break");
+                            break;
+                        }
+                        // Start loading Waterlevels and calculate surface triangle velocities 
+                        if (loadingSurfaceVelocity == LOADINGSTATUS.REQUESTED) {
+                            if (surface != null) {
+                                action.progress = 0f;
+                                loadSurfaceVelocity(surface);
+                            } else {
+                                loadingSurfaceVelocity = LOADINGSTATUS.ERROR;
 
+                            }
                         }
                     }
                     if (loadingSurfaceVelocity==LOADINGSTATUS.LOADED){
@@ -359,16 +434,169 @@ public class LoadingCoordinator {
         }
     }
 
+    /**
+     * Loads the requested files as a graph of tasks. The pipe network, the
+     * surface grid and the surface result database are loaded in parallel.
+     * Pipe results follow the network, the mapping of manholes and inlets
+     * needs network and surface, surface velocities are applied at last.
+     *
+     * @return false if the loading was cancelled.
+     * @throws InterruptedException if the loading thread is interrupted
+     */
+    private boolean loadRequestedFilesParallel() throws InterruptedException {
+        loadingTaskTimes.clear();
+        scenario = null;
+        ExecutorService executor = Executors.newFixedThreadPool(3, (Runnable r) -> {
+            Thread t = new Thread(r, "LoadingTask");
+            t.setDaemon(true);
+            return t;
+        });
+        loadingExecutor = executor;
+        try {
+            CompletableFuture<Void> taskNetwork = CompletableFuture.runAsync(loadingTask("Load pipe network", () -> {
+                if (loadingpipeNetwork == LOADINGSTATUS.REQUESTED) {
+                    network = loadPipeNetwork();
+                    if (network == null) {
+                        loadingpipeNetwork = LOADINGSTATUS.ERROR;
+                        System.err.println("Network could not be loaded.");
+                    }
+                }
+            }), executor);
+            CompletableFuture<Void> taskPipeResults = taskNetwork.thenRunAsync(loadingTask("Load pipe results", () -> {
+                if (loadingPipeResult == LOADINGSTATUS.REQUESTED) {
+                    loadPipeVelocities(network);
+                }
+                if (network != null && !cancelLoading) {
+                    for (LoadingActionListener ll : listener) {
+                        ll.loadNetwork(network, this);
+                    }
+                }
+            }), executor);
+            CompletableFuture<Void> taskSurface = CompletableFuture.runAsync(loadingTask("Load surface grid", () -> {
+                if (loadingSurface == LOADINGSTATUS.REQUESTED) {
+                    surface = loadSurface();
+                }
+            }), executor);
+            CompletableFuture<Void> taskSurfaceResults = CompletableFuture.runAsync(loadingTask("Open surface results", () -> {
+                openSurfaceResults();
+            }), executor);
+            CompletableFuture<Void> taskMapping = CompletableFuture.allOf(taskPipeResults, taskSurface).thenRunAsync(loadingTask("Map surface and network", () -> {
+                if (changedSurface) {
+                    resetInjectionTriangleIDs();
+                }
+                if ((changedSurface || changedPipeNetwork) && surface != null && network != null) {
+                    try {
+                        mapManholes(surface, network);
+                        mapStreetInlets(surface, network);
+                    } catch (TransformException ex) {
+                        Logger.getLogger(LoadingCoordinator.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+            }), executor);
+            CompletableFuture<Void> taskSurfaceVelocity = CompletableFuture.allOf(taskMapping, taskSurfaceResults).thenRunAsync(loadingTask("Load surface velocities", () -> {
+                if (loadingSurfaceVelocity == LOADINGSTATUS.REQUESTED) {
+                    if (surface != null) {
+                        loadSurfaceVelocity(surface);
+                    } else {
+                        loadingSurfaceVelocity = LOADINGSTATUS.ERROR;
+                    }
+                }
+            }), executor);
+            taskSurfaceVelocity.get();
+        } catch (ExecutionException | CancellationException ex) {
+            if (!cancelLoading) {
+                Logger.getLogger(LoadingCoordinator.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        } finally {
+            executor.shutdownNow();
+            loadingExecutor = null;
+        }
+        return !cancelLoading;
+    }
+
+    /**
+     * Wraps a loading step to report its start and duration to the listeners.
+     * The step is skipped if the loading is cancelled.
+     *
+     * @param name
+     * @param task
+     * @return
+     */
+    private Runnable loadingTask(final String name, final Runnable task) {
+        return () -> {
+            if (cancelLoading) {
+                return;
+            }
+            Action taskAction = new Action(name, null, false);
+            for (LoadingActionListener ll : listener) {
+                ll.actionFired(taskAction, this);
+            }
+            long start = System.currentTimeMillis();
+            loadingTaskAction.set(taskAction);
+            try {
+                task.run();
+            } finally {
+                loadingTaskAction.remove();
+            }
+            long duration = System.currentTimeMillis() - start;
+            loadingTaskTimes.put(name, duration);
+            taskAction.description = name + " took " + duration + " ms";
+            taskAction.progress = 1f;
+            for (LoadingActionListener ll : listener) {
+                ll.actionFired(taskAction, this);
+            }
+            if (verbose) {
+                System.out.println(taskAction.description);
+            }
+        };
+    }
+
+    /**
+     * Opens the GDB surface result database and its cache, if surface
+     * velocities are requested from a GDB. Does not need the surface grid.
+     */
+    private void openSurfaceResults() {
+        openedSurfaceGDB = null;
+        openedSurfaceCache = null;
+        if (loadingSurfaceVelocity != LOADINGSTATUS.REQUESTED || fileSurfaceWaterlevels == null) {
+            return;
+        }
+        if (!fileSurfaceWaterlevels.getName().toLowerCase().endsWith("gdb") || !HE_GDB_IO.isReadyInstalled()) {
+            return;
+        }
+        try {
+            HE_GDB_IO gdb = new HE_GDB_IO(fileSurfaceWaterlevels);
+            if (useSurfaceResultCache && sparseSurfaceLoading && gdb.isResultDB()) {
+                openedSurfaceCache = SurfaceResultCache.openOrCreate(gdb);
+            }
+            openedSurfaceGDB = gdb;
+        } catch (Exception ex) {
+            Logger.getLogger(LoadingCoordinator.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Duration of the tasks of the last parallel loading.
+     *
+     * @return task name -> duration [ms]
+     */
+    public Map<String, Long> getLoadingTaskTimes() {
+        synchronized (loadingTaskTimes) {
+            return new LinkedHashMap<>(loadingTaskTimes);
+        }
+    }
+
     private Network loadPipeNetwork() {
+        Action taskAction = currentAction();
         loadingpipeNetwork = LOADINGSTATUS.LOADING;
-        action.description = "Load network";
+        taskAction.description = "Load network";
         if (verbose) {
             System.out.println("went into loading Network '" + fileNetwork + "'");
         }
         fireLoadingActionUpdate();
 
         if (!fileNetwork.exists()) {
-            action.description = "File does not exists @" + fileNetwork;
+            taskAction.description = "File does not exists @" + fileNetwork;
             loadingpipeNetwork = LOADINGSTATUS.ERROR;
             return null;
         }
@@ -442,9 +670,10 @@ public class LoadingCoordinator {
      * @param nw
      */
     private boolean loadPipeVelocities(Network nw) {
+        Action taskAction = currentAction();
         loadingPipeResult = LOADINGSTATUS.LOADING;
-        action.description = "Load pipe velocities";
-        action.progress = 0;
+        taskAction.description = "Load pipe velocities";
+        taskAction.progress = 0;
         fireLoadingActionUpdate();
         String scenarioName = "";
 //        if (loadOnlyMainFile) {
@@ -464,7 +693,7 @@ public class LoadingCoordinator {
                 //Load manualInjections. Neede to calculate transport paths.
                 ArrayList<HEInjectionInformation> he_injection = null;
                 if (fileMainPipeResult.getName().endsWith(".idbf") || fileMainPipeResult.getName().endsWith(".idbr")) {
-                    action.description = "Open Database";
+                    taskAction.description = "Open Database";
                     if (resultDatabase == null || !resultDatabase.getDatabaseFile().getAbsolutePath().equals(fileMainPipeResult.getAbsolutePath())) {
                         if (tempFBDB != null && tempFBDB.getDatabaseFile().equals(fileMainPipeResult)) {
                             resultDatabase = tempFBDB;
@@ -474,7 +703,7 @@ public class LoadingCoordinator {
                     }
                     resultName = resultDatabase.readResultname();
                     scenarioName = resultName;
-                    action.description = "Load spill events";
+                    taskAction.description = "Load spill events";
                     if (this.loadResultInjections) {
                         he_injection = resultDatabase.readInjectionInformation();
                     } else {
@@ -561,11 +790,11 @@ public class LoadingCoordinator {
                     }
                     if (sparsePipeLoading) {
                         //load minmax velocity
-                        action.description = "Load Maximum velocity";
+                        taskAction.description = "Load Maximum velocity";
                         float[][] minmax = resultDatabase.getMinMaxVelocity();
                         LinkedList<Pipe> pipesToLoad = new LinkedList<>();
                         LinkedList<StorageVolume> manholesToLoad = new LinkedList<>();
-                        action.description = "Calculate downstream graph";
+                        taskAction.description = "Calculate downstream graph";
                         //Search downstream pipes
                         for (Capacity cap : injManholes) {
                             StorageVolume mh;
@@ -611,7 +840,7 @@ public class LoadingCoordinator {
                         if (verbose) {
                             System.out.println("Request Manholes  SparseTimeline: " + manholesToLoad.size() + "/" + nw.getManholes().size());
                         }
-                        action.description = "Load downstream pipe velocities";
+                        taskAction.description = "Load downstream pipe velocities";
                         //Request Timelines for pipes and manholes & Create Timeindex container
                         Pair<SparseTimeLinePipeContainer, SparseTimeLineManholeContainer> cs = sparseLoadTimelines(nw, resultDatabase, pipesToLoad, manholesToLoad);
                         if (verbose) {
@@ -627,7 +856,7 @@ public class LoadingCoordinator {
                 if (!loaded) {
                     //Load all values for all pipes/manholes.
                     Pair<ArrayTimeLinePipeContainer, ArrayTimeLineManholeContainer> p;
-                    action.description = "Load all pipe velocities";
+                    taskAction.description = "Load all pipe velocities";
                     if (fileMainPipeResult.getName().endsWith(".idbf") || fileMainPipeResult.getName().endsWith(".idbr")) {
 
                         p = resultDatabase.applyTimelines(nw);//HE_Database.readTimelines(fileMainPipeResult, control.getNetwork());
@@ -654,7 +883,7 @@ public class LoadingCoordinator {
                     totalInjections.get(i).setId(i);
                 }
 
-                action.description = "Load create scenario";
+                taskAction.description = "Load create scenario";
                 if (scenario == null) {
                     scenario = new SpillScenario(timeContainerPipe, totalInjections);
                 }
@@ -673,68 +902,86 @@ public class LoadingCoordinator {
     }
 
     private Surface loadSurface() {
+        Action taskAction = currentAction();
         loadingSurface = LOADINGSTATUS.LOADING;
-        action.child = null;
-        action.hasProgress = false;
-        action.progress = 0;
-        action.description = "Load surface grid";
+        taskAction.child = null;
+        taskAction.hasProgress = false;
+        taskAction.progress = 0;
+        taskAction.description = "Load surface grid";
         fireLoadingActionUpdate();
         try {
             long start = System.currentTimeMillis();
-            Surface surf = HE_SurfaceIO.loadSurface(fileSurfaceCoordsDAT, fileSurfaceTriangleIndicesDAT, FileTriangleNeumannNeighboursDAT, fileSurfaceReferenceSystem);
-            start = System.currentTimeMillis();
-            //load neighbour definitions
-            {
-                if (fileSufaceNode2Triangle != null && fileSufaceNode2Triangle.exists()) {
-                    surf.setNodeNeighbours(HE_SurfaceIO.loadNodesTriangleIDs(fileSufaceNode2Triangle), weightedSurfaceVelocities);
-                } else {
-                    //Need to create this reference file
-                    action.description = "Create Node-Triangle reference File NODE2TRIANGLE.dat";
-                    fireLoadingActionUpdate();
-                    File outNodeTriangles = new File(fileSurfaceCoordsDAT.getParent(), "NODE2TRIANGLE.dat");
-                    if (!outNodeTriangles.exists()) {
-                        ArrayList<Integer>[] n2t = HE_SurfaceIO.findNodesTriangleIDs(surf.triangleNodes, surf.vertices.length);
-                        HE_SurfaceIO.writeNodesTraingleIDs(n2t, outNodeTriangles);
-                        fileSufaceNode2Triangle = outNodeTriangles;
-                        surf.setNodeNeighbours(HE_SurfaceIO.loadNodesTriangleIDs(fileSufaceNode2Triangle), weightedSurfaceVelocities);
-                    }
-                }
+            Surface surf = null;
+            File meshCacheFile = null;
+            long meshTimestamp = 0;
+            if (useSurfaceMeshCache) {
+                meshCacheFile = SurfaceMeshCache.getCacheFile(fileSurfaceCoordsDAT.getAbsoluteFile().getParentFile());
+                meshTimestamp = SurfaceMeshCache.getSourceTimestamp(fileSurfaceCoordsDAT, fileSurfaceTriangleIndicesDAT, FileTriangleNeumannNeighboursDAT, fileSurfaceReferenceSystem);
+                surf = SurfaceMeshCache.openIfCurrent(meshCacheFile, meshTimestamp);
             }
-            start = System.currentTimeMillis();
-            if (fileTriangleMooreNeighbours != null && fileTriangleMooreNeighbours.exists()) {
-                surf.mooreNeighbours = HE_SurfaceIO.readMooreNeighbours(fileTriangleMooreNeighbours);
-            } else {
-                //Create moore neighbours
-                action.description = "Create Moore Neighbours File MOORE.dat";
-                fireLoadingActionUpdate();
-                fileTriangleMooreNeighbours = new File(fileSurfaceCoordsDAT.getParent(), "MOORE.dat");
-                if (!fileTriangleMooreNeighbours.exists()) {
-                    System.out.println("Create new Moore Neighbours File @" + fileTriangleMooreNeighbours);
-                    HE_SurfaceIO.writeMooreTriangleNeighbours(surf.getTriangleNodes(), surf.getVerticesPosition().length, fileTriangleMooreNeighbours);
-                    System.out.println("Created new Moore Neighbours File " + fileTriangleMooreNeighbours);
-                    surf.mooreNeighbours = HE_SurfaceIO.readMooreNeighbours(fileTriangleMooreNeighbours);
+            if (surf != null) {
+                surf.fileTriangles = fileSurfaceCoordsDAT.getAbsoluteFile().getParentFile();
+                if (weightedSurfaceVelocities && surf.getTopology() != null) {
+                    surf.setTopology(surf.getTopology().withWeights());
                 }
-            }
-            //Reset triangle IDs from Injections because the coordinate might have changed
-            for (InjectionInformation injection : manualInjections) {
-                if (injection.getPosition() != null) {
-                    injection.setTriangleID(-1);
+            } else {
+                surf = HE_SurfaceIO.loadSurface(fileSurfaceCoordsDAT, fileSurfaceTriangleIndicesDAT, FileTriangleNeumannNeighboursDAT, fileSurfaceReferenceSystem);
+                start = System.currentTimeMillis();
+                if (buildSurfaceTopology) {
+                    taskAction.description = "Build surface topology";
+                    fireLoadingActionUpdate();
+                    surf.setTopology(MeshTopology.build(surf.triangleNodes, surf.vertices.length, weightedSurfaceVelocities));
+                } else {
+                    //load neighbour definitions
+                    {
+                        if (fileSufaceNode2Triangle != null && fileSufaceNode2Triangle.exists()) {
+                            surf.setNodeNeighbours(HE_SurfaceIO.loadNodesTriangleIDs(fileSufaceNode2Triangle), weightedSurfaceVelocities);
+                        } else {
+                            //Need to create this reference file
+                            taskAction.description = "Create Node-Triangle reference File NODE2TRIANGLE.dat";
+                            fireLoadingActionUpdate();
+                            File outNodeTriangles = new File(fileSurfaceCoordsDAT.getParent(), "NODE2TRIANGLE.dat");
+                            if (!outNodeTriangles.exists()) {
+                                ArrayList<Integer>[] n2t = HE_SurfaceIO.findNodesTriangleIDs(surf.triangleNodes, surf.vertices.length);
+                                HE_SurfaceIO.writeNodesTraingleIDs(n2t, outNodeTriangles);
+                                fileSufaceNode2Triangle = outNodeTriangles;
+                                surf.setNodeNeighbours(HE_SurfaceIO.loadNodesTriangleIDs(fileSufaceNode2Triangle), weightedSurfaceVelocities);
+                            }
+                        }
+                    }
+                    start = System.currentTimeMillis();
+                    if (fileTriangleMooreNeighbours != null && fileTriangleMooreNeighbours.exists()) {
+                        surf.mooreNeighbours = HE_SurfaceIO.readMooreNeighbours(fileTriangleMooreNeighbours);
+                    } else {
+                        //Create moore neighbours
+                        taskAction.description = "Create Moore Neighbours File MOORE.dat";
+                        fireLoadingActionUpdate();
+                        fileTriangleMooreNeighbours = new File(fileSurfaceCoordsDAT.getParent(), "MOORE.dat");
+                        if (!fileTriangleMooreNeighbours.exists()) {
+                            System.out.println("Create new Moore Neighbours File @" + fileTriangleMooreNeighbours);
+                            HE_SurfaceIO.writeMooreTriangleNeighbours(surf.getTriangleNodes(), surf.getVerticesPosition().length, fileTriangleMooreNeighbours);
+                            System.out.println("Created new Moore Neighbours File " + fileTriangleMooreNeighbours);
+                            surf.mooreNeighbours = HE_SurfaceIO.readMooreNeighbours(fileTriangleMooreNeighbours);
+                        }
+                    }
                 }
-            }
-            //Reset triangle IDs from Injections because the coordinate might have changed
-            for (InjectionInformation injection : totalInjections) {
-                if (injection.getPosition() != null) {
-                    injection.setTriangleID(-1);
+                if (useSurfaceMeshCache && !cancelLoading) {
+                    taskAction.description = "Write surface mesh cache";
+                    fireLoadingActionUpdate();
+                    try {
+                        SurfaceMeshCache.write(surf, meshCacheFile, meshTimestamp);
+                    } catch (Exception ex) {
+                        System.err.println("Can not write surface mesh cache " + meshCacheFile + ": " + ex.getLocalizedMessage());
+                    }
                 }
             }
-
             if (cancelLoading) {
                 loadingSurface = LOADINGSTATUS.REQUESTED;
 //                System.gc();
                 return null;
             }
             changedSurface = true;
-            action.description = "Surface loaded";
+            taskAction.description = "Surface loaded";
             fireLoadingActionUpdate();
             loadingSurface = LOADINGSTATUS.LOADED;
 //            System.gc();
@@ -747,9 +994,28 @@ public class LoadingCoordinator {
         return null;
     }
 
+    /**
+     * Reset triangle IDs from injections because the coordinate might have
+     * changed with a new surface. Must not run in parallel to the loading of
+     * pipe results, which modifies the list of injections.
+     */
+    private void resetInjectionTriangleIDs() {
+        for (InjectionInformation injection : manualInjections) {
+            if (injection.getPosition() != null) {
+                injection.setTriangleID(-1);
+            }
+        }
+        for (InjectionInformation injection : totalInjections) {
+            if (injection.getPosition() != null) {
+                injection.setTriangleID(-1);
+            }
+        }
+    }
+
     private boolean loadSurfaceVelocity(Surface surface) {
+        Action taskAction = currentAction();
         loadingSurfaceVelocity = LOADINGSTATUS.LOADING;
-        action.description = "Load surface velocities";
+        taskAction.description = "Load surface velocities";
         fireLoadingActionUpdate();
         try {
             if (surface != null) {
@@ -764,7 +1030,7 @@ public class LoadingCoordinator {
                 }
                 // Now start loading waterlevels to surface
                 long starttime = System.currentTimeMillis();
-                action.description = "Load surface velocities";
+                taskAction.description = "Load surface velocities";
                 fireLoadingActionUpdate();
 
                 String lowername = fileSurfaceWaterlevels.getName().toLowerCase();
@@ -778,15 +1044,39 @@ public class LoadingCoordinator {
                 } else if (lowername.endsWith("csv")) {
                     CSV_IO.readTriangleWaterlevels(surface, fileSurfaceWaterlevels);
                 } else if (lowername.endsWith("gdb")) {
-                    action.description = "Reading GDB surface";
+                    taskAction.description = "Reading GDB surface";
                     fireLoadingActionUpdate();
-                    HE_GDB_IO gdb = new HE_GDB_IO(fileSurfaceWaterlevels);
+                    HE_GDB_IO gdb;
+                    SurfaceResultCache cache = null;
+                    if (openedSurfaceGDB != null && openedSurfaceGDB.getDirectory().equals(fileSurfaceWaterlevels)) {
+                        //Already opened in parallel to the loading of the surface grid.
+                        gdb = openedSurfaceGDB;
+                        cache = openedSurfaceCache;
+                    } else {
+                        gdb = new HE_GDB_IO(fileSurfaceWaterlevels);
+                    }
+                    openedSurfaceGDB = null;
+                    openedSurfaceCache = null;
                     velocityLoader = gdb;
                     waterlevelLoader = gdb;
+                    if (useSurfaceResultCache && sparseSurfaceLoading && gdb.isResultDB()) {
+                        if (cache == null) {
+                            taskAction.description = "Opening surface result cache";
+                            fireLoadingActionUpdate();
+                            cache = SurfaceResultCache.openOrCreate(gdb);
+                        }
+                        if (cache != null) {
+                            velocityLoader = cache;
+                            waterlevelLoader = cache;
+                            if (verbose) {
+                                System.out.println("Using " + cache);
+                            }
+                        }
+                    }
                     if (gdb.isResultDB()) {
                         if (gdb.hasVelocities()) {
                             long start = System.currentTimeMillis();
-                            action.description = "Reading GDB surface velocities";
+                            taskAction.description = "Reading GDB surface velocities";
                             fireLoadingActionUpdate();
                             if (sparseSurfaceLoading) {
                                 int numberTriangles = surface.getTriangleMids().length;
@@ -804,7 +1094,7 @@ public class LoadingCoordinator {
                         } else {
                             if (gdb.hasWaterlevels()) {
                                 long start = System.currentTimeMillis();
-                                action.description = "Reading GDB surface waterlevels";
+                                taskAction.description = "Reading GDB surface waterlevels";
                                 System.err.println("Surface GDB does only provide waterlevels but no velocities.");
                                 if (sparseSurfaceLoading) {
                                     int numberTriangles = surface.getTriangleMids().length;
@@ -820,8 +1110,8 @@ public class LoadingCoordinator {
                                 }
                             } else {
                                 loadingSurfaceVelocity = LOADINGSTATUS.ERROR;
-                                action.description = "GDB has no water levels";
-                                System.err.println(action.description);
+                                taskAction.description = "GDB has no water levels";
+                                System.err.println(taskAction.description);
                             }
                         }
                         if (cancelLoading) {
@@ -831,7 +1121,7 @@ public class LoadingCoordinator {
                         }
                         if (loadGDBVelocity && gdb.hasVelocities() && !sparseSurfaceLoading) {
                             long start = System.currentTimeMillis();
-                            action.description = "Reading GDB surface velocities";
+                            taskAction.description = "Reading GDB surface velocities";
                             fireLoadingActionUpdate();
                             gdb.applyVelocitiesToSurface(surface);
                             gdb.close();
@@ -841,13 +1131,13 @@ public class LoadingCoordinator {
                         }
                     } else {
                         loadingSurfaceVelocity = LOADINGSTATUS.ERROR;
-                        action.description = "GDB has not a result database.";
-                        System.err.println(action.description);
+                        taskAction.description = "GDB has not a result database.";
+                        System.err.println(taskAction.description);
                     }
                 } else {
                     loadingSurfaceVelocity = LOADINGSTATUS.ERROR;
-                    action.description = "Unknown file format of water-levels-file '" + fileSurfaceWaterlevels + "'.";
-                    System.err.println(action.description);
+                    taskAction.description = "Unknown file format of water-levels-file '" + fileSurfaceWaterlevels + "'.";
+                    System.err.println(taskAction.description);
                 }
                 if (cancelLoading) {
                     System.out.println("   LoadingThread is interrupted -> break");
@@ -883,29 +1173,30 @@ public class LoadingCoordinator {
                 }
 
                 loadingSurfaceVelocity = LOADINGSTATUS.LOADED;
-                action.description = "Surface velocity loaded";
-                action.progress = 1f;
+                taskAction.description = "Surface velocity loaded";
+                taskAction.progress = 1f;
                 return true;
             } else {
                 loadingSurfaceVelocity = LOADINGSTATUS.ERROR;
-                action.description = "Surface is null when applying velocities";
-                System.err.println(action.description);
+                taskAction.description = "Surface is null when applying velocities";
+                System.err.println(taskAction.description);
                 new Exception("Surface is null when applying velocities").printStackTrace();
             }
         } catch (Exception ex) {
             loadingSurfaceVelocity = LOADINGSTATUS.ERROR;
-            action.description = ex.getLocalizedMessage();
-            System.err.println(action.description);
+            taskAction.description = ex.getLocalizedMessage();
+            System.err.println(taskAction.description);
             Logger.getLogger(LoadingCoordinator.class.getName()).log(Level.SEVERE, null, ex);
         }
         return false;
     }
 
     public boolean mapManholes(Surface surface, Network network) {
+        Action taskAction = currentAction();
         if (manhRefs == null) {
             if (fileSurfaceManholes != null) {
                 try {
-                    action.description = "Load Manhole locations";
+                    taskAction.description = "Load Manhole locations";
                     fireLoadingActionUpdate();
                     manhRefs = HE_SurfaceIO.loadManholeToTriangleReferences(fileSurfaceManholes);
                     if (verbose) {
@@ -922,7 +1213,7 @@ public class LoadingCoordinator {
         }
 
         if (manhRefs != null) {
-            action.description = "Mapping manhole - surface links";
+            taskAction.description = "Mapping manhole - surface links";
             fireLoadingActionUpdate();
             long startt = System.currentTimeMillis();
             surface.applyManholeRefs(network, manhRefs);
@@ -937,8 +1228,9 @@ public class LoadingCoordinator {
     }
 
     public boolean mapStreetInlets(Surface sf, Network nw) throws TransformException {
+        Action taskAction = currentAction();
         if ((inletRefs == null || changedPipeNetwork || changedSurface) && fileSurfaceInlets != null) {
-            action.description = "Load Inlet locations";
+            taskAction.description = "Load Inlet locations";
             fireLoadingActionUpdate();
             try {
                 inletRefs = HE_SurfaceIO.loadStreetInletsReferences(fileSurfaceInlets);
@@ -947,7 +1239,7 @@ public class LoadingCoordinator {
             }
         }
         if (inletRefs != null) {
-            action.description = "Mapping Inlet - Pipe links";
+            taskAction.description = "Mapping Inlet - Pipe links";
             fireLoadingActionUpdate();
             long startt = System.currentTimeMillis();
             sf.applyStreetInlets(nw, inletRefs);
@@ -962,6 +1254,11 @@ public class LoadingCoordinator {
     public void cancelLoading() {
         System.out.println("Request cancel loadingthread. (" + threadLoadingRequests + ")");
         isLoading = false;
+        cancelLoading = true;
+        ExecutorService executor = loadingExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
 
         fireLoadingActionUpdate();
 
@@ -1005,7 +1302,7 @@ public class LoadingCoordinator {
                 return;
             }
             if (this.loadGDBVelocity) {
-                if (surface.getTriangleVelocity() == null || surface.getTriangleVelocity().length == 0) {
+                if (surface.getTriangleVelocity() == null || surface.getTriangleVelocity().elements == 0) {
                     this.loadingSurfaceVelocity = LOADINGSTATUS.REQUESTED;
                     fireLoadingActionUpdate();
                 } else {
@@ -1336,9 +1633,24 @@ public class LoadingCoordinator {
         }
     }
 
+    /**
+     * The action of the loading task running on this thread or the
+     * coordinator's action if not called from a task.
+     *
+     * @return
+     */
+    private Action currentAction() {
+        Action taskAction = loadingTaskAction.get();
+        if (taskAction != null) {
+            return taskAction;
+        }
+        return action;
+    }
+
     private void fireLoadingActionUpdate() {
+        Action current = currentAction();
         for (LoadingActionListener ll : listener) {
-            ll.actionFired(action, this);
+            ll.actionFired(current, this);
         }
     }
 
@@ -365,22 +365,15 @@ public class ShapeTools {
             SurfaceMeasurementTriangleRaster raster = (SurfaceMeasurementTriangleRaster) surface.getMeasurementRaster();
             for (int m = 0; m < raster.getMeasurements().length; m++) {
                 TriangleMeasurement measurement = raster.getMeasurements()[m];
-                if (measurement == null || measurement.getParticlecount() == null || measurement.getParticlecount().length == 0) {
+                if (measurement == null || measurement.getNumberOfMaterials() == 0) {
                     continue;
                 }
                 if (materialIndex >= 0) {
-                    if (measurement.getParticlecount().length <= materialIndex) {
+                    if (measurement.getNumberOfMaterials() <= materialIndex) {
                         //index out of bounds
                         continue;
                     }
-                    int[] particles = measurement.getParticlecount()[materialIndex];
-                    int sum = 0;
-                    for (int i = 0; i < particles.length; i++) {
-                        sum += particles[i];
-                        if (sum > minimumCount) {
-                            break;
-                        }
-                    }
+                    int sum = measurement.getTotalParticlecount(materialIndex);
                     if (sum < minimumCount) {
                         continue;
                     }
@@ -0,0 +1,231 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.backward;
+
+import control.Controller;
+import control.maths.CounterRandom;
+import control.particlecontrol.FlowCalculatorMixed;
+import control.particlecontrol.ParticlePipeComputing;
+import control.particlecontrol.ParticlePipeComputingBackward;
+import control.scenario.Scenario;
+import control.threads.ParticleThread;
+import control.threads.ThreadController;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.particle.Particle;
+import model.surface.Surface;
+import model.topology.Manhole;
+import model.topology.NetworkHydraulicState;
+import model.topology.Pipe;
+
+/**
+ * Locates possible spill sources of a detection in a pipe. Particles are
+ * released at the detection pipe and time and moved backward in time against
+ * the stored flow of the loaded scenario. Manholes, inlets and surface
+ * triangles visited by the backward particles get a likelihood to be the
+ * source. One backward run replaces a forward run for every candidate
+ * upstream manhole.
+ *
+ * Only the pipe network is tracked backward. Water entering from the surface
+ * ends the path at the manhole's surface triangle, inlets are counted when
+ * particles pass their pipe position.
+ *
+ * @author saemann
+ */
+public class BackwardTracking {
+
+    public static boolean verbose = false;
+
+    private final Controller control;
+    private final int numberOfThreads;
+    private int particleBlockSize = 1000;
+
+    private HashMap<Pipe, int[]> pipeInlets;
+
+    //Order of the current particle loop, handed to the workers
+    private final AtomicInteger nextBlockStart = new AtomicInteger();
+    private Particle[] particles;
+    private long stepTime;
+
+    public BackwardTracking(Controller control, int numberOfThreads) {
+        this.control = control;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    public void setParticleBlockSize(int particleBlockSize) {
+        this.particleBlockSize = Math.max(1, particleBlockSize);
+    }
+
+    public int getParticleBlockSize() {
+        return particleBlockSize;
+    }
+
+    /**
+     * Tracks particles from the detection backward in time.
+     *
+     * @param detectionPipe pipe of the sensor
+     * @param position1d position of the sensor along the pipe [m]
+     * @param detectionTime time of the detection [ms]
+     * @param numberOfParticles number of backward particles
+     * @param maxDuration maximum time to track back [s]. Tracking also stops
+     * at the start of the scenario.
+     * @param seed of the random numbers
+     * @return likelihood of the source locations. Marked as failed if a
+     * worker thread threw an exception.
+     * @throws InterruptedIOException if the calling thread is interrupted.
+     */
+    public SourceLikelihood track(Pipe detectionPipe, double position1d, long detectionTime, int numberOfParticles, double maxDuration, long seed) throws InterruptedIOException {
+        ThreadController tc = control.getThreadController();
+        if (tc.isSimulating()) {
+            throw new SecurityException("Can not track backward while the simulation is running, inconsistency warning!");
+        }
+        Scenario scenario = control.getScenario();
+        Surface surface = control.getSurface();
+        Manhole[] manholes = control.getNetwork().getManholes().toArray(new Manhole[control.getNetwork().getManholes().size()]);
+        SourceLikelihood result = new SourceLikelihood(manholes, detectionTime, surface == null ? 0 : surface.getTriangleNodes().length);
+        result.setNumberOfParticles(numberOfParticles);
+        if (pipeInlets == null) {
+            pipeInlets = ParticlePipeComputingBackward.mapInletsToPipes(surface);
+        }
+
+        particles = new Particle[numberOfParticles];
+        for (int i = 0; i < particles.length; i++) {
+            Particle p = new Particle(detectionPipe, position1d, detectionTime);
+            p.setSurrounding_actual(detectionPipe);
+            p.setPosition1d_actual((float) position1d);
+            p.setInPipenetwork();
+            particles[i] = p;
+        }
+
+        Worker[] workers = new Worker[numberOfThreads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(result, seed, surface);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        long start = System.currentTimeMillis();
+        long dtMS = (long) (ThreadController.getDeltaTime() * 1000);
+        long end = Math.max(scenario.getStartTime(), detectionTime - (long) (maxDuration * 1000));
+        long time = detectionTime;
+        int active = numberOfParticles;
+        int steps = 0;
+        try {
+            while (time > end && active > 0) {
+                scenario.setActualTime(time);
+                if (NetworkHydraulicState.enabled) {
+                    NetworkHydraulicState.prepare(control.getNetwork().getPipes(), control.getNetwork().getManholes(), scenario.getTimesPipe());
+                }
+                if (FlowCalculatorMixed.useRoutingTable) {
+                    FlowCalculatorMixed.prepareRoutingTable(control.getNetwork().getManholes(), scenario.getTimesPipe());
+                }
+                stepTime = time;
+                nextBlockStart.set(0);
+                active = 0;
+                for (Future<Integer> f : executor.invokeAll(Arrays.asList(workers))) {
+                    active += f.get();
+                }
+                time -= dtMS;
+                steps++;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException iex = new InterruptedIOException("Backward tracking interrupted at " + time + "ms.");
+            iex.initCause(ex);
+            throw iex;
+        } catch (ExecutionException ex) {
+            result.setFailure(ex.getCause());
+            System.err.println("Backward tracking failed at " + time + "ms:");
+            ex.getCause().printStackTrace();
+        } finally {
+            executor.shutdown();
+            particles = null;
+            //Set the hydraulics back to the forward simulation time
+            scenario.setActualTime(tc.getSimulationTime());
+        }
+        for (Worker w : workers) {
+            result.merge(w.likelihood);
+        }
+        result.addUnresolved(active);
+        if (verbose) {
+            System.out.println("Backward tracking of " + numberOfParticles + " particles over " + steps + " steps in " + (System.currentTimeMillis() - start) + "ms. Unresolved: " + active);
+        }
+        return result;
+    }
+
+    /**
+     * Moves blocks of backward particles. The random stream is keyed by
+     * particle index and time, so the result does not depend on the number
+     * of threads.
+     */
+    private class Worker implements Callable<Integer> {
+
+        private final ParticlePipeComputingBackward computing;
+        private final CounterRandom random;
+        private final SourceLikelihood likelihood;
+
+        public Worker(SourceLikelihood template, long seed, Surface surface) {
+            ParticlePipeComputing settings = new ParticlePipeComputing();
+            ParticleThread[] threads = control.getThreadController().getParticleThreads();
+            if (threads != null && threads.length > 0) {
+                settings.turbulentCalculation = threads[0].pc.turbulentCalculation;
+            }
+            computing = new ParticlePipeComputingBackward(settings);
+            random = new CounterRandom(seed);
+            likelihood = new SourceLikelihood(template);
+            computing.setRandomNumberGenerator(random);
+            computing.setLikelihood(likelihood);
+            computing.setInlets(surface, pipeInlets);
+            computing.setDeltaTime(ThreadController.getDeltaTime());
+        }
+
+        @Override
+        public Integer call() {
+            final Particle[] ps = particles;
+            computing.setActualSimulationTime(stepTime);
+            int active = 0;
+            int from;
+            while ((from = nextBlockStart.getAndAdd(particleBlockSize)) < ps.length) {
+                int toExcld = Math.min(ps.length, from + particleBlockSize);
+                for (int i = from; i < toExcld; i++) {
+                    Particle p = ps[i];
+                    if (!p.isActive()) {
+                        continue;
+                    }
+                    random.setKey(i, stepTime);
+                    computing.moveParticle(p);
+                    if (p.isActive()) {
+                        active++;
+                    }
+                }
+            }
+            return active;
+        }
+    }
+}
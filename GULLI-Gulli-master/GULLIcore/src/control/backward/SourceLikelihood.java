@@ -0,0 +1,342 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.backward;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import model.topology.Manhole;
+
+/**
+ * Result of a backward tracking. Counts how often backward particles visited
+ * manholes and surface inlets and where they left the pipe network as local
+ * inflow. Divided by the number of backward particles this is the
+ * probability that water of the detection passed or originated at a
+ * location, which is used as likelihood of the spill source.
+ *
+ * Each tracking thread fills its own instance, which are merged at the end.
+ *
+ * @author saemann
+ */
+public class SourceLikelihood {
+
+    private final Manhole[] manholes;
+    private final HashMap<Manhole, Integer> manholeIndex;
+
+    private final long detectionTime;
+    private int numberOfParticles;
+
+    /**
+     * Number of backward particles entering the manhole.
+     */
+    private final double[] manholeVisits;
+    /**
+     * Sum of the travel time [s] between visit and detection.
+     */
+    private final double[] manholeTravelTime;
+    /**
+     * Number of particles originating from the lateral inflow of the manhole.
+     */
+    private final double[] manholeOrigin;
+
+    /**
+     * Number of particles passing an inlet of this surface triangle.
+     */
+    private final double[] triangleVisits;
+    private final double[] triangleTravelTime;
+    /**
+     * Number of particles coming from the surface into a manhole on this
+     * triangle.
+     */
+    private final double[] triangleOrigin;
+
+    /**
+     * Number of particles that were still in the network at the end of the
+     * tracking.
+     */
+    private int unresolved = 0;
+
+    /**
+     * Exception of a worker thread that aborted the tracking.
+     */
+    private Throwable failure;
+
+    public SourceLikelihood(Manhole[] manholes, long detectionTime, int numberOfTriangles) {
+        this.manholes = manholes;
+        this.detectionTime = detectionTime;
+        this.manholeIndex = new HashMap<>(manholes.length);
+        for (int i = 0; i < manholes.length; i++) {
+            manholeIndex.put(manholes[i], i);
+        }
+        this.manholeVisits = new double[manholes.length];
+        this.manholeTravelTime = new double[manholes.length];
+        this.manholeOrigin = new double[manholes.length];
+        this.triangleVisits = new double[numberOfTriangles];
+        this.triangleTravelTime = new double[numberOfTriangles];
+        this.triangleOrigin = new double[numberOfTriangles];
+    }
+
+    /**
+     * Empty likelihood for the same network and detection.
+     *
+     * @param other
+     */
+    public SourceLikelihood(SourceLikelihood other) {
+        this.manholes = other.manholes;
+        this.manholeIndex = other.manholeIndex;
+        this.detectionTime = other.detectionTime;
+        this.manholeVisits = new double[manholes.length];
+        this.manholeTravelTime = new double[manholes.length];
+        this.manholeOrigin = new double[manholes.length];
+        this.triangleVisits = new double[other.triangleVisits.length];
+        this.triangleTravelTime = new double[other.triangleVisits.length];
+        this.triangleOrigin = new double[other.triangleVisits.length];
+    }
+
+    public void addManholeVisit(Manhole mh, long time) {
+        Integer i = manholeIndex.get(mh);
+        if (i == null) {
+            return;
+        }
+        manholeVisits[i]++;
+        manholeTravelTime[i] += (detectionTime - time) / 1000.;
+    }
+
+    public void addManholeOrigin(Manhole mh) {
+        Integer i = manholeIndex.get(mh);
+        if (i == null) {
+            return;
+        }
+        manholeOrigin[i]++;
+    }
+
+    public void addTriangleVisit(int triangleID, long time) {
+        if (triangleID < 0 || triangleID >= triangleVisits.length) {
+            return;
+        }
+        triangleVisits[triangleID]++;
+        triangleTravelTime[triangleID] += (detectionTime - time) / 1000.;
+    }
+
+    public void addTriangleOrigin(int triangleID) {
+        if (triangleID < 0 || triangleID >= triangleOrigin.length) {
+            return;
+        }
+        triangleOrigin[triangleID]++;
+    }
+
+    public void addUnresolved(int number) {
+        unresolved += number;
+    }
+
+    /**
+     * Adds the counts of another thread.
+     *
+     * @param other
+     */
+    public void merge(SourceLikelihood other) {
+        for (int i = 0; i < manholeVisits.length; i++) {
+            manholeVisits[i] += other.manholeVisits[i];
+            manholeTravelTime[i] += other.manholeTravelTime[i];
+            manholeOrigin[i] += other.manholeOrigin[i];
+        }
+        for (int i = 0; i < triangleVisits.length; i++) {
+            triangleVisits[i] += other.triangleVisits[i];
+            triangleTravelTime[i] += other.triangleTravelTime[i];
+            triangleOrigin[i] += other.triangleOrigin[i];
+        }
+        unresolved += other.unresolved;
+    }
+
+    public void setNumberOfParticles(int numberOfParticles) {
+        this.numberOfParticles = numberOfParticles;
+    }
+
+    public int getNumberOfParticles() {
+        return numberOfParticles;
+    }
+
+    public int getNumberOfUnresolvedParticles() {
+        return unresolved;
+    }
+
+    public long getDetectionTime() {
+        return detectionTime;
+    }
+
+    void setFailure(Throwable failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * The tracking was aborted. The likelihoods are incomplete.
+     *
+     * @return
+     */
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Exception that aborted the tracking. Null if it did not fail.
+     *
+     * @return
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Fraction of backward particles that passed the manhole. A spill in
+     * this manhole could have reached the detection with this probability.
+     *
+     * @param mh
+     * @return [0-1], 0 if the manhole is unknown
+     */
+    public double getManholeLikelihood(Manhole mh) {
+        Integer i = manholeIndex.get(mh);
+        if (i == null || numberOfParticles == 0) {
+            return 0;
+        }
+        return Math.min(1, manholeVisits[i] / numberOfParticles);
+    }
+
+    /**
+     * Fraction of the detected water that entered the network at this
+     * manhole as lateral inflow.
+     *
+     * @param mh
+     * @return
+     */
+    public double getManholeOriginLikelihood(Manhole mh) {
+        Integer i = manholeIndex.get(mh);
+        if (i == null || numberOfParticles == 0) {
+            return 0;
+        }
+        return manholeOrigin[i] / numberOfParticles;
+    }
+
+    /**
+     * Mean travel time from the manhole to the detection.
+     *
+     * @param mh
+     * @return [s], NaN if never visited
+     */
+    public double getManholeTravelTime(Manhole mh) {
+        Integer i = manholeIndex.get(mh);
+        if (i == null || manholeVisits[i] == 0) {
+            return Double.NaN;
+        }
+        return manholeTravelTime[i] / manholeVisits[i];
+    }
+
+    public double getTriangleLikelihood(int triangleID) {
+        if (numberOfParticles == 0) {
+            return 0;
+        }
+        return Math.min(1, triangleVisits[triangleID] / numberOfParticles);
+    }
+
+    public double getTriangleOriginLikelihood(int triangleID) {
+        if (numberOfParticles == 0) {
+            return 0;
+        }
+        return triangleOrigin[triangleID] / numberOfParticles;
+    }
+
+    public double getTriangleTravelTime(int triangleID) {
+        if (triangleVisits[triangleID] == 0) {
+            return Double.NaN;
+        }
+        return triangleTravelTime[triangleID] / triangleVisits[triangleID];
+    }
+
+    /**
+     * Manholes sorted by descending likelihood. Only visited manholes are
+     * returned.
+     *
+     * @param maxNumber maximum size of the list
+     * @return
+     */
+    public List<Manhole> getMostLikelyManholes(int maxNumber) {
+        ArrayList<Manhole> list = new ArrayList<>();
+        for (int i = 0; i < manholes.length; i++) {
+            if (manholeVisits[i] > 0 || manholeOrigin[i] > 0) {
+                list.add(manholes[i]);
+            }
+        }
+        Collections.sort(list, new Comparator<Manhole>() {
+            @Override
+            public int compare(Manhole t, Manhole t1) {
+                return Double.compare(getManholeLikelihood(t1), getManholeLikelihood(t));
+            }
+        });
+        if (list.size() > maxNumber) {
+            return new ArrayList<>(list.subList(0, maxNumber));
+        }
+        return list;
+    }
+
+    /**
+     * Writes all visited manholes and surface triangles. One line per
+     * location: Type;Name;Likelihood;OriginLikelihood;TravelTime[s];SpillTime[ms]
+     *
+     * @param outputFile
+     * @throws IOException
+     */
+    public void writeCSV(File outputFile) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile))) {
+            bw.write("Detection[ms];" + detectionTime);
+            bw.newLine();
+            bw.write("Particles;" + numberOfParticles);
+            bw.newLine();
+            bw.write("Unresolved;" + unresolved);
+            bw.newLine();
+            bw.write("Type;Name;Likelihood;OriginLikelihood;TravelTime[s];SpillTime[ms]");
+            bw.newLine();
+            for (int i = 0; i < manholes.length; i++) {
+                if (manholeVisits[i] == 0 && manholeOrigin[i] == 0) {
+                    continue;
+                }
+                double tt = getManholeTravelTime(manholes[i]);
+                bw.write("Manhole;" + manholes[i].getName() + ";" + getManholeLikelihood(manholes[i]) + ";" + getManholeOriginLikelihood(manholes[i]) + ";" + tt + ";" + (Double.isNaN(tt) ? "" : (detectionTime - (long) (tt * 1000))));
+                bw.newLine();
+            }
+            for (int i = 0; i < triangleVisits.length; i++) {
+                if (triangleVisits[i] == 0 && triangleOrigin[i] == 0) {
+                    continue;
+                }
+                double tt = getTriangleTravelTime(i);
+                bw.write("Triangle;" + i + ";" + getTriangleLikelihood(i) + ";" + getTriangleOriginLikelihood(i) + ";" + tt + ";" + (Double.isNaN(tt) ? "" : (detectionTime - (long) (tt * 1000))));
+                bw.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.ensemble;
+
+import control.scenario.injection.InjectionInformation;
+import java.util.ArrayList;
+import java.util.Collection;
+import model.particle.Particle;
+import model.surface.Surface;
+import model.surface.measurement.SurfaceMeasurementTriangleRaster;
+import model.timeline.array.ArrayTimeLineMeasurement;
+import model.timeline.array.ArrayTimeLineMeasurementContainer;
+import model.topology.Capacity;
+import model.topology.Pipe;
+
+/**
+ * One spill scenario of an {@link EnsembleRunner}. Holds its own injections,
+ * random seed, particles and measurement containers for pipes and surface,
+ * while network, surface mesh and hydraulic timelines are shared with all
+ * other members.
+ *
+ * @author saemann
+ */
+public class EnsembleMember {
+
+    /**
+     * Rough size of a particle object including its position objects [byte].
+     * Only used to estimate the memory of a member.
+     */
+    public static int BYTES_PER_PARTICLE = 160;
+
+    private final String name;
+    private final ArrayList<InjectionInformation> injections;
+    private final long seed;
+
+    /**
+     * Particles sorted by their insertion time.
+     */
+    Particle[] particles;
+    /**
+     * Index of the first particle that is not yet injected.
+     */
+    int waitingIndex = 0;
+
+    ArrayTimeLineMeasurementContainer pipeMeasurements;
+    ArrayTimeLineMeasurement[] pipeTimelines;
+    /**
+     * The pipe timelines indexed by the autoID of the pipe. Handed to the
+     * {@link control.particlecontrol.ParticlePipeComputing} of the workers.
+     */
+    ArrayTimeLineMeasurement[] pipeTimelinesByID;
+    SurfaceMeasurementTriangleRaster surfaceMeasurements;
+
+    private int lastMeasurementIndex = -1;
+
+    /**
+     * Exception of a worker thread while moving the particles of this member.
+     */
+    private Throwable failure;
+
+    public EnsembleMember(String name, Collection<InjectionInformation> injections, long seed) {
+        this.name = name;
+        this.injections = new ArrayList<>(injections);
+        this.seed = seed;
+    }
+
+    /**
+     * Creates the measurement containers of this member. The sampling
+     * intervals are the same as for the loaded scenario.
+     *
+     * @param particles sorted by insertion time
+     * @param sampleTimes start of the sampling intervals [ms]
+     * @param samplesPerInterval number of particle steps per sampling interval
+     * @param pipes all pipes of the network in fixed order
+     * @param numberOfMaterials
+     * @param surface may be null if no surface is loaded
+     * @param numberOfThreads number of threads moving the particles
+     */
+    void initialize(Particle[] particles, long[] sampleTimes, double samplesPerInterval, Pipe[] pipes, int numberOfMaterials, Surface surface, int numberOfThreads) {
+        this.particles = particles;
+        this.waitingIndex = 0;
+        this.lastMeasurementIndex = -1;
+        this.failure = null;
+        this.pipeMeasurements = new ArrayTimeLineMeasurementContainer(sampleTimes, pipes.length, numberOfMaterials);
+        this.pipeMeasurements.setSamplesPerTimeindex(samplesPerInterval);
+        this.pipeTimelines = new ArrayTimeLineMeasurement[pipes.length];
+        this.pipeTimelinesByID = new ArrayTimeLineMeasurement[(int) Capacity.getMaximumID() + 1];
+        for (int i = 0; i < pipes.length; i++) {
+            pipeTimelines[i] = new ArrayTimeLineMeasurement(pipeMeasurements, i);
+            pipeTimelinesByID[(int) pipes[i].getAutoID()] = pipeTimelines[i];
+        }
+        if (surface != null) {
+            this.surfaceMeasurements = new SurfaceMeasurementTriangleRaster(surface, numberOfMaterials, surface.getTimes(), numberOfThreads);
+        } else {
+            this.surfaceMeasurements = null;
+        }
+    }
+
+    /**
+     * Releases all particles that are injected until the given time.
+     *
+     * @param time [ms]
+     * @return index after the last injected particle
+     */
+    int releaseUntil(long time) {
+        while (waitingIndex < particles.length && particles[waitingIndex].getInsertionTime() <= time) {
+            waitingIndex++;
+        }
+        return waitingIndex;
+    }
+
+    /**
+     * Writes the samples of the last step into the measurement timelines. Same
+     * procedure as the continuous sampling of
+     * {@link control.threads.SynchronizationThreadPipe}.
+     *
+     * @param time [ms]
+     * @param pipes
+     */
+    void synchronizeMeasurements(long time, Pipe[] pipes) {
+        int timeindex = pipeMeasurements.getIndexForTime(time);
+        if (timeindex >= pipeMeasurements.getNumberOfTimes()) {
+            timeindex = pipeMeasurements.getNumberOfTimes() - 1;
+        }
+        if (lastMeasurementIndex != timeindex) {
+            lastMeasurementIndex = timeindex;
+            for (int i = 0; i < pipes.length; i++) {
+                ArrayTimeLineMeasurement tl = pipeTimelines[i];
+                if (tl.getNumberOfParticles() > 0) {
+                    tl.addMeasurement(timeindex, (float) pipes[i].getFluidVolume());
+                    tl.resetNumberOfParticles();
+                }
+            }
+        }
+        if (surfaceMeasurements != null) {
+            surfaceMeasurements.synchronizeMeasurements();
+        }
+    }
+
+    /**
+     * Frees particles and measurements after the results have been written.
+     */
+    void release() {
+        particles = null;
+        pipeMeasurements = null;
+        pipeTimelines = null;
+        pipeTimelinesByID = null;
+        surfaceMeasurements = null;
+    }
+
+    /**
+     * Rough estimation of the memory needed by a member during its simulation.
+     *
+     * @param numberOfParticles
+     * @param numberOfPipes
+     * @param numberOfSampleTimes
+     * @param numberOfMaterials
+     * @param numberOfTriangles 0 if no surface is loaded
+     * @param numberOfThreads
+     * @return [byte]
+     */
+    public static long estimateMemoryBytes(int numberOfParticles, int numberOfPipes, int numberOfSampleTimes, int numberOfMaterials, int numberOfTriangles, int numberOfThreads) {
+        long pipeSamples = (long) numberOfPipes * numberOfSampleTimes;
+        //5 int/float arrays plus one float[materials] row per sample
+        long bytes = pipeSamples * (5 * 4 + 16 + 4 * numberOfMaterials);
+        bytes += (long) numberOfPipes * 64;
+        bytes += (long) numberOfParticles * (BYTES_PER_PARTICLE + 8);
+        if (numberOfTriangles > 0) {
+            //reference array and lazily created measurements of the touched cells
+            bytes += (long) numberOfTriangles * 8;
+            long touched = Math.min(numberOfTriangles, numberOfParticles);
+            bytes += touched * (64 + numberOfMaterials * (64 + numberOfThreads * 12L));
+        }
+        return bytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ArrayList<InjectionInformation> getInjections() {
+        return injections;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getNumberOfParticles() {
+        int n = 0;
+        for (InjectionInformation injection : injections) {
+            n += injection.getNumberOfParticles();
+        }
+        return n;
+    }
+
+    /**
+     * Particles of the last simulation of this member. Null if not yet
+     * simulated or already released.
+     *
+     * @return
+     */
+    public Particle[] getParticles() {
+        return particles;
+    }
+
+    /**
+     * Breakthrough curves of all pipes. Null if not yet simulated or already
+     * released.
+     *
+     * @return
+     */
+    public ArrayTimeLineMeasurementContainer getPipeMeasurements() {
+        return pipeMeasurements;
+    }
+
+    /**
+     * Measurement timeline of the pipe with the given index in the order of
+     * {@link model.topology.Network#getPipes()}.
+     *
+     * @param pipeIndex
+     * @return
+     */
+    public ArrayTimeLineMeasurement getPipeMeasurement(int pipeIndex) {
+        return pipeTimelines[pipeIndex];
+    }
+
+    /**
+     * Contamination map of the surface. Null if no surface is loaded.
+     *
+     * @return
+     */
+    public SurfaceMeasurementTriangleRaster getSurfaceMeasurements() {
+        return surfaceMeasurements;
+    }
+
+    void setFailure(Throwable failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * The simulation of this member was aborted. Its results are incomplete.
+     *
+     * @return
+     */
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Exception that aborted the simulation of this member. Null if it did not
+     * fail.
+     *
+     * @return
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + name + ", " + injections.size() + " injections)";
+    }
+
+}
@@ -0,0 +1,478 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.ensemble;
+
+import control.BatchRunner;
+import control.Controller;
+import control.maths.CounterRandom;
+import control.particlecontrol.DiffusionCalculator2D;
+import control.particlecontrol.FlowCalculatorMixed;
+import control.particlecontrol.ParticlePipeComputing;
+import control.particlecontrol.ParticleSurfaceComputing2D;
+import control.scenario.Scenario;
+import control.scenario.injection.InjectionInformation;
+import control.threads.ParticleThread;
+import control.threads.ThreadController;
+import io.extran.HE_SurfaceIO;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.particle.Material;
+import model.particle.Particle;
+import model.surface.Surface;
+import model.timeline.array.ArrayTimeLineMeasurementContainer;
+import model.topology.NetworkHydraulicState;
+import model.topology.Pipe;
+
+/**
+ * Simulates many spill scenarios (members) against the network, surface and
+ * hydraulic timelines already loaded into a {@link Controller}. Each
+ * {@link EnsembleMember} has its own particles, random stream and measurement
+ * containers.
+ *
+ * Members are grouped into batches that fit into a memory budget. The members
+ * of a batch advance in lockstep: the shared hydraulic time is set once per
+ * step, then the particles of each member are moved by all threads of this
+ * runner. The workers count the particles in the measurement containers of the
+ * member they move, the measurements referenced by pipes and surface are not
+ * touched. Every worker holds the containers of one member at a time, so the
+ * members of one step are processed one after another, not in parallel.
+ *
+ * The hydraulic state of network and scenario is shared with the
+ * {@link ThreadController}. An ensemble can not run while the simulation of
+ * the controller is running.
+ *
+ * Results are written per member into a subdirectory of the output directory
+ * with the same files as the {@link BatchRunner}.
+ *
+ * If moving the particles of a member throws an exception, the member is
+ * marked as failed ({@link EnsembleMember#hasFailed()}) and not simulated
+ * further. Its results are not written. The other members continue.
+ *
+ * @author saemann
+ */
+public class EnsembleRunner {
+
+    public static boolean verbose = true;
+
+    private final Controller control;
+    private final ArrayList<EnsembleMember> members = new ArrayList<>();
+    private final int numberOfThreads;
+
+    /**
+     * Maximum memory for the members of one batch [byte]. If &lt;=0 half of
+     * the free heap is used.
+     */
+    private long memoryBudget = -1;
+
+    private int particleBlockSize = 1000;
+
+    private Pipe[] pipes;
+    private Worker[] workers;
+    private ExecutorService executor;
+
+    //Order of the current particle loop, handed to the workers
+    private final AtomicInteger nextBlockStart = new AtomicInteger();
+    private Particle[] stepParticles;
+    private int stepEnd;
+    private long stepTime;
+    private long stepSeed;
+
+    public EnsembleRunner(Controller control, int numberOfThreads) {
+        this.control = control;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    /**
+     * Adds a member with a seed derived from the seed of the
+     * {@link ThreadController}.
+     *
+     * @param name used as name of the output directory
+     * @param injections
+     * @return
+     */
+    public EnsembleMember addMember(String name, Collection<InjectionInformation> injections) {
+        return addMember(name, injections, control.getThreadController().getSeed() + members.size());
+    }
+
+    public EnsembleMember addMember(String name, Collection<InjectionInformation> injections, long seed) {
+        EnsembleMember m = new EnsembleMember(name, injections, seed);
+        members.add(m);
+        return m;
+    }
+
+    public List<EnsembleMember> getMembers() {
+        return members;
+    }
+
+    public void setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setParticleBlockSize(int particleBlockSize) {
+        this.particleBlockSize = Math.max(1, particleBlockSize);
+    }
+
+    public int getParticleBlockSize() {
+        return particleBlockSize;
+    }
+
+    /**
+     * Splits the members into batches whose estimated memory fits into the
+     * budget. Every batch contains at least one member.
+     *
+     * @return
+     */
+    public List<List<EnsembleMember>> createBatches() {
+        long budget = memoryBudget;
+        if (budget <= 0) {
+            Runtime rt = Runtime.getRuntime();
+            budget = (rt.maxMemory() - (rt.totalMemory() - rt.freeMemory())) / 2;
+        }
+        int materials = indexMaterials();
+        int numberOfPipes = control.getNetwork().getPipes().size();
+        int sampleTimes = getSampleTimes().length;
+        int triangles = control.getSurface() == null ? 0 : control.getSurface().getTriangleNodes().length;
+
+        List<List<EnsembleMember>> batches = new ArrayList<>();
+        ArrayList<EnsembleMember> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (EnsembleMember m : members) {
+            long bytes = EnsembleMember.estimateMemoryBytes(m.getNumberOfParticles(), numberOfPipes, sampleTimes, materials, triangles, numberOfThreads);
+            if (!batch.isEmpty() && batchBytes + bytes > budget) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(m);
+            batchBytes += bytes;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Simulates all members and writes their results to the output directory.
+     * The measurements of each member are freed after writing.
+     *
+     * @param outputDirectory if null, the results are kept in the members and
+     * all members are simulated in a single batch.
+     * @throws IOException
+     * @throws InterruptedIOException if the calling thread is interrupted. The
+     * interrupt flag is restored.
+     * @throws SecurityException if the simulation of the
+     * {@link ThreadController} is running.
+     */
+    public void run(File outputDirectory) throws IOException {
+        if (control.getThreadController().isSimulating()) {
+            throw new SecurityException("Can not run an ensemble while the simulation is running, inconsistency warning!");
+        }
+        List<List<EnsembleMember>> batches;
+        if (outputDirectory == null) {
+            indexMaterials();
+            batches = new ArrayList<>(1);
+            batches.add(members);
+        } else {
+            batches = createBatches();
+        }
+        Surface surface = control.getSurface();
+        pipes = control.getNetwork().getPipes().toArray(new Pipe[control.getNetwork().getPipes().size()]);
+        executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            workers = new Worker[numberOfThreads];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Worker(i, surface);
+            }
+            int b = 0;
+            for (List<EnsembleMember> batch : batches) {
+                b++;
+                long start = System.currentTimeMillis();
+                runBatch(batch);
+                if (verbose) {
+                    System.out.println("Ensemble batch " + b + "/" + batches.size() + " with " + batch.size() + " members simulated in " + (System.currentTimeMillis() - start) + "ms.");
+                }
+                if (outputDirectory != null) {
+                    for (EnsembleMember m : batch) {
+                        if (m.hasFailed()) {
+                            System.err.println("Ensemble member " + m.getName() + " failed, no results written.");
+                        } else {
+                            writeResults(m, new File(outputDirectory, m.getName()));
+                        }
+                        m.release();
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor = null;
+            workers = null;
+        }
+    }
+
+    /**
+     * Simulates the members of one batch from start to end of the
+     * {@link ThreadController} simulation time.
+     *
+     * @param batch
+     * @throws InterruptedIOException
+     */
+    private void runBatch(List<EnsembleMember> batch) throws InterruptedIOException {
+        Scenario scenario = control.getScenario();
+        Surface surface = control.getSurface();
+        ThreadController tc = control.getThreadController();
+        long[] sampleTimes = getSampleTimes();
+        double samplesPerInterval = scenario.getMeasurementsPipe().getDeltaTimeS() / ThreadController.getDeltaTime();
+        int materials = indexMaterials();
+        Comparator<Particle> comp = new Comparator<Particle>() {
+            @Override
+            public int compare(Particle t, Particle t1) {
+                return Long.compare(t.getInsertionTime(), t1.getInsertionTime());
+            }
+        };
+        for (EnsembleMember m : batch) {
+            ArrayList<Particle> list = control.createParticles(m.getInjections());
+            Particle[] ps = list.toArray(new Particle[list.size()]);
+            Arrays.sort(ps, comp);
+            m.initialize(ps, sampleTimes, samplesPerInterval, pipes, materials, surface, numberOfThreads);
+        }
+
+        long time = tc.getSimulationStartTime();
+        long end = tc.getSimulationTimeEnd();
+        long dtMS = (long) (ThreadController.getDeltaTime() * 1000);
+        for (Worker w : workers) {
+            w.setDeltaTime(ThreadController.getDeltaTime());
+        }
+        while (time <= end) {
+            //Hydraulics are shared by all members
+            scenario.setActualTime(time);
+            if (NetworkHydraulicState.enabled) {
+                NetworkHydraulicState.prepare(control.getNetwork().getPipes(), control.getNetwork().getManholes(), scenario.getTimesPipe());
+            }
+            if (FlowCalculatorMixed.useRoutingTable) {
+                FlowCalculatorMixed.prepareRoutingTable(control.getNetwork().getManholes(), scenario.getTimesPipe());
+            }
+            for (EnsembleMember m : batch) {
+                if (m.hasFailed()) {
+                    continue;
+                }
+                for (Worker w : workers) {
+                    w.setMember(m);
+                }
+                m.pipeMeasurements.setActualTime(time);
+                moveParticles(m, time);
+                m.synchronizeMeasurements(time, pipes);
+            }
+            time += dtMS;
+        }
+    }
+
+    /**
+     * Moves all injected particles of the member by one timestep using all
+     * worker threads. If a worker fails, the member is marked as failed.
+     *
+     * @param m
+     * @param time
+     * @throws InterruptedIOException
+     */
+    private void moveParticles(EnsembleMember m, long time) throws InterruptedIOException {
+        stepParticles = m.particles;
+        stepEnd = m.releaseUntil(time);
+        stepTime = time;
+        stepSeed = m.getSeed();
+        if (stepEnd == 0) {
+            return;
+        }
+        nextBlockStart.set(0);
+        try {
+            for (Future<Void> f : executor.invokeAll(Arrays.asList(workers))) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException iex = new InterruptedIOException("Ensemble simulation interrupted at " + time + "ms.");
+            iex.initCause(ex);
+            throw iex;
+        } catch (ExecutionException ex) {
+            m.setFailure(ex.getCause());
+            System.err.println("Ensemble member " + m.getName() + " failed at " + time + "ms:");
+            ex.getCause().printStackTrace();
+        }
+    }
+
+    /**
+     * Writes breakthrough curves of the pipes and the contamination map of
+     * the surface of a simulated member.
+     *
+     * @param m
+     * @param directory
+     * @throws IOException
+     */
+    private void writeResults(EnsembleMember m, File directory) throws IOException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        Surface surface = control.getSurface();
+        BatchRunner.writePipeMeasurementsCSV(pipes, m.pipeTimelines, m.pipeMeasurements, new File(directory, BatchRunner.FILENAME_PIPES));
+        if (surface != null) {
+            HE_SurfaceIO.writeSurfaceContaminationCSV(new File(directory, BatchRunner.FILENAME_SURFACE), surface, m.surfaceMeasurements, m.surfaceMeasurements.getNumberOfMaterials());
+        }
+    }
+
+    /**
+     * Sets the index of all materials of all members.
+     *
+     * @return number of materials
+     */
+    private int indexMaterials() {
+        ArrayList<Material> indexedMaterials = new ArrayList<>();
+        for (EnsembleMember m : members) {
+            for (InjectionInformation injection : m.getInjections()) {
+                if (!indexedMaterials.contains(injection.getMaterial())) {
+                    indexedMaterials.add(injection.getMaterial());
+                }
+            }
+        }
+        for (int i = 0; i < indexedMaterials.size(); i++) {
+            indexedMaterials.get(i).materialIndex = i;
+        }
+        return Math.max(1, indexedMaterials.size());
+    }
+
+    /**
+     * Sampling intervals of the loaded scenario. Initialized by the
+     * {@link Controller} if not yet defined.
+     *
+     * @return
+     */
+    private long[] getSampleTimes() {
+        Scenario scenario = control.getScenario();
+        if (scenario.getMeasurementsPipe() == null) {
+            control.initMeasurementTimelines(scenario);
+        }
+        ArrayTimeLineMeasurementContainer c = scenario.getMeasurementsPipe();
+        long[] times = new long[c.getNumberOfTimes()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = c.getTimeMillisecondsAtIndex(i);
+        }
+        return times;
+    }
+
+    /**
+     * Moves blocks of particles of the current member. Every worker has its
+     * own computing objects and a counter based random stream keyed by member
+     * seed, particle index and time, so the result does not depend on the
+     * number of threads.
+     */
+    private class Worker implements Callable<Void> {
+
+        private final ParticlePipeComputing pc = new ParticlePipeComputing();
+        private final ParticleSurfaceComputing2D surfcomp;
+        private final CounterRandom random = new CounterRandom(0);
+
+        public Worker(int index, Surface surface) {
+            surfcomp = new ParticleSurfaceComputing2D(surface, index);
+            pc.setSurface(surface, ParticlePipeComputing.spillOutToSurface);
+            //Use the settings of the simulation's particle threads
+            ParticleThread[] threads = control.getThreadController().getParticleThreads();
+            if (threads != null && threads.length > 0) {
+                ParticlePipeComputing template = threads[0].pc;
+                pc.computing = template.computing;
+                pc.turbulentCalculation = template.turbulentCalculation;
+                pc.useDeposition = template.useDeposition;
+                pc.measureOnlyInDestination = template.measureOnlyInDestination;
+                if (threads[0].getSurfaceComputing() instanceof ParticleSurfaceComputing2D) {
+                    ParticleSurfaceComputing2D t = (ParticleSurfaceComputing2D) threads[0].getSurfaceComputing();
+                    surfcomp.enableDiffusion = t.enableDiffusion;
+                    DiffusionCalculator2D d = new DiffusionCalculator2D();
+                    d.diffType = t.getDiffusionCalculator().diffType;
+                    d.directD = t.getDiffusionCalculator().directD.clone();
+                    d.directSqrtD = t.getDiffusionCalculator().directSqrtD.clone();
+                    surfcomp.setDiffusionCalculation(d);
+                }
+            }
+            pc.setRandomNumberGenerator(random);
+            surfcomp.setRandomNumberGenerator(random);
+        }
+
+        /**
+         * Count the particles in the measurement containers of this member.
+         *
+         * @param m
+         */
+        void setMember(EnsembleMember m) {
+            pc.setMeasurementTimelines(m.pipeTimelinesByID);
+            surfcomp.setMeasurementRaster(m.surfaceMeasurements);
+        }
+
+        void setDeltaTime(double seconds) {
+            pc.setDeltaTime(seconds);
+            surfcomp.setDeltaTimestep(seconds);
+        }
+
+        @Override
+        public Void call() {
+            final Particle[] particles = stepParticles;
+            final int end = stepEnd;
+            pc.setActualSimulationTime(stepTime);
+            surfcomp.setActualSimulationTime(stepTime);
+            random.setSeed(stepSeed);
+            int from;
+            while ((from = nextBlockStart.getAndAdd(particleBlockSize)) < end) {
+                int toExcld = Math.min(end, from + particleBlockSize);
+                for (int i = from; i < toExcld; i++) {
+                    Particle p = particles[i];
+                    if (p.isWaiting()) {
+                        ParticleThread.releaseFromInjection(p);
+                    }
+                    if (p.isActive()) {
+                        random.setKey(i, stepTime);
+                        if (p.isInPipeNetwork()) {
+                            pc.moveParticle(p);
+                        } else if (p.isOnSurface()) {
+                            surfcomp.moveParticle(p);
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
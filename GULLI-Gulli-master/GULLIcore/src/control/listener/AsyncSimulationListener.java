@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.listener;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Informs a SimulationActionListener on its own thread, so the simulation
+ * never waits for it. Finished steps are published as
+ * {@link SimulationStepSnapshot} into a bounded queue. If the listener can
+ * not keep up, snapshots are dropped (DROP) or older snapshots are replaced
+ * by newer ones (COALESCE).
+ *
+ * All other events (init, start, pause, stop, finish, reset) are delivered
+ * synchronously on the calling thread and are never dropped. Queued snapshots
+ * are delivered before them, on init and reset they are discarded. So the
+ * listener never sees a step of the last run after the simulation was reset.
+ *
+ * The wrapped listener receives the snapshot as caller of
+ * simulationSTEPFINISH.
+ *
+ * @author saemann
+ */
+public class AsyncSimulationListener implements SimulationActionListener {
+
+    public enum POLICY {
+
+        /**
+         * New snapshots are discarded while the queue is full.
+         */
+        DROP,
+        /**
+         * The oldest queued snapshot is discarded to make room for the new
+         * one. The listener always sees the latest step.
+         */
+        COALESCE
+    }
+
+    private final SimulationActionListener listener;
+    private final POLICY policy;
+    private final ArrayBlockingQueue<SimulationStepSnapshot> queue;
+    private final ExecutorService executor;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    /**
+     * The wrapped listener is only called while holding this lock.
+     */
+    private final Object deliveryLock = new Object();
+
+    /**
+     *
+     * @param listener the listener to inform
+     * @param policy what to do with snapshots if the queue is full
+     * @param capacity number of queued snapshots
+     */
+    public AsyncSimulationListener(final SimulationActionListener listener, POLICY policy, int capacity) {
+        this.listener = listener;
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.executor = Executors.newSingleThreadExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "AsyncSimulationListener[" + listener.getClass().getSimpleName() + "]");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queue the snapshot of a finished step. Never blocks.
+     *
+     * @param snapshot
+     * @return false if this or an older snapshot was dropped.
+     */
+    public boolean publish(SimulationStepSnapshot snapshot) {
+        boolean complete = true;
+        if (policy == POLICY.COALESCE) {
+            while (!queue.offer(snapshot)) {
+                if (queue.poll() != null) {
+                    dropped.incrementAndGet();
+                    complete = false;
+                }
+            }
+        } else if (!queue.offer(snapshot)) {
+            dropped.incrementAndGet();
+            complete = false;
+        }
+        scheduleDrain();
+        return complete;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (Exception e) {
+                draining.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                synchronized (deliveryLock) {
+                    //Poll inside the lock, so a lifecycle event can not overtake a taken snapshot.
+                    SimulationStepSnapshot snapshot = queue.poll();
+                    if (snapshot == null) {
+                        break;
+                    }
+                    deliverStep(snapshot);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        //A snapshot may have been queued after the last poll.
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void deliverStep(SimulationStepSnapshot snapshot) {
+        try {
+            listener.simulationSTEPFINISH(snapshot.getStep(), snapshot);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Informs the listener on the calling thread after the queued snapshots.
+     *
+     * @param event
+     * @param discardSnapshots true to drop the queued snapshots instead of
+     * delivering them.
+     */
+    private void deliver(Runnable event, boolean discardSnapshots) {
+        synchronized (deliveryLock) {
+            SimulationStepSnapshot snapshot;
+            while ((snapshot = queue.poll()) != null) {
+                if (!discardSnapshots) {
+                    deliverStep(snapshot);
+                }
+            }
+            try {
+                event.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void simulationINIT(Object caller) {
+        deliver(() -> listener.simulationINIT(caller), true);
+    }
+
+    @Override
+    public void simulationSTART(Object caller) {
+        deliver(() -> listener.simulationSTART(caller), false);
+    }
+
+    /**
+     * Called if a step is reported without snapshot. Only the loop number is
+     * known then.
+     *
+     * @param loop
+     * @param caller
+     */
+    @Override
+    public void simulationSTEPFINISH(long loop, Object caller) {
+        if (caller instanceof SimulationStepSnapshot) {
+            publish((SimulationStepSnapshot) caller);
+        } else {
+            publish(new SimulationStepSnapshot(loop, 0, 0, -1, -1, -1, null));
+        }
+    }
+
+    @Override
+    public void simulationPAUSED(Object caller) {
+        deliver(() -> listener.simulationPAUSED(caller), false);
+    }
+
+    @Override
+    public void simulationRESUMPTION(Object caller) {
+        deliver(() -> listener.simulationRESUMPTION(caller), false);
+    }
+
+    @Override
+    public void simulationSTOP(Object caller) {
+        deliver(() -> listener.simulationSTOP(caller), false);
+    }
+
+    @Override
+    public void simulationFINISH(boolean timeOut, boolean particlesOut) {
+        deliver(() -> listener.simulationFINISH(timeOut, particlesOut), false);
+    }
+
+    @Override
+    public void simulationRESET(Object caller) {
+        deliver(() -> listener.simulationRESET(caller), true);
+    }
+
+    /**
+     * Stops the delivering thread after all queued snapshots are delivered.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public SimulationActionListener getListener() {
+        return listener;
+    }
+
+    public POLICY getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Number of snapshots, that were not delivered to the listener.
+     *
+     * @return
+     */
+    public long getNumberOfDroppedSnapshots() {
+        return dropped.get();
+    }
+
+    public int getNumberOfQueuedSnapshots() {
+        return queue.size();
+    }
+}
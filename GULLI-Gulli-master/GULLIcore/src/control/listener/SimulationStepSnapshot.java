@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.listener;
+
+import java.util.Arrays;
+
+/**
+ * Immutable state of the simulation after one finished step. Is handed to
+ * asynchronous listeners, that may read it while the simulation already
+ * calculates the next steps.
+ *
+ * @author saemann
+ */
+public class SimulationStepSnapshot {
+
+    private final long step;
+    private final long simulationTime;
+    private final long calculationTimeElapsed;
+    private final int releasedParticles;
+    private final int liveParticles;
+    private final int measurementTimeIndex;
+    private final long[] measuredPipeIDs;
+
+    /**
+     *
+     * @param step number of finished steps
+     * @param simulationTime simulation time after this step [ms]
+     * @param calculationTimeElapsed calculation time of all steps [ms]
+     * @param releasedParticles number of particles released until now
+     * @param liveParticles number of released particles that had not left
+     * the simulation at the start of this step, -1 if unknown
+     * @param measurementTimeIndex time index of the pipe measurements written
+     * in this step, -1 if none was written
+     * @param measuredPipeIDs autoIDs of pipes with written measurements. Is
+     * copied.
+     */
+    public SimulationStepSnapshot(long step, long simulationTime, long calculationTimeElapsed, int releasedParticles, int liveParticles, int measurementTimeIndex, long[] measuredPipeIDs) {
+        this.step = step;
+        this.simulationTime = simulationTime;
+        this.calculationTimeElapsed = calculationTimeElapsed;
+        this.releasedParticles = releasedParticles;
+        this.liveParticles = liveParticles;
+        this.measurementTimeIndex = measurementTimeIndex;
+        this.measuredPipeIDs = measuredPipeIDs == null ? new long[0] : Arrays.copyOf(measuredPipeIDs, measuredPipeIDs.length);
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Simulation time after this step [ms]
+     *
+     * @return
+     */
+    public long getSimulationTime() {
+        return simulationTime;
+    }
+
+    /**
+     * Calculation time of all steps until this one [ms]
+     *
+     * @return
+     */
+    public long getCalculationTimeElapsed() {
+        return calculationTimeElapsed;
+    }
+
+    public int getReleasedParticles() {
+        return releasedParticles;
+    }
+
+    /**
+     * Released particles that had not left the simulation at the start of
+     * this step.
+     *
+     * @return -1 if unknown
+     */
+    public int getLiveParticles() {
+        return liveParticles;
+    }
+
+    /**
+     * Time index of the pipe measurements written in this step.
+     *
+     * @return -1 if no measurement was written
+     */
+    public int getMeasurementTimeIndex() {
+        return measurementTimeIndex;
+    }
+
+    /**
+     * AutoIDs of the pipes, whose measurements were written in this step.
+     *
+     * @return copy of the IDs
+     */
+    public long[] getMeasuredPipeIDs() {
+        return Arrays.copyOf(measuredPipeIDs, measuredPipeIDs.length);
+    }
+
+    public int getNumberOfMeasuredPipes() {
+        return measuredPipeIDs.length;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{step=" + step + ", time=" + simulationTime + ", live=" + liveParticles + ", measured=" + measuredPipeIDs.length + "}";
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.maths;
+
+/**
+ * Counter based random numbers. The numbers for one particle in one
+ * simulation step only depend on the seed, the particle and the step, not on
+ * the thread or block that moves the particle. Call
+ * {@link #setKey(long, long)} before each particle.
+ *
+ * The generator is SplitMix64 started at a state derived from (seed,
+ * particle, step). Normal distributed numbers use the Ziggurat method
+ * (Marsaglia and Tsang 2000, with 128 layers as in Doornik 2005), which
+ * needs one random value and one multiplication for most numbers.
+ *
+ * @author saemann
+ */
+public class CounterRandom extends RandomArray {
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final long STEP_GAMMA = 0xD1B54A32D192ED03L;
+
+    private static final int LAYERS = 128;
+    private static final double R = 3.442619855899;
+    private static final double V = 9.91256303526217e-3;
+    /**
+     * Layer borders.
+     */
+    private static final double[] ZIG_X = new double[LAYERS + 1];
+    /**
+     * Ratio of the borders of neighbouring layers.
+     */
+    private static final double[] ZIG_R = new double[LAYERS];
+
+    static {
+        double f = Math.exp(-0.5 * R * R);
+        ZIG_X[0] = V / f;
+        ZIG_X[1] = R;
+        ZIG_X[LAYERS] = 0;
+        for (int i = 2; i < LAYERS; i++) {
+            ZIG_X[i] = Math.sqrt(-2 * Math.log(V / ZIG_X[i - 1] + f));
+            f = Math.exp(-0.5 * ZIG_X[i] * ZIG_X[i]);
+        }
+        for (int i = 0; i < LAYERS; i++) {
+            ZIG_R[i] = ZIG_X[i + 1] / ZIG_X[i];
+        }
+    }
+
+    private long seed;
+    private long state;
+    private long counter;
+
+    public CounterRandom(long seed) {
+        super();
+        this.seed = seed;
+        setKey(0, 0);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Start the sequence of random numbers for this particle in this step.
+     *
+     * @param particleID
+     * @param step e.g. the simulation time
+     */
+    public void setKey(long particleID, long step) {
+        this.state = mix64(mix64(seed + particleID * GOLDEN) + step * STEP_GAMMA);
+        this.counter = 0;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private long nextLong() {
+        counter++;
+        return mix64(state + counter * GOLDEN);
+    }
+
+    /**
+     * Uniform distributed in (0,1]
+     */
+    private double nextDoubleNonZero() {
+        return ((nextLong() >>> 11) + 1) * 0x1.0p-53;
+    }
+
+    /**
+     * Uniform distributed in [0,1).
+     *
+     * @return
+     */
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Standard normal distributed.
+     *
+     * @return
+     */
+    @Override
+    public double nextGaussian() {
+        while (true) {
+            long bits = nextLong();
+            //upper 53 bits for the value in [-1,1), lower 7 bits for the layer
+            double u = 2 * ((bits >>> 11) * 0x1.0p-53) - 1;
+            int i = (int) (bits & (LAYERS - 1));
+            if (Math.abs(u) < ZIG_R[i]) {
+                return u * ZIG_X[i];
+            }
+            if (i == 0) {
+                return tail(u < 0);
+            }
+            double x = u * ZIG_X[i];
+            double f0 = Math.exp(-0.5 * (ZIG_X[i] * ZIG_X[i] - x * x));
+            double f1 = Math.exp(-0.5 * (ZIG_X[i + 1] * ZIG_X[i + 1] - x * x));
+            if (f1 + nextDouble() * (f0 - f1) < 1.0) {
+                return x;
+            }
+        }
+    }
+
+    /**
+     * Sample from the tail beyond R.
+     */
+    private double tail(boolean negative) {
+        double x, y;
+        do {
+            x = Math.log(nextDoubleNonZero()) / R;
+            y = Math.log(nextDoubleNonZero());
+        } while (-2 * y < x * x);
+        return negative ? x - R : R - x;
+    }
+}
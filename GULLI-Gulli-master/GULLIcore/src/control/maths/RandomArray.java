@@ -50,6 +50,14 @@ public class RandomArray {
      public static int numberOfGaussLoops=0;
      public static int numberOfDoubleLoops=0;
 
+    /**
+     * For generators that do not use the pre-initialized arrays.
+     */
+    protected RandomArray() {
+        gaussians = new double[0];
+        uniform = new double[0];
+    }
+
     public RandomArray(Random randomNumberGenerator, int numberOfValues) {
 //        System.out.println("new random array size "+numberOfValues);
         this.r = randomNumberGenerator;
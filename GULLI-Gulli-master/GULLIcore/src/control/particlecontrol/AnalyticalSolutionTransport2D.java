@@ -160,20 +160,17 @@ public class AnalyticalSolutionTransport2D {
         int times = surface.getMeasurementRaster().getIndexContainer().getNumberOfTimes();//tri.get(triID[0]).getTimes().getNumberOfTimes();
         int[][] partcount = new int[triID.length][times];
 
-        int[][] pc = new int[1][times];
-        double[][] mass = new double[1][times];
         double[][] masscount = new double[triID.length][times];
         double[] area = new double[triID.length];
         for (int i = 0; i < triID.length; i++) {
 
-            pc = tri.get(triID[triIdexesSorted[i]]).getParticlecount();
-            mass = tri.get(triID[triIdexesSorted[i]]).getMass();
+            TriangleMeasurement measurement = tri.get(triID[triIdexesSorted[i]]);
             area[i] = surface.calcTriangleArea(triID[triIdexesSorted[i]]);
 
             for (int j = 0; j < times; j++) {
 
-                partcount[i][j] = pc[0][j];
-                masscount[i][j] = mass[0][j];
+                partcount[i][j] = measurement.getParticlecount(0, j);
+                masscount[i][j] = measurement.getMass(0, j);
             }
         }
         // write particlecounts in txt file: (ID, 1:times particlecounts)
@@ -115,7 +115,7 @@ public class DiffusionCalculator2D {
                 D[1] = 0;
         }
         h = surface.getActualWaterlevel(triangleID);
-        C = surface.getkst() * Math.pow(h, 1. / 6.); //
+        C = surface.getActualChezy(triangleID); //kst*h^(1/6)
         Dxx = ((al * (vx * vx) + at * (vy * vy)) * h * wg) / (Math.sqrt(vx * vx + vy * vy) * C);
         Dyy = ((al * (vy * vy) + at * (vx * vx)) * h * wg) / (Math.sqrt(vx * vx + vy * vy) * C);
 //        System.out.println("Dxx: "+Dxx+"   Dyy="+Dyy);
@@ -177,7 +177,7 @@ public class DiffusionCalculator2D {
                 D[1] = 0;
         }
         h = surface.getActualWaterlevel(triangleID);
-        C = surface.getkst() * Math.pow(h, 1. / 6.); //
+        C = surface.getActualChezy(triangleID); //kst*h^(1/6)
         Dxx = ((al * (vx * vx) + at * (vy * vy)) * h * wg) / (Math.sqrt(vx * vx + vy * vy) * C);
         Dyy = ((al * (vy * vy) + at * (vx * vx)) * h * wg) / (Math.sqrt(vx * vx + vy * vy) * C);
 //        System.out.println("Dxx: "+Dxx+"   Dyy="+Dyy);
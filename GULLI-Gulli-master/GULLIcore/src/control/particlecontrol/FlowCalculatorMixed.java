@@ -24,7 +24,9 @@
 package control.particlecontrol;
 
 import control.maths.RandomArray;
+import java.util.Collection;
 import model.particle.Particle;
+import model.timeline.array.TimeIndexCalculator;
 import model.topology.Capacity;
 import model.topology.Connection_Manhole;
 import model.topology.Connection_Manhole_Pipe;
@@ -47,6 +49,36 @@ public class FlowCalculatorMixed implements FlowCalculator {
      */
     public static float dryWaterlevel = 0.001f;
 
+    /**
+     * If true the connection is picked from the {@link ManholeRoutingTable}
+     * of the actual timestep, if one is prepared for the manhole.
+     */
+    public static boolean useRoutingTable = true;
+
+    private static volatile ManholeRoutingTable routingTable;
+
+    /**
+     * Creates the routing table for the manholes if the existing one was built
+     * for other manholes or timelines and brings it to the actual time.
+     *
+     * @param manholes all manholes of the network
+     * @param times time container of the pipe timelines
+     * @return the table used by all FlowCalculatorMixed
+     */
+    public static ManholeRoutingTable prepareRoutingTable(Collection<Manhole> manholes, TimeIndexCalculator times) {
+        ManholeRoutingTable table = routingTable;
+        if (table == null || !table.isBuiltFor(manholes, times)) {
+            table = new ManholeRoutingTable(manholes, times);
+            routingTable = table;
+        }
+        table.ensureCurrent();
+        return table;
+    }
+
+    public static ManholeRoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
     public static int numberOfWettedConnections(Manhole mh) {
         int number = 0;
         /*Connections are ordered from bottom to top. Therefore we can easily go
@@ -80,6 +112,16 @@ public class FlowCalculatorMixed implements FlowCalculator {
 
     @Override
     public Connection_Manhole whichConnection(Manhole mh, RandomArray probability, boolean forward) {
+        if (useRoutingTable) {
+            ManholeRoutingTable table = routingTable;
+            if (table != null) {
+                int index = table.indexOf(mh);
+                if (index >= 0) {
+                    table.ensureCurrent();
+                    return table.whichConnection(index, probability, forward);
+                }
+            }
+        }
 
         if (mh.getWaterlevel() < dryWaterlevel) {
             if (verbose) {
@@ -109,8 +151,9 @@ public class FlowCalculatorMixed implements FlowCalculator {
             float spillthreashold = qsum;
 //            //Test Top connection
             if (ParticlePipeComputing.spillOutToSurface) {
-                if (mh.getStatusTimeLine().getActualFlowToSurface() > 0) {
-                    qsum += mh.getStatusTimeLine().getActualFlowToSurface();
+                float spill = mh.getFlowToSurfaceActual();
+                if (spill > 0) {
+                    qsum += spill;
                     counter++;
 //                    System.out.println("add outflow to surface "+mh.getStatusTimeLine().getActualFlowToSurface());
                 }
@@ -128,9 +171,11 @@ public class FlowCalculatorMixed implements FlowCalculator {
             if (threashold > spillthreashold) {
 //                System.out.println("spill to surface through connection " + mh.getTopConnection());
                 //Spill out to surface
-                if (mh.getTopConnection() == null) {
-                    Connection_Manhole_Surface ch = new Connection_Manhole_Surface(mh, mh.getPosition3D(0), mh.getSurfaceTriangleID(), null);
-                    mh.setTopConnection(ch);
+                synchronized (mh) {
+                    if (mh.getTopConnection() == null) {
+                        Connection_Manhole_Surface ch = new Connection_Manhole_Surface(mh, mh.getPosition3D(0), mh.getSurfaceTriangleID(), null);
+                        mh.setTopConnection(ch);
+                    }
                 }
                 return mh.getTopConnection();
             }
@@ -0,0 +1,233 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.particlecontrol;
+
+import control.maths.RandomArray;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+import model.timeline.array.TimeIndexCalculator;
+import model.topology.Connection_Manhole;
+import model.topology.Connection_Manhole_Pipe;
+import model.topology.Connection_Manhole_Surface;
+import model.topology.Manhole;
+
+/**
+ * Flow proportional routing decisions of all manholes for the actual
+ * hydraulic timestep. For every manhole the cumulative outflow (forward) and
+ * inflow (backward) of its wetted connections is stored in flat arrays, the
+ * spill to the surface is the last forward entry. A particle picks its
+ * connection with one uniform random number and a binary search, instead of
+ * interpolating the flow of every connection twice.
+ *
+ * The table is rebuilt in parallel for all manholes whenever the actual time
+ * of the pipe timelines changed.
+ *
+ * @author saemann
+ */
+public class ManholeRoutingTable {
+
+    private final Collection<Manhole> source;
+    private final TimeIndexCalculator times;
+
+    private final Manhole[] manholes;
+    /**
+     * Index in the manholes array by autoID of the manhole. -1 if not part of
+     * this table.
+     */
+    private final int[] index;
+    /**
+     * First entry of a manhole in the flat arrays.
+     */
+    private final int[] start;
+
+    private final int[] forwardCount;
+    private final double[] forwardCumulative;
+    private final Connection_Manhole[] forwardTarget;
+
+    private final int[] backwardCount;
+    private final double[] backwardCumulative;
+    private final Connection_Manhole_Pipe[] backwardTarget;
+
+    private volatile long builtTime = Long.MIN_VALUE;
+
+    /**
+     *
+     * @param manholes all manholes of the network
+     * @param times time container of the pipe timelines
+     */
+    public ManholeRoutingTable(Collection<Manhole> manholes, TimeIndexCalculator times) {
+        this.source = manholes;
+        this.times = times;
+        this.manholes = manholes.toArray(new Manhole[manholes.size()]);
+        int maxID = 0;
+        int entries = 0;
+        this.start = new int[this.manholes.length];
+        for (int i = 0; i < this.manholes.length; i++) {
+            Manhole mh = this.manholes[i];
+            maxID = Math.max(maxID, (int) mh.getAutoID());
+            start[i] = entries;
+            //all pipe connections + spill to surface
+            entries += mh.getConnections().length + 1;
+            if (mh.getTopConnection() == null) {
+                mh.setTopConnection(new Connection_Manhole_Surface(mh, mh.getPosition3D(0), mh.getSurfaceTriangleID(), null));
+            }
+        }
+        this.index = new int[maxID + 1];
+        Arrays.fill(index, -1);
+        for (int i = 0; i < this.manholes.length; i++) {
+            index[(int) this.manholes[i].getAutoID()] = i;
+        }
+        this.forwardCount = new int[this.manholes.length];
+        this.backwardCount = new int[this.manholes.length];
+        this.forwardCumulative = new double[entries];
+        this.backwardCumulative = new double[entries];
+        this.forwardTarget = new Connection_Manhole[entries];
+        this.backwardTarget = new Connection_Manhole_Pipe[entries];
+    }
+
+    /**
+     * Rebuilds the table for the actual time of the timelines.
+     */
+    public synchronized void update() {
+        long t = times.getActualTime();
+        IntStream.range(0, manholes.length).parallel().forEach(i -> fill(i));
+        builtTime = t;
+    }
+
+    /**
+     * Rebuilds the table if the actual time of the timelines has changed
+     * since the last update.
+     */
+    public void ensureCurrent() {
+        if (times.getActualTime() != builtTime) {
+            synchronized (this) {
+                if (times.getActualTime() != builtTime) {
+                    update();
+                }
+            }
+        }
+    }
+
+    private void fill(int i) {
+        Manhole mh = manholes[i];
+        int o = start[i];
+        forwardCount[i] = 0;
+        backwardCount[i] = 0;
+        if (mh.getWaterlevel() < FlowCalculatorMixed.dryWaterlevel) {
+            return;
+        }
+        float h = (float) mh.getWaterHeight();
+        double qf = 0, qb = 0;
+        int nf = 0, nb = 0;
+        for (Connection_Manhole_Pipe connection : mh.getConnections()) {
+            if (connection.getHeight() >= h) {
+                //Connections are ordered first-low.
+                break;
+            }
+            if (connection.isFlowInletToPipe()) {
+                qf += Math.abs(connection.getPipe().getFlowActual());
+                forwardCumulative[o + nf] = qf;
+                forwardTarget[o + nf] = connection;
+                nf++;
+            } else if (connection.isFlowOutletFromPipe()) {
+                qb += Math.abs(connection.getPipe().getFlowActual());
+                backwardCumulative[o + nb] = qb;
+                backwardTarget[o + nb] = connection;
+                nb++;
+            }
+        }
+        if (ParticlePipeComputing.spillOutToSurface) {
+            float spill = mh.getFlowToSurfaceActual();
+            if (spill > 0) {
+                qf += spill;
+                forwardCumulative[o + nf] = qf;
+                forwardTarget[o + nf] = mh.getTopConnection();
+                nf++;
+            }
+        }
+        forwardCount[i] = qf < 0.00001 ? 0 : nf;
+        backwardCount[i] = qb < 0.00001 ? 0 : nb;
+    }
+
+    /**
+     * Index of the manhole in this table.
+     *
+     * @param mh
+     * @return -1 if the manhole is not part of this table.
+     */
+    public int indexOf(Manhole mh) {
+        int id = (int) mh.getAutoID();
+        if (id < index.length) {
+            int i = index[id];
+            if (i >= 0 && manholes[i] == mh) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Chooses the connection a particle leaves the manhole through.
+     *
+     * @param i index of the manhole in this table
+     * @param probability random numbers
+     * @param forward true: in flow direction (outflowing pipes and spill to
+     * surface), false: against flow direction (inflowing pipes)
+     * @return null if there is no flow in the requested direction
+     */
+    public Connection_Manhole whichConnection(int i, RandomArray probability, boolean forward) {
+        int n = forward ? forwardCount[i] : backwardCount[i];
+        if (n == 0) {
+            return null;
+        }
+        double[] cumulative = forward ? forwardCumulative : backwardCumulative;
+        int lo = start[i], hi = lo + n - 1;
+        double threshold = probability.nextDouble() * cumulative[hi];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] > threshold) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return forward ? forwardTarget[lo] : backwardTarget[lo];
+    }
+
+    /**
+     * True if this table was created for these manholes and timelines.
+     *
+     * @param manholes
+     * @param times
+     * @return
+     */
+    public boolean isBuiltFor(Collection<Manhole> manholes, TimeIndexCalculator times) {
+        return this.source == manholes && this.times == times && this.manholes.length == manholes.size();
+    }
+
+    public int getNumberOfManholes() {
+        return manholes.length;
+    }
+}
@@ -24,10 +24,13 @@
 package control.particlecontrol;
 
 import control.maths.RandomArray;
-import control.threads.ThreadController;
 import model.particle.HistoryParticle;
 import model.particle.Particle;
+import model.particle.ParticleState;
+import model.particle.ParticleStore;
+import model.particle.StoredParticle;
 import model.surface.Surface;
+import model.timeline.array.ArrayTimeLineMeasurement;
 import model.topology.Capacity;
 import model.topology.Connection_Manhole;
 import model.topology.Connection_Manhole_Pipe;
@@ -133,6 +136,23 @@ public class ParticlePipeComputing {
 
     public int status = -1;
 
+    /**
+     * Simulation time of the current step [ms]. Stored as timestamp when a
+     * particle spills out to the surface.
+     */
+    private long simulationTime;
+
+    /**
+     * Cursor on the particles of a ParticleStore.
+     */
+    private final StoredParticle storedParticle = new StoredParticle();
+
+    /**
+     * Measurement timelines indexed by the autoID of the pipe. If null, the
+     * particles are counted in the timeline referenced by the pipe itself.
+     */
+    private ArrayTimeLineMeasurement[] measurementTimelines;
+
     public ParticlePipeComputing() {
     }
 
@@ -141,6 +161,40 @@ public class ParticlePipeComputing {
         ParticlePipeComputing.spillOutToSurface = enableSpill;
     }
 
+    /**
+     * Count particles in these timelines instead of the ones referenced by the
+     * pipes. Lets several simulations share one network without swapping the
+     * measurements of the pipes.
+     *
+     * @param timelinesByPipeID timelines indexed by the autoID of the pipe,
+     * null to use the timelines of the pipes.
+     */
+    public void setMeasurementTimelines(ArrayTimeLineMeasurement[] timelinesByPipeID) {
+        this.measurementTimelines = timelinesByPipeID;
+    }
+
+    /**
+     * Timeline to count particles in the given pipe.
+     *
+     * @param pipe
+     * @return
+     */
+    private ArrayTimeLineMeasurement getMeasurementTimeLine(Pipe pipe) {
+        if (measurementTimelines == null) {
+            return pipe.getMeasurementTimeLine();
+        }
+        return measurementTimelines[(int) pipe.getAutoID()];
+    }
+
+    /**
+     * Time of the step that is computed next [ms].
+     *
+     * @param timeMS
+     */
+    public void setActualSimulationTime(long timeMS) {
+        this.simulationTime = timeMS;
+    }
+
     public void setDeltaTime(double deltaTime) {
         ParticlePipeComputing.dt = (float) deltaTime;
 //        System.out.println("deltatime set new to " + deltaTime);
@@ -191,6 +245,16 @@ public class ParticlePipeComputing {
         moveParticle5_celltransmission(p);
     }
 
+    /**
+     * Move the particle with the given index in the ParticleStore.
+     *
+     * @param store
+     * @param index
+     */
+    public void moveParticle(ParticleStore store, int index) {
+        moveParticle5_celltransmission(storedParticle.set(store, index));
+    }
+
     /**
      * @deprecated @param p
      */
@@ -649,7 +713,7 @@ public class ParticlePipeComputing {
                     position1d = neuePosition;
                     p.setPosition1d_actual(position1d);
                     p.setSurrounding_actual(c);
-                    pipe.getMeasurementTimeLine().addParticle(p);
+                    getMeasurementTimeLine(pipe).addParticle(p);
 //                    pipe.getMeasurementTimeLine().addParticle();
 //                    System.out.println("  after preparing1 now in " + c + " ds=" + ds + "   pos1d=" + position1d);
                     return;
@@ -688,7 +752,7 @@ public class ParticlePipeComputing {
 //                    ds = 0;
                     p.setPosition1d_actual(position1d);
                     p.setSurrounding_actual(c);
-                    pipe.getMeasurementTimeLine().addParticle(p);
+                    getMeasurementTimeLine(pipe).addParticle(p);
 //                    if(pipe.getAutoID()==1514){
 //                        System.out.println("particle set to position \t"+position1d);
 //                    }
@@ -956,7 +1020,7 @@ public class ParticlePipeComputing {
         p.setPosition1d_actual(position1d);
         if (c.getClass().equals(Pipe.class)) {
 //            System.out.println("letzte is Pipe loops="+loops);
-            ((Pipe) c).getMeasurementTimeLine().addParticle(p);
+            getMeasurementTimeLine((Pipe) c).addParticle(p);
         }
     }
 
@@ -1178,7 +1242,7 @@ public class ParticlePipeComputing {
                                 p.setPosition3D(mh.getPosition3D(0));
 //                                p.setPosition3D(tripos[0], tripos[1]);
                                 p.setOnSurface();
-                                p.toSurfaceTimestamp = ThreadController.getSimulationTimeMS();
+                                p.toSurfaceTimestamp = simulationTime;
                                 p.toSurface = mh;
                                 p.posToSurface = (float) p.getTravelledPathLength();
                                 if (p.getClass().equals(HistoryParticle.class)) {
@@ -1387,7 +1451,7 @@ public class ParticlePipeComputing {
             Pipe pipe = (Pipe) c;
 //            status = 52;
 
-            pipe.getMeasurementTimeLine().addParticle(p);
+            getMeasurementTimeLine(pipe).addParticle(p);
 
 //            p.setVelocity1d(pipe.getVelocity());
         }
@@ -1395,11 +1459,13 @@ public class ParticlePipeComputing {
     }
 
     /**
-     * Version uses advective speed in every visited pipe
+     * Version uses advective speed in every visited pipe. Works on the
+     * ParticleState, so the same code moves Particle objects and particles of
+     * the ParticleStore.
      *
      * @param p
      */
-    private void moveParticle5_celltransmission(Particle p) {
+    private void moveParticle5_celltransmission(ParticleState p) {
         float position1d = p.getPosition1d_actual();
         Capacity c = p.getSurrounding_actual();
         if (Float.isNaN(position1d)) {
@@ -1420,7 +1486,7 @@ public class ParticlePipeComputing {
         if (useDeposition) {
             //Test for deposition
             if (p.isDeposited()) {
-                if (p.getMaterial().getFlowCalculator().particleIsEroding(p, c, rand)) {
+                if (p.getMaterial().getFlowCalculator().particleIsEroding(p.toParticle(), c, rand)) {
                     p.setDeposited(false);
                 } else {
                     //Stays immobile
@@ -1428,7 +1494,7 @@ public class ParticlePipeComputing {
                     return;
                 }
             } else {
-                if (p.getMaterial().getFlowCalculator().particleIsDepositing(p, c, rand)) {
+                if (p.getMaterial().getFlowCalculator().particleIsDepositing(p.toParticle(), c, rand)) {
                     p.setDeposited(true);
                     //Do nothing anymore from here.
                     return;
@@ -1480,19 +1546,19 @@ public class ParticlePipeComputing {
                 timespend = Math.abs(moved / resultVelocity);
                 remaining_dt -= timespend;
                 c = pipe.getStartConnection().getManhole();
-                pipe.getMeasurementTimeLine().addParticle(p, timespend / dt);
+                measure(pipe, p, timespend / dt);
             } else if (neuePosition > pipe.getLength()) {
                 moved = pipe.getLength() - position1d;
                 neuePosition -= pipe.getLength();
                 timespend = Math.abs(moved / resultVelocity);
                 remaining_dt -= timespend;
                 c = pipe.getEndConnection().getManhole();
-                pipe.getMeasurementTimeLine().addParticle(p, timespend / dt);
+                measure(pipe, p, timespend / dt);
             } else {
                 moved = distance_total;
                 remaining_dt = 0;
                 c = pipe;
-                pipe.getMeasurementTimeLine().addParticle(p, 1f);
+                measure(pipe, p, 1f);
             }
 
 //            pipe.getMeasurementTimeLine().addParticle(p);
@@ -1540,17 +1606,13 @@ public class ParticlePipeComputing {
                         break;
                     } else if (connection.getClass().equals(Connection_Manhole_Surface.class)) {
                         //spill to surface
-                        p.surfaceCellID = mh.getSurfaceTriangleID();
+                        p.setSurfaceCellID(mh.getSurfaceTriangleID());
                         p.setSurrounding_actual(surface);
                         c = surface;
                         p.setPosition3D(mh.getPosition3D(0));
                         p.setOnSurface();
-                        p.toSurfaceTimestamp = ThreadController.getSimulationTimeMS();
-                        p.toSurface = mh;
-                        p.posToSurface = (float) p.getTravelledPathLength();
-                        if (p.getClass().equals(HistoryParticle.class)) {
-                            ((HistoryParticle) p).addToHistory(surface);
-                        }
+                        p.setToSurface(mh, simulationTime);
+                        p.addToHistory(surface);
                         break;
                     }
                     //else is going into a pipe.
@@ -1587,7 +1649,7 @@ public class ParticlePipeComputing {
                         neuePosition = 0;
                         c = pipe.getStartConnection().getManhole();
                         //if (moved > 0) {
-                        pipe.getMeasurementTimeLine().addParticle(p, timespend / dt);
+                        measure(pipe, p, timespend / dt);
                         // }
                     } else if (neuePosition > pipe.getLength()) {
                         //rushed through this pipe and is now inside the next manhole
@@ -1601,11 +1663,9 @@ public class ParticlePipeComputing {
                         remaining_dt -= timespend;
                         c = pipe.getEndConnection().getManhole();
                         neuePosition = 0;
-                        if (p.getClass().equals(HistoryParticle.class)) {
-                            ((HistoryParticle) p).addToHistory(c);
-                        }
+                        p.addToHistory(c);
                         //  if (moved > 0) {
-                        pipe.getMeasurementTimeLine().addParticle(p, timespend / dt);
+                        measure(pipe, p, timespend / dt);
                         //  }
                     } else {
                         // Particle will end this timestep in this pipe.
@@ -1621,7 +1681,7 @@ public class ParticlePipeComputing {
 //                        }
                         //position1d = neuePosition;
                         remaining_dt = 0;
-                        pipe.getMeasurementTimeLine().addParticle(p, timespend / dt);
+                        measure(pipe, p, timespend / dt);
                     }
                     if (timespend == 0) {
                         break;
@@ -1645,6 +1705,17 @@ public class ParticlePipeComputing {
 //        }
     }
 
+    /**
+     * Count the particle in the measurement timeline of the pipe.
+     */
+    private void measure(Pipe pipe, ParticleState p, float dtfactor) {
+        if (ArrayTimeLineMeasurement.useIDsharpParticleCounting) {
+            getMeasurementTimeLine(pipe).addParticle(p.toParticle(), dtfactor);
+        } else {
+            getMeasurementTimeLine(pipe).addParticle(p.getMaterial().materialIndex, p.getParticleMass(), dtfactor);
+        }
+    }
+
     public double getDeltaTime() {
         return dt;
     }
@@ -0,0 +1,334 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.particlecontrol;
+
+import control.backward.SourceLikelihood;
+import control.maths.RandomArray;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import model.particle.Particle;
+import model.surface.Surface;
+import model.topology.Capacity;
+import model.topology.Connection_Manhole;
+import model.topology.Connection_Manhole_Pipe;
+import model.topology.Inlet;
+import model.topology.Manhole;
+import model.topology.Pipe;
+
+/**
+ * Moves particles backward in time through the pipe network (adjoint
+ * transport). The advective direction is reversed, the dispersion is the same
+ * as in {@link ParticlePipeComputing}. In a manhole the particle chooses the
+ * pipe its water came from, weighted by the inflow of the pipes. Water that
+ * was added to the manhole by surface or lateral inflow ends the backward
+ * path there. All visits are counted in a {@link SourceLikelihood}.
+ *
+ * The caller has to set the hydraulic timelines to the decreasing simulation
+ * time before each step.
+ *
+ * @author saemann
+ */
+public class ParticlePipeComputingBackward {
+
+    private RandomArray rand;
+    private final FlowCalculatorMixed flowCalculator = new FlowCalculatorMixed();
+    /**
+     * Provides the dispersion settings.
+     */
+    private final ParticlePipeComputing pc;
+    private SourceLikelihood likelihood;
+    /**
+     * Triangle IDs of the surface inlets per pipe.
+     */
+    private Map<Pipe, int[]> pipeInlets;
+    private Inlet[] inlets;
+
+    private float dt = 1;
+    private long time;
+
+    public ParticlePipeComputingBackward(ParticlePipeComputing dispersionSettings) {
+        this.pc = dispersionSettings;
+    }
+
+    public void setRandomNumberGenerator(RandomArray rd) {
+        this.rand = rd;
+    }
+
+    public void setDeltaTime(double seconds) {
+        this.dt = (float) seconds;
+    }
+
+    /**
+     * Time at the start of the backward step [ms].
+     *
+     * @param timeMS
+     */
+    public void setActualSimulationTime(long timeMS) {
+        this.time = timeMS;
+    }
+
+    public void setLikelihood(SourceLikelihood likelihood) {
+        this.likelihood = likelihood;
+    }
+
+    /**
+     * Inlets to count passing particles.
+     *
+     * @param surface
+     * @param pipeInlets map from {@link #mapInletsToPipes(model.surface.Surface)}
+     */
+    public void setInlets(Surface surface, Map<Pipe, int[]> pipeInlets) {
+        this.pipeInlets = pipeInlets;
+        this.inlets = surface == null ? null : surface.getInlets();
+    }
+
+    /**
+     * Triangle IDs of all surface inlets per pipe, sorted by their position
+     * along the pipe.
+     *
+     * @param surface
+     * @return
+     */
+    public static HashMap<Pipe, int[]> mapInletsToPipes(Surface surface) {
+        HashMap<Pipe, int[]> map = new HashMap<>();
+        if (surface == null || surface.getInlets() == null) {
+            return map;
+        }
+        final Inlet[] inlets = surface.getInlets();
+        HashMap<Pipe, ArrayList<Integer>> lists = new HashMap<>();
+        for (int i = 0; i < inlets.length; i++) {
+            if (inlets[i] == null || !(inlets[i].getNetworkCapacity() instanceof Pipe)) {
+                continue;
+            }
+            Pipe pipe = (Pipe) inlets[i].getNetworkCapacity();
+            ArrayList<Integer> list = lists.get(pipe);
+            if (list == null) {
+                list = new ArrayList<>(2);
+                lists.put(pipe, list);
+            }
+            list.add(i);
+        }
+        for (Map.Entry<Pipe, ArrayList<Integer>> e : lists.entrySet()) {
+            ArrayList<Integer> list = e.getValue();
+            Collections.sort(list, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer t, Integer t1) {
+                    return Double.compare(inlets[t].getPipeposition1d(), inlets[t1].getPipeposition1d());
+                }
+            });
+            int[] ids = new int[list.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = list.get(i);
+            }
+            map.put(e.getKey(), ids);
+        }
+        return map;
+    }
+
+    /**
+     * Moves the particle one timestep backward in time.
+     *
+     * @param p
+     */
+    public void moveParticle(Particle p) {
+        Capacity c = p.getSurrounding_actual();
+        if (c == null) {
+            p.setLeftSimulation();
+            return;
+        }
+        if (c.getWaterlevel() < FlowCalculatorMixed.dryWaterlevel) {
+            return;
+        }
+        float position1d = p.getPosition1d_actual();
+        float remaining_dt = dt;
+        float distance_diff = 0;
+        boolean reverseDispersion = false;
+        float neuePosition = position1d;
+
+        if (c.getClass().equals(Pipe.class)) {
+            Pipe pipe = (Pipe) c;
+            float v = (float) pipe.getVelocity();
+            float distance_adv = -v * dt;
+            distance_diff = (float) (pc.calcDistanceTurbulentDiffusion(v) * rand.nextGaussian());
+            float distance_total = distance_adv + distance_diff;
+            float resultVelocity = distance_total / dt;
+            reverseDispersion = distance_adv * distance_total < 0;
+            neuePosition = position1d + distance_total;
+            if (neuePosition < 0) {
+                countInlets(pipe, position1d, 0);
+                remaining_dt -= Math.abs(position1d / resultVelocity);
+                c = pipe.getStartConnection().getManhole();
+                enterManhole(c);
+                neuePosition = 0;
+            } else if (neuePosition > pipe.getLength()) {
+                countInlets(pipe, position1d, pipe.getLength());
+                remaining_dt -= Math.abs((pipe.getLength() - position1d) / resultVelocity);
+                c = pipe.getEndConnection().getManhole();
+                enterManhole(c);
+                neuePosition = 0;
+            } else {
+                countInlets(pipe, position1d, neuePosition);
+                p.setPosition1d_actual(neuePosition);
+                return;
+            }
+        }
+
+        int loops = 0;
+        while (remaining_dt > 0 && c instanceof Manhole) {
+            if (loops > ParticlePipeComputing.maxloopsPerParticle) {
+                break;
+            }
+            loops++;
+            Manhole mh = (Manhole) c;
+            Connection_Manhole connection;
+            if (reverseDispersion) {
+                //Dispersion against the backward direction moves downstream
+                connection = flowCalculator.whichConnection(mh, rand, true);
+            } else {
+                if (originatesHere(p, mh)) {
+                    return;
+                }
+                connection = flowCalculator.whichConnection(mh, rand, false);
+            }
+            if (!(connection instanceof Connection_Manhole_Pipe)) {
+                //Stays in this manhole
+                break;
+            }
+            Connection_Manhole_Pipe con = (Connection_Manhole_Pipe) connection;
+            Pipe pipe = con.getPipe();
+            float v = (float) pipe.getVelocity();
+            float distance_adv = -v * remaining_dt;
+            float distance_total = distance_adv + (distance_diff * remaining_dt / dt);
+            float resultVelocity = distance_total / remaining_dt;
+            reverseDispersion = distance_adv * distance_total < 0;
+            float start = con.isStartOfPipe() ? 0 : pipe.getLength();
+            neuePosition = start + distance_total;
+            float timespend;
+            if (neuePosition < 0) {
+                countInlets(pipe, start, 0);
+                timespend = Math.abs(start / resultVelocity);
+                c = pipe.getStartConnection().getManhole();
+                enterManhole(c);
+                neuePosition = 0;
+            } else if (neuePosition > pipe.getLength()) {
+                countInlets(pipe, start, pipe.getLength());
+                timespend = Math.abs((pipe.getLength() - start) / resultVelocity);
+                c = pipe.getEndConnection().getManhole();
+                enterManhole(c);
+                neuePosition = 0;
+            } else {
+                countInlets(pipe, start, neuePosition);
+                timespend = remaining_dt;
+                c = pipe;
+            }
+            remaining_dt -= timespend;
+            if (timespend == 0) {
+                break;
+            }
+        }
+        p.setSurrounding_actual(c);
+        p.setPosition1d_actual(neuePosition);
+    }
+
+    /**
+     * Decides if the water of the particle entered the network in this
+     * manhole. The inflow from pipes is compared with the inflow from the
+     * surface and the lateral inflow, which is the outflow not covered by the
+     * inflowing pipes.
+     *
+     * @param p
+     * @param mh
+     * @return true if the particle ends its path here
+     */
+    private boolean originatesHere(Particle p, Manhole mh) {
+        if (mh.getWaterlevel() < FlowCalculatorMixed.dryWaterlevel) {
+            return false;
+        }
+        double h = mh.getWaterHeight();
+        double qIn = 0, qOut = 0;
+        for (Connection_Manhole_Pipe con : mh.getConnections()) {
+            if (con.getHeight() >= h) {
+                break;
+            }
+            if (con.isFlowOutletFromPipe()) {
+                qIn += Math.abs(con.getPipe().getFlowActual());
+            } else if (con.isFlowInletToPipe()) {
+                qOut += Math.abs(con.getPipe().getFlowActual());
+            }
+        }
+        double qSurface = Math.max(0, -mh.getFlowToSurfaceActual());
+        double qLateral = Math.max(0, qOut - qIn - qSurface);
+        double qTotal = qIn + qSurface + qLateral;
+        if (qTotal < 0.00001) {
+            //No flow, wait in this manhole
+            return false;
+        }
+        double threshold = rand.nextDouble() * qTotal;
+        if (threshold < qIn) {
+            return false;
+        }
+        if (threshold < qIn + qSurface) {
+            likelihood.addTriangleOrigin(mh.getSurfaceTriangleID());
+        } else {
+            likelihood.addManholeOrigin(mh);
+        }
+        p.setSurrounding_actual(mh);
+        p.setPosition1d_actual(0);
+        p.setLeftSimulation();
+        return true;
+    }
+
+    private void enterManhole(Capacity c) {
+        if (c instanceof Manhole) {
+            likelihood.addManholeVisit((Manhole) c, time);
+        }
+    }
+
+    /**
+     * Counts all inlets of the pipe between the two positions.
+     *
+     * @param pipe
+     * @param from
+     * @param to
+     */
+    private void countInlets(Pipe pipe, double from, double to) {
+        if (pipeInlets == null) {
+            return;
+        }
+        int[] ids = pipeInlets.get(pipe);
+        if (ids == null) {
+            return;
+        }
+        double min = Math.min(from, to), max = Math.max(from, to);
+        for (int id : ids) {
+            double pos = inlets[id].getPipeposition1d();
+            if (pos >= min && pos <= max) {
+                likelihood.addTriangleVisit(id, time);
+            }
+        }
+    }
+}
@@ -92,7 +92,8 @@ public class ParticleSoilComputing {
     public void moveParticle(Particle p) {
         Coordinate c = p.getPosition3d();
 
-        int index = underground.getNearestCoordinateIndex(c);
+        int index = underground.getNearestCoordinateIndex(c, p.soilNodeIndex);
+        p.soilNodeIndex = index;
         if (index < 0) {
             System.out.println("no near coordinate found for " + c);
         }
@@ -25,6 +25,7 @@ package control.particlecontrol;
 
 import control.maths.RandomArray;
 import model.particle.Particle;
+import model.particle.ParticleStore;
 import model.surface.Surface;
 
 /**
@@ -43,6 +44,14 @@ public interface ParticleSurfaceComputing {
 
     public void moveParticle(Particle particle);
 
+    /**
+     * Move the particle with the given index in the ParticleStore.
+     *
+     * @param store
+     * @param index
+     */
+    public void moveParticle(ParticleStore store, int index);
+
     public void reset();
 
 //    public void setSeed(long seed);
@@ -27,6 +27,7 @@ import control.maths.RandomArray;
 import control.threads.ThreadController;
 import model.particle.HistoryParticle;
 import model.particle.Particle;
+import model.particle.ParticleStore;
 import model.surface.Surface;
 import model.surface.SurfaceTriangle;
 import model.surface.SurfaceTrianglePath;
@@ -110,6 +111,19 @@ public class ParticleSurfaceComputing1D implements ParticleSurfaceComputing {
         }
     }
 
+    /**
+     * 1D paths work on the capacity objects. The particle view is updated,
+     * moved and written back to the store.
+     *
+     * @param store
+     * @param index
+     */
+    @Override
+    public void moveParticle(ParticleStore store, int index) {
+        moveParticle(store.writeToParticle(index));
+        store.readFromParticles(index, index + 1);
+    }
+
     /**
      * One of the internal transport functions. the 'moveParticle'-function can
      * call this method.
@@ -25,16 +25,19 @@ package control.particlecontrol;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import control.maths.RandomArray;
-import control.threads.ThreadController;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import model.particle.Particle;
+import model.particle.ParticleState;
+import model.particle.ParticleStore;
+import model.particle.StoredParticle;
 import model.surface.Surface;
 import model.surface.SurfaceTriangle;
 import model.surface.SurfaceTrianglePath;
+import model.surface.measurement.SurfaceMeasurementRaster;
 import model.topology.Inlet;
 import model.topology.Manhole;
 import org.opengis.referencing.operation.TransformException;
@@ -98,9 +101,21 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
     private final double[] temp_barycentricWeights = new double[3];
     private final double[][] tempVertices = new double[3][3];
     private double[] tempDiff = new double[2];
+    private final double[] tempPosition = new double[2];
 
     private double posxalt, posyalt, posxneu, posyneu, totalvelocity;
 
+    /**
+     * Cursor on the particles of a ParticleStore.
+     */
+    private final StoredParticle storedParticle = new StoredParticle();
+
+    /**
+     * Raster to measure particles in. If null, the raster of the surface is
+     * used.
+     */
+    private SurfaceMeasurementRaster measurementRaster;
+
     private DecimalFormat df = new DecimalFormat("0.0000", DecimalFormatSymbols.getInstance(Locale.US));
 
     public ParticleSurfaceComputing2D(Surface surface, int threadIndex) {
@@ -158,7 +173,7 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
             
             if (p.isOnSurface()) {
 //                status = 31;
-                surface.getMeasurementRaster().measureParticle(simulationtime, p, threadindex);
+                getMeasurementRaster().measureParticle(simulationtime, p, threadindex);
             }
 //            status = 20;
             if (allowWashToPipesystem) {
@@ -175,26 +190,27 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
 
     /**
      * One of the internal transport functions. the 'moveParticle'-function can
-     * call this method. For 2D particle transport
+     * call this method. For 2D particle transport of Particle objects and
+     * particles of the ParticleStore.
      *
      * @param p
      */
-    private void moveParticle2(Particle p) throws Exception {
+    private void moveParticle2(ParticleState p) throws Exception {
 
         // get the particle velocity (most computation time used here)
-        particlevelocity = surface.getParticleVelocity2D(p, p.surfaceCellID, particlevelocity, temp_barycentricWeights);
+        particlevelocity = surface.getParticleVelocity2D(p.getPositionX(), p.getPositionY(), p.getSurfaceCellID(), particlevelocity, temp_barycentricWeights);
 
         totalvelocity = testVelocity(particlevelocity);
         p.addMovingLength(totalvelocity * dt);
 
-        posxalt = p.getPosition3d().x;
-        posyalt = p.getPosition3d().y;
+        posxalt = p.getPositionX();
+        posyalt = p.getPositionY();
 
         if (enableDiffusion) {
             // calculate diffusion
             if (totalvelocity >0) {
                 //Optimized version already gives the squarerooted values. (To avoid squareroot operations [very slow]
-                tempDiff = D.calculateDiffusionSQRT(particlevelocity[0], particlevelocity[1], surface, p.surfaceCellID, tempDiff);
+                tempDiff = D.calculateDiffusionSQRT(particlevelocity[0], particlevelocity[1], surface, p.getSurfaceCellID(), tempDiff);
                 double sqrt2dtDx = sqrt2dt * tempDiff[0];
                 double sqrt2dtDy = sqrt2dt * tempDiff[1];
 
@@ -220,8 +236,35 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
 
         // Berechnung: welches ist das neue triangle, die funktion "getTargetTriangleID" setzt ggf. auch die x und y werte der position2d neu
         // da eine Veränderung durch Modellränder vorkommen kann
-        p.surfaceCellID = surface.getTargetTriangleID(p, p.surfaceCellID, posxalt, posyalt, posxneu, posyneu, 10, temp_barycentricWeights, tempVertices);
+        p.setSurfaceCellID(surface.getTargetTriangleID(p.getSurfaceCellID(), posxalt, posyalt, posxneu, posyneu, 10, temp_barycentricWeights, tempVertices, tempPosition));
+        p.setPosition3D(tempPosition[0], tempPosition[1]);
+    }
+
+    /**
+     * Called from Threadcontroller for each Particle in the ParticleStore.
+     *
+     * @param s
+     * @param i index of particle in the store
+     */
+    @Override
+    public void moveParticle(ParticleStore s, int i) {
+        try {
+            if (s.surfaceCellID[i] < 0) {
+                //Use the Particle object to find the lost particle.
+                checkSurrounding(s.writeToParticle(i));
+                s.readFromParticles(i, i + 1);
+            }
+            moveParticle2(storedParticle.set(s, i));
 
+            if (s.status[i] == ParticleStore.SURFACE) {
+                getMeasurementRaster().measureParticle(simulationtime, s, i, threadindex);
+            }
+            if (allowWashToPipesystem) {
+                washToPipesystem(storedParticle, s.surfaceCellID[i]);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     private void checkSurrounding(Particle p) {
@@ -304,7 +347,7 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
         return u;
     }
 
-    private void washToPipesystem(Particle p, int triangleID) {
+    private void washToPipesystem(ParticleState p, int triangleID) {
         //Check if particle can go back to pipe system.
         Inlet inlet = surface.getInlet(triangleID);
         if (inlet != null) {
@@ -316,10 +359,10 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
                     p.setSurrounding_actual(inlet.getNetworkCapacity());
                     p.setPosition1d_actual(inlet.getPipeposition1d());
                     p.setInPipenetwork();
-                    p.toPipenetwork = inlet.getNetworkCapacity();
+                    p.setToPipenetwork(inlet.getNetworkCapacity());
                     //Create Shortcut
-                    if (p.toSurface != null) {
-                        surface.addStatistic(p, ((Manhole) p.toSurface).getSurfaceTriangleID(), inlet, null, ThreadController.getSimulationTimeMS() - p.toSurfaceTimestamp);
+                    if (p.getToSurface() != null) {
+                        surface.addStatistic(p.toParticle(), ((Manhole) p.getToSurface()).getSurfaceTriangleID(), inlet, null, simulationtime - p.getToSurfaceTimestamp());
                     }
                     return;
                 }
@@ -334,10 +377,10 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
                 p.setSurrounding_actual(m);
                 p.setPosition1d_actual(0);
                 p.setInPipenetwork();
-                p.toPipenetwork = m;
+                p.setToPipenetwork(m);
 
-                if (p.toSurface != null) {
-                    surface.addStatistic(p, ((Manhole) p.toSurface).getSurfaceTriangleID(), null, m, ThreadController.getSimulationTimeMS() - p.toSurfaceTimestamp);
+                if (p.getToSurface() != null) {
+                    surface.addStatistic(p.toParticle(), ((Manhole) p.getToSurface()).getSurfaceTriangleID(), null, m, simulationtime - p.getToSurfaceTimestamp());
                 }
             }
         }
@@ -371,6 +414,29 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
         return this.surface;
     }
 
+    /**
+     * Measure particles in this raster instead of the one referenced by the
+     * surface. Lets several simulations share one surface without swapping
+     * its measurements.
+     *
+     * @param measurementRaster null to use the raster of the surface.
+     */
+    public void setMeasurementRaster(SurfaceMeasurementRaster measurementRaster) {
+        this.measurementRaster = measurementRaster;
+    }
+
+    /**
+     * Raster to measure the particles in.
+     *
+     * @return
+     */
+    public SurfaceMeasurementRaster getMeasurementRaster() {
+        if (measurementRaster == null) {
+            return surface.getMeasurementRaster();
+        }
+        return measurementRaster;
+    }
+
 //    @Override
 //    public long getSeed() {
 //        return this.seed;
@@ -381,8 +447,9 @@ public class ParticleSurfaceComputing2D implements ParticleSurfaceComputing {
      */
     @Override
     public String reportCalculationStatus() {
-        if (surface.getMeasurementRaster().statuse != null && surface.getMeasurementRaster().monitor != null && surface.getMeasurementRaster().monitor[threadindex] != null) {
-            return "Status:" + status + "  Raster:" + surface.getMeasurementRaster().statuse[threadindex] + " monitor: " + surface.getMeasurementRaster().monitor[threadindex] + "   mass: " + surface.getMeasurementRaster().monitor[threadindex].totalParticleCount() + "  isused:" + surface.getMeasurementRaster().monitor[threadindex].lock.toString();
+        SurfaceMeasurementRaster raster = getMeasurementRaster();
+        if (raster.statuse != null && raster.monitor != null && raster.monitor[threadindex] != null) {
+            return "Status:" + status + "  Raster:" + raster.statuse[threadindex] + " monitor: " + raster.monitor[threadindex] + "   mass: " + raster.monitor[threadindex].totalParticleCount() + "  isused:" + raster.monitor[threadindex].lock.toString();
         } else {
             return "Status:" + status;
         }
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.superposition;
+
+import control.scenario.injection.InjectionInformation;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Forecasts the contamination of arbitrary spills by superposing the unit
+ * responses of a {@link UnitResponseLibrary} instead of simulating particles.
+ *
+ * The mass of each spill interval is distributed on the release times of its
+ * source with linear (hat) weights: mass released between two library release
+ * times is split between both responses according to its distance to them.
+ * Mass released before the first or after the last release time or at
+ * sources not in the library is reported as uncovered.
+ *
+ * @author saemann
+ */
+public class SuperpositionForecast {
+
+    private final UnitResponseLibrary library;
+
+    public SuperpositionForecast(UnitResponseLibrary library) {
+        this.library = library;
+    }
+
+    public SuperpositionResult forecast(InjectionInformation spill) {
+        return forecast(Collections.singletonList(spill));
+    }
+
+    /**
+     * Superposes the unit responses for all spills.
+     *
+     * @param spills location, mass, start and duration are used. The material
+     * is ignored.
+     * @return
+     */
+    public SuperpositionResult forecast(Collection<InjectionInformation> spills) {
+        SuperpositionResult result = new SuperpositionResult(library);
+        for (InjectionInformation spill : spills) {
+            if (!spill.isActive()) {
+                continue;
+            }
+            String key = UnitResponseLibrary.sourceKey(spill);
+            UnitResponse[] responses = key == null ? null : library.getResponses(key);
+            if (responses == null) {
+                result.uncoveredMass += spill.getMass();
+                continue;
+            }
+            double[] weights = new double[responses.length];
+            for (int i = 0; i < spill.getNumberOfIntervals(); i++) {
+                double mass = spill.massInInterval(i);
+                if (mass <= 0) {
+                    continue;
+                }
+                double covered = distribute(responses, spill.getIntervalStart(i), spill.getIntervalEnd(i), mass, weights);
+                result.superposedMass += covered;
+                result.uncoveredMass += mass - covered;
+            }
+            for (int k = 0; k < responses.length; k++) {
+                if (weights[k] != 0) {
+                    responses[k].addTo(weights[k], result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Distributes mass released uniformly between start and end on the
+     * release times of the responses.
+     *
+     * @param responses sorted by release time
+     * @param start [s after simulation start]
+     * @param end [s after simulation start]
+     * @param mass [kg]
+     * @param weights mass per response to add to
+     * @return mass that could be assigned to a release time.
+     */
+    static double distribute(UnitResponse[] responses, double start, double end, double mass, double[] weights) {
+        int n = responses.length;
+        if (end <= start) {
+            //Instantaneous release
+            for (int k = 0; k < n; k++) {
+                double r0 = responses[k].getReleaseTime();
+                if (start == r0) {
+                    weights[k] += mass;
+                    return mass;
+                }
+                if (k + 1 < n && start > r0 && start < responses[k + 1].getReleaseTime()) {
+                    double f = (start - r0) / (responses[k + 1].getReleaseTime() - r0);
+                    weights[k] += mass * (1 - f);
+                    weights[k + 1] += mass * f;
+                    return mass;
+                }
+            }
+            return 0;
+        }
+        double covered = 0;
+        for (int k = 0; k + 1 < n; k++) {
+            double r0 = responses[k].getReleaseTime(), r1 = responses[k + 1].getReleaseTime();
+            double a = Math.max(start, r0), b = Math.min(end, r1);
+            if (b <= a) {
+                continue;
+            }
+            //Weights are linear within the segment: the mean weight is the weight at the middle.
+            double m = mass * (b - a) / (end - start);
+            double f = ((a + b) * 0.5 - r0) / (r1 - r0);
+            weights[k] += m * (1 - f);
+            weights[k + 1] += m * f;
+            covered += m;
+        }
+        return covered;
+    }
+
+    public UnitResponseLibrary getLibrary() {
+        return library;
+    }
+}
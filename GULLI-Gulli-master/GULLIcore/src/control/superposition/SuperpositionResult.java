@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.superposition;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Forecast of a spill composed from unit responses. Timelines are only
+ * created for pipes and triangles reached by the spill.
+ *
+ * @author saemann
+ */
+public class SuperpositionResult {
+
+    private final UnitResponseLibrary library;
+
+    private final HashMap<Integer, float[]> pipeMass = new HashMap<>();
+    private final HashMap<Integer, float[]> triangleMass = new HashMap<>();
+
+    /**
+     * Mass [kg] that could be assigned to release times of the library.
+     */
+    double superposedMass = 0;
+    /**
+     * Mass [kg] released outside the release times or at sources that are not
+     * part of the library.
+     */
+    double uncoveredMass = 0;
+
+    SuperpositionResult(UnitResponseLibrary library) {
+        this.library = library;
+    }
+
+    float[] pipeTimeline(int pipeIndex) {
+        float[] tl = pipeMass.get(pipeIndex);
+        if (tl == null) {
+            tl = new float[library.getPipeSampleTimes().length];
+            pipeMass.put(pipeIndex, tl);
+        }
+        return tl;
+    }
+
+    float[] triangleTimeline(int triangleID) {
+        float[] tl = triangleMass.get(triangleID);
+        if (tl == null) {
+            tl = new float[library.getSurfaceSampleTimes().length];
+            triangleMass.put(triangleID, tl);
+        }
+        return tl;
+    }
+
+    /**
+     * Index of pipes in the order of the library (see
+     * {@link UnitResponseLibrary#getPipeName(int)}) with contamination.
+     *
+     * @return
+     */
+    public Set<Integer> getReachedPipes() {
+        return pipeMass.keySet();
+    }
+
+    public Set<Integer> getReachedTriangles() {
+        return triangleMass.keySet();
+    }
+
+    /**
+     * Mass [kg] in the pipe per sampling interval of
+     * {@link UnitResponseLibrary#getPipeSampleTimes()}.
+     *
+     * @param pipeIndex
+     * @return null if the pipe is not reached.
+     */
+    public float[] getPipeMass(int pipeIndex) {
+        return pipeMass.get(pipeIndex);
+    }
+
+    /**
+     * Concentration [kg/m³] in the pipe per sampling interval. Intervals
+     * without a recorded pipe volume are 0.
+     *
+     * @param pipeIndex
+     * @return null if the pipe is not reached.
+     */
+    public float[] getPipeConcentration(int pipeIndex) {
+        float[] mass = pipeMass.get(pipeIndex);
+        if (mass == null) {
+            return null;
+        }
+        float[] volume = library.getPipeVolumes(pipeIndex);
+        float[] c = new float[mass.length];
+        if (volume != null) {
+            for (int t = 0; t < c.length; t++) {
+                if (volume[t] > 0) {
+                    c[t] = mass[t] / volume[t];
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Mass [kg] on the triangle per interval of
+     * {@link UnitResponseLibrary#getSurfaceSampleTimes()}.
+     *
+     * @param triangleID
+     * @return null if the triangle is not reached.
+     */
+    public float[] getTriangleMass(int triangleID) {
+        return triangleMass.get(triangleID);
+    }
+
+    public double getSuperposedMass() {
+        return superposedMass;
+    }
+
+    public double getUncoveredMass() {
+        return uncoveredMass;
+    }
+
+    public UnitResponseLibrary getLibrary() {
+        return library;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + superposedMass + " kg superposed, " + uncoveredMass + " kg uncovered, " + pipeMass.size() + " pipes, " + triangleMass.size() + " triangles)";
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.superposition;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Response of pipes and surface to the release of 1 kg at one source and one
+ * release time. Only pipes and triangles that were reached are stored, each
+ * with the range of time indices between the first and the last non zero
+ * value.
+ *
+ * @author saemann
+ */
+public class UnitResponse {
+
+    private final String sourceKey;
+
+    /**
+     * Release time [s after simulation start].
+     */
+    private final double releaseTime;
+
+    final int[] pipeIndex, pipeFirstTimeIndex;
+    /**
+     * [reached pipe][timeindex-first] mass [kg per kg released]
+     */
+    final float[][] pipeMass;
+
+    final int[] triangleID, triangleFirstTimeIndex;
+    /**
+     * [reached triangle][timeindex-first] mass [kg per kg released]
+     */
+    final float[][] triangleMass;
+
+    public UnitResponse(String sourceKey, double releaseTime, int[] pipeIndex, int[] pipeFirstTimeIndex, float[][] pipeMass, int[] triangleID, int[] triangleFirstTimeIndex, float[][] triangleMass) {
+        this.sourceKey = sourceKey;
+        this.releaseTime = releaseTime;
+        this.pipeIndex = pipeIndex;
+        this.pipeFirstTimeIndex = pipeFirstTimeIndex;
+        this.pipeMass = pipeMass;
+        this.triangleID = triangleID;
+        this.triangleFirstTimeIndex = triangleFirstTimeIndex;
+        this.triangleMass = triangleMass;
+    }
+
+    public String getSourceKey() {
+        return sourceKey;
+    }
+
+    public double getReleaseTime() {
+        return releaseTime;
+    }
+
+    public int getNumberOfReachedPipes() {
+        return pipeIndex.length;
+    }
+
+    public int getNumberOfReachedTriangles() {
+        return triangleID.length;
+    }
+
+    /**
+     * Adds the weighted response to the given timelines.
+     *
+     * @param weight mass [kg] released at this source and time
+     * @param result
+     */
+    void addTo(double weight, SuperpositionResult result) {
+        for (int i = 0; i < pipeIndex.length; i++) {
+            float[] tl = result.pipeTimeline(pipeIndex[i]);
+            float[] values = pipeMass[i];
+            int o = pipeFirstTimeIndex[i];
+            for (int t = 0; t < values.length; t++) {
+                tl[o + t] += (float) (values[t] * weight);
+            }
+        }
+        for (int i = 0; i < triangleID.length; i++) {
+            float[] tl = result.triangleTimeline(triangleID[i]);
+            float[] values = triangleMass[i];
+            int o = triangleFirstTimeIndex[i];
+            for (int t = 0; t < values.length; t++) {
+                tl[o + t] += (float) (values[t] * weight);
+            }
+        }
+    }
+
+    void write(DataOutputStream dos) throws IOException {
+        dos.writeUTF(sourceKey);
+        dos.writeDouble(releaseTime);
+        writeSparse(dos, pipeIndex, pipeFirstTimeIndex, pipeMass);
+        writeSparse(dos, triangleID, triangleFirstTimeIndex, triangleMass);
+    }
+
+    static UnitResponse read(DataInputStream dis) throws IOException {
+        String key = dis.readUTF();
+        double releaseTime = dis.readDouble();
+        int n = dis.readInt();
+        int[] pipes = new int[n], pipeFirst = new int[n];
+        float[][] pipeValues = new float[n][];
+        readSparse(dis, pipes, pipeFirst, pipeValues);
+        n = dis.readInt();
+        int[] triangles = new int[n], triangleFirst = new int[n];
+        float[][] triangleValues = new float[n][];
+        readSparse(dis, triangles, triangleFirst, triangleValues);
+        return new UnitResponse(key, releaseTime, pipes, pipeFirst, pipeValues, triangles, triangleFirst, triangleValues);
+    }
+
+    private static void writeSparse(DataOutputStream dos, int[] index, int[] first, float[][] values) throws IOException {
+        dos.writeInt(index.length);
+        for (int i = 0; i < index.length; i++) {
+            dos.writeInt(index[i]);
+            dos.writeInt(first[i]);
+            dos.writeInt(values[i].length);
+            for (float v : values[i]) {
+                dos.writeFloat(v);
+            }
+        }
+    }
+
+    private static void readSparse(DataInputStream dis, int[] index, int[] first, float[][] values) throws IOException {
+        for (int i = 0; i < index.length; i++) {
+            index[i] = dis.readInt();
+            first[i] = dis.readInt();
+            values[i] = new float[dis.readInt()];
+            for (int t = 0; t < values[i].length; t++) {
+                values[i][t] = dis.readFloat();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + sourceKey + " @" + releaseTime + "s, " + pipeIndex.length + " pipes, " + triangleID.length + " triangles)";
+    }
+}
@@ -0,0 +1,586 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.superposition;
+
+import control.Controller;
+import control.LoadingCoordinator;
+import control.ensemble.EnsembleMember;
+import control.ensemble.EnsembleRunner;
+import control.scenario.injection.InjectionInformation;
+import control.threads.ParticleThread;
+import control.threads.ThreadController;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import model.particle.Material;
+import model.surface.measurement.SurfaceMeasurementTriangleRaster;
+import model.surface.measurement.TriangleMeasurement;
+import model.timeline.array.ArrayTimeLineMeasurement;
+import model.timeline.array.ArrayTimeLineMeasurementContainer;
+import model.timeline.array.TimeIndexContainer;
+import model.topology.Capacity;
+import model.topology.Pipe;
+import model.topology.StorageVolume;
+
+/**
+ * Precomputed responses of the network and surface to unit spills for a set
+ * of source locations and release times on one hydrodynamic result.
+ *
+ * Without deposition the transport is linear in the injected mass. The
+ * response to any spill at a library source is therefore the sum of the unit
+ * responses weighted by the mass released around their release times (see
+ * {@link SuperpositionForecast}). The unit spills are simulated once with an
+ * {@link EnsembleRunner} on the network, surface and hydraulics loaded in a
+ * {@link Controller}.
+ *
+ * @author saemann
+ */
+public class UnitResponseLibrary {
+
+    public static boolean verbose = true;
+
+    /**
+     * File extension of stored libraries.
+     */
+    public static final String FILEEXTENSION = ".superposition";
+
+    private static final long MAGIC = 0x47554C4C49555253L;//GULLIURS
+    private static final int VERSION = 2;
+
+    /**
+     * Files of network and hydraulic results the library was simulated with.
+     */
+    private final String hydraulicsID;
+    /**
+     * Start of the sampling intervals of the pipe measurements [ms].
+     */
+    private final long[] pipeSampleTimes;
+    /**
+     * Start of the sampling intervals of the surface measurements [ms].
+     */
+    private final long[] surfaceSampleTimes;
+    /**
+     * Names of the pipes in the order of the pipe indices.
+     */
+    private final String[] pipeNames;
+    /**
+     * Mean fluid volume [m³] of reached pipes per sampling interval, 0 where
+     * no particle passed.
+     */
+    private final HashMap<Integer, float[]> pipeVolumes;
+    /**
+     * Responses per source, sorted by release time.
+     */
+    private final HashMap<String, UnitResponse[]> responses = new HashMap<>();
+
+    public UnitResponseLibrary(String hydraulicsID, long[] pipeSampleTimes, long[] surfaceSampleTimes, String[] pipeNames, HashMap<Integer, float[]> pipeVolumes, Collection<UnitResponse> unitResponses) {
+        this.hydraulicsID = hydraulicsID;
+        this.pipeSampleTimes = pipeSampleTimes;
+        this.surfaceSampleTimes = surfaceSampleTimes;
+        this.pipeNames = pipeNames;
+        this.pipeVolumes = pipeVolumes;
+        HashMap<String, ArrayList<UnitResponse>> bySource = new HashMap<>();
+        for (UnitResponse r : unitResponses) {
+            ArrayList<UnitResponse> list = bySource.get(r.getSourceKey());
+            if (list == null) {
+                list = new ArrayList<>();
+                bySource.put(r.getSourceKey(), list);
+            }
+            list.add(r);
+        }
+        for (Map.Entry<String, ArrayList<UnitResponse>> e : bySource.entrySet()) {
+            UnitResponse[] rs = e.getValue().toArray(new UnitResponse[e.getValue().size()]);
+            Arrays.sort(rs, new Comparator<UnitResponse>() {
+                @Override
+                public int compare(UnitResponse t, UnitResponse t1) {
+                    return Double.compare(t.getReleaseTime(), t1.getReleaseTime());
+                }
+            });
+            responses.put(e.getKey(), rs);
+        }
+    }
+
+    /**
+     * Identifier of the location of a spill. Spills at the same triangle,
+     * capacity or coordinate share the same key. The position inside a
+     * capacity (position1D) is ignored: all spills into a pipe use the unit
+     * responses simulated at the position of the library source.
+     *
+     * @param injection
+     * @return key or null if the injection has no location.
+     */
+    public static String sourceKey(InjectionInformation injection) {
+        if (injection.spillOnSurface()) {
+            if (injection.getTriangleID() >= 0) {
+                return "surface:" + injection.getTriangleID();
+            }
+        } else {
+            if (injection.getCapacity() != null) {
+                return "network:" + capacityName(injection.getCapacity());
+            }
+            if (injection.getCapacityName() != null && !injection.getCapacityName().isEmpty()) {
+                return "network:" + injection.getCapacityName();
+            }
+        }
+        if (injection.getPosition() != null) {
+            return (injection.spillOnSurface() ? "surface:" : "network:") + injection.getPosition().getLatitude() + "," + injection.getPosition().getLongitude();
+        }
+        return null;
+    }
+
+    /**
+     * Name of a pipe or manhole, the same string that is used as capacity
+     * name of injections.
+     *
+     * @param capacity
+     * @return
+     */
+    private static String capacityName(Capacity capacity) {
+        if (capacity instanceof Pipe) {
+            return ((Pipe) capacity).getName();
+        }
+        if (capacity instanceof StorageVolume) {
+            return ((StorageVolume) capacity).getName();
+        }
+        return capacity.toString();
+    }
+
+    /**
+     * Identifier of the network and hydraulic result files loaded in the
+     * controller.
+     *
+     * @param control
+     * @return
+     */
+    public static String hydraulicsID(Controller control) {
+        LoadingCoordinator lc = control.getLoadingCoordinator();
+        return fileName(lc.getFileNetwork()) + "|" + fileName(lc.getFilePipeResultIDBF()) + "|" + fileName(lc.getFileSurfaceWaterlevels());
+    }
+
+    private static String fileName(File file) {
+        return file == null ? "" : file.getName();
+    }
+
+    /**
+     * Simulates the release of 1 kg at every source and release time.
+     * Deposition must be disabled, otherwise the transport is not linear.
+     *
+     * @param control with loaded network, surface and hydraulics
+     * @param sources location of the unit spills. Mass and times are ignored.
+     * @param releaseTimes [s after simulation start]
+     * @param particlesPerRelease number of particles of each unit spill
+     * @param numberOfThreads
+     * @param runsPerBatch number of unit spills simulated together
+     * @return
+     * @throws IOException if the simulation of a unit spill failed or was
+     * interrupted.
+     */
+    public static UnitResponseLibrary build(Controller control, Collection<InjectionInformation> sources, double[] releaseTimes, int particlesPerRelease, int numberOfThreads, int runsPerBatch) throws IOException {
+        ParticleThread[] threads = control.getThreadController().getParticleThreads();
+        if (threads != null && threads.length > 0 && threads[0].pc.useDeposition) {
+            throw new IllegalStateException("Unit responses can not be superposed with deposition enabled.");
+        }
+        Material material = new Material("Unit", 1000, true);
+        //Release the unit mass within one particle step
+        double impulseDuration = ThreadController.getDeltaTime();
+
+        ArrayList<String> keys = new ArrayList<>();
+        ArrayList<Double> times = new ArrayList<>();
+        ArrayList<InjectionInformation> unitInjections = new ArrayList<>();
+        for (InjectionInformation source : sources) {
+            String key = sourceKey(source);
+            if (key == null) {
+                throw new IllegalArgumentException("Source " + source + " has no location.");
+            }
+            for (double releaseTime : releaseTimes) {
+                keys.add(key);
+                times.add(releaseTime);
+                unitInjections.add(createUnitInjection(source, material, particlesPerRelease, releaseTime, impulseDuration));
+            }
+        }
+
+        Pipe[] pipes = control.getNetwork().getPipes().toArray(new Pipe[control.getNetwork().getPipes().size()]);
+        String[] pipeNames = new String[pipes.length];
+        for (int i = 0; i < pipes.length; i++) {
+            pipeNames[i] = pipes[i].getName();
+        }
+        long[] pipeSampleTimes = null, surfaceSampleTimes = new long[0];
+        HashMap<Integer, float[]> pipeVolumes = new HashMap<>();
+        ArrayList<UnitResponse> unitResponses = new ArrayList<>(unitInjections.size());
+
+        long seed = control.getThreadController().getSeed();
+        int batchSize = Math.max(1, runsPerBatch);
+        for (int from = 0; from < unitInjections.size(); from += batchSize) {
+            long start = System.currentTimeMillis();
+            int to = Math.min(unitInjections.size(), from + batchSize);
+            EnsembleRunner runner = new EnsembleRunner(control, numberOfThreads);
+            for (int i = from; i < to; i++) {
+                ArrayList<InjectionInformation> list = new ArrayList<>(1);
+                list.add(unitInjections.get(i));
+                runner.addMember(keys.get(i) + "@" + times.get(i), list, seed + i);
+            }
+            runner.run(null);
+            List<EnsembleMember> members = runner.getMembers();
+            for (EnsembleMember m : members) {
+                if (m.hasFailed()) {
+                    throw new IOException("Simulation of unit response " + m.getName() + " failed.", m.getFailure());
+                }
+            }
+            for (int i = from; i < to; i++) {
+                EnsembleMember m = members.get(i - from);
+                ArrayTimeLineMeasurementContainer c = m.getPipeMeasurements();
+                if (pipeSampleTimes == null) {
+                    pipeSampleTimes = new long[c.getNumberOfTimes()];
+                    for (int t = 0; t < pipeSampleTimes.length; t++) {
+                        pipeSampleTimes[t] = c.getTimeMillisecondsAtIndex(t);
+                    }
+                    if (m.getSurfaceMeasurements() != null && m.getSurfaceMeasurements().getIndexContainer() != null) {
+                        TimeIndexContainer st = m.getSurfaceMeasurements().getIndexContainer();
+                        surfaceSampleTimes = new long[st.getNumberOfTimes()];
+                        for (int t = 0; t < surfaceSampleTimes.length; t++) {
+                            surfaceSampleTimes[t] = st.getTimeMilliseconds(t);
+                        }
+                    }
+                }
+                unitResponses.add(extractResponse(keys.get(i), times.get(i), m, pipes.length, pipeVolumes));
+            }
+            if (verbose) {
+                System.out.println("Unit responses " + to + "/" + unitInjections.size() + " simulated in " + (System.currentTimeMillis() - start) + "ms.");
+            }
+        }
+        if (pipeSampleTimes == null) {
+            pipeSampleTimes = new long[0];
+        }
+        return new UnitResponseLibrary(hydraulicsID(control), pipeSampleTimes, surfaceSampleTimes, pipeNames, pipeVolumes, unitResponses);
+    }
+
+    private static InjectionInformation createUnitInjection(InjectionInformation source, Material material, int particles, double releaseTime, double duration) {
+        if (source.spillOnSurface()) {
+            if (source.getTriangleID() >= 0) {
+                return new InjectionInformation(source.getTriangleID(), 1, particles, material, releaseTime, duration);
+            }
+            return new InjectionInformation(source.getPosition(), false, 1, particles, material, releaseTime, duration);
+        }
+        if (source.getCapacity() != null) {
+            return new InjectionInformation(source.getCapacity(), source.getPosition1D(), 1, particles, material, releaseTime, duration);
+        }
+        if (source.getCapacityName() != null && !source.getCapacityName().isEmpty()) {
+            return new InjectionInformation(source.getCapacityName(), source.getPosition1D(), 1, particles, material, releaseTime, duration);
+        }
+        return new InjectionInformation(source.getPosition(), true, 1, particles, material, releaseTime, duration);
+    }
+
+    /**
+     * Converts the measurements of a simulated unit spill into a sparse
+     * response and records the pipe volumes.
+     */
+    private static UnitResponse extractResponse(String key, double releaseTime, EnsembleMember m, int numberOfPipes, HashMap<Integer, float[]> pipeVolumes) {
+        ArrayList<Integer> pipeIndex = new ArrayList<>();
+        ArrayList<Integer> pipeFirst = new ArrayList<>();
+        ArrayList<float[]> pipeValues = new ArrayList<>();
+        int numberOfTimes = m.getPipeMeasurements().getNumberOfTimes();
+        for (int p = 0; p < numberOfPipes; p++) {
+            ArrayTimeLineMeasurement tl = m.getPipeMeasurement(p);
+            int first = -1, last = -1;
+            for (int t = 0; t < numberOfTimes; t++) {
+                if (tl.hasValues(t) && tl.getMass(t) > 0) {
+                    if (first < 0) {
+                        first = t;
+                    }
+                    last = t;
+                }
+            }
+            if (first < 0) {
+                continue;
+            }
+            float[] values = new float[last - first + 1];
+            float[] volume = pipeVolumes.get(p);
+            if (volume == null) {
+                volume = new float[numberOfTimes];
+                pipeVolumes.put(p, volume);
+            }
+            for (int t = first; t <= last; t++) {
+                if (tl.hasValues(t)) {
+                    values[t - first] = tl.getMass(t);
+                    if (volume[t] <= 0) {
+                        volume[t] = tl.getVolume(t);
+                    }
+                }
+            }
+            pipeIndex.add(p);
+            pipeFirst.add(first);
+            pipeValues.add(values);
+        }
+
+        ArrayList<Integer> triangleIDs = new ArrayList<>();
+        ArrayList<Integer> triangleFirst = new ArrayList<>();
+        ArrayList<float[]> triangleValues = new ArrayList<>();
+        SurfaceMeasurementTriangleRaster raster = m.getSurfaceMeasurements();
+        if (raster != null && raster.getMeasurements() != null) {
+            for (TriangleMeasurement tm : raster.getMeasurements()) {
+                if (tm == null) {
+                    continue;
+                }
+                double[] mass = new double[tm.getNumberOfTimes()];
+                int first = -1, last = -1;
+                for (int t = 0; t < mass.length; t++) {
+                    for (int mat = 0; mat < tm.getNumberOfMaterials(); mat++) {
+                        mass[t] += tm.getMass(mat, t);
+                    }
+                    if (mass[t] > 0) {
+                        if (first < 0) {
+                            first = t;
+                        }
+                        last = t;
+                    }
+                }
+                if (first < 0) {
+                    continue;
+                }
+                float[] values = new float[last - first + 1];
+                for (int t = first; t <= last; t++) {
+                    values[t - first] = (float) mass[t];
+                }
+                triangleIDs.add(tm.getTriangleID());
+                triangleFirst.add(first);
+                triangleValues.add(values);
+            }
+        }
+        return new UnitResponse(key, releaseTime, toArray(pipeIndex), toArray(pipeFirst), pipeValues.toArray(new float[pipeValues.size()][]),
+                toArray(triangleIDs), toArray(triangleFirst), triangleValues.toArray(new float[triangleValues.size()][]));
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] a = new int[list.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = list.get(i);
+        }
+        return a;
+    }
+
+    /**
+     * Unit responses of a source sorted by release time.
+     *
+     * @param sourceKey see {@link #sourceKey(InjectionInformation)}
+     * @return null if the source is not part of this library.
+     */
+    public UnitResponse[] getResponses(String sourceKey) {
+        return responses.get(sourceKey);
+    }
+
+    public Set<String> getSourceKeys() {
+        return responses.keySet();
+    }
+
+    public long[] getPipeSampleTimes() {
+        return pipeSampleTimes;
+    }
+
+    public long[] getSurfaceSampleTimes() {
+        return surfaceSampleTimes;
+    }
+
+    public String getHydraulicsID() {
+        return hydraulicsID;
+    }
+
+    /**
+     * Checks that the library was simulated on the network and hydraulic
+     * results loaded in the controller: same result files, same number and
+     * order of pipe names.
+     *
+     * @param control
+     * @throws IOException if the library belongs to other input.
+     */
+    public void verify(Controller control) throws IOException {
+        String id = hydraulicsID(control);
+        if (!hydraulicsID.equals(id)) {
+            throw new IOException("Unit response library was built for '" + hydraulicsID + "', loaded are '" + id + "'.");
+        }
+        Pipe[] pipes = control.getNetwork().getPipes().toArray(new Pipe[control.getNetwork().getPipes().size()]);
+        if (pipes.length != pipeNames.length) {
+            throw new IOException("Unit response library was built for " + pipeNames.length + " pipes, network has " + pipes.length + ".");
+        }
+        for (int i = 0; i < pipes.length; i++) {
+            String name = pipes[i].getName() == null ? "" : pipes[i].getName();
+            if (!name.equals(pipeNames[i])) {
+                throw new IOException("Pipe " + i + " of the unit response library is '" + pipeNames[i] + "', in the network '" + name + "'.");
+            }
+        }
+    }
+
+    public int getNumberOfPipes() {
+        return pipeNames.length;
+    }
+
+    public String getPipeName(int pipeIndex) {
+        return pipeNames[pipeIndex];
+    }
+
+    /**
+     * Mean fluid volume of the pipe per sampling interval.
+     *
+     * @param pipeIndex
+     * @return null if no unit spill reached this pipe.
+     */
+    public float[] getPipeVolumes(int pipeIndex) {
+        return pipeVolumes.get(pipeIndex);
+    }
+
+    /**
+     * Writes the library to a gzip compressed binary file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file), 1 << 16)))) {
+            dos.writeLong(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeUTF(hydraulicsID);
+            writeLongs(dos, pipeSampleTimes);
+            writeLongs(dos, surfaceSampleTimes);
+            dos.writeInt(pipeNames.length);
+            for (String name : pipeNames) {
+                dos.writeUTF(name == null ? "" : name);
+            }
+            dos.writeInt(pipeVolumes.size());
+            for (Map.Entry<Integer, float[]> e : pipeVolumes.entrySet()) {
+                dos.writeInt(e.getKey());
+                dos.writeInt(e.getValue().length);
+                for (float v : e.getValue()) {
+                    dos.writeFloat(v);
+                }
+            }
+            int n = 0;
+            for (UnitResponse[] rs : responses.values()) {
+                n += rs.length;
+            }
+            dos.writeInt(n);
+            for (UnitResponse[] rs : responses.values()) {
+                for (UnitResponse r : rs) {
+                    r.write(dos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a library and checks that it belongs to the network and hydraulic
+     * results loaded in the controller (see {@link #verify(Controller)}).
+     *
+     * @param file
+     * @param control
+     * @return
+     * @throws IOException if the file is no library of this version or was
+     * built for other input.
+     */
+    public static UnitResponseLibrary read(File file, Controller control) throws IOException {
+        UnitResponseLibrary library = read(file);
+        library.verify(control);
+        return library;
+    }
+
+    /**
+     * Reads a library written by {@link #write(java.io.File)}. The library is
+     * not checked against the loaded network.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file is no library of this version.
+     */
+    public static UnitResponseLibrary read(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), 1 << 16)))) {
+            if (dis.readLong() != MAGIC) {
+                throw new IOException(file + " is not a unit response library.");
+            }
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of unit response library " + file);
+            }
+            String id = dis.readUTF();
+            long[] pipeTimes = readLongs(dis);
+            long[] surfaceTimes = readLongs(dis);
+            String[] names = new String[dis.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = dis.readUTF();
+            }
+            int n = dis.readInt();
+            HashMap<Integer, float[]> volumes = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                int pipe = dis.readInt();
+                float[] v = new float[dis.readInt()];
+                for (int t = 0; t < v.length; t++) {
+                    v[t] = dis.readFloat();
+                }
+                volumes.put(pipe, v);
+            }
+            n = dis.readInt();
+            ArrayList<UnitResponse> list = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                list.add(UnitResponse.read(dis));
+            }
+            return new UnitResponseLibrary(id, pipeTimes, surfaceTimes, names, volumes, list);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream dos, long[] values) throws IOException {
+        dos.writeInt(values.length);
+        for (long v : values) {
+            dos.writeLong(v);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream dis) throws IOException {
+        long[] values = new long[dis.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = dis.readLong();
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        int n = 0;
+        for (UnitResponse[] rs : responses.values()) {
+            n += rs.length;
+        }
+        return getClass().getSimpleName() + "(" + responses.size() + " sources, " + n + " unit responses)";
+    }
+}
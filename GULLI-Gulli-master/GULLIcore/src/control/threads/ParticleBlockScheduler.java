@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.threads;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free distribution of particle blocks to the ParticleThreads with work
+ * stealing.
+ *
+ * The particles are divided into blocks of a fixed size. Each block always
+ * uses the RandomArray with the same index as the block. The block size is
+ * not changed during the simulation, so the sequence of random numbers for a
+ * particle does not depend on the number of threads or the order of
+ * processing.
+ *
+ * At the beginning of a step the blocks are divided into one contiguous span
+ * per thread. The spans are sized adaptively by the measured calculation time
+ * of every block in the previous step, so that all threads get the same
+ * estimated amount of work (active surface particles are much more expensive
+ * than pipe particles or particles that left the simulation). A thread takes
+ * the blocks of its own span from the front. If its span is empty, it steals
+ * half of the remaining blocks from the back of another thread's span.
+ *
+ * @author saemann
+ */
+public class ParticleBlockScheduler {
+
+    /**
+     * [start index (inclusive) << 32 | end index (exclusive)] of blocks for
+     * each thread.
+     */
+    private AtomicLong[] spans;
+
+    /**
+     * Measured calculation time [ns] of the blocks in the last step. -1 if not
+     * yet measured.
+     */
+    private long[] blockCost = new long[0];
+
+    private int numberOfBlocks = 0;
+
+    private final int blocksize;
+
+    public ParticleBlockScheduler(int numberOfThreads, int blocksize) {
+        this.blocksize = blocksize;
+        setNumberOfThreads(numberOfThreads);
+    }
+
+    public final void setNumberOfThreads(int numberOfThreads) {
+        spans = new AtomicLong[Math.max(1, numberOfThreads)];
+        for (int i = 0; i < spans.length; i++) {
+            spans[i] = new AtomicLong(0);
+        }
+    }
+
+    /**
+     * Divide the blocks for the next step into spans for all threads. Must not
+     * be called while threads request blocks.
+     *
+     * @param numberOfParticles number of particles to treat in this step
+     * (index of the first waiting particle)
+     */
+    public void prepareStep(int numberOfParticles) {
+        numberOfBlocks = (numberOfParticles + blocksize - 1) / blocksize;
+        if (blockCost.length < numberOfBlocks) {
+            int oldLength = blockCost.length;
+            blockCost = Arrays.copyOf(blockCost, Math.max(numberOfBlocks, oldLength * 2));
+            Arrays.fill(blockCost, oldLength, blockCost.length, -1);
+        }
+        //Estimate cost of blocks, that have not been calculated before.
+        long sum = 0;
+        int measured = 0;
+        for (int i = 0; i < numberOfBlocks; i++) {
+            if (blockCost[i] >= 0) {
+                sum += blockCost[i];
+                measured++;
+            }
+        }
+        long defaultCost = measured > 0 ? Math.max(1, sum / measured) : 1;
+        long total = 0;
+        for (int i = 0; i < numberOfBlocks; i++) {
+            total += estimatedCost(i, defaultCost);
+        }
+        //Split into spans of equal estimated cost.
+        int start = 0;
+        long cumulative = 0;
+        for (int t = 0; t < spans.length; t++) {
+            int end = start;
+            if (t == spans.length - 1) {
+                end = numberOfBlocks;
+            } else {
+                long target = (total * (t + 1)) / spans.length;
+                while (end < numberOfBlocks && cumulative < target) {
+                    cumulative += estimatedCost(end, defaultCost);
+                    end++;
+                }
+            }
+            spans[t].set(pack(start, end));
+            start = end;
+        }
+    }
+
+    private long estimatedCost(int block, long defaultCost) {
+        //Blocks without any active particle are measured with a few ns, but
+        //still need to be handed out.
+        return blockCost[block] >= 0 ? blockCost[block] + 1 : defaultCost;
+    }
+
+    /**
+     * Index of the next block to calculate by this thread.
+     *
+     * @param threadIndex
+     * @return block index or -1 if all blocks of this step have been handed
+     * out.
+     */
+    public int nextBlock(int threadIndex) {
+        AtomicLong own = spans[threadIndex % spans.length];
+        //Take from the front of the own span.
+        while (true) {
+            long s = own.get();
+            int start = start(s), end = end(s);
+            if (start >= end) {
+                break;
+            }
+            if (own.compareAndSet(s, pack(start + 1, end))) {
+                return start;
+            }
+        }
+        //Steal half of the remaining blocks from the back of another span.
+        for (int i = 1; i < spans.length; i++) {
+            AtomicLong victim = spans[(threadIndex + i) % spans.length];
+            while (true) {
+                long s = victim.get();
+                int start = start(s), end = end(s);
+                int remaining = end - start;
+                if (remaining <= 0) {
+                    break;
+                }
+                int newEnd = end - (remaining + 1) / 2;
+                if (victim.compareAndSet(s, pack(start, newEnd))) {
+                    //First stolen block is returned, the rest is put to the own span.
+                    own.set(pack(newEnd + 1, end));
+                    return newEnd;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Store the calculation time of a block to balance the next step.
+     *
+     * @param block
+     * @param nanos
+     */
+    public void blockFinished(int block, long nanos) {
+        if (block < blockCost.length) {
+            blockCost[block] = nanos;
+        }
+    }
+
+    /**
+     * Forget all measured calculation times.
+     */
+    public void resetCosts() {
+        Arrays.fill(blockCost, -1);
+    }
+
+    public int getBlocksize() {
+        return blocksize;
+    }
+
+    public int getNumberOfBlocks() {
+        return numberOfBlocks;
+    }
+
+    private static long pack(int start, int end) {
+        return ((long) start << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    private static int start(long span) {
+        return (int) (span >>> 32);
+    }
+
+    private static int end(long span) {
+        return (int) span;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder(getClass().getSimpleName() + "{" + numberOfBlocks + " blocks of " + blocksize + ", spans:");
+        for (AtomicLong span : spans) {
+            long s = span.get();
+            str.append(" [").append(start(s)).append(",").append(end(s)).append(")");
+        }
+        return str.append("}").toString();
+    }
+}
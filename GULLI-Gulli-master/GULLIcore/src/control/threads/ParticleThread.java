@@ -1,5 +1,6 @@
 package control.threads;
 
+import control.maths.CounterRandom;
 import control.maths.RandomArray;
 import control.particlecontrol.ParticlePipeComputing;
 import control.particlecontrol.ParticleSurfaceComputing;
@@ -7,6 +8,9 @@ import control.particlecontrol.ParticleSurfaceComputing1D;
 import control.particlecontrol.ParticleSurfaceComputing2D;
 import java.util.ArrayList;
 import model.particle.Particle;
+import model.particle.ParticleState;
+import model.particle.ParticleStore;
+import model.particle.StoredParticle;
 import model.surface.Surface;
 import model.surface.SurfaceTriangle;
 import model.topology.measurement.ParticleMeasurement;
@@ -39,6 +43,19 @@ public class ParticleThread extends Thread {
     public ThreadController threadController;
     public int threadIndex = 0;
 
+    /**
+     * Random numbers of this thread if
+     * {@link ThreadController#counterBasedRandom} is enabled. Keyed for every
+     * particle before it is moved.
+     */
+    private final CounterRandom counterRandom = new CounterRandom(0);
+    private boolean keyedRandom = false;
+
+    /**
+     * Cursor on the particles of the ParticleStore.
+     */
+    private final StoredParticle storedParticle = new StoredParticle();
+
     public ParticleThread(String string, int index, ThreadBarrier<ParticleThread> barrier) {
         super(string);
         this.threadIndex = index;
@@ -128,7 +145,7 @@ public class ParticleThread extends Thread {
 //                activeCalculation = true;
 //                status = 0;
 //                status = 30;
-                fromto = threadController.getNextParticlesToTreat(fromto);
+                fromto = threadController.getNextParticlesToTreat(fromto, threadIndex);
 //                status = 31;
                 if (fromto == null || fromto[0] < 0) {
                     //finished loop fot his timestep
@@ -141,17 +158,35 @@ public class ParticleThread extends Thread {
 //                    status = 35;
                     //Got valid order to threat particles.
                     this.simulationTime = barrier.getSimulationtime();
+                    this.pc.setActualSimulationTime(simulationTime);
                     this.surfcomp.setActualSimulationTime(simulationTime);
                     int from = fromto[0];
                     int toExcld = fromto[1];
 //                    if (fromto[2] >= threadController.randomNumberGenerators.length) {
 //                        System.err.println("wrong index " + fromto[2] + " for particles " + fromto[0] + "-" + fromto[1] + " of total " + threadController.randomNumberGenerators.length + "   waitingindex: " + threadController.waitingParticleIndex);
 //                    }
-                    RandomArray random = threadController.randomNumberGenerators[fromto[2]];
+                    RandomArray random = null;
+                    if (!ThreadController.counterBasedRandom) {
+                        random = threadController.randomNumberGenerators[fromto[2]];
+                    }
+                    keyedRandom = random == null;
+                    if (keyedRandom) {
+                        counterRandom.setSeed(threadController.getSeed());
+                        random = counterRandom;
+                    }
                     this.pc.setRandomNumberGenerator(random);
                     this.surfcomp.setRandomNumberGenerator(random);
 //                    status = 2;
-                    for (int i = from; i < toExcld; i++) {
+                    long blockStart = System.nanoTime();
+                    //null if the block is a range of particle indices
+                    int[] indices = threadController.getActiveParticleIndices();
+                    if (threadController.particleStore != null) {
+                        moveParticles(threadController.particleStore, indices, from, toExcld);
+                        threadController.finishedParticleBlock(fromto[2], System.nanoTime() - blockStart);
+                        continue;
+                    }
+                    for (int k = from; k < toExcld; k++) {
+                        int i = indices == null ? k : indices[k];
                         try {
                             p = threadController.particles[i];
                         } catch (Exception e) {
@@ -167,26 +202,16 @@ public class ParticleThread extends Thread {
                                 //All further particles area also waiting. Break the loop here.
                                 break;
                             } else {
-                                if (p.injectionSurrounding.getClass().equals(Surface.class)) {
-                                    p.setOnSurface();
-                                    p.surfaceCellID = p.getInjectionCellID();
-                                    double[] pos = ((Surface) p.injectionSurrounding).getTriangleMids()[p.getInjectionCellID()];
-                                    p.setPosition3D(pos[0], pos[1]);
-                                } else if (p.injectionSurrounding.getClass().equals(SurfaceTriangle.class)) {
-                                    p.setOnSurface();
-                                    p.surfaceCellID = p.getInjectionCellID();
-                                    p.setPosition3d(p.injectionSurrounding.getPosition3D(0));
-                                } else {
-                                    p.setInPipenetwork();
-                                    p.setPosition1d_actual(p.injectionPosition1D);
-                                }
-                                p.setSurrounding_actual(p.injectionSurrounding);
+                                releaseFromInjection(p);
                             }
                         }
                         //check if it has been initialized from waiting list yet
                         if (p.isActive()) {
 //                            particleID = p.getId();
 //                            particle = p;
+                            if (keyedRandom) {
+                                counterRandom.setKey(i, simulationTime);
+                            }
 
                             if (p.isInPipeNetwork()) {
 //                                status = 4;
@@ -203,6 +228,7 @@ public class ParticleThread extends Thread {
 //                        particle = null;
 //                        particleID = -1;
                     }
+                    threadController.finishedParticleBlock(fromto[2], System.nanoTime() - blockStart);
 //                    status = 100;
 //                    this.allParticlesReachedOutlet = false;
 //                    activeCalculation = false;
@@ -218,6 +244,73 @@ public class ParticleThread extends Thread {
         }
     }
 
+    /**
+     * Places a waiting particle at its injection capacity and activates it.
+     *
+     * @param p particle whose insertion time is reached
+     */
+    public static void releaseFromInjection(Particle p) {
+        releaseFromInjection(p, p);
+    }
+
+    /**
+     * Places a waiting particle at its injection capacity and activates it.
+     *
+     * @param p particle object holding the injection information
+     * @param state state of this particle to update, the particle itself or
+     * its entry in the ParticleStore
+     */
+    public static void releaseFromInjection(Particle p, ParticleState state) {
+        if (p.injectionSurrounding.getClass().equals(Surface.class)) {
+            state.setOnSurface();
+            state.setSurfaceCellID(p.getInjectionCellID());
+            double[] pos = ((Surface) p.injectionSurrounding).getTriangleMids()[p.getInjectionCellID()];
+            state.setPosition3D(pos[0], pos[1]);
+        } else if (p.injectionSurrounding.getClass().equals(SurfaceTriangle.class)) {
+            state.setOnSurface();
+            state.setSurfaceCellID(p.getInjectionCellID());
+            state.setPosition3D(p.injectionSurrounding.getPosition3D(0));
+        } else {
+            state.setInPipenetwork();
+            state.setPosition1d_actual(p.injectionPosition1D);
+        }
+        state.setSurrounding_actual(p.injectionSurrounding);
+    }
+
+    /**
+     * Transport loop for particles stored in the ParticleStore of the
+     * ThreadController.
+     *
+     * @param s
+     * @param indices active particle indices, null if from and toExcld are
+     * particle indices
+     * @param from first index
+     * @param toExcld index after the last particle to move
+     */
+    private void moveParticles(ParticleStore s, int[] indices, int from, int toExcld) {
+        for (int k = from; k < toExcld; k++) {
+            int i = indices == null ? k : indices[k];
+            if (s.status[i] == ParticleStore.WAITING) {
+                if (s.insertionTime[i] > this.simulationTime) {
+                    //this particle is still waiting for its initialization.
+                    //All further particles area also waiting. Break the loop here.
+                    break;
+                }
+                releaseFromInjection(s.getParticle(i), storedParticle.set(s, i));
+            }
+            if (keyedRandom && s.status[i] > 0) {
+                counterRandom.setKey(i, simulationTime);
+            }
+            if (s.status[i] == ParticleStore.PIPENETWORK) {
+                pc.moveParticle(s, i);
+            } else if (s.status[i] == ParticleStore.SURFACE) {
+                surfcomp.moveParticle(s, i);
+            } else if (s.status[i] > 0) {
+                System.out.println(getClass() + ":: undefined status (" + s.status[i] + ") of particle (" + i + "). Surrounding=" + s.getCapacity(s.capacityIndex[i]));
+            }
+        }
+    }
+
 //    public void setSeed(long seed) {
 ////        surfcomp.setSeed(seed);
 ////        pc.setSeed(seed);
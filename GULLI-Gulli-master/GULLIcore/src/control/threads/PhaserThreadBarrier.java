@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2018 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package control.threads;
+
+import java.util.concurrent.Phaser;
+
+/**
+ * Step barrier for the ParticleThreads based on a {@link Phaser}. The last
+ * thread arriving at the end of the particle loop calls the ThreadController
+ * directly (sync phase and listener phase run in this thread). No separate
+ * control thread and no wait/notify handoff is needed.
+ *
+ * The threads then wait at a gate until the ThreadController calls
+ * {@link #startover()} for the next step. If the controller already opened
+ * the gate during the completion of the step, the threads proceed without
+ * blocking.
+ *
+ * @author saemann
+ * @param <T>
+ */
+public class PhaserThreadBarrier<T extends Thread> extends MultiThreadBarrier<T> {
+
+    /**
+     * All registered threads arrive here at the end of their particle loop.
+     */
+    private final Phaser stepPhaser;
+
+    /**
+     * Is advanced by the ThreadController to start the next step.
+     */
+    private final Phaser gate = new Phaser(1);
+
+    public PhaserThreadBarrier(String name, ThreadController controller) {
+        super(name, controller);
+        stepPhaser = new Phaser() {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                try {
+                    if (!isinitialized) {
+                        isinitialized = true;
+                        notifyWhenReady.initializingFinished(PhaserThreadBarrier.this);
+                    } else {
+                        notifyWhenReady.finishedLoop(PhaserThreadBarrier.this);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                //Never terminate this phaser.
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void addThread(T thread) {
+        super.addThread(thread);
+        stepPhaser.register();
+    }
+
+    @Override
+    public void loopfinished(T finishedThread) {
+        int gatePhase = gate.getPhase();
+        stepPhaser.arriveAndAwaitAdvance();
+        gate.awaitAdvance(gatePhase);
+    }
+
+    @Override
+    public void initialized(T itsMe) {
+        //Wait for the first opening of the gate. Might already have happened,
+        //if the simulation was started before all threads were initialized.
+        stepPhaser.arriveAndAwaitAdvance();
+        gate.awaitAdvance(0);
+    }
+
+    /**
+     * Release all threads waiting for the next step.
+     */
+    @Override
+    public void startover() {
+        status = 100;
+        gate.arrive();
+        status = 101;
+    }
+
+    /**
+     * Number of threads that have not yet arrived at the end of the actual
+     * particle loop.
+     *
+     * @return
+     */
+    public int getUnarrivedThreads() {
+        return stepPhaser.getUnarrivedParties();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + name + "," + getThreads().size() + " Threads, Status=" + status + ", phase=" + stepPhaser.getPhase() + ", unarrived " + stepPhaser.getUnarrivedParties() + "}";
+    }
+}
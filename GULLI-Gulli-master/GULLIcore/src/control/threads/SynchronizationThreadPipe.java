@@ -25,6 +25,8 @@ package control.threads;
 
 import control.Controller;
 import java.util.ArrayList;
+import java.util.Arrays;
+import model.surface.Surface;
 import model.timeline.array.ArrayTimeLineMeasurement;
 import model.timeline.array.ArrayTimeLineMeasurementContainer;
 import model.topology.Pipe;
@@ -47,6 +49,7 @@ public class SynchronizationThreadPipe extends Thread {
     private long nextOpenTime = 0;
     private int writeindex = 0;
     private boolean openMeasurements = false;
+    private boolean measurementsInitialized = false;
 
     protected Controller control;
     public int status = -1;
@@ -55,6 +58,14 @@ public class SynchronizationThreadPipe extends Thread {
 
     private Pipe[] pipes;
 
+    /**
+     * AutoIDs of the pipes whose measurement timeline was written in the last
+     * synchronization.
+     */
+    private long[] measuredPipeIDs = new long[0];
+    private int numberOfMeasuredPipes = 0;
+    private int measuredTimeIndex = -1;
+
     public SynchronizationThreadPipe(String string, ThreadBarrier barrier, Controller control) {
         super(string);
         this.barrier = barrier;
@@ -66,6 +77,24 @@ public class SynchronizationThreadPipe extends Thread {
         //is initialized now
         barrier.initialized(this);
 
+        initializeMeasurements();
+
+        //if woken up start the normal loop
+        while (runendless) {
+            synchronizeMeasurements();
+            /**
+             * Synchronization finished, give control back to the
+             * Threadcontroller via the barrier
+             */
+            barrier.loopfinished(this);
+        }
+    }
+
+    /**
+     * Activates or deactivates the measurement timelines of the pipes
+     * depending on the sampling type of the measurement container.
+     */
+    public void initializeMeasurements() {
         try {
             ArrayTimeLineMeasurementContainer mcp = control.getScenario().getMeasurementsPipe();
             if (mcp != null) {
@@ -85,87 +114,127 @@ public class SynchronizationThreadPipe extends Thread {
             }
         } catch (Exception ex) {
             ex.printStackTrace();
-        };
+        }
+        measurementsInitialized = true;
+    }
 
-        //if woken up start the normal loop
-        while (runendless) {
-            if (true) {
-                try {
-                    actualSimulationTime = barrier.getSimulationtime();
-                    // Schreibe die Gesammelten Werte in die Mess-Zeitreihe der Rohre
-                    ArrayTimeLineMeasurementContainer mcp = control.getScenario().getMeasurementsPipe();
-                    if (mcp != null) {
-                        if (mcp.isTimespotmeasurement()) {
-                            if (openMeasurements) {
-                                for (Pipe pipe : pipes) {
-                                    ArrayTimeLineMeasurement tl = pipe.getMeasurementTimeLine();
-                                    if (tl != null) {
-                                        if (tl.getNumberOfParticles() > 0) {
-                                            tl.addMeasurement(writeindex, (float) pipe.getFluidVolume());
-                                        }
-                                        tl.resetNumberOfParticles();
-                                        tl.active = false;
-                                    }
-                                }
-                                int timeindex = mcp.getIndexForTime(actualSimulationTime);
-                                if (timeindex >= mcp.getNumberOfTimes()) {
-                                    timeindex = mcp.getNumberOfTimes() - 1;
-                                }
-                                if (mcp.getNumberOfTimes() > timeindex + 1) {
-                                    if (mcp.getNumberOfTimes() == timeindex + 2) {
-                                        nextOpenTime = (long) (mcp.getEndTime() - ThreadController.getDeltaTime() * 2000);
-                                        writeindex = timeindex + 1;
-                                    } else {
-                                        nextOpenTime = mcp.getTimeMillisecondsAtIndex(timeindex + 1) - (int) (ThreadController.getDeltaTime() * 1000);
-                                        writeindex = timeindex + 1;
-                                    }
-                                }
-                                openMeasurements = false;
-                            } else if (actualSimulationTime >= nextOpenTime) {
-                                openMeasurements = true;
-                                for (Pipe pipe : pipes) {
-                                    if (pipe.getMeasurementTimeLine() != null) {
-                                        pipe.getMeasurementTimeLine().active = true;
-                                        pipe.getMeasurementTimeLine().resetNumberOfParticles();
-                                    }
+    private void measured(Pipe pipe, int timeIndex) {
+        if (numberOfMeasuredPipes == measuredPipeIDs.length) {
+            measuredPipeIDs = Arrays.copyOf(measuredPipeIDs, Math.max(16, measuredPipeIDs.length * 2));
+        }
+        measuredPipeIDs[numberOfMeasuredPipes++] = pipe.getAutoID();
+        measuredTimeIndex = timeIndex;
+    }
+
+    /**
+     * AutoIDs of the pipes whose measurement timeline was written in the last
+     * synchronization.
+     *
+     * @return new array
+     */
+    public long[] getMeasuredPipeIDs() {
+        return Arrays.copyOf(measuredPipeIDs, numberOfMeasuredPipes);
+    }
+
+    /**
+     * Time index of the measurement timelines written in the last
+     * synchronization.
+     *
+     * @return -1 if no measurement was written.
+     */
+    public int getMeasuredTimeIndex() {
+        return measuredTimeIndex;
+    }
+
+    /**
+     * Writes the collected values of the actual timestep into the measurement
+     * timelines of the pipes. Is called by this Thread after every particle
+     * loop or directly by the ThreadController, if the step scheduler does not
+     * use a separate synchronization thread.
+     */
+    public void synchronizeMeasurements() {
+        try {
+            actualSimulationTime = barrier.getSimulationtime();
+            numberOfMeasuredPipes = 0;
+            measuredTimeIndex = -1;
+            // Schreibe die Gesammelten Werte in die Mess-Zeitreihe der Rohre
+            ArrayTimeLineMeasurementContainer mcp = control.getScenario().getMeasurementsPipe();
+            if (mcp != null) {
+                if (mcp.isTimespotmeasurement()) {
+                    if (openMeasurements) {
+                        for (Pipe pipe : pipes) {
+                            ArrayTimeLineMeasurement tl = pipe.getMeasurementTimeLine();
+                            if (tl != null) {
+                                if (tl.getNumberOfParticles() > 0) {
+                                    tl.addMeasurement(writeindex, (float) pipe.getFluidVolume());
+                                    measured(pipe, writeindex);
                                 }
+                                tl.resetNumberOfParticles();
+                                tl.active = false;
                             }
-
-                        } else if (pipes != null) {
-                            int timeindex = mcp.getIndexForTime(actualSimulationTime);
-                            if (timeindex >= mcp.getNumberOfTimes()) {
-                                timeindex = mcp.getNumberOfTimes() - 1;
+                        }
+                        int timeindex = mcp.getIndexForTime(actualSimulationTime);
+                        if (timeindex >= mcp.getNumberOfTimes()) {
+                            timeindex = mcp.getNumberOfTimes() - 1;
+                        }
+                        if (mcp.getNumberOfTimes() > timeindex + 1) {
+                            if (mcp.getNumberOfTimes() == timeindex + 2) {
+                                nextOpenTime = (long) (mcp.getEndTime() - ThreadController.getDeltaTime() * 2000);
+                                writeindex = timeindex + 1;
+                            } else {
+                                nextOpenTime = mcp.getTimeMillisecondsAtIndex(timeindex + 1) - (int) (ThreadController.getDeltaTime() * 1000);
+                                writeindex = timeindex + 1;
                             }
-                            if (lastMeasurementImeIndex != timeindex) {
-                                lastMeasurementImeIndex = timeindex;
-                                for (Pipe pipe : pipes) {
-                                    if (pipe.getMeasurementTimeLine().getNumberOfParticles() > 0) {
-                                        pipe.getMeasurementTimeLine().addMeasurement(timeindex, (float) pipe.getFluidVolume());
-                                        pipe.getMeasurementTimeLine().resetNumberOfParticles();
-                                    }
-                                }
+                        }
+                        openMeasurements = false;
+                    } else if (actualSimulationTime >= nextOpenTime) {
+                        openMeasurements = true;
+                        for (Pipe pipe : pipes) {
+                            if (pipe.getMeasurementTimeLine() != null) {
+                                pipe.getMeasurementTimeLine().active = true;
+                                pipe.getMeasurementTimeLine().resetNumberOfParticles();
                             }
                         }
+                    }
 
-                        if (messung != null) {
-                            for (ParticleMeasurement pm : messung) {
-                                try {
-                                    pm.writeCounter(actualSimulationTime);
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
+                } else if (pipes != null) {
+                    int timeindex = mcp.getIndexForTime(actualSimulationTime);
+                    if (timeindex >= mcp.getNumberOfTimes()) {
+                        timeindex = mcp.getNumberOfTimes() - 1;
+                    }
+                    if (lastMeasurementImeIndex != timeindex) {
+                        lastMeasurementImeIndex = timeindex;
+                        for (Pipe pipe : pipes) {
+                            if (pipe.getMeasurementTimeLine().getNumberOfParticles() > 0) {
+                                pipe.getMeasurementTimeLine().addMeasurement(timeindex, (float) pipe.getFluidVolume());
+                                measured(pipe, timeindex);
+                                pipe.getMeasurementTimeLine().resetNumberOfParticles();
                             }
                         }
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
+                }
+
+                if (messung != null) {
+                    for (ParticleMeasurement pm : messung) {
+                        try {
+                            pm.writeCounter(actualSimulationTime);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
                 }
             }
-            /**
-             * Synchronization finished, give control back to the
-             * Threadcontroller via the barrier
-             */
-            barrier.loopfinished(this);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        try {
+            //Surface measurements that were counted separately by each thread.
+            Surface surface = control.getSurface();
+            if (surface != null && surface.getMeasurementRaster() != null) {
+                surface.getMeasurementRaster().synchronizeMeasurements();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
@@ -191,4 +260,8 @@ public class SynchronizationThreadPipe extends Thread {
         return pipes;
     }
 
+    public boolean isMeasurementsInitialized() {
+        return measurementsInitialized;
+    }
+
 }
@@ -25,10 +25,14 @@ package control.threads;
 
 import control.Action.Action;
 import control.Controller;
+import control.listener.AsyncSimulationListener;
 import control.listener.LoadingActionListener;
 import control.listener.SimulationActionListener;
 import control.listener.ParticleListener;
+import control.listener.SimulationStepSnapshot;
 import control.maths.RandomArray;
+import control.particlecontrol.FlowCalculatorMixed;
+import control.particlecontrol.ManholeRoutingTable;
 import control.scenario.Scenario;
 import control.scenario.injection.InjectionInformation;
 import java.util.ArrayList;
@@ -44,10 +48,12 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import model.particle.HistoryParticle;
 import model.particle.Particle;
+import model.particle.ParticleStore;
 import model.surface.Surface;
 import model.surface.measurement.TriangleMeasurement;
 import model.timeline.array.ArrayTimeLineMeasurementContainer;
 import model.topology.Network;
+import model.topology.NetworkHydraulicState;
 import model.topology.Pipe;
 
 /**
@@ -76,6 +82,24 @@ public class ThreadController implements ParticleListener, SimulationActionListe
 
         HYDRODYNAMICS, PARTICLE, SYNC, POSITION
     }
+
+    /**
+     * Synchronization of the simulation steps. BARRIER: wait/notify barriers
+     * with a separate control and synchronization thread. PHASER: Phaser based
+     * barrier, the last finished ParticleThread executes the synchronization
+     * and listener phase.
+     */
+    public static enum SCHEDULER {
+
+        BARRIER, PHASER
+    }
+
+    /**
+     * Scheduler used for newly created ThreadControllers.
+     */
+    public static SCHEDULER defaultScheduler = SCHEDULER.PHASER;
+
+    private final SCHEDULER scheduler;
 //    private int numberParallelParticleThreads;
 //    private int numberParallelSyncThreads = 2;
     private boolean run = false;
@@ -117,9 +141,11 @@ public class ThreadController implements ParticleListener, SimulationActionListe
 
     private Object calledObject = null;
 
+    private Object lastInvokedListener = null;
+
     private ThreadBarrier lastFinishedBarrier = null;
 
-    private Thread statusThread = initStatusThread();
+    private Thread statusThread;
 
     public static boolean pauseRevokerThread = false;
 
@@ -130,19 +156,73 @@ public class ThreadController implements ParticleListener, SimulationActionListe
     ////
     //everything to do if the particles are stored here centralised
     protected Particle[] particles;
+    /**
+     * Primitive array storage of the particles' state. Only used if
+     * {@link #useParticleStore} is enabled. Particle objects are then only
+     * views that are updated on request.
+     */
+    protected ParticleStore particleStore;
+    /**
+     * If true, particles are transported in the primitive array
+     * ParticleStore instead of the Particle objects.
+     */
+    private boolean useParticleStore = false;
     /**
      * Generating Random numbers must always happen for the same particles.
      */
     protected RandomArray[] randomNumberGenerators;
+    /**
+     * If true, every particle thread uses a {@link control.maths.CounterRandom} keyed by
+     * particle index and simulation time. Results are then independent from
+     * the number of threads and the block size. Otherwise each particle block
+     * uses its own RandomArray.
+     */
+    public static boolean counterBasedRandom = true;
     private ReentrantLock lock = new ReentrantLock();
     //number of particles to be treted by one thread
     protected int treatblocksize = 1000;
     public int waitingParticleIndex = 0;//first waiting (for injection)  particle index
     public int nextParticleBlockStartIndex = 0;//Index for the tretstart for the next requesting Thread
     public int nextRandomNumberBlockStartIndex = 0;//Index for the random number for the next requesting Thread
+    /**
+     * Lock free distribution of particle blocks with work stealing. Only used
+     * if {@link #useWorkStealing} is enabled.
+     */
+    protected ParticleBlockScheduler blockScheduler;
+    /**
+     * If true, particle blocks are distributed by the ParticleBlockScheduler
+     * (adaptive spans per thread, work stealing). Otherwise blocks are handed
+     * out one after another under a lock.
+     */
+    private boolean useWorkStealing = true;
+    /**
+     * If true, particle blocks are cut from the compacted list of released
+     * particles, that have not left the simulation, instead of the whole range
+     * of released particles.
+     */
+    private boolean useActiveCompaction = true;
+    /**
+     * Indices (in particles) of released particles that have not left the
+     * simulation, in ascending order. Only used if
+     * {@link #useActiveCompaction} is enabled.
+     */
+    protected int[] activeParticleIndices;
+    /**
+     * Number of valid entries in activeParticleIndices.
+     */
+    protected int numberOfActiveIndices = 0;
+    /**
+     * All particles below this index have been added to the active list.
+     */
+    private int activeIndicesReleased = 0;
 
     public ThreadController(int numberParticleThreads, final Controller control) {
+        this(numberParticleThreads, control, defaultScheduler);
+    }
+
+    public ThreadController(int numberParticleThreads, final Controller control, SCHEDULER scheduler) {
         this.control = control;
+        this.scheduler = scheduler;
         this.control.addParticleListener(this);
         this.control.addActioListener(this);
 
@@ -154,13 +234,18 @@ public class ThreadController implements ParticleListener, SimulationActionListe
         }
 //        numberParallelParticleThreads = threads;
         //Start n threads 
-        barrier_particle = new MultiThreadBarrier("ParticleBarrier", this);
+        if (scheduler == SCHEDULER.PHASER) {
+            barrier_particle = new PhaserThreadBarrier<>("ParticleBarrier", this);
+        } else {
+            barrier_particle = new MultiThreadBarrier<>("ParticleBarrier", this);
+        }
         for (int i = 0; i < numberParticleThreads; i++) {
             ParticleThread pt = new ParticleThread("ParticleThread[" + i + "]", i, barrier_particle);
             pt.setDeltaTime(deltaTime);
             pt.threadController = this;
             barrier_particle.addThread(pt);
         }
+        blockScheduler = new ParticleBlockScheduler(numberParticleThreads, treatblocksize);
         barrier_particle.initialize();
 //        barrier_positionUpdate = new SingleThreadBarrier("LocationBarrier", this);
 //
@@ -178,10 +263,17 @@ public class ThreadController implements ParticleListener, SimulationActionListe
 //            barrier_sync.addThread(syncThread);
 //        }
 
+        if (scheduler == SCHEDULER.PHASER) {
+            //Synchronization is done by the last ParticleThread of each step.
+            //No control thread and no watchdog needed.
+            return;
+        }
         barrier_sync.initialize();
 
         controlThread = new ControlThread();
         controlThread.start();
+
+        statusThread = initStatusThread();
     }
 
     /**
@@ -214,6 +306,8 @@ public class ThreadController implements ParticleListener, SimulationActionListe
         if (control.getScenario() != null) {
             control.getScenario().setActualTime(simulationTimeMS);
         }
+        //Timelines may have been exchanged since the last run.
+        updateHydraulicState(true);
 
         calculationLoopStarttime = System.currentTimeMillis();
         calledObject = barrier_particle;
@@ -235,7 +329,7 @@ public class ThreadController implements ParticleListener, SimulationActionListe
      */
     public void setSeed(long seed) {
         this.seed = seed;
-        if (randomNumberGenerators != null) {
+        if (randomNumberGenerators != null && !counterBasedRandom) {
 //            System.out.println("resetRandom Seeds to length "+randomNumberGenerators.length);
             Random r = new Random(seed);
             for (int i = 0; i < randomNumberGenerators.length; i++) {
@@ -256,6 +350,14 @@ public class ThreadController implements ParticleListener, SimulationActionListe
      */
     public void finishedLoop(ThreadBarrier barrier) {
         lastFinishedBarrier = barrier;
+        if (scheduler == SCHEDULER.PHASER) {
+            //Called by the last arriving ParticleThread. No other thread can
+            //enter here until the next step is started.
+            if (run) {
+                finishedPhaserStep();
+            }
+            return;
+        }
         synchronized (this) {
             if (!run) {
                 return;
@@ -300,13 +402,14 @@ public class ThreadController implements ParticleListener, SimulationActionListe
     protected void startParticles() {
         //Only start the next loop, if the controller allows this action
         calculationLoopStarttime = System.currentTimeMillis();
-        if (run) {
+        if (run && scheduler == SCHEDULER.PHASER) {
+            startNextParticleLoop();
+        } else if (run) {
             new Thread() {
                 @Override
                 public void run() {
                     calledObject = barrier_sync;
-                    nextParticleBlockStartIndex = 0;
-                    nextRandomNumberBlockStartIndex = 0;
+                    resetParticleBlocks();
                     barrier_sync.startover();
                 }
             }.start();
@@ -352,13 +455,21 @@ public class ThreadController implements ParticleListener, SimulationActionListe
 
         this.particles = particles.toArray(new Particle[particles.size()]);
         Arrays.sort(this.particles, comp);
+        if (useParticleStore) {
+            this.particleStore = new ParticleStore(this.particles, control.getNetwork(), control.getSurface());
+        } else {
+            this.particleStore = null;
+        }
 
         //Generate random numbers
         recalculateRandomNumberGenerators();
         setSeed(seed);
         this.waitingParticleIndex = 0;
-        this.nextParticleBlockStartIndex = 0;
-        this.nextRandomNumberBlockStartIndex = 0;
+        clearActiveParticleIndices();
+        if (blockScheduler != null) {
+            blockScheduler.resetCosts();
+        }
+        resetParticleBlocks();
     }
 
     private void recalculateRandomNumberGenerators() {
@@ -477,6 +588,9 @@ public class ThreadController implements ParticleListener, SimulationActionListe
                 p.resetMovementLengths();
                 p.setWaiting();
             }
+            if (particleStore != null) {
+                particleStore.readFromParticles(0, particleStore.size);
+            }
         }
         setSeed(seed);
         if (control.getSurface() != null) {
@@ -486,8 +600,12 @@ public class ThreadController implements ParticleListener, SimulationActionListe
 //        barrier_positionUpdate.getThread().updateParticlePositions();
         calculationTimeElapsed = 0;
         steps = 0;
-        nextRandomNumberBlockStartIndex = 0;
         waitingParticleIndex = 0;
+        clearActiveParticleIndices();
+        if (blockScheduler != null) {
+            blockScheduler.resetCosts();
+        }
+        resetParticleBlocks();
 
         for (SimulationActionListener l : listener) {
             l.simulationRESET(this);
@@ -498,6 +616,10 @@ public class ThreadController implements ParticleListener, SimulationActionListe
      * Break locks of hanging Threads to reenable correct working of simulation.
      */
     public void breakBarrierLocks() {
+        if (scheduler == SCHEDULER.PHASER) {
+            System.out.println("Breaking barrier locks is not supported by the " + scheduler + " scheduler: " + barrier_particle);
+            return;
+        }
         int actualLoop = steps;
         System.out.println("call to break barrier locks in step " + steps);
         stop();
@@ -644,7 +766,9 @@ public class ThreadController implements ParticleListener, SimulationActionListe
         if (!initialized) {
             barrier_particle.initialize();
 //            barrier_positionUpdate.initialize();
-            barrier_sync.initialize();
+            if (scheduler == SCHEDULER.BARRIER) {
+                barrier_sync.initialize();
+            }
             return;
         }
     }
@@ -704,7 +828,6 @@ public class ThreadController implements ParticleListener, SimulationActionListe
 
         BARRIERS barrier;
         private int status = 0;
-        Object lastenvokenListener = null;
 
         public ControlThread() {
             super("ThreadController");
@@ -762,65 +885,17 @@ public class ThreadController implements ParticleListener, SimulationActionListe
                     return;
                 case SYNC:
                     status = 20;
-                    long calcStepTime = System.currentTimeMillis() - calculationLoopStarttime;
-                    calculationTimeHistory[steps % calculationTimeHistory.length] = calcStepTime;
-
-                    calculationTimeElapsed += calcStepTime;
-                    calculationLoopStarttime = System.currentTimeMillis();
-
-                    simulationTimeMS += deltaTime * 1000;
-                    status = 22;
-                    if (simulationTimeMS > simulationTimeEnd) {
-                        System.out.println("Simulation time end reached!");
-                        calculationFinished = true;
-                    }
-                    if (particles != null) {
-                        for (int i = waitingParticleIndex; i < particles.length; i++) {
-                            if (particles[i].getInsertionTime() <= simulationTimeMS) {
-                                waitingParticleIndex = i + 1;
-                            } else {
-                                waitingParticleIndex = i;
-                                break;
-                            }
-                        }
-
-                    }
-                    status = 24;
-                    //Send new Timeinformation to all timelines pipe/manhole/surface/soil
-                    control.getScenario().setActualTime(simulationTimeMS);
-                    if (ArrayTimeLineMeasurementContainer.instance != null) {
-                        ArrayTimeLineMeasurementContainer.instance.setActualTime(simulationTimeMS);
-                    }
+                    advanceSimulationTime();
                     status = 28;
                 case POSITION:
                     status = 30;
-                    for (SimulationActionListener l : listener) {
-                        try {
-                            lastenvokenListener = l;
-                            l.simulationSTEPFINISH(steps, this);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                    status = 31;
-                    if (calculationFinished) {
-                        run = false;
-                        System.out.println("Stopped after " + (System.currentTimeMillis() - calculationStartTime) / 1000 + "sec computation time.\telapsed calculation time=" + calculationTimeElapsed + "ms,  loops:" + steps);
-
-                        for (SimulationActionListener l : listener) {
-                            l.simulationFINISH(simulationTimeMS >= simulationTimeEnd, particlesReachedOutlet);
-                        }
+                    if (!informStepFinished(this)) {
                         return;
                     }
                     status = 32;
                 case HYDRODYNAMICS:
                     status = 40;
-                    barrier_particle.setSimulationtime(simulationTimeMS);
-                    calledObject = barrier_particle;
-                    nextParticleBlockStartIndex = 0;
-                    nextRandomNumberBlockStartIndex = 0;
-                    status = 42;
-                    barrier_particle.startover();
+                    startNextParticleLoop();
                     status = 44;
                     return;
                 default:
@@ -831,11 +906,230 @@ public class ThreadController implements ParticleListener, SimulationActionListe
         }
     }
 
+    /**
+     * Called by the last ParticleThread arriving at the PhaserThreadBarrier.
+     * Runs synchronization and listener phase in the calling thread and opens
+     * the barrier for the next particle loop.
+     */
+    private void finishedPhaserStep() {
+        barrier_sync.setSimulationtime(simulationTimeMS);
+        calledObject = barrier_sync;
+        steps++;
+        if (!syncThread_pipes.isMeasurementsInitialized()) {
+            syncThread_pipes.initializeMeasurements();
+        }
+        syncThread_pipes.synchronizeMeasurements();
+        if (!run) {
+            return;
+        }
+        advanceSimulationTime();
+        if (!informStepFinished(this)) {
+            return;
+        }
+        startNextParticleLoop();
+    }
+
+    /**
+     * Stores the calculation time of the finished step, increases the
+     * simulation time by one timestep and releases particles that are injected
+     * until then.
+     */
+    private void advanceSimulationTime() {
+        long calcStepTime = System.currentTimeMillis() - calculationLoopStarttime;
+        calculationTimeHistory[steps % calculationTimeHistory.length] = calcStepTime;
+
+        calculationTimeElapsed += calcStepTime;
+        calculationLoopStarttime = System.currentTimeMillis();
+
+        simulationTimeMS += deltaTime * 1000;
+        if (simulationTimeMS > simulationTimeEnd) {
+            System.out.println("Simulation time end reached!");
+            calculationFinished = true;
+        }
+        if (particles != null) {
+            for (int i = waitingParticleIndex; i < particles.length; i++) {
+                if (particles[i].getInsertionTime() <= simulationTimeMS) {
+                    waitingParticleIndex = i + 1;
+                } else {
+                    waitingParticleIndex = i;
+                    break;
+                }
+            }
+
+        }
+        //Send new Timeinformation to all timelines pipe/manhole/surface/soil
+        control.getScenario().setActualTime(simulationTimeMS);
+        if (ArrayTimeLineMeasurementContainer.instance != null) {
+            ArrayTimeLineMeasurementContainer.instance.setActualTime(simulationTimeMS);
+        }
+        updateHydraulicState(false);
+    }
+
+    /**
+     * Interpolates the hydraulic values of all pipes and manholes and builds
+     * the manhole routing decisions for the new timestep before the particle
+     * threads start.
+     *
+     * @param refresh recalculate even if the actual time has not changed
+     */
+    private void updateHydraulicState(boolean refresh) {
+        if (control.getNetwork() == null || control.getScenario() == null || control.getScenario().getTimesPipe() == null) {
+            return;
+        }
+        if (NetworkHydraulicState.enabled) {
+            NetworkHydraulicState state = NetworkHydraulicState.prepare(control.getNetwork().getPipes(), control.getNetwork().getManholes(), control.getScenario().getTimesPipe());
+            if (refresh) {
+                state.update();
+            }
+        }
+        if (FlowCalculatorMixed.useRoutingTable) {
+            ManholeRoutingTable table = FlowCalculatorMixed.prepareRoutingTable(control.getNetwork().getManholes(), control.getScenario().getTimesPipe());
+            if (refresh) {
+                table.update();
+            }
+        }
+    }
+
+    /**
+     * Inform listeners about the finished step. If the end of the simulation
+     * is reached, the listeners are informed about the finish.
+     *
+     * @param caller
+     * @return false if the simulation is finished.
+     */
+    private boolean informStepFinished(Object caller) {
+        SimulationStepSnapshot snapshot = null;
+        for (SimulationActionListener l : listener) {
+            try {
+                lastInvokedListener = l;
+                if (l instanceof AsyncSimulationListener) {
+                    if (snapshot == null) {
+                        snapshot = createStepSnapshot();
+                    }
+                    ((AsyncSimulationListener) l).publish(snapshot);
+                } else {
+                    l.simulationSTEPFINISH(steps, caller);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (calculationFinished) {
+            run = false;
+            System.out.println("Stopped after " + (System.currentTimeMillis() - calculationStartTime) / 1000 + "sec computation time.\telapsed calculation time=" + calculationTimeElapsed + "ms,  loops:" + steps);
+
+            for (SimulationActionListener l : listener) {
+                l.simulationFINISH(simulationTimeMS >= simulationTimeEnd, particlesReachedOutlet);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private void startNextParticleLoop() {
+        barrier_particle.setSimulationtime(simulationTimeMS);
+        calledObject = barrier_particle;
+        resetParticleBlocks();
+        barrier_particle.startover();
+    }
+
+    /**
+     * Start handing out particle blocks from the beginning for the next
+     * particle loop.
+     */
+    private void resetParticleBlocks() {
+        nextParticleBlockStartIndex = 0;
+        nextRandomNumberBlockStartIndex = 0;
+        if (useActiveCompaction) {
+            compactActiveParticleIndices();
+        }
+        if (useWorkStealing && blockScheduler != null) {
+            blockScheduler.prepareStep(getNumberOfScheduledParticles());
+        }
+    }
+
+    /**
+     * Removes particles, that have left the simulation, from the active list
+     * and appends the particles released since the last call. Called in the
+     * synchronization phase while no ParticleThread is moving particles.
+     */
+    private void compactActiveParticleIndices() {
+        if (particles == null) {
+            clearActiveParticleIndices();
+            return;
+        }
+        if (activeParticleIndices == null || activeParticleIndices.length != particles.length) {
+            activeParticleIndices = new int[particles.length];
+            numberOfActiveIndices = 0;
+            activeIndicesReleased = 0;
+        }
+        int n = 0;
+        for (int k = 0; k < numberOfActiveIndices; k++) {
+            int i = activeParticleIndices[k];
+            if (!hasLeftSimulation(i)) {
+                activeParticleIndices[n++] = i;
+            }
+        }
+        for (int i = activeIndicesReleased; i < waitingParticleIndex; i++) {
+            if (!hasLeftSimulation(i)) {
+                activeParticleIndices[n++] = i;
+            }
+        }
+        activeIndicesReleased = Math.max(activeIndicesReleased, waitingParticleIndex);
+        numberOfActiveIndices = n;
+    }
+
+    private void clearActiveParticleIndices() {
+        numberOfActiveIndices = 0;
+        activeIndicesReleased = 0;
+    }
+
+    private boolean hasLeftSimulation(int index) {
+        if (particleStore != null) {
+            return particleStore.status[index] == ParticleStore.LEFTSIMULATION;
+        }
+        return particles[index].hasLeftSimulation();
+    }
+
+    /**
+     * Number of entries the particle blocks of one step are cut from. This is
+     * the length of the active list, if compaction is used, otherwise the
+     * index of the first particle waiting for its release.
+     *
+     * @return
+     */
+    private int getNumberOfScheduledParticles() {
+        if (useActiveCompaction) {
+            return numberOfActiveIndices;
+        }
+        return waitingParticleIndex;
+    }
+
+    /**
+     * Indices of the particles to treat, if blocks are cut from the active
+     * list. Null if blocks are ranges of particle indices.
+     *
+     * @return
+     */
+    int[] getActiveParticleIndices() {
+        if (useActiveCompaction) {
+            return activeParticleIndices;
+        }
+        return null;
+    }
+
+    public SCHEDULER getScheduler() {
+        return scheduler;
+    }
+
     /**
      * Cleans all Threads from Particles of an old simulation network/scenario
      */
     public void cleanFromParticles() {
         this.particles = null;
+        this.particleStore = null;
+        this.activeParticleIndices = null;
+        clearActiveParticleIndices();
     }
 
     public long getStartOffset() {
@@ -847,6 +1141,24 @@ public class ThreadController implements ParticleListener, SimulationActionListe
             return 0;
         }
         int active = 0;
+        if (useActiveCompaction && activeParticleIndices != null) {
+            //Active particles are all part of the active list.
+            for (int k = 0; k < numberOfActiveIndices; k++) {
+                int i = activeParticleIndices[k];
+                if (particleStore != null ? particleStore.status[i] > 0 : particles[i].isActive()) {
+                    active++;
+                }
+            }
+            return active;
+        }
+        if (particleStore != null) {
+            for (int i = 0; i < particleStore.size; i++) {
+                if (particleStore.status[i] > 0) {
+                    active++;
+                }
+            }
+            return active;
+        }
         for (Particle particle : particles) {
             if (particle.isActive()) {
                 active++;
@@ -865,6 +1177,14 @@ public class ThreadController implements ParticleListener, SimulationActionListe
             return 0;
         }
         int waiting = 0;
+        if (particleStore != null) {
+            for (int i = 0; i < particleStore.size; i++) {
+                if (particleStore.status[i] == ParticleStore.WAITING) {
+                    waiting++;
+                }
+            }
+            return waiting;
+        }
         for (Particle particle : particles) {
             if (particle.isWaiting()) {
                 waiting++;
@@ -884,8 +1204,57 @@ public class ThreadController implements ParticleListener, SimulationActionListe
         this.listener.add(listen);
     }
 
+    /**
+     * Adds a listener that is informed on its own thread. The simulation does
+     * not wait for it. Finished steps are handed over as
+     * {@link SimulationStepSnapshot}.
+     *
+     * @param listen
+     * @param policy handling of snapshots if the listener can not keep up
+     * @param capacity number of snapshots that can be queued
+     * @return the asynchronous wrapper of the listener
+     */
+    public AsyncSimulationListener addAsyncSimulationListener(SimulationActionListener listen, AsyncSimulationListener.POLICY policy, int capacity) {
+        AsyncSimulationListener async = new AsyncSimulationListener(listen, policy, capacity);
+        this.listener.add(async);
+        return async;
+    }
+
+    /**
+     * Removes the listener. Asynchronous listeners can be removed by their
+     * wrapper or by the wrapped listener.
+     *
+     * @param listen
+     * @return
+     */
     public boolean removeSimulationListener(SimulationActionListener listen) {
-        return this.listener.remove(listen);
+        if (this.listener.remove(listen)) {
+            if (listen instanceof AsyncSimulationListener) {
+                ((AsyncSimulationListener) listen).shutdown();
+            }
+            return true;
+        }
+        for (SimulationActionListener l : listener) {
+            if (l instanceof AsyncSimulationListener && ((AsyncSimulationListener) l).getListener() == listen) {
+                this.listener.remove(l);
+                ((AsyncSimulationListener) l).shutdown();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Immutable state of the finished step for asynchronous listeners.
+     *
+     * @return
+     */
+    private SimulationStepSnapshot createStepSnapshot() {
+        int live = useActiveCompaction && activeParticleIndices != null ? numberOfActiveIndices : -1;
+        if (syncThread_pipes != null) {
+            return new SimulationStepSnapshot(steps, simulationTimeMS, calculationTimeElapsed, waitingParticleIndex, live, syncThread_pipes.getMeasuredTimeIndex(), syncThread_pipes.getMeasuredPipeIDs());
+        }
+        return new SimulationStepSnapshot(steps, simulationTimeMS, calculationTimeElapsed, waitingParticleIndex, live, -1, null);
     }
 
     /**
@@ -914,7 +1283,7 @@ public class ThreadController implements ParticleListener, SimulationActionListe
                             if (!pauseRevokerThread && (run && steps == laststep)) {
                                 // something is incredibly slow. prepare output to console
                                 StringBuilder str = new StringBuilder("--" + getClass() + "--detected hanging at loop " + steps + " called barrier: " + (calledObject) + "   :");
-                                str.append("\n lastfinishedBarrier: " + lastFinishedBarrier + "  :  " + controlThread.barrier + ",," + "\t control.status=" + controlThread.status + " (" + controlThread.getState() + ")  listener: " + controlThread.lastenvokenListener);
+                                str.append("\n lastfinishedBarrier: " + lastFinishedBarrier + "  :  " + controlThread.barrier + ",," + "\t control.status=" + controlThread.status + " (" + controlThread.getState() + ")  listener: " + lastInvokedListener);
                                 int someoneblocked = -1;
                                 int someoneRunning = -1;
 
@@ -1070,7 +1439,8 @@ public class ThreadController implements ParticleListener, SimulationActionListe
      * there is nothing to do at the moment.; [0] first index of particle from
      * ThreadController to calculate; [1] last index (exclude) of particle to
      * calculate; [2] index of Random number generator to select to calculate
-     * the particles
+     * the particles. If active compaction is used, [0] and [1] are positions
+     * in the list of active particle indices.
      *
      * @param values optional array to be filled and returned. insert the
      * 3-element long array of the previous step to prevent allocation of new
@@ -1084,7 +1454,8 @@ public class ThreadController implements ParticleListener, SimulationActionListe
         }
         lock.lock();
         try {
-            if (nextParticleBlockStartIndex >= waitingParticleIndex) {
+            int scheduled = getNumberOfScheduledParticles();
+            if (nextParticleBlockStartIndex >= scheduled) {
 //                System.out.println("return null,  start:" + nextParticleBlockStartIndex + ",  waiting: " + waitingParticleIndex);
                 retur[0] = -1;
                 return retur;
@@ -1092,8 +1463,8 @@ public class ThreadController implements ParticleListener, SimulationActionListe
 
             retur[0] = nextParticleBlockStartIndex;
             nextParticleBlockStartIndex += treatblocksize;
-            if (nextParticleBlockStartIndex >= waitingParticleIndex) {
-                nextParticleBlockStartIndex = waitingParticleIndex;
+            if (nextParticleBlockStartIndex >= scheduled) {
+                nextParticleBlockStartIndex = scheduled;
             }
             retur[1] = nextParticleBlockStartIndex; //exclude this index
             retur[2] = nextRandomNumberBlockStartIndex;
@@ -1108,14 +1479,141 @@ public class ThreadController implements ParticleListener, SimulationActionListe
         return retur;
     }
 
+    /**
+     * returns the first and last index of particles to be treated by the
+     * requesting thread. If work stealing is enabled, the block is taken from
+     * the span of this thread or stolen from another thread's span.
+     *
+     * @param values optional array to be filled and returned.
+     * @param threadIndex index of the requesting ParticleThread
+     * @return [0]=-1 if there is nothing to do and thread should wait.
+     */
+    public int[] getNextParticlesToTreat(int[] values, int threadIndex) {
+        if (!useWorkStealing || blockScheduler == null) {
+            return getNextParticlesToTreat(values);
+        }
+        int[] retur = values;
+        if (retur == null) {
+            retur = new int[3];
+        }
+        int block = blockScheduler.nextBlock(threadIndex);
+        if (block < 0) {
+            retur[0] = -1;
+            return retur;
+        }
+        retur[0] = block * treatblocksize;
+        retur[1] = Math.min(retur[0] + treatblocksize, getNumberOfScheduledParticles());
+        //Random number generator is bound to the block.
+        retur[2] = block;
+        return retur;
+    }
+
+    /**
+     * ParticleThreads report the calculation time of a block to balance the
+     * work of the next step.
+     *
+     * @param block index of the block (=index of random number generator)
+     * @param nanos
+     */
+    public void finishedParticleBlock(int block, long nanos) {
+        if (useWorkStealing && blockScheduler != null) {
+            blockScheduler.blockFinished(block, nanos);
+        }
+    }
+
+    public boolean isUsingActiveCompaction() {
+        return useActiveCompaction;
+    }
+
+    /**
+     * Cut particle blocks from the compacted list of particles that have not
+     * left the simulation. Can not be changed while the simulation is
+     * running.
+     *
+     * @param useActiveCompaction
+     */
+    public void setUseActiveCompaction(boolean useActiveCompaction) {
+        if (run) {
+            throw new SecurityException("Can not change the particle block distribution while Threads are running, inconsistency warning!");
+        }
+        this.useActiveCompaction = useActiveCompaction;
+        clearActiveParticleIndices();
+        resetParticleBlocks();
+    }
+
+    public boolean isUsingWorkStealing() {
+        return useWorkStealing;
+    }
+
+    /**
+     * Distribute particle blocks lock free with work stealing instead of
+     * handing them out one after another under a lock. Can not be changed
+     * while the simulation is running.
+     *
+     * @param useWorkStealing
+     */
+    public void setUseWorkStealing(boolean useWorkStealing) {
+        if (run) {
+            throw new SecurityException("Can not change the particle block distribution while Threads are running, inconsistency warning!");
+        }
+        this.useWorkStealing = useWorkStealing;
+        resetParticleBlocks();
+    }
+
     public long getSeed() {
         return seed;
     }
 
+    /**
+     * All particles of the simulation. If the ParticleStore is used, the
+     * particle objects are updated with the actual state of the store before
+     * they are returned.
+     *
+     * @return
+     */
     public Particle[] getParticles() {
+        if (particleStore != null) {
+            particleStore.writeToParticles(0, particleStore.size);
+        }
         return particles;
     }
 
+    /**
+     * Primitive array storage of the particles or null if the particle objects
+     * are used for transport.
+     *
+     * @return
+     */
+    public ParticleStore getParticleStore() {
+        return particleStore;
+    }
+
+    public boolean isUsingParticleStore() {
+        return useParticleStore;
+    }
+
+    /**
+     * Transport particles in primitive arrays (ParticleStore) instead of the
+     * Particle objects. Can not be changed while the simulation is running.
+     *
+     * @param useParticleStore
+     */
+    public void setUseParticleStore(boolean useParticleStore) {
+        if (run) {
+            throw new SecurityException("Can not change the particle storage while Threads are running, inconsistency warning!");
+        }
+        this.useParticleStore = useParticleStore;
+        if (particles == null) {
+            return;
+        }
+        if (useParticleStore && particleStore == null) {
+            particleStore = new ParticleStore(particles, control.getNetwork(), control.getSurface());
+        } else if (!useParticleStore && particleStore != null) {
+            particleStore.writeToParticles(0, particleStore.size);
+            particleStore = null;
+        }
+    }
+
     /**
      * Number of particles processed by a Particlethread before asking for the
      * next block.
@@ -1135,8 +1633,10 @@ public class ThreadController implements ParticleListener, SimulationActionListe
      */
     public void setParticleblocksize(int treatblocksize) {
         this.treatblocksize = treatblocksize;
+        blockScheduler = new ParticleBlockScheduler(barrier_particle.getThreads().size(), treatblocksize);
         recalculateRandomNumberGenerators();
         setSeed(seed);
+        resetParticleBlocks();
     }
 
 }
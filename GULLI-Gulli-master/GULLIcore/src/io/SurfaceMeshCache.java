@@ -0,0 +1,442 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import model.surface.MeshTopology;
+import model.surface.Surface;
+
+/**
+ * Binary container of a surface mesh with its precomputed topology. The
+ * container is written once from any loaded {@link Surface} (HE text files,
+ * OGS mesh, ...) and afterwards read from a memory mapped file without any
+ * text parsing, so even city sized meshes are available in a fraction of a
+ * second.
+ *
+ * File layout (big endian):<br>
+ * header (64 bytes): magic, version, number of vertices, number of
+ * triangles, content flags, timestamp of the source, complete flag, length of
+ * the reference system string, number of index map entries, number of moore
+ * neighbour entries, number of node neighbour entries<br>
+ * reference system (UTF-8)<br>
+ * vertices [nV][x,y,z] double, triangle nodes [nT][3] int, neumann neighbours
+ * [nT][3] int, triangle midpoints [nT][x,y,z] double, triangle areas [nT]
+ * float, edge lengths [nT][3] float<br>
+ * moore neighbours: count per triangle [nT] int, triangle IDs int<br>
+ * node neighbours: count per node [nV] int, triangle IDs int, optional
+ * weights double<br>
+ * index map [entries][key,value] int
+ *
+ * @author saemann
+ */
+public class SurfaceMeshCache {
+
+    public static boolean verbose = false;
+
+    /**
+     * File extension of mesh cache files. The cache of a HE surface model
+     * directory is stored as "surface.meshcache" inside the directory, the
+     * cache of a single mesh file "mesh.msh" as "mesh.msh.meshcache" next to
+     * it.
+     */
+    public static final String FILEEXTENSION = ".meshcache";
+
+    private static final long MAGIC = 0x47554C4C494D5348L;//GULLIMSH
+    private static final int VERSION = 1;
+    private static final int HEADERBYTES = 64;
+
+    private static final int FLAG_MOORE = 1, FLAG_NODES = 2, FLAG_WEIGHTS = 4;
+
+    /**
+     * The file where the mesh cache of the given source is stored.
+     *
+     * @param source directory of a HE surface model or a single mesh file
+     * @return
+     */
+    public static File getCacheFile(File source) {
+        if (source.isDirectory()) {
+            return new File(source, "surface" + FILEEXTENSION);
+        }
+        return new File(source.getParentFile(), source.getName() + FILEEXTENSION);
+    }
+
+    /**
+     * Latest modification of all given source files. Files that do not exist
+     * are ignored.
+     *
+     * @param sources
+     * @return
+     */
+    public static long getSourceTimestamp(File... sources) {
+        long t = 0;
+        for (File source : sources) {
+            if (source != null && source.exists()) {
+                t = Math.max(t, source.lastModified());
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Reads the source timestamp of a complete cache file without loading the
+     * mesh.
+     *
+     * @param file
+     * @return timestamp of the source or -1 if the file is no valid cache.
+     */
+    public static long readSourceTimestamp(File file) {
+        if (file == null || !file.exists()) {
+            return -1;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = readHeader(channel, file);
+            return header.getLong(24);
+        } catch (IOException ex) {
+            if (verbose) {
+                System.err.println("Can not read mesh cache " + file + ": " + ex.getLocalizedMessage());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Opens the cache if it exists and was created from a source with the
+     * given timestamp.
+     *
+     * @param file cache file
+     * @param sourceTimestamp
+     * @return Surface or null if there is no valid cache.
+     */
+    public static Surface openIfCurrent(File file, long sourceTimestamp) {
+        if (readSourceTimestamp(file) != sourceTimestamp) {
+            return null;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Surface surf = read(file);
+            if (verbose) {
+                System.out.println("Loading mesh cache " + file + " took " + (System.currentTimeMillis() - start) + " ms.");
+            }
+            return surf;
+        } catch (IOException ex) {
+            System.err.println("Can not read mesh cache " + file + ": " + ex.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel, File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADERBYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Unexpected end of header in " + file);
+            }
+        }
+        header.flip();
+        if (header.getLong(0) != MAGIC) {
+            throw new IOException(file + " is not a mesh cache file.");
+        }
+        if (header.getInt(8) != VERSION) {
+            throw new IOException("Unsupported version " + header.getInt(8) + " of mesh cache " + file);
+        }
+        if (header.getInt(32) != 1) {
+            throw new IOException("Mesh cache " + file + " is incomplete.");
+        }
+        return header;
+    }
+
+    /**
+     * Reads a surface from the memory mapped cache file. Topology (moore and
+     * node neighbours, weights), midpoints, areas and edge lengths are set as
+     * stored and need not to be calculated again.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file is not a complete cache file.
+     */
+    public static Surface read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = readHeader(channel, file);
+            int nV = header.getInt(12);
+            int nT = header.getInt(16);
+            int flags = header.getInt(20);
+            int crsBytes = header.getInt(36);
+            int mapEntries = header.getInt(40);
+            int mooreEntries = header.getInt(44);
+            int nodeEntries = header.getInt(48);
+
+            long position = HEADERBYTES;
+            byte[] crs = new byte[crsBytes];
+            map(channel, position, crsBytes).get(crs);
+            position += crsBytes;
+
+            double[][] vertices = new double[nV][3];
+            readRows(map(channel, position, 24L * nV).asDoubleBuffer(), vertices);
+            position += 24L * nV;
+
+            int[][] triangleNodes = new int[nT][3];
+            readRows(map(channel, position, 12L * nT).asIntBuffer(), triangleNodes);
+            position += 12L * nT;
+
+            int[][] neumann = new int[nT][3];
+            readRows(map(channel, position, 12L * nT).asIntBuffer(), neumann);
+            position += 12L * nT;
+
+            double[][] mids = new double[nT][3];
+            readRows(map(channel, position, 24L * nT).asDoubleBuffer(), mids);
+            position += 24L * nT;
+
+            float[] areas = new float[nT];
+            map(channel, position, 4L * nT).asFloatBuffer().get(areas);
+            position += 4L * nT;
+
+            float[][] edgeLength = new float[nT][3];
+            FloatBuffer fb = map(channel, position, 12L * nT).asFloatBuffer();
+            for (float[] row : edgeLength) {
+                fb.get(row);
+            }
+            position += 12L * nT;
+
+            MeshTopology topology = null;
+            if ((flags & FLAG_MOORE) != 0 && (flags & FLAG_NODES) != 0) {
+                int[] mooreOffsets = readOffsets(map(channel, position, 4L * nT).asIntBuffer(), nT);
+                position += 4L * nT;
+                int[] mooreTriangles = new int[mooreEntries];
+                map(channel, position, 4L * mooreEntries).asIntBuffer().get(mooreTriangles);
+                position += 4L * mooreEntries;
+
+                int[] nodeOffsets = readOffsets(map(channel, position, 4L * nV).asIntBuffer(), nV);
+                position += 4L * nV;
+                int[] nodeTriangles = new int[nodeEntries];
+                map(channel, position, 4L * nodeEntries).asIntBuffer().get(nodeTriangles);
+                position += 4L * nodeEntries;
+                double[] weights = null;
+                if ((flags & FLAG_WEIGHTS) != 0) {
+                    weights = new double[nodeEntries];
+                    map(channel, position, 8L * nodeEntries).asDoubleBuffer().get(weights);
+                    position += 8L * nodeEntries;
+                }
+                topology = new MeshTopology(nodeOffsets, nodeTriangles, weights, mooreOffsets, mooreTriangles);
+            }
+
+            HashMap<Integer, Integer> mapIndizes = null;
+            if (mapEntries >= 0) {
+                IntBuffer ib = map(channel, position, 8L * mapEntries).asIntBuffer();
+                mapIndizes = new HashMap<>((int) (mapEntries / 0.75f) + 1);
+                for (int i = 0; i < mapEntries; i++) {
+                    mapIndizes.put(ib.get(), ib.get());
+                }
+            }
+
+            Surface surf = new Surface(vertices, triangleNodes, neumann, mapIndizes, crsBytes > 0 ? new String(crs, StandardCharsets.UTF_8) : null);
+            surf.setTriangleMids(mids);
+            surf.setTriangleAreas(areas);
+            surf.setEdgeLength(edgeLength);
+            surf.setTopology(topology);
+            return surf;
+        }
+    }
+
+    /**
+     * Writes the mesh and its topology to a cache file. Missing topology
+     * (node and moore neighbours, areas, edge lengths) is calculated before
+     * writing, so the cache is complete independent of the source the surface
+     * was loaded from. The file is written to a temporary file first and
+     * renamed after completion.
+     *
+     * @param surf
+     * @param file target cache file
+     * @param sourceTimestamp timestamp of the source files to detect outdated
+     * caches
+     * @throws IOException
+     */
+    public static void write(Surface surf, File file, long sourceTimestamp) throws IOException {
+        double[][] vertices = surf.getVerticesPosition();
+        int[][] triangleNodes = surf.getTriangleNodes();
+        int nV = vertices.length;
+        int nT = triangleNodes.length;
+
+        if (surf.getTriangleMids() == null) {
+            double[][] mids = new double[nT][3];
+            for (int i = 0; i < nT; i++) {
+                for (int j = 0; j < 3; j++) {
+                    mids[i][j] = (vertices[triangleNodes[i][0]][j] + vertices[triangleNodes[i][1]][j] + vertices[triangleNodes[i][2]][j]) / 3.;
+                }
+            }
+            surf.setTriangleMids(mids);
+        }
+        if (surf.getTraingleAreas() == null) {
+            surf.calcTriangleAreas();
+        }
+        if (surf.getEdgeLength() == null) {
+            surf.calcEdgeLengths();
+        }
+        MeshTopology topology = surf.getTopology();
+        if (topology == null) {
+            //Same references as in the NODE2TRIANGLE and MOORE files, but in compact form.
+            topology = MeshTopology.build(triangleNodes, nV, surf.weight != null);
+            surf.setTopology(topology);
+        }
+        double[] weights = topology.getNodeWeights();
+
+        int flags = FLAG_MOORE | FLAG_NODES | (weights != null ? FLAG_WEIGHTS : 0);
+        int mooreEntries = topology.getMooreTriangles().length;
+        int nodeEntries = topology.getNodeTriangles().length;
+        String crs = surf.getSpatialReferenceCode();
+        byte[] crsBytes = crs == null ? new byte[0] : crs.getBytes(StandardCharsets.UTF_8);
+        HashMap<Integer, Integer> mapIndizes = surf.mapIndizes;
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            dos.writeLong(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(nV);
+            dos.writeInt(nT);
+            dos.writeInt(flags);
+            dos.writeLong(sourceTimestamp);
+            dos.writeInt(0);//complete flag, set after all data is written
+            dos.writeInt(crsBytes.length);
+            dos.writeInt(mapIndizes == null ? -1 : mapIndizes.size());
+            dos.writeInt(mooreEntries);
+            dos.writeInt(nodeEntries);
+            dos.write(new byte[HEADERBYTES - 52]);
+            dos.write(crsBytes);
+
+            for (double[] v : vertices) {
+                dos.writeDouble(v[0]);
+                dos.writeDouble(v[1]);
+                dos.writeDouble(v[2]);
+            }
+            for (int[] t : triangleNodes) {
+                dos.writeInt(t[0]);
+                dos.writeInt(t[1]);
+                dos.writeInt(t[2]);
+            }
+            for (int[] nb : surf.getNeighbours()) {
+                dos.writeInt(nb[0]);
+                dos.writeInt(nb[1]);
+                dos.writeInt(nb[2]);
+            }
+            for (double[] m : surf.getTriangleMids()) {
+                dos.writeDouble(m[0]);
+                dos.writeDouble(m[1]);
+                dos.writeDouble(m[2]);
+            }
+            for (float a : surf.getTraingleAreas()) {
+                dos.writeFloat(a);
+            }
+            for (float[] e : surf.getEdgeLength()) {
+                dos.writeFloat(e[0]);
+                dos.writeFloat(e[1]);
+                dos.writeFloat(e[2]);
+            }
+            writeCSR(dos, topology.getMooreOffsets(), topology.getMooreTriangles());
+            writeCSR(dos, topology.getNodeOffsets(), topology.getNodeTriangles());
+            if (weights != null) {
+                for (double w : weights) {
+                    dos.writeDouble(w);
+                }
+            }
+            if (mapIndizes != null) {
+                for (Map.Entry<Integer, Integer> e : mapIndizes.entrySet()) {
+                    dos.writeInt(e.getKey());
+                    dos.writeInt(e.getValue());
+                }
+            }
+        }
+        //Mark as complete
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            channel.force(false);
+            ByteBuffer complete = ByteBuffer.allocate(4);
+            complete.putInt(0, 1);
+            while (complete.hasRemaining()) {
+                channel.write(complete, 32 + complete.position());
+            }
+            channel.force(true);
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Can not replace existing mesh cache " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Can not rename " + tmp + " to " + file);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Section of " + bytes + " bytes exceeds the mappable size.");
+        }
+        if (position + bytes > channel.size()) {
+            throw new IOException("Mesh cache is truncated.");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+    }
+
+    private static void readRows(DoubleBuffer buffer, double[][] target) {
+        for (double[] row : target) {
+            buffer.get(row);
+        }
+    }
+
+    private static void readRows(IntBuffer buffer, int[][] target) {
+        for (int[] row : target) {
+            buffer.get(row);
+        }
+    }
+
+    /**
+     * Reads counts per row and converts them to CSR offsets.
+     */
+    private static int[] readOffsets(IntBuffer buffer, int length) {
+        int[] offsets = new int[length + 1];
+        for (int i = 0; i < length; i++) {
+            offsets[i + 1] = offsets[i] + Math.max(0, buffer.get());
+        }
+        return offsets;
+    }
+
+    /**
+     * Writes counts per row followed by the flat entries.
+     */
+    private static void writeCSR(DataOutputStream dos, int[] offsets, int[] values) throws IOException {
+        for (int i = 0; i < offsets.length - 1; i++) {
+            dos.writeInt(offsets[i + 1] - offsets[i]);
+        }
+        for (int v : values) {
+            dos.writeInt(v);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io;
+
+import io.extran.HE_GDB_IO;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import main.java.io.zrz.jgdb.GeoFeature;
+import main.java.io.zrz.jgdb.GeoLayer;
+import model.surface.SurfaceVelocityLoader;
+import model.surface.SurfaceWaterlevelLoader;
+
+/**
+ * Binary cache of the surface results (triangle velocities, waterlevels and
+ * elevation) of a hydrodynamic simulation. The cache is created once from a
+ * result database (see {@link #create(io.extran.HE_GDB_IO, java.io.File)})
+ * and afterwards served from memory mapped buffers. Reading a triangle's
+ * timeline needs no search and no locks, so repeated simulations on the same
+ * result start without the expensive lookup in the GDB.
+ *
+ * File layout (big endian):<br>
+ * header (64 bytes): magic, version, number of triangles, number of
+ * waterlevel timesteps, number of velocity timesteps, timestamp of the
+ * source, complete flag<br>
+ * flags (1 byte per triangle): bit0 waterlevel found, bit1 velocity found<br>
+ * records (triangle-major, fixed size): z, waterlevel[wlTimes],
+ * velocity[vTimes][x,y]
+ *
+ * @author saemann
+ */
+public class SurfaceResultCache implements SurfaceVelocityLoader, SurfaceWaterlevelLoader {
+
+    public static boolean verbose = false;
+
+    /**
+     * File extension of cache files. The cache of a result database
+     * "result.gdb" is stored in "result.gdb.surfcache" next to it.
+     */
+    public static final String FILEEXTENSION = ".surfcache";
+
+    private static final long MAGIC = 0x47554C4C49535243L;//GULLISRC
+    private static final int VERSION = 1;
+    private static final int HEADERBYTES = 64;
+
+    private static final byte FLAG_WATERLEVEL = 1, FLAG_VELOCITY = 2;
+
+    private final File file;
+
+    private final int numberOfTriangles, waterlevelTimes, velocityTimes;
+
+    private final long sourceTimestamp;
+
+    /**
+     * Bytes per triangle record.
+     */
+    private final int recordBytes;
+    /**
+     * Position of the first velocity value inside a record.
+     */
+    private final int velocityOffset;
+
+    private final int recordsPerSegment;
+
+    private final MappedByteBuffer flags;
+    private final MappedByteBuffer[] segments;
+
+    private SurfaceResultCache(File file, int numberOfTriangles, int waterlevelTimes, int velocityTimes, long sourceTimestamp, MappedByteBuffer flags, MappedByteBuffer[] segments) {
+        this.file = file;
+        this.numberOfTriangles = numberOfTriangles;
+        this.waterlevelTimes = waterlevelTimes;
+        this.velocityTimes = velocityTimes;
+        this.sourceTimestamp = sourceTimestamp;
+        this.recordBytes = recordBytes(waterlevelTimes, velocityTimes);
+        this.velocityOffset = 4 * (1 + waterlevelTimes);
+        this.recordsPerSegment = recordsPerSegment(recordBytes);
+        this.flags = flags;
+        this.segments = segments;
+    }
+
+    private static int recordBytes(int waterlevelTimes, int velocityTimes) {
+        return 4 * (1 + waterlevelTimes + 2 * velocityTimes);
+    }
+
+    private static int recordsPerSegment(int recordBytes) {
+        return Integer.MAX_VALUE / recordBytes;
+    }
+
+    private static long dataStart(int numberOfTriangles) {
+        return HEADERBYTES + ((numberOfTriangles + 7) / 8) * 8L;
+    }
+
+    /**
+     * The file where the cache of this result database is stored.
+     *
+     * @param gdbDirectory
+     * @return
+     */
+    public static File getCacheFile(File gdbDirectory) {
+        return new File(gdbDirectory.getParentFile(), gdbDirectory.getName() + FILEEXTENSION);
+    }
+
+    /**
+     * Latest modification of the source. For directories (GDB) the latest
+     * modification of all contained files is used.
+     *
+     * @param source
+     * @return
+     */
+    public static long getSourceTimestamp(File source) {
+        long t = source.lastModified();
+        if (source.isDirectory()) {
+            File[] files = source.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    t = Math.max(t, f.lastModified());
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Opens the cache of the given database. If no valid cache exists, it is
+     * created.
+     *
+     * @param gdb
+     * @return cache or null if the cache could neither be opened nor created.
+     */
+    public static SurfaceResultCache openOrCreate(HE_GDB_IO gdb) {
+        File cacheFile = getCacheFile(gdb.getDirectory());
+        long timestamp = getSourceTimestamp(gdb.getDirectory());
+        if (cacheFile.exists()) {
+            try {
+                SurfaceResultCache cache = open(cacheFile);
+                if (cache.sourceTimestamp == timestamp
+                        && cache.waterlevelTimes == Math.max(0, gdb.getNumberOfWaterlevelTimeSteps())
+                        && cache.velocityTimes == Math.max(0, gdb.getNumberOfVelocityTimeSteps())) {
+                    return cache;
+                }
+                if (verbose) {
+                    System.out.println("Surface cache " + cacheFile + " is outdated.");
+                }
+            } catch (IOException ex) {
+                System.err.println("Can not read surface cache " + cacheFile + ": " + ex.getLocalizedMessage());
+            }
+        }
+        try {
+            long start = System.currentTimeMillis();
+            SurfaceResultCache cache = create(gdb, cacheFile);
+            if (verbose) {
+                System.out.println("Creating surface cache " + cacheFile + " took " + ((System.currentTimeMillis() - start) / 1000) + " s.");
+            }
+            return cache;
+        } catch (Exception ex) {
+            System.err.println("Can not create surface cache " + cacheFile + ": " + ex.getLocalizedMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Opens an existing cache file.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file is not a complete cache file.
+     */
+    public static SurfaceResultCache open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADERBYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Unexpected end of header in " + file);
+                }
+            }
+            header.flip();
+            if (header.getLong(0) != MAGIC) {
+                throw new IOException(file + " is not a surface cache file.");
+            }
+            if (header.getInt(8) != VERSION) {
+                throw new IOException("Unsupported version " + header.getInt(8) + " of surface cache " + file);
+            }
+            int n = header.getInt(12);
+            int wlTimes = header.getInt(16);
+            int vTimes = header.getInt(20);
+            long timestamp = header.getLong(24);
+            if (header.getInt(32) != 1) {
+                throw new IOException("Surface cache " + file + " is incomplete.");
+            }
+            int recordBytes = recordBytes(wlTimes, vTimes);
+            long dataStart = dataStart(n);
+            if (channel.size() < dataStart + (long) n * recordBytes) {
+                throw new IOException("Surface cache " + file + " is truncated.");
+            }
+            MappedByteBuffer flags = channel.map(FileChannel.MapMode.READ_ONLY, HEADERBYTES, n);
+            int perSegment = recordsPerSegment(recordBytes);
+            MappedByteBuffer[] segments = new MappedByteBuffer[(n + perSegment - 1) / perSegment];
+            for (int i = 0; i < segments.length; i++) {
+                int records = Math.min(perSegment, n - i * perSegment);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + (long) i * perSegment * recordBytes, (long) records * recordBytes);
+            }
+            return new SurfaceResultCache(file, n, wlTimes, vTimes, timestamp, flags, segments);
+        }
+    }
+
+    /**
+     * Writes all triangle results of the database to a cache file and opens
+     * it. The file is written to a temporary file first and renamed after
+     * completion.
+     *
+     * @param gdb result database
+     * @param file target cache file
+     * @return opened cache
+     * @throws IOException
+     */
+    public static SurfaceResultCache create(HE_GDB_IO gdb, File file) throws IOException {
+        if (!gdb.isResultDB()) {
+            throw new IllegalArgumentException("GDB '" + gdb.getDirectory() + "' is not a result database.");
+        }
+        int n = (int) (gdb.getMaxTriangleID() + 1);
+        if (n <= 0) {
+            n = gdb.getNumberOfTriangles();
+        }
+        int wlTimes = gdb.hasWaterlevels() ? Math.max(0, gdb.getNumberOfWaterlevelTimeSteps()) : 0;
+        int vTimes = gdb.hasVelocities() ? Math.max(0, gdb.getNumberOfVelocityTimeSteps()) : 0;
+        int recordBytes = recordBytes(wlTimes, vTimes);
+        int velocityOffset = 4 * (1 + wlTimes);
+        long dataStart = dataStart(n);
+        byte[] found = new byte[n];
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            raf.setLength(dataStart + (long) n * recordBytes);
+            ByteBuffer header = ByteBuffer.allocate(HEADERBYTES);
+            header.putLong(MAGIC).putInt(VERSION).putInt(n).putInt(wlTimes).putInt(vTimes).putLong(getSourceTimestamp(gdb.getDirectory())).putInt(0);
+            header.clear();
+            writeFully(channel, header, 0);
+
+            if (wlTimes > 0) {
+                ByteBuffer buffer = ByteBuffer.allocate(4 * (1 + wlTimes));
+                int indexID = gdb.getIndexWLid(), indexZ = gdb.getIndexWLZ(), index0 = gdb.getIndexWL0();
+                GeoLayer layer = gdb.getDb().layer(gdb.getLayerWaterHeight());
+                for (GeoFeature f : layer) {
+                    int id = f.getValue(indexID).intValue();
+                    if (id < 0 || id >= n) {
+                        continue;
+                    }
+                    buffer.clear();
+                    buffer.putFloat((float) f.getValue(indexZ).doubleValue());
+                    for (int t = 0; t < wlTimes; t++) {
+                        buffer.putFloat((float) f.getValue(index0 + t).doubleValue());
+                    }
+                    buffer.flip();
+                    writeFully(channel, buffer, dataStart + (long) id * recordBytes);
+                    found[id] |= FLAG_WATERLEVEL;
+                }
+            }
+            if (vTimes > 0) {
+                ByteBuffer buffer = ByteBuffer.allocate(8 * vTimes);
+                int indexID = gdb.getIndexVid(), index0 = gdb.getIndexVX0();
+                GeoLayer layer = gdb.getDb().layer(gdb.getLayerVelocity());
+                for (GeoFeature f : layer) {
+                    int id = f.getValue(indexID).intValue();
+                    if (id < 0 || id >= n) {
+                        continue;
+                    }
+                    buffer.clear();
+                    for (int t = 0; t < vTimes; t++) {
+                        //Same column order as in HE_GDB_IO.loadVelocity
+                        buffer.putFloat((float) f.getValue(index0 + t * 4).doubleValue());
+                        buffer.putFloat((float) f.getValue(index0 + t * 4 + 1).doubleValue());
+                    }
+                    buffer.flip();
+                    writeFully(channel, buffer, dataStart + (long) id * recordBytes + velocityOffset);
+                    found[id] |= FLAG_VELOCITY;
+                }
+            }
+            writeFully(channel, ByteBuffer.wrap(found), HEADERBYTES);
+            channel.force(false);
+            //Mark as complete
+            ByteBuffer complete = ByteBuffer.allocate(4);
+            complete.putInt(0, 1);
+            writeFully(channel, complete, 32);
+            channel.force(true);
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Can not replace existing surface cache " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Can not rename " + tmp + " to " + file);
+        }
+        return open(file);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private ByteBuffer segment(int triangleID) {
+        return segments[triangleID / recordsPerSegment];
+    }
+
+    private int position(int triangleID) {
+        return (triangleID % recordsPerSegment) * recordBytes;
+    }
+
+    public boolean hasWaterlevel(int triangleID) {
+        return triangleID >= 0 && triangleID < numberOfTriangles && (flags.get(triangleID) & FLAG_WATERLEVEL) != 0;
+    }
+
+    public boolean hasVelocity(int triangleID) {
+        return triangleID >= 0 && triangleID < numberOfTriangles && (flags.get(triangleID) & FLAG_VELOCITY) != 0;
+    }
+
+    /**
+     *
+     * @param triangleID
+     * @return [times][2 (x,y)]
+     * @throws NullPointerException if the triangle has no velocity information
+     * (same behaviour as the GDB loader).
+     */
+    @Override
+    public float[][] loadVelocity(int triangleID) {
+        if (!hasVelocity(triangleID)) {
+            throw new NullPointerException("ID " + triangleID + " not found in surface cache " + file);
+        }
+        ByteBuffer b = segment(triangleID);
+        int p = position(triangleID) + velocityOffset;
+        float[][] v = new float[velocityTimes][2];
+        for (int t = 0; t < velocityTimes; t++) {
+            v[t][0] = b.getFloat(p);
+            v[t][1] = b.getFloat(p + 4);
+            p += 8;
+        }
+        return v;
+    }
+
+    /**
+     * Velocity of a triangle at one timeindex without creating an array.
+     *
+     * @param triangleID
+     * @param timeIndex
+     * @param direction 0:x, 1:y
+     * @return velocity [m/s], 0 if not found.
+     */
+    public float getVelocity(int triangleID, int timeIndex, int direction) {
+        if (!hasVelocity(triangleID)) {
+            return 0;
+        }
+        return segment(triangleID).getFloat(position(triangleID) + velocityOffset + 8 * timeIndex + 4 * direction);
+    }
+
+    /**
+     *
+     * @param triangleID
+     * @return waterlevels for all timesteps. Zeros if not found (same
+     * behaviour as the GDB loader).
+     */
+    @Override
+    public float[] loadWaterlevlvalues(int triangleID) {
+        float[] wl = new float[waterlevelTimes];
+        if (!hasWaterlevel(triangleID)) {
+            return wl;
+        }
+        ByteBuffer b = segment(triangleID);
+        int p = position(triangleID) + 4;
+        for (int t = 0; t < waterlevelTimes; t++) {
+            wl[t] = b.getFloat(p);
+            p += 4;
+        }
+        return wl;
+    }
+
+    /**
+     * Waterlevel of a triangle at one timeindex without creating an array.
+     *
+     * @param triangleID
+     * @param timeIndex
+     * @return waterlevel [m], 0 if not found.
+     */
+    public float getWaterlevel(int triangleID, int timeIndex) {
+        if (!hasWaterlevel(triangleID)) {
+            return 0;
+        }
+        return segment(triangleID).getFloat(position(triangleID) + 4 + 4 * timeIndex);
+    }
+
+    /**
+     *
+     * @param triangleID
+     * @return z elevation [m]
+     * @throws NullPointerException if the triangle is not contained (same
+     * behaviour as the GDB loader).
+     */
+    @Override
+    public float loadZElevation(int triangleID) {
+        if (!hasWaterlevel(triangleID)) {
+            throw new NullPointerException("ID " + triangleID + " not found in surface cache " + file);
+        }
+        return segment(triangleID).getFloat(position(triangleID));
+    }
+
+    public int getNumberOfTriangles() {
+        return numberOfTriangles;
+    }
+
+    public int getNumberOfWaterlevelTimeSteps() {
+        return waterlevelTimes;
+    }
+
+    public int getNumberOfVelocityTimeSteps() {
+        return velocityTimes;
+    }
+
+    public long getSourceTimestamp() {
+        return sourceTimestamp;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + file.getName() + ", " + numberOfTriangles + " triangles, wl:" + waterlevelTimes + ", v:" + velocityTimes + " times}";
+    }
+}
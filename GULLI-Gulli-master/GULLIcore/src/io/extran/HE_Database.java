@@ -31,6 +31,7 @@ import java.text.DecimalFormatSymbols;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -41,6 +42,11 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -104,6 +110,36 @@ public class HE_Database implements SparseTimeLineDataProvider {
 
     public static String localCopyName = "idbfCopy.idbf";
 
+    /**
+     * Load timelines of preselected pipes and manholes with batched queries
+     * (see {@link #loadTimelinePipesBatched(java.util.Collection, model.timeline.sparse.SparseTimeLinePipeContainer)}).
+     * If false, one ordered scan over the whole result table is used.
+     */
+    public static boolean batchedTimelineLoading = true;
+
+    /**
+     * Number of IDs per query when loading timelines batched.
+     */
+    public static int batchSize = 500;
+
+    /**
+     * Number of parallel connections when loading timelines batched.
+     */
+    public static int batchThreads = 4;
+
+    /**
+     * If the requested IDs of a batch cover at least this fraction of their
+     * ID range, the batch is loaded with a range scan instead of an IN list.
+     */
+    public static double batchRangeScanFraction = 0.5;
+
+    /**
+     * Connection ids of batched queries are BATCH_CONNECTION_ID + first index
+     * of the batch. This range is disjoint from capacity IDs and the default
+     * id (-1) of a ThreadConnection.
+     */
+    private static final long BATCH_CONNECTION_ID = Long.MIN_VALUE / 2;
+
     /**
      * local working file of database.
      */
@@ -448,7 +484,11 @@ public class HE_Database implements SparseTimeLineDataProvider {
      */
     public ThreadConnection getUnusedConnection(long idToLoad) throws SQLException, IOException {
 //        synchronized (serializer) {
-        for (ThreadConnection threadConnection : threadConnections) {
+        ThreadConnection[] pool;
+        synchronized (threadConnections) {
+            pool = threadConnections.toArray(new ThreadConnection[threadConnections.size()]);
+        }
+        for (ThreadConnection threadConnection : pool) {
 //            if (threadConnection.con == null) {
 //                continue;
 //            }
@@ -458,7 +498,7 @@ public class HE_Database implements SparseTimeLineDataProvider {
                 return threadConnection;
             }
         }
-        for (ThreadConnection threadConnection : threadConnections) {
+        for (ThreadConnection threadConnection : pool) {
 //            if (threadConnection.con == null) {
 //                continue;
 //            }
@@ -2967,6 +3007,10 @@ public class HE_Database implements SparseTimeLineDataProvider {
         if (pipes == null || pipes.isEmpty()) {
             return;
         }
+        if (batchedTimelineLoading) {
+            loadTimelinePipesBatched(pipes, container);
+            return;
+        }
         //Order Pipes
         ArrayList<Pipe> list = new ArrayList<>(pipes);
         Collections.sort(list, new Comparator<Pipe>() {
@@ -3077,6 +3121,10 @@ public class HE_Database implements SparseTimeLineDataProvider {
         if (manholes == null || manholes.isEmpty()) {
             return;
         }
+        if (batchedTimelineLoading) {
+            loadTimelineManholesBatched(manholes, container);
+            return;
+        }
         boolean verboseNotFound = false;
         //Order Pipes
         ArrayList<StorageVolume> list = new ArrayList<>(manholes);
@@ -3252,6 +3300,194 @@ public class HE_Database implements SparseTimeLineDataProvider {
         }
     }
 
+    /**
+     * Loads the timelines of an arbitrary selection of pipes. The requested
+     * IDs are split into batches of {@link #batchSize} IDs, each batch is
+     * queried with a single statement on its own connection of the
+     * ThreadConnection pool (up to {@link #batchThreads} in parallel). Values
+     * are decoded directly into the arrays of the SparseTimelinePipes.
+     *
+     * @param pipes
+     * @param container
+     */
+    public void loadTimelinePipesBatched(Collection<Pipe> pipes, SparseTimeLinePipeContainer container) {
+        if (pipes == null || pipes.isEmpty()) {
+            return;
+        }
+        int times = container.getNumberOfTimes();
+        long[] ids = new long[pipes.size()];
+        int n = 0;
+        for (Pipe pipe : pipes) {
+            ids[n++] = pipe.getManualID();
+        }
+        ids = uniqueSorted(ids);
+        float[][] velocity = new float[ids.length][], flux = new float[ids.length][], waterlevel = new float[ids.length][];
+        loadTimelinesBatched(ids, "LAU_GL_EL", "GESCHWINDIGKEIT,DURCHFLUSS,WASSERSTAND", new float[][][]{velocity, flux, waterlevel}, times);
+
+        for (int i = 0; i < ids.length; i++) {
+            for (int t = 0; t < times; t++) {
+                if (velocity[i][t] == 0 && flux[i][t] != 0) {
+                    //This seems to be a pump (same as in fillTimelinePipe)
+                    velocity[i][t] = (float) Math.abs(flux[i][t] / 0.07);
+                    waterlevel[i][t] = 0.1f;
+                }
+            }
+        }
+        for (Pipe pipe : pipes) {
+            int i = Arrays.binarySearch(ids, pipe.getManualID());
+            SparseTimelinePipe tl = new SparseTimelinePipe(container, pipe);
+            tl.setVelocity(velocity[i]);
+            tl.setFlux(flux[i]);
+            tl.setWaterlevel(waterlevel[i]);
+            pipe.setStatusTimeLine(tl);
+        }
+    }
+
+    /**
+     * Loads waterlevel and spillout flux timelines of an arbitrary selection
+     * of manholes with batched queries (see
+     * {@link #loadTimelinePipesBatched(java.util.Collection, model.timeline.sparse.SparseTimeLinePipeContainer)}).
+     *
+     * @param manholes
+     * @param container
+     */
+    public void loadTimelineManholesBatched(Collection<StorageVolume> manholes, SparseTimeLineManholeContainer container) {
+        if (manholes == null || manholes.isEmpty()) {
+            return;
+        }
+        int times = container.getNumberOfTimes();
+        long[] ids = new long[manholes.size()];
+        int n = 0;
+        for (StorageVolume manhole : manholes) {
+            if (manhole instanceof Manhole) {
+                ids[n++] = manhole.getManualID();
+            }
+        }
+        ids = uniqueSorted(Arrays.copyOf(ids, n));
+        float[][] waterlevel = new float[ids.length][], flux = new float[ids.length][];
+        loadTimelinesBatched(ids, "LAU_GL_S", "WASSERSTAND", new float[][][]{waterlevel}, times);
+        loadTimelinesBatched(ids, "KNOTENLAUFEND2D", "(ABFLUSS-ZUFLUSS)", new float[][][]{flux}, times);
+
+        for (StorageVolume manhole : manholes) {
+            if (!(manhole instanceof Manhole)) {
+                continue;
+            }
+            int i = Arrays.binarySearch(ids, manhole.getManualID());
+            SparseTimelineManhole tl = new SparseTimelineManhole(container, manhole);
+            tl.setWaterHeight(waterlevel[i]);
+            tl.setSpilloutFlux(flux[i]);
+            ((Manhole) manhole).setStatusTimeline(tl);
+        }
+    }
+
+    private static long[] uniqueSorted(long[] ids) {
+        Arrays.sort(ids);
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (n == 0 || ids[i] != ids[n - 1]) {
+                ids[n++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Load timeline values of all given IDs from a table with columns ID and
+     * ZEITPUNKT.
+     *
+     * @param ids sorted unique IDs
+     * @param table
+     * @param columns comma separated columns/expressions to read
+     * @param target [column][index of id] will be filled with arrays of
+     * length times.
+     * @param times number of timesteps
+     */
+    private void loadTimelinesBatched(final long[] ids, final String table, final String columns, final float[][][] target, final int times) {
+        int batches = (ids.length + batchSize - 1) / batchSize;
+        ArrayList<Callable<Object>> tasks = new ArrayList<>(batches);
+        for (int i = 0; i < batches; i++) {
+            final int from = i * batchSize;
+            final int to = Math.min(ids.length, from + batchSize);
+            tasks.add(Executors.callable(() -> loadTimelinesBatch(ids, from, to, table, columns, target, times)));
+        }
+        if (batches < 2 || batchThreads < 2) {
+            for (Callable<Object> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception ex) {
+                    Logger.getLogger(HE_Database.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(batches, batchThreads));
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            Logger.getLogger(HE_Database.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void loadTimelinesBatch(long[] ids, int from, int to, String table, String columns, float[][][] target, int times) {
+        for (float[][] column : target) {
+            for (int i = from; i < to; i++) {
+                column[i] = new float[times];
+            }
+        }
+        StringBuilder sql = new StringBuilder(64 + (to - from) * 8);
+        sql.append("SELECT ID,").append(columns).append(" FROM ").append(table).append(" WHERE ID");
+        if (to - from >= batchRangeScanFraction * (ids[to - 1] - ids[from] + 1)) {
+            //Dense IDs: ordered range scan, skip the not requested IDs.
+            sql.append(" BETWEEN ").append(ids[from]).append(" AND ").append(ids[to - 1]);
+        } else {
+            sql.append(" IN (");
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    sql.append(',');
+                }
+                sql.append(ids[i]);
+            }
+            sql.append(')');
+        }
+        sql.append(" ORDER BY ID,ZEITPUNKT");
+
+        ThreadConnection tc = null;
+        try {
+            //This connection is not reused for a single capacity request.
+            tc = getUnusedConnection(BATCH_CONNECTION_ID + from);
+            try (Statement st = tc.con.createStatement();
+                    ResultSet rs = st.executeQuery(sql.toString())) {
+                long lastID = Long.MIN_VALUE;
+                int index = -1, t = 0;
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    if (id != lastID) {
+                        lastID = id;
+                        index = Arrays.binarySearch(ids, from, to, id);
+                        t = 0;
+                    }
+                    if (index < 0 || t >= times) {
+                        continue;
+                    }
+                    for (int k = 0; k < target.length; k++) {
+                        target[k][index][t] = rs.getFloat(k + 2);
+                    }
+                    t++;
+                }
+            }
+        } catch (SQLException | IOException ex) {
+            Logger.getLogger(HE_Database.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if (tc != null) {
+                tc.lock.unlock();
+            }
+        }
+    }
+
     @Override
     public SparseTimelinePipe loadTimelinePipe(Pipe pipe, SparseTimeLinePipeContainer container) {
         SparseTimelinePipe tl = new SparseTimelinePipe(container, pipe);
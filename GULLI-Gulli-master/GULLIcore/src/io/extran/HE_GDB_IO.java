@@ -46,6 +46,7 @@ import main.java.io.zrz.jgdb.shape.GeometryValue;
 import main.java.io.zrz.jgdb.shape.MultiPoint;
 import main.java.io.zrz.jgdb.shape.Point;
 import model.surface.Surface;
+import model.surface.SurfaceFieldStore;
 import model.surface.SurfaceVelocityLoader;
 import model.surface.SurfaceWaterlevelLoader;
 
@@ -537,7 +538,7 @@ public class HE_GDB_IO implements SurfaceWaterlevelLoader, SurfaceVelocityLoader
         int jump = indexVX1 - indexVX0;
 //        System.out.println("Vx space="+jump);
         if (surf.mapIndizes != null && !surf.mapIndizes.isEmpty()) {
-            float[][][] v = new float[surf.mapIndizes.size()][velocityTimeSteps][2];
+            SurfaceFieldStore v = new SurfaceFieldStore(surf.mapIndizes.size(), velocityTimeSteps, 2, true);
             float[] vmax = new float[surf.mapIndizes.size()];
             for (GeoFeature f : layer) {
                 int id = f.getValue(indexVid).intValue();
@@ -545,8 +546,8 @@ public class HE_GDB_IO implements SurfaceWaterlevelLoader, SurfaceVelocityLoader
                     int index = surf.mapIndizes.get(id);
                     vmax[index] = (float) f.getValue(indexVMax).doubleValue();
                     for (int t = 0; t < velocityTimeSteps; t++) {
-                        v[index][t][0] = (float) f.getValue(indexVX0 + t * jump).doubleValue();
-                        v[index][t][1] = (float) f.getValue(indexVY0 + t * jump).doubleValue();
+                        v.set(index, t, 0, (float) f.getValue(indexVX0 + t * jump).doubleValue());
+                        v.set(index, t, 1, (float) f.getValue(indexVY0 + t * jump).doubleValue());
                     }
 
                     //Z position not needed for velocities because they do not need to be calculated.
@@ -559,17 +560,17 @@ public class HE_GDB_IO implements SurfaceWaterlevelLoader, SurfaceVelocityLoader
             //Normal Surface with all triangles.
             //initialize waterlevel history storage
             int triangleCount = surf.getTriangleNodes().length;
-            float[][][] v = new float[triangleCount][velocityTimeSteps][2];
+            SurfaceFieldStore v = new SurfaceFieldStore(triangleCount, velocityTimeSteps, 2, true);
             float[] vmax = new float[surf.getTriangleNodes().length];
             for (GeoFeature f : layer) {
                 int id = f.getValue(indexVid).intValue();
                 if (id >= triangleCount) {
-                    throw new UnsatisfiedLinkError("Id of read v.id (" + id + ") is higher than max surface.id(" + (v[0].length - 1) + ")");
+                    throw new UnsatisfiedLinkError("Id of read v.id (" + id + ") is higher than max surface.id(" + (triangleCount - 1) + ")");
                 }
                 vmax[id] = (float) f.getValue(indexVMax).doubleValue();
                 for (int t = 0; t < velocityTimeSteps; t++) {
-                    v[id][t][0] = (float) f.getValue(indexVX0 + t * jump).doubleValue();
-                    v[id][t][1] = (float) f.getValue(indexVY0 + t * jump).doubleValue();
+                    v.set(id, t, 0, (float) f.getValue(indexVX0 + t * jump).doubleValue());
+                    v.set(id, t, 1, (float) f.getValue(indexVY0 + t * jump).doubleValue());
                 }
             }
             surf.setTriangleVelocity(v);
@@ -1078,7 +1079,7 @@ public class HE_GDB_IO implements SurfaceWaterlevelLoader, SurfaceVelocityLoader
                 System.out.println("Calculating csv velocities took " + (System.currentTimeMillis() - start) + "ms.");
                 for (int i = 0; i < surf.getTriangleNodes().length; i++) {
                     for (int j = 0; j < 3; j++) {
-                        for (int t = 0; t < surf.getTriangleVelocity().length; t++) {
+                        for (int t = 0; t < surf.getTriangleVelocity().times; t++) {
 
                             if (surf.getVelocityToNeighbour(i, j) == surfCSV.getVelocityToNeighbour(i, j)) {
 //                            System.out.println("Same with velocities of triangle " + i + ","+j+ "  gdb: " + surf.getWaterlevels()[i][j] + "\tcsv:" + surfCSV.getWaterlevels()[i][j]);
@@ -1151,6 +1152,14 @@ public class HE_GDB_IO implements SurfaceWaterlevelLoader, SurfaceVelocityLoader
         return indexWL0;
     }
 
+    public int getIndexVid() {
+        return indexVid;
+    }
+
+    public int getIndexVX0() {
+        return indexVX0;
+    }
+
     public HashMap<Integer, Long> getWaterlevelFeatureIDs(int[] triangleIDs) {
         HashMap<Integer, Long> map = new HashMap<>(triangleIDs.length);
         GeoLayer layer = db.layer(layerWaterHeight);
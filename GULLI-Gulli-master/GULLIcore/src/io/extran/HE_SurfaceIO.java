@@ -30,6 +30,7 @@ import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import model.GeoTools;
 import model.surface.Surface;
+import model.surface.SurfaceTriangleIndex;
 import model.surface.measurement.SurfaceMeasurementTriangleRaster;
 import model.surface.measurement.SurfaceMeasurementRaster;
 import model.surface.measurement.SurfaceMeasurementRectangleRaster;
@@ -599,30 +600,12 @@ public class HE_SurfaceIO {
 
         int counterManholes = 0;//, counterInlets = 0;
 
-//        starttime = System.currentTimeMillis();
-        for (int i = 0; i < surface.triangleNodes.length; i++) {
-//            poly = null;
-            Coordinate c0 = new Coordinate(surface.vertices[surface.triangleNodes[i][0]][0], surface.vertices[surface.triangleNodes[i][0]][1]);
-            Coordinate c1 = new Coordinate(surface.vertices[surface.triangleNodes[i][1]][0], surface.vertices[surface.triangleNodes[i][1]][1]);
-            Coordinate c2 = new Coordinate(surface.vertices[surface.triangleNodes[i][2]][0], surface.vertices[surface.triangleNodes[i][2]][1]);
-
-            for (int j = 0; j < m.length; j++) {
-                Coordinate m1 = m[j];
-//                Point p1 = null;
-                if (Math.abs(c0.x - m1.x) < 30) {
-                    if (Math.abs(c0.y - m1.y) < 30) {
-                        if (c0.distance(m1) < 30) {
-                            //Closer look
-                            boolean contains = GeometryTools.triangleContainsPoint(c0.x, c1.x, c2.x, c0.y, c1.y, c2.y, m1.x, m1.y);
-                            if (contains) {
-                                Manhole mh = manholes[j];
-                                mh.setSurfaceTriangle(i);
-                                counterManholes++;
-                                break;
-                            }
-                        }
-                    }
-                }
+        SurfaceTriangleIndex triangleIndex = surface.getTriangleIndex();
+        for (int j = 0; j < m.length; j++) {
+            int triangleID = triangleIndex.findContainingTriangle(m[j].x, m[j].y);
+            if (triangleID >= 0) {
+                manholes[j].setSurfaceTriangle(triangleID);
+                counterManholes++;
             }
         }
         System.out.println("found manholes and inlets after " + (System.currentTimeMillis() - start) / 1000 + "s. Manholes:" + counterManholes + "/" + nw.getManholes().size());
@@ -691,6 +674,23 @@ public class HE_SurfaceIO {
     }
 
     public static void writeSurfaceContaminationCSV(File outputFile, Surface surface) throws IOException {
+        if (surface == null) {
+            throw new NullPointerException("No Surface set. No output file written.");
+        }
+        writeSurfaceContaminationCSV(outputFile, surface, surface.getMeasurementRaster(), surface.getNumberOfMaterials());
+    }
+
+    /**
+     * Writes the particle counts of a measurement raster on the surface, which
+     * is not necessarily the raster referenced by the surface.
+     *
+     * @param outputFile
+     * @param surface
+     * @param measurementRaster
+     * @param categories number of materials to write
+     * @throws IOException
+     */
+    public static void writeSurfaceContaminationCSV(File outputFile, Surface surface, SurfaceMeasurementRaster measurementRaster, int categories) throws IOException {
         if (surface == null) {
             throw new NullPointerException("No Surface set. No output file written.");
         }
@@ -701,8 +701,6 @@ public class HE_SurfaceIO {
             }
             bw.write("Reduced Net:" + (surface.mapIndizes != null && !surface.mapIndizes.isEmpty()));
             bw.newLine();
-            int categories = surface.getNumberOfMaterials();
-
             bw.write("Contaminant categories:" + categories);
             bw.newLine();
             bw.write("***");
@@ -710,25 +708,20 @@ public class HE_SurfaceIO {
             if (categories < 1) {
                 return;
             }
-            if (surface.getMeasurementRaster() instanceof SurfaceMeasurementTriangleRaster) {
-                SurfaceMeasurementTriangleRaster raster = (SurfaceMeasurementTriangleRaster) surface.getMeasurementRaster();
+            if (measurementRaster instanceof SurfaceMeasurementTriangleRaster) {
+                SurfaceMeasurementTriangleRaster raster = (SurfaceMeasurementTriangleRaster) measurementRaster;
                 for (int mID = 0; mID < raster.getMeasurements().length; mID++) {
                     TriangleMeasurement measurement = raster.getMeasurements()[mID];
-                    if (measurement != null && measurement.getParticlecount() != null && measurement.getParticlecount().length > 0) {
+                    if (measurement != null && measurement.getNumberOfMaterials() > 0) {
                         bw.write(mID + "");
-                        int timesteps = raster.getIndexContainer().getNumberOfTimes();
                         for (int i = 0; i < categories; i++) {
-                            int sum = 0;
-                            for (int j = 0; j < timesteps; j++) {
-                                sum += measurement.getParticlecount()[i][j];
-                            }
-                            bw.write(";" + sum);
+                            bw.write(";" + measurement.getTotalParticlecount(i));
                         }
                         bw.newLine();
                     }
                 }
-            } else if (surface.getMeasurementRaster() instanceof SurfaceMeasurementRectangleRaster) {
-                SurfaceMeasurementRectangleRaster raster = (SurfaceMeasurementRectangleRaster) surface.getMeasurementRaster();
+            } else if (measurementRaster instanceof SurfaceMeasurementRectangleRaster) {
+                SurfaceMeasurementRectangleRaster raster = (SurfaceMeasurementRectangleRaster) measurementRaster;
                 for (int y = 0; y < raster.getNumberYIntervals(); y++) {
                     for (int x = 0; x < raster.getNumberXIntervals(); x++) {
                         int count = 0;
@@ -740,7 +733,7 @@ public class HE_SurfaceIO {
                     bw.newLine();
                 }
             } else {
-                throw new UnsupportedOperationException("Type of Surface Raster " + surface.getMeasurementRaster().getClass().getSimpleName() + " is not known to be handled for output.");
+                throw new UnsupportedOperationException("Type of Surface Raster " + measurementRaster.getClass().getSimpleName() + " is not known to be handled for output.");
             }
         }
     }
@@ -1179,10 +1172,7 @@ public class HE_SurfaceIO {
                 }
                 bw.write(i + ";");
                 for (int j = 0; j < mass.length; j++) {
-                    mass[j] = 0;
-                    for (int t = 0; t < tr.getIndexContainer().getNumberOfTimes(); t++) {
-                        mass[j] += m.getMass()[j][t];
-                    }
+                    mass[j] = m.getTotalMass(j);
                     bw.write(dfLong.format(mass[j]) + ",");
                 }
                 bw.newLine();
@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import io.SurfaceMeshCache;
 import model.surface.Surface;
 
 /**
@@ -37,6 +38,32 @@ import model.surface.Surface;
  */
 public class MSH_IO {
 
+    /**
+     * Load the mesh from its binary cache next to the msh file. If no current
+     * cache exists, the msh file is parsed and the cache is written for the
+     * next call.
+     *
+     * @param mshFile
+     * @return
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public static Surface loadSurfaceCached(File mshFile) throws FileNotFoundException, IOException {
+        File cacheFile = SurfaceMeshCache.getCacheFile(mshFile);
+        long timestamp = SurfaceMeshCache.getSourceTimestamp(mshFile);
+        Surface surf = SurfaceMeshCache.openIfCurrent(cacheFile, timestamp);
+        if (surf != null) {
+            return surf;
+        }
+        surf = loadSurface(mshFile);
+        try {
+            SurfaceMeshCache.write(surf, cacheFile, timestamp);
+        } catch (IOException ex) {
+            System.err.println("Can not write mesh cache " + cacheFile + ": " + ex.getLocalizedMessage());
+        }
+        return surf;
+    }
+
     public static Surface loadSurface(File mshFile) throws FileNotFoundException, IOException {
         BufferedReader br = new BufferedReader(new FileReader(mshFile));
         //Go until find $NODES entry point
@@ -29,6 +29,7 @@ public class HistoryParticle extends Particle {
         super(injectionSurrounding, injectionPosition1D, injectionTime, mass_kg);
     }
 
+    @Override
     public void addToHistory(Capacity cap) {
         if (!history.isEmpty() && history.getLast().equals(cap)) {
             return;
@@ -13,7 +13,7 @@ import model.topology.Position3D;
  *
  * @author saemann
  */
-public class Particle {
+public class Particle implements ParticleState {
 
     /**
      * invisible Counter that is used to give every particle a unique ID
@@ -130,6 +130,12 @@ public class Particle {
      */
     public int lastSurfaceCellID = -1;
 
+    /**
+     * Index of the nearest node of the underground domain at the last step.
+     * Start for the next search.
+     */
+    public int soilNodeIndex = -1;
+
 //    public final ArrayList<Shortcut> usedShortcuts=new ArrayList<>(0);
 //    public float ds=0;
     public Particle(Capacity injectionSurrounding, double injectionPosition1D) {
@@ -188,10 +194,12 @@ public class Particle {
         this.status = 0;
     }
 
+    @Override
     public void setInPipenetwork() {
         this.status = 10;
     }
 
+    @Override
     public void setOnSurface() {
         this.status = 20;
     }
@@ -204,10 +212,12 @@ public class Particle {
         this.status = -1;
     }
 
+    @Override
     public void setLeftSimulation() {
         this.status = -10;
     }
 
+    @Override
     public float getPosition1d_actual() {
         return position1d_actual; //position3d.x;//
     }
@@ -226,6 +236,7 @@ public class Particle {
      *
      * @return
      */
+    @Override
     public float getParticleMass() {
         return particleMass;
     }
@@ -242,6 +253,7 @@ public class Particle {
         return velocity1d;
     }
 
+    @Override
     public void setPosition1d_actual(double position1d) {
         this.position1d_actual = (float) position1d;
 //        this.position3d.x = position1d;
@@ -250,10 +262,12 @@ public class Particle {
 //    public void setPosition1d_past(double position1d) {
 //        this.position1d_past = position1d;
 //    }
+    @Override
     public Capacity getSurrounding_actual() {
         return surrounding_actual;
     }
 
+    @Override
     public void setSurrounding_actual(Capacity surrounding) {
 //        System.out.println("Particle: Set surrounding_actual to "+surrounding);
         this.surrounding_actual = surrounding;
@@ -280,6 +294,7 @@ public class Particle {
         return position3d;
     }
 
+    @Override
     public void setVelocity1d(double velocity1d) {
         if (velocity1d > 30) {
             try {
@@ -338,6 +353,7 @@ public class Particle {
         return true;
     }
 
+    @Override
     public double getTravelledPathLength() {
         return moveLengthCummulative;
     }
@@ -349,6 +365,7 @@ public class Particle {
 //    public void addTravelledPathLength(double ds) {
 //        this.moveLengthCummulative += ds;
 //    }
+    @Override
     public void addMovingLength(double ds) {
         this.moveLengthAbsolute += Math.abs(ds);
         this.moveLengthCummulative += (ds);
@@ -385,14 +402,17 @@ public class Particle {
         return injectionTime;
     }
 
+    @Override
     public Material getMaterial() {
         return material;
     }
 
+    @Override
     public boolean isDeposited() {
         return this.deposited;
     }
 
+    @Override
     public void setDeposited(boolean deposited) {
         this.deposited = deposited;
     }
@@ -411,6 +431,7 @@ public class Particle {
         this.position3d = c;
     }
 
+    @Override
     public void setPosition3D(Position3D p) {
         if (p == null) {
             this.position3d = null;
@@ -431,11 +452,68 @@ public class Particle {
      * @param x
      * @param y
      */
+    @Override
     public void setPosition3D(double x, double y) {
         this.position3d.x = x;
         this.position3d.y = y;
     }
 
+    @Override
+    public double getPositionX() {
+        return position3d.x;
+    }
+
+    @Override
+    public double getPositionY() {
+        return position3d.y;
+    }
+
+    @Override
+    public int getSurfaceCellID() {
+        return surfaceCellID;
+    }
+
+    @Override
+    public void setSurfaceCellID(int surfaceCellID) {
+        this.surfaceCellID = surfaceCellID;
+    }
+
+    @Override
+    public Capacity getToSurface() {
+        return toSurface;
+    }
+
+    @Override
+    public long getToSurfaceTimestamp() {
+        return toSurfaceTimestamp;
+    }
+
+    @Override
+    public void setToSurface(Capacity manhole, long timestamp) {
+        this.toSurface = manhole;
+        this.toSurfaceTimestamp = timestamp;
+        this.posToSurface = moveLengthCummulative;
+    }
+
+    @Override
+    public void setToPipenetwork(Capacity capacity) {
+        this.toPipenetwork = capacity;
+    }
+
+    /**
+     * Only HistoryParticles keep track of visited capacities.
+     *
+     * @param cap
+     */
+    @Override
+    public void addToHistory(Capacity cap) {
+    }
+
+    @Override
+    public Particle toParticle() {
+        return this;
+    }
+
     public int getInjectionCellID() {
         return injectionCellID;
     }
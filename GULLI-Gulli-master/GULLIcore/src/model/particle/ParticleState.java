@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.particle;
+
+import model.topology.Capacity;
+import model.topology.Position3D;
+
+/**
+ * State of one particle as seen by the transport kernels. Implemented by the
+ * {@link Particle} object itself and by {@link StoredParticle}, a cursor on
+ * the primitive arrays of the {@link ParticleStore}. This way the pipe and
+ * surface transport is written once for both particle layouts.
+ *
+ * @author saemann
+ */
+public interface ParticleState {
+
+    /**
+     * Particle object with the current state, e.g. for FlowCalculators.
+     *
+     * @return
+     */
+    public Particle toParticle();
+
+    public Material getMaterial();
+
+    public float getParticleMass();
+
+    public Capacity getSurrounding_actual();
+
+    public void setSurrounding_actual(Capacity surrounding);
+
+    public float getPosition1d_actual();
+
+    public void setPosition1d_actual(double position1d);
+
+    public void setVelocity1d(double velocity1d);
+
+    public void addMovingLength(double ds);
+
+    public double getTravelledPathLength();
+
+    public boolean isDeposited();
+
+    public void setDeposited(boolean deposited);
+
+    public void setLeftSimulation();
+
+    public void setInPipenetwork();
+
+    public void setOnSurface();
+
+    public int getSurfaceCellID();
+
+    public void setSurfaceCellID(int surfaceCellID);
+
+    /**
+     * x-component of the 3D position [UTM]
+     *
+     * @return
+     */
+    public double getPositionX();
+
+    /**
+     * y-component of the 3D position [UTM]
+     *
+     * @return
+     */
+    public double getPositionY();
+
+    public void setPosition3D(double x, double y);
+
+    public void setPosition3D(Position3D p);
+
+    public Capacity getToSurface();
+
+    public long getToSurfaceTimestamp();
+
+    /**
+     * Remember where and when the particle was spilled to the surface. Also
+     * stores the travelled path length at this moment.
+     *
+     * @param manhole
+     * @param timestamp
+     */
+    public void setToSurface(Capacity manhole, long timestamp);
+
+    public void setToPipenetwork(Capacity capacity);
+
+    /**
+     * Records the capacity in the history of HistoryParticles.
+     *
+     * @param cap
+     */
+    public void addToHistory(Capacity cap);
+}
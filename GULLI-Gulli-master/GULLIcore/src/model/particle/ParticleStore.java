@@ -0,0 +1,372 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.particle;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import model.surface.Surface;
+import model.topology.Capacity;
+import model.topology.Manhole;
+import model.topology.Network;
+import model.topology.Pipe;
+
+/**
+ * Structure-of-arrays storage for the state of all particles of a simulation.
+ * Each attribute of a particle is kept in its own primitive array, the
+ * particle is only addressed by its index. This avoids the pointer chasing and
+ * garbage collection of millions of Particle objects in the transport loop.
+ *
+ * The original {@link Particle} objects are kept as views for GUI and I/O.
+ * They are updated from this store on request (see
+ * {@link #writeToParticles(int, int)}).
+ *
+ * Capacities are referenced by their unique autoID, materials by their
+ * materialIndex.
+ *
+ * @author saemann
+ */
+public class ParticleStore {
+
+    public static final byte LEFTSIMULATION = -10, WAITING = -1, INACTIVE = 0, PIPENETWORK = 10, SURFACE = 20, SOIL = 30;
+
+    /**
+     * Views for GUI and I/O. Same order as the arrays.
+     */
+    protected final Particle[] particles;
+
+    /**
+     * Number of stored particles.
+     */
+    public final int size;
+
+    /**
+     * Position in 3D (surface,soil) space [UTM]
+     */
+    public final double[] x, y, z;
+
+    /**
+     * Position along the axis of the surrounding capacity.
+     */
+    public final float[] position1d;
+
+    /**
+     * Velocity [m/s] along the pipe-axis.
+     */
+    public final float[] velocity1d;
+
+    /**
+     * Length of movement along the travelpath. [cummulative, absolute]
+     */
+    public final float[] moveLengthCummulative, moveLengthAbsolute;
+
+    public final int[] surfaceCellID, lastSurfaceCellID;
+
+    /**
+     * -10:leftSimulation, -1:waiting, 0:inactive; 10: pipenetwork 20:surface;
+     * 30:underground.
+     */
+    public final byte[] status;
+
+    public final boolean[] deposited;
+
+    /**
+     * Mass of particle [kg]
+     */
+    public final float[] mass;
+
+    /**
+     * materialIndex of the Material of each particle.
+     */
+    public final int[] materialIndex;
+
+    /**
+     * autoID of the actual surrounding capacity. -1 if not set.
+     */
+    public final int[] capacityIndex;
+
+    /**
+     * autoID of the capacity where the particle was spilled to the surface /
+     * washed into the pipe network. -1 if not set.
+     */
+    public final int[] toSurfaceIndex, toPipenetworkIndex;
+
+    public final long[] toSurfaceTimestamp;
+
+    public final float[] posToSurface;
+
+    public final long[] insertionTime;
+
+    /**
+     * Lookup table Capacity by autoID. Sized once and filled with the
+     * capacities of network and surface on construction, so the transport
+     * loop only reads it.
+     */
+    private volatile Capacity[] capacities;
+
+    /**
+     * Lookup table Material by materialIndex.
+     */
+    private Material[] materials = new Material[0];
+
+    public ParticleStore(Particle[] particles) {
+        this(particles, null, null);
+    }
+
+    /**
+     * Creates the store and registers all pipes and manholes of the network
+     * and the surface in the capacity lookup table.
+     *
+     * @param particles views
+     * @param network may be null
+     * @param surface may be null
+     */
+    public ParticleStore(Particle[] particles, Network network, Surface surface) {
+        this.particles = particles;
+        capacities = new Capacity[(int) Capacity.getMaximumID() + 1];
+        if (network != null) {
+            for (Pipe pipe : network.getPipes()) {
+                register(pipe);
+            }
+            for (Manhole mh : network.getManholes()) {
+                register(mh);
+            }
+        }
+        if (surface != null) {
+            register(surface);
+            if (surface.getManholes() != null) {
+                for (Manhole mh : surface.getManholes()) {
+                    register(mh);
+                }
+            }
+        }
+        this.size = particles.length;
+        x = new double[size];
+        y = new double[size];
+        z = new double[size];
+        position1d = new float[size];
+        velocity1d = new float[size];
+        moveLengthCummulative = new float[size];
+        moveLengthAbsolute = new float[size];
+        surfaceCellID = new int[size];
+        lastSurfaceCellID = new int[size];
+        status = new byte[size];
+        deposited = new boolean[size];
+        mass = new float[size];
+        materialIndex = new int[size];
+        capacityIndex = new int[size];
+        toSurfaceIndex = new int[size];
+        toPipenetworkIndex = new int[size];
+        toSurfaceTimestamp = new long[size];
+        posToSurface = new float[size];
+        insertionTime = new long[size];
+        readFromParticles(0, size);
+    }
+
+    /**
+     * Copy the state of the Particle objects into this store.
+     *
+     * @param from first index
+     * @param toExcld index after the last particle
+     */
+    public void readFromParticles(int from, int toExcld) {
+        for (int i = from; i < toExcld; i++) {
+            Particle p = particles[i];
+            Coordinate c = p.getPosition3d();
+            if (c != null) {
+                x[i] = c.x;
+                y[i] = c.y;
+                z[i] = c.z;
+            }
+            position1d[i] = p.position1d_actual;
+            velocity1d[i] = p.velocity1d;
+            moveLengthCummulative[i] = p.moveLengthCummulative;
+            moveLengthAbsolute[i] = p.moveLengthAbsolute;
+            surfaceCellID[i] = p.surfaceCellID;
+            lastSurfaceCellID[i] = p.lastSurfaceCellID;
+            status[i] = p.status;
+            deposited[i] = p.deposited;
+            mass[i] = p.particleMass;
+            materialIndex[i] = registerMaterial(p.getMaterial());
+            capacityIndex[i] = indexOf(p.getSurrounding_actual());
+            toSurfaceIndex[i] = indexOf(p.toSurface);
+            toPipenetworkIndex[i] = indexOf(p.toPipenetwork);
+            toSurfaceTimestamp[i] = p.toSurfaceTimestamp;
+            posToSurface[i] = p.posToSurface;
+            insertionTime[i] = p.getInsertionTime();
+        }
+    }
+
+    /**
+     * Update the Particle objects (views) with the state of this store.
+     *
+     * @param from first index
+     * @param toExcld index after the last particle
+     */
+    public void writeToParticles(int from, int toExcld) {
+        for (int i = from; i < toExcld; i++) {
+            writeToParticle(i);
+        }
+    }
+
+    /**
+     * Update the Particle object (view) with the state of this store and
+     * return it.
+     *
+     * @param i index in store
+     * @return updated particle object
+     */
+    public Particle writeToParticle(int i) {
+        Particle p = particles[i];
+        if (p.position3d == null) {
+            p.position3d = new Coordinate(x[i], y[i], z[i]);
+        } else {
+            p.setPosition3D(x[i], y[i], z[i]);
+        }
+        p.position1d_actual = position1d[i];
+        p.velocity1d = velocity1d[i];
+        p.moveLengthCummulative = moveLengthCummulative[i];
+        p.moveLengthAbsolute = moveLengthAbsolute[i];
+        p.surfaceCellID = surfaceCellID[i];
+        p.lastSurfaceCellID = lastSurfaceCellID[i];
+        p.status = status[i];
+        p.deposited = deposited[i];
+        p.particleMass = mass[i];
+        p.surrounding_actual = getCapacity(capacityIndex[i]);
+        p.toSurface = getCapacity(toSurfaceIndex[i]);
+        p.toPipenetwork = getCapacity(toPipenetworkIndex[i]);
+        p.toSurfaceTimestamp = toSurfaceTimestamp[i];
+        p.posToSurface = posToSurface[i];
+        return p;
+    }
+
+    /**
+     * The particle object (view) at this index. Its state may be outdated, use
+     * {@link #writeToParticle(int)} to get an updated view.
+     *
+     * @param i
+     * @return
+     */
+    public Particle getParticle(int i) {
+        return particles[i];
+    }
+
+    public Particle[] getParticles() {
+        return particles;
+    }
+
+    /**
+     * Index for a capacity. The capacity is registered in the lookup table if
+     * not yet known. Capacities of network and surface are known from the
+     * construction of this store.
+     *
+     * @param c
+     * @return autoID of the capacity or -1 for null
+     */
+    public int indexOf(Capacity c) {
+        if (c == null) {
+            return -1;
+        }
+        int id = (int) c.getAutoID();
+        Capacity[] table = capacities;
+        if (id < table.length && table[id] == c) {
+            return id;
+        }
+        return register(c);
+    }
+
+    /**
+     * Stores the capacity in its slot of the lookup table. The table is only
+     * copied if a capacity was created after this store.
+     *
+     * @param c
+     * @return autoID of the capacity
+     */
+    private synchronized int register(Capacity c) {
+        int id = (int) c.getAutoID();
+        Capacity[] table = capacities;
+        if (id >= table.length) {
+            Capacity[] newTable = new Capacity[(int) Math.max(Capacity.getMaximumID() + 1, Math.max(id + 1, table.length * 2L))];
+            System.arraycopy(table, 0, newTable, 0, table.length);
+            newTable[id] = c;
+            capacities = newTable;
+        } else {
+            table[id] = c;
+        }
+        return id;
+    }
+
+    public Capacity getCapacity(int index) {
+        if (index < 0) {
+            return null;
+        }
+        return capacities[index];
+    }
+
+    private synchronized int registerMaterial(Material m) {
+        if (m == null) {
+            return -1;
+        }
+        if (m.materialIndex < 0) {
+            throw new IllegalArgumentException("Material " + m + " has no materialIndex. Can not be stored in " + getClass().getSimpleName());
+        }
+        if (m.materialIndex >= materials.length) {
+            Material[] newMaterials = new Material[m.materialIndex + 1];
+            System.arraycopy(materials, 0, newMaterials, 0, materials.length);
+            materials = newMaterials;
+        }
+        materials[m.materialIndex] = m;
+        return m.materialIndex;
+    }
+
+    public Material getMaterial(int i) {
+        return materials[materialIndex[i]];
+    }
+
+    public void addMovingLength(int i, double ds) {
+        moveLengthAbsolute[i] += Math.abs(ds);
+        moveLengthCummulative[i] += ds;
+    }
+
+    public boolean isActive(int i) {
+        return status[i] > 0;
+    }
+
+    public boolean isWaiting(int i) {
+        return status[i] == WAITING;
+    }
+
+    /**
+     * Approximate memory [bytes] used by the arrays of this store.
+     *
+     * @return
+     */
+    public long getMemoryBytes() {
+        // 3 double, 6 float, 2 long, 6 int, 1 byte, 1 boolean
+        return (long) size * (3 * 8 + 6 * 4 + 2 * 8 + 6 * 4 + 1 + 1) + capacities.length * 4L;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + size + " particles}";
+    }
+}
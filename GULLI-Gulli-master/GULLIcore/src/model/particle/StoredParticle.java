@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.particle;
+
+import model.topology.Capacity;
+import model.topology.Position3D;
+
+/**
+ * Cursor on one particle of a {@link ParticleStore}. Reads and writes the
+ * primitive arrays of the store at the current index. One instance can be
+ * reused for all particles moved by a thread to avoid allocation.
+ *
+ * @author saemann
+ */
+public class StoredParticle implements ParticleState {
+
+    private ParticleStore store;
+
+    private int index;
+
+    /**
+     * Move the cursor to the particle with this index.
+     *
+     * @param store
+     * @param index
+     * @return this cursor
+     */
+    public StoredParticle set(ParticleStore store, int index) {
+        this.store = store;
+        this.index = index;
+        return this;
+    }
+
+    public ParticleStore getStore() {
+        return store;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public Particle toParticle() {
+        return store.writeToParticle(index);
+    }
+
+    @Override
+    public Material getMaterial() {
+        return store.getMaterial(index);
+    }
+
+    @Override
+    public float getParticleMass() {
+        return store.mass[index];
+    }
+
+    @Override
+    public Capacity getSurrounding_actual() {
+        return store.getCapacity(store.capacityIndex[index]);
+    }
+
+    @Override
+    public void setSurrounding_actual(Capacity surrounding) {
+        store.capacityIndex[index] = store.indexOf(surrounding);
+    }
+
+    @Override
+    public float getPosition1d_actual() {
+        return store.position1d[index];
+    }
+
+    @Override
+    public void setPosition1d_actual(double position1d) {
+        store.position1d[index] = (float) position1d;
+    }
+
+    @Override
+    public void setVelocity1d(double velocity1d) {
+        store.velocity1d[index] = (float) velocity1d;
+    }
+
+    @Override
+    public void addMovingLength(double ds) {
+        store.addMovingLength(index, ds);
+    }
+
+    @Override
+    public double getTravelledPathLength() {
+        return store.moveLengthCummulative[index];
+    }
+
+    @Override
+    public boolean isDeposited() {
+        return store.deposited[index];
+    }
+
+    @Override
+    public void setDeposited(boolean deposited) {
+        store.deposited[index] = deposited;
+    }
+
+    @Override
+    public void setLeftSimulation() {
+        store.status[index] = ParticleStore.LEFTSIMULATION;
+    }
+
+    @Override
+    public void setInPipenetwork() {
+        store.status[index] = ParticleStore.PIPENETWORK;
+    }
+
+    @Override
+    public void setOnSurface() {
+        store.status[index] = ParticleStore.SURFACE;
+    }
+
+    @Override
+    public int getSurfaceCellID() {
+        return store.surfaceCellID[index];
+    }
+
+    @Override
+    public void setSurfaceCellID(int surfaceCellID) {
+        store.surfaceCellID[index] = surfaceCellID;
+    }
+
+    @Override
+    public double getPositionX() {
+        return store.x[index];
+    }
+
+    @Override
+    public double getPositionY() {
+        return store.y[index];
+    }
+
+    @Override
+    public void setPosition3D(double x, double y) {
+        store.x[index] = x;
+        store.y[index] = y;
+    }
+
+    @Override
+    public void setPosition3D(Position3D p) {
+        if (p == null) {
+            return;
+        }
+        store.x[index] = p.x;
+        store.y[index] = p.y;
+        store.z[index] = p.z;
+    }
+
+    @Override
+    public Capacity getToSurface() {
+        return store.getCapacity(store.toSurfaceIndex[index]);
+    }
+
+    @Override
+    public long getToSurfaceTimestamp() {
+        return store.toSurfaceTimestamp[index];
+    }
+
+    @Override
+    public void setToSurface(Capacity manhole, long timestamp) {
+        store.toSurfaceIndex[index] = store.indexOf(manhole);
+        store.toSurfaceTimestamp[index] = timestamp;
+        store.posToSurface[index] = store.moveLengthCummulative[index];
+    }
+
+    @Override
+    public void setToPipenetwork(Capacity capacity) {
+        store.toPipenetworkIndex[index] = store.indexOf(capacity);
+    }
+
+    @Override
+    public void addToHistory(Capacity cap) {
+        store.getParticle(index).addToHistory(cap);
+    }
+
+    @Override
+    public String toString() {
+        return "Particle[" + index + "]";
+    }
+}
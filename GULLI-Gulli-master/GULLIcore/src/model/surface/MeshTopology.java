@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.surface;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Adjacency of a triangle mesh in compressed sparse row format. The triangles
+ * at node n are {@code nodeTriangles[nodeOffsets[n]..nodeOffsets[n+1]-1]},
+ * the Moore neighbours (all triangles sharing at least one node) of triangle
+ * t are {@code mooreTriangles[mooreOffsets[t]..mooreOffsets[t+1]-1]}. Both
+ * lists are sorted by triangle ID. Optional node weights are aligned with
+ * nodeTriangles.
+ *
+ * Built with a parallel counting sort on primitive arrays, so no lists and no
+ * boxed Integers are created even for meshes with millions of triangles.
+ *
+ * @author saemann
+ */
+public class MeshTopology {
+
+    private final int[] nodeOffsets, nodeTriangles;
+    private final double[] nodeWeights;
+    private final int[] mooreOffsets, mooreTriangles;
+
+    /**
+     *
+     * @param nodeOffsets [number of nodes+1]
+     * @param nodeTriangles triangle IDs per node
+     * @param nodeWeights weight of the triangle in nodeTriangles for the
+     * interpolation of node values or null
+     * @param mooreOffsets [number of triangles+1]
+     * @param mooreTriangles moore neighbour IDs per triangle
+     */
+    public MeshTopology(int[] nodeOffsets, int[] nodeTriangles, double[] nodeWeights, int[] mooreOffsets, int[] mooreTriangles) {
+        this.nodeOffsets = nodeOffsets;
+        this.nodeTriangles = nodeTriangles;
+        this.nodeWeights = nodeWeights;
+        this.mooreOffsets = mooreOffsets;
+        this.mooreTriangles = mooreTriangles;
+    }
+
+    /**
+     * Build node to triangle and triangle to moore neighbour references.
+     *
+     * @param triangleNodes [triangle][3] node IDs
+     * @param numberOfNodes
+     * @param calculateWeights create uniform weights (1/number of triangles
+     * at node) for node interpolation
+     * @return
+     */
+    public static MeshTopology build(int[][] triangleNodes, int numberOfNodes, boolean calculateWeights) {
+        int numberOfTriangles = triangleNodes.length;
+
+        //Count triangles per node
+        AtomicIntegerArray counter = new AtomicIntegerArray(numberOfNodes);
+        IntStream.range(0, numberOfTriangles).parallel().forEach(t -> {
+            int[] nodes = triangleNodes[t];
+            counter.incrementAndGet(nodes[0]);
+            counter.incrementAndGet(nodes[1]);
+            counter.incrementAndGet(nodes[2]);
+        });
+        int[] nodeOffsets = new int[numberOfNodes + 1];
+        for (int n = 0; n < numberOfNodes; n++) {
+            nodeOffsets[n + 1] = counter.get(n);
+        }
+        Arrays.parallelPrefix(nodeOffsets, Integer::sum);
+
+        //Scatter triangle IDs into their node's segment, reuse counter as cursor
+        int[] nodeTriangles = new int[nodeOffsets[numberOfNodes]];
+        IntStream.range(0, numberOfTriangles).parallel().forEach(t -> {
+            for (int n : triangleNodes[t]) {
+                nodeTriangles[nodeOffsets[n + 1] - counter.getAndDecrement(n)] = t;
+            }
+        });
+        //Scattering order depends on the threads. Sort for a deterministic result.
+        IntStream.range(0, numberOfNodes).parallel().forEach(n -> {
+            if (nodeOffsets[n + 1] - nodeOffsets[n] > 1) {
+                Arrays.sort(nodeTriangles, nodeOffsets[n], nodeOffsets[n + 1]);
+            }
+        });
+
+        double[] nodeWeights = calculateWeights ? uniformWeights(nodeOffsets, numberOfNodes) : null;
+
+        //Moore neighbours: union of the triangles at the 3 nodes without the triangle itself
+        int[] mooreOffsets = new int[numberOfTriangles + 1];
+        IntStream.range(0, numberOfTriangles).parallel().forEach(t -> {
+            mooreOffsets[t + 1] = mergeNodeTriangles(t, triangleNodes[t], nodeOffsets, nodeTriangles, null, 0);
+        });
+        Arrays.parallelPrefix(mooreOffsets, Integer::sum);
+        int[] mooreTriangles = new int[mooreOffsets[numberOfTriangles]];
+        IntStream.range(0, numberOfTriangles).parallel().forEach(t -> {
+            mergeNodeTriangles(t, triangleNodes[t], nodeOffsets, nodeTriangles, mooreTriangles, mooreOffsets[t]);
+        });
+
+        return new MeshTopology(nodeOffsets, nodeTriangles, nodeWeights, mooreOffsets, mooreTriangles);
+    }
+
+    private static double[] uniformWeights(int[] nodeOffsets, int numberOfNodes) {
+        double[] weights = new double[nodeOffsets[numberOfNodes]];
+        IntStream.range(0, numberOfNodes).parallel().forEach(n -> {
+            int from = nodeOffsets[n], to = nodeOffsets[n + 1];
+            if (to > from) {
+                Arrays.fill(weights, from, to, 1. / (to - from));
+            }
+        });
+        return weights;
+    }
+
+    /**
+     * Merges the sorted triangle lists of the given nodes, skipping
+     * duplicates and the triangle itself.
+     *
+     * @param triangle
+     * @param nodes
+     * @param offsets
+     * @param triangles
+     * @param target array to write to or null to only count
+     * @param targetOffset
+     * @return number of distinct neighbours
+     */
+    private static int mergeNodeTriangles(int triangle, int[] nodes, int[] offsets, int[] triangles, int[] target, int targetOffset) {
+        int i0 = offsets[nodes[0]], e0 = offsets[nodes[0] + 1];
+        int i1 = offsets[nodes[1]], e1 = offsets[nodes[1] + 1];
+        int i2 = offsets[nodes[2]], e2 = offsets[nodes[2] + 1];
+        int count = 0;
+        int last = -1;
+        while (i0 < e0 || i1 < e1 || i2 < e2) {
+            int min = Integer.MAX_VALUE;
+            if (i0 < e0) {
+                min = triangles[i0];
+            }
+            if (i1 < e1 && triangles[i1] < min) {
+                min = triangles[i1];
+            }
+            if (i2 < e2 && triangles[i2] < min) {
+                min = triangles[i2];
+            }
+            if (i0 < e0 && triangles[i0] == min) {
+                i0++;
+            }
+            if (i1 < e1 && triangles[i1] == min) {
+                i1++;
+            }
+            if (i2 < e2 && triangles[i2] == min) {
+                i2++;
+            }
+            if (min == last || min == triangle) {
+                continue;
+            }
+            if (target != null) {
+                target[targetOffset + count] = min;
+            }
+            count++;
+            last = min;
+        }
+        return count;
+    }
+
+    /**
+     * Same topology with uniform node weights.
+     *
+     * @return this if weights are already present.
+     */
+    public MeshTopology withWeights() {
+        if (nodeWeights != null) {
+            return this;
+        }
+        return new MeshTopology(nodeOffsets, nodeTriangles, uniformWeights(nodeOffsets, getNumberOfNodes()), mooreOffsets, mooreTriangles);
+    }
+
+    public int getNumberOfNodes() {
+        return nodeOffsets.length - 1;
+    }
+
+    public int getNumberOfTriangles() {
+        return mooreOffsets.length - 1;
+    }
+
+    public int getNumberOfTrianglesAtNode(int node) {
+        return nodeOffsets[node + 1] - nodeOffsets[node];
+    }
+
+    /**
+     * Copy of the triangle IDs at this node.
+     *
+     * @param node
+     * @return
+     */
+    public int[] getTrianglesAtNode(int node) {
+        return Arrays.copyOfRange(nodeTriangles, nodeOffsets[node], nodeOffsets[node + 1]);
+    }
+
+    public int[] getNodeOffsets() {
+        return nodeOffsets;
+    }
+
+    public int[] getNodeTriangles() {
+        return nodeTriangles;
+    }
+
+    /**
+     *
+     * @return weights aligned with {@link #getNodeTriangles()} or null if not
+     * calculated.
+     */
+    public double[] getNodeWeights() {
+        return nodeWeights;
+    }
+
+    public int[] getMooreOffsets() {
+        return mooreOffsets;
+    }
+
+    public int[] getMooreTriangles() {
+        return mooreTriangles;
+    }
+
+    /**
+     * Node to triangle references as array per node for code that still
+     * needs the jagged representation.
+     *
+     * @return [node][#triangles at node]
+     */
+    public int[][] toNodeTriangleArrays() {
+        return toArrays(nodeOffsets, nodeTriangles);
+    }
+
+    /**
+     * Moore neighbours as array per triangle for code that still needs the
+     * jagged representation.
+     *
+     * @return [triangle][#neighbours]
+     */
+    public int[][] toMooreArrays() {
+        return toArrays(mooreOffsets, mooreTriangles);
+    }
+
+    private static int[][] toArrays(int[] offsets, int[] values) {
+        int[][] arrays = new int[offsets.length - 1][];
+        IntStream.range(0, arrays.length).parallel().forEach(i -> arrays[i] = Arrays.copyOfRange(values, offsets[i], offsets[i + 1]));
+        return arrays;
+    }
+}
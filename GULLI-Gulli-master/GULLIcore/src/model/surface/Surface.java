@@ -44,6 +44,8 @@ import org.opengis.referencing.operation.TransformException;
 public class Surface extends Capacity implements TimeIndexCalculator {
 
     public File fileTriangles, fileWaterlevels;
+
+    private volatile SurfaceTriangleIndex triangleIndex;
     public boolean loadingTriangles, loadingWaterlevels;
 
     public final double[][] vertices;  //UTM
@@ -66,10 +68,30 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      */
     private int[][] NodeNeighbours;
     public double[][] weight;
+    /**
+     * Node to triangle and moore neighbour references in compressed sparse
+     * row format. If set, it is used instead of NodeNeighbours, weight and
+     * mooreNeighbours.
+     */
+    private MeshTopology topology;
 
     public boolean spatialInterpolationVelocity = true;
     public boolean timeInterpolatedValues = true;
     public boolean calculateWeighted = false;
+    /**
+     * If true, time interpolated triangle velocities and Chezy coefficients
+     * are calculated only once per triangle and step and shared by all
+     * particles.
+     */
+    public boolean cacheStepValues = true;
+    private volatile SurfaceStepCache stepCache;
+    /**
+     * If true, the target triangle of a moving particle is searched in a
+     * precomputed {@link SurfaceEdgeTable} instead of recalculating the
+     * triangle geometry and neighbour edges in every step.
+     */
+    public boolean useEdgeTable = true;
+    private volatile SurfaceEdgeTable edgeTable;
 
     private float[][] neighbourDistances;
     public final HashMap<Integer, SurfaceTrianglePath[]> paths;
@@ -98,13 +120,13 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     public SurfaceVelocityLoader velocityLoader;
 
     /**
-     * [triangle][neighbour 3][timeindex]
+     * [triangle][timeindex][neighbour 3]
      */
-    private float[][][] neighbourvelocity;
+    private SurfaceFieldStore neighbourvelocity;
     /**
      * [triangle][timeindex][direction(0:x,1:y)]
      */
-    private float[][][] triangleVelocity;
+    private SurfaceFieldStore triangleVelocity;
     /**
      * [triangle][neighbour index(0,1,2)]
      */
@@ -116,9 +138,13 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     /**
      * [vertices][times][2 (x,y)]
      */
-    private float[][][] velocityNodes;
+    private SurfaceFieldStore velocityNodes;
 
-    private float[] zeroVelocity = new float[2];
+    private final float[] zeroVelocity = new float[2];
+    /**
+     * Zero velocity [x,y] for two consecutive timesteps.
+     */
+    private final float[] zeroTimeVelocity = new float[4];
 
     public int status = -1, vstatus = -1;
 
@@ -233,10 +259,13 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     public void initSparseTriangleVelocityLoading(SurfaceVelocityLoader velocityLoader, boolean initTriangleVelocity, boolean initNodeVelocity) {
         this.velocityLoader = velocityLoader;
         if (initTriangleVelocity) {
-            this.triangleVelocity = new float[triangleNodes.length][][];//[numberOfTimestamps][2];
+            this.triangleVelocity = new SurfaceFieldStore(triangleNodes.length, numberOfTimestamps, 2, false);
+            if (stepCache != null) {
+                stepCache.invalidate();
+            }
         }
         if (initNodeVelocity) {
-            this.velocityNodes = new float[vertices.length][][];
+            this.velocityNodes = new SurfaceFieldStore(vertices.length, numberOfTimestamps, 2, false);
         }
     }
 
@@ -403,6 +432,16 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         return edgeLength;
     }
 
+    /**
+     * Set precomputed edge lengths (e.g. from a binary mesh file) instead of
+     * calculating them with {@link #calcEdgeLengths() }.
+     *
+     * @param edgeLength [triangleId][nbIndex0-2]
+     */
+    public void setEdgeLength(float[][] edgeLength) {
+        this.edgeLength = edgeLength;
+    }
+
     public void calcEdgeLengths() {
         edgeLength = new float[triangleNodes.length][3];
         for (int id = 0; id < triangleNodes.length; id++) {
@@ -447,6 +486,16 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         return triangleArea;
     }
 
+    /**
+     * Set precomputed triangle areas (e.g. from a binary mesh file) instead of
+     * calculating them with {@link #calcTriangleAreas() }.
+     *
+     * @param triangleArea [triangleId] area in m²
+     */
+    public void setTriangleAreas(float[] triangleArea) {
+        this.triangleArea = triangleArea;
+    }
+
     public void calcTriangleAreas() {
         triangleArea = new float[triangleNodes.length];
         for (int i = 0; i < triangleNodes.length; i++) {
@@ -511,6 +560,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
 
     public void setNeighbours(int[][] neighbours) {
         this.neumannNeighbours = neighbours;
+        this.edgeTable = null;
     }
 
     /**
@@ -562,6 +612,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
             System.out.println("Surface: Triangle Mid Points trying to be set (" + triangleMids.length + ") have not the same size as number of triangles (" + this.triangleNodes.length + ")");
         }
         this.triangleMids = triangleMids;
+        this.edgeTable = null;
         calculateDistances();
     }
 
@@ -610,7 +661,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
             numberOfTimestamps = waterlevels[0].length;
         }
 
-        neighbourvelocity = new float[triangleMids.length][3][numberOfTimestamps];
+        neighbourvelocity = new SurfaceFieldStore(triangleMids.length, numberOfTimestamps, 3, true);
         DecimalFormat df = new DecimalFormat("0.0000");
         for (int i = 0; i < maxNeighbourVelocity.length; i++) {
             initVelocityToNeighbours(i);
@@ -637,7 +688,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                         double v = velocity(ds, z0, znb, d0, dnb);
 
 //                        System.out.println("diff: " + df.format(neighbourvelocity[i][j][t] - v) + "\t dynamic:" + df.format(neighbourvelocity[i][j][t]) + "\tall:" + df.format(v));
-                        neighbourvelocity[i][j][t] = (float) v;
+                        neighbourvelocity.set(i, t, j, (float) v);
                     }
                 }
             }
@@ -647,7 +698,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     public void initVelocityArrayForSparseLoading(int numberOfTriangles, int numberOfTimes) {
 //        this.neighbourvelocity = new float[numberOfTriangles][3][numberOfTimes];
         this.numberOfTimestamps = numberOfTimes;
-        this.neighbourvelocity = new float[numberOfTriangles][][];
+        this.neighbourvelocity = new SurfaceFieldStore(numberOfTriangles, numberOfTimes, 3, false);
         this.waterlevels = new float[numberOfTriangles][];
     }
 
@@ -707,14 +758,16 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     public float getVelocityToNeighbour(long time, int triangleIndex, int neighbourIndex) {
 //        System.out.println("513: getvelocitytoNeighbour long");
         double index = times.getTimeIndexDouble(time);
-        if (neighbourvelocity[triangleIndex] == null) {
+        if (!neighbourvelocity.isLoaded(triangleIndex)) {
             initVelocityToNeighbours(triangleIndex);
         }
+        float[] page = neighbourvelocity.page(triangleIndex);
         float v;
-        if (index >= neighbourvelocity.length - 1) {
-            v = (float) neighbourvelocity[triangleIndex][neighbourIndex][neighbourvelocity[triangleIndex][neighbourIndex].length - 1];
+        if (index >= neighbourvelocity.times - 1) {
+            v = page[neighbourvelocity.offset(triangleIndex, neighbourvelocity.times - 1) + neighbourIndex];
         } else {
-            v = (float) (neighbourvelocity[triangleIndex][neighbourIndex][(int) index] * (1 - index % 1) + neighbourvelocity[triangleIndex][neighbourIndex][(int) index + 1] * (index % 1));
+            int o = neighbourvelocity.offset(triangleIndex, (int) index) + neighbourIndex;
+            v = (float) (page[o] * (1 - index % 1) + page[o + 3] * (index % 1));
         }
 
         return v;
@@ -730,16 +783,15 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      */
     public float getVelocityToNeighbour(int timeIndex, int triangleIndex, int neighbourIndex) {
 //        System.out.println("537: getvelocitytoNeighbour int");
-        if (neighbourvelocity[triangleIndex] == null) {
+        if (!neighbourvelocity.isLoaded(triangleIndex)) {
             initVelocityToNeighbours(triangleIndex);
         }
         try {
-            float v = neighbourvelocity[triangleIndex][neighbourIndex][timeIndex];
+            float v = neighbourvelocity.get(triangleIndex, timeIndex, neighbourIndex);
 
             return v;
         } catch (IndexOutOfBoundsException e) {
-            System.err.println("triangleIndex:" + triangleIndex + "/" + neighbourvelocity.length + "   neighbour:" + neighbourIndex + "/" + neighbourvelocity[0].length + "   time:" + timeIndex + "/" + neighbourvelocity[0][0].length);
-            System.err.println(neighbourvelocity.length + "," + neighbourvelocity[triangleIndex].length + "   time:" + timeIndex + neighbourvelocity[triangleIndex][neighbourIndex].length);
+            System.err.println("triangleIndex:" + triangleIndex + "/" + neighbourvelocity.elements + "   neighbour:" + neighbourIndex + "/" + neighbourvelocity.components + "   time:" + timeIndex + "/" + neighbourvelocity.times);
 
             return 0;
         }
@@ -749,7 +801,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         //Load velocitiy values
         if (waterlevelLoader != null) {
             synchronized (waterlevelLoader) {
-                if (neighbourvelocity[triangleIndex] != null) {
+                if (neighbourvelocity.isLoaded(triangleIndex)) {
                     //Seems to be loaded from another thread while this one was waiting to finish.
                     //Everything should be on its place. Can Return 
                     return;
@@ -766,7 +818,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                         this.waterlevels[id] = new float[numberOfTimestamps];
                     }
                 }
-                neighbourvelocity[id] = new float[3][numberOfTimestamps];
+                float[] nbv = new float[numberOfTimestamps * 3];
                 if (wls == null) {
                     //This triangle Id has net been in the database. Initialize as 0 values
 //                    System.err.println("waterlevels on "+id+" == null");
@@ -794,10 +846,11 @@ public class Surface extends Capacity implements TimeIndexCalculator {
 
                         //Calculate velocities
                         for (int t = 0; t < wls.length; t++) {
-                            neighbourvelocity[id][n][t] = (float) velocity(ds, triangleMids[id][2], triangleMids[nbID][2], wls[t], wlsNB[t]);
+                            nbv[t * 3 + n] = (float) velocity(ds, triangleMids[id][2], triangleMids[nbID][2], wls[t], wlsNB[t]);
                         }
                     }
                 }
+                neighbourvelocity.put(id, nbv);
             }
         }
     }
@@ -842,10 +895,12 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      * @return
      */
     public double getVelocityToNeighbour(int triangleIndex, int neighbourIndex) {
-        if (neighbourvelocity[triangleIndex] == null) {
+        if (!neighbourvelocity.isLoaded(triangleIndex)) {
             initVelocityToNeighbours(triangleIndex);
         }
-        return (neighbourvelocity[triangleIndex][neighbourIndex][(int) timeIndex] * (1 - timeIndex % 1) + neighbourvelocity[triangleIndex][neighbourIndex][(int) timeIndex + 1] * (timeIndex % 1));
+        float[] page = neighbourvelocity.page(triangleIndex);
+        int o = neighbourvelocity.offset(triangleIndex, (int) timeIndex) + neighbourIndex;
+        return (page[o] * (1 - timeIndex % 1) + page[o + 3] * (timeIndex % 1));
 
     }
 
@@ -857,19 +912,11 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      * @return float[3] has to be divided by 3
      */
     private float[] getVelocityToNeighbours(long time, int triangleIndex) {
-        float[] entry = new float[3];
         double index = times.getTimeIndexDouble(time);
-        if (neighbourvelocity[triangleIndex] == null) {
+        if (!neighbourvelocity.isLoaded(triangleIndex)) {
             initVelocityToNeighbours(triangleIndex);
         }
-
-        for (int i = 0; i < entry.length; i++) {
-            if (entry[i] == 0) {
-                float v = (float) (neighbourvelocity[triangleIndex][i][(int) index] * (1 - index % 1) + neighbourvelocity[triangleIndex][i][(int) index + 1] * (index % 1));
-                entry[i] = v;
-            }
-        }
-        return entry;
+        return getVelocityToNeighbours(index, triangleIndex);
     }
 
 //    public float[][][] getNeighbourVelocity() {
@@ -889,11 +936,10 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     private float[] getVelocityToNeighbours(double timeIndex, int triangleIndex) {
         float[] entry = new float[3];
         double index = timeIndex;
+        float[] page = neighbourvelocity.page(triangleIndex);
+        int o = neighbourvelocity.offset(triangleIndex, (int) index);
         for (int i = 0; i < entry.length; i++) {
-            if (entry[i] == 0) {
-                float v = (float) (neighbourvelocity[triangleIndex][i][(int) index] * (1 - index % 1) + neighbourvelocity[triangleIndex][i][(int) index + 1] * (index % 1));
-                entry[i] = v;
-            }
+            entry[i] = (float) (page[o + i] * (1 - index % 1) + page[o + 3 + i] * (index % 1));
         }
         return entry;
     }
@@ -905,15 +951,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      * @return [3] velocities to neighbour.
      */
     private float[] getVelocityToNeighbours(int triangleIndex) {
-        float[] entry = new float[3];
-        double index = this.timeIndex;
-        for (int i = 0; i < entry.length; i++) {
-            if (entry[i] == 0) {
-                float v = (float) (neighbourvelocity[triangleIndex][i][(int) index] * (1 - index % 1) + neighbourvelocity[triangleIndex][i][(int) index + 1] * (index % 1));
-                entry[i] = v;
-            }
-        }
-        return entry;
+        return getVelocityToNeighbours(this.timeIndex, triangleIndex);
     }
 
     /**
@@ -938,8 +976,9 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                 double length = Math.sqrt((triangleMids[triangleIndex][0] - triangleMids[nb][0]) * (triangleMids[triangleIndex][0] - triangleMids[nb][0]) + (triangleMids[triangleIndex][1] - triangleMids[nb][1]) * (triangleMids[triangleIndex][1] - triangleMids[nb][1]));
                 double x = (triangleMids[nb][0] - triangleMids[triangleIndex][0]) / length;
                 double y = (triangleMids[nb][1] - triangleMids[triangleIndex][1]) / length;
-                v[triangleIndex][0] += (neighbourvelocity[triangleIndex][i][timeindex] * anteil0 + neighbourvelocity[triangleIndex][i][timeindex + 1] * anteil1) * x;
-                v[triangleIndex][1] += (neighbourvelocity[triangleIndex][i][timeindex] * anteil0 + neighbourvelocity[triangleIndex][i][timeindex + 1] * anteil1) * y;
+                double vnb = neighbourvelocity.get(triangleIndex, timeindex, i) * anteil0 + neighbourvelocity.get(triangleIndex, timeindex + 1, i) * anteil1;
+                v[triangleIndex][0] += vnb * x;
+                v[triangleIndex][1] += vnb * y;
             }
         }
         return v;
@@ -949,7 +988,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      * Calculate Triangle Velocities (on mid point) from neighbour velocities.
      */
     public void calcTriangleVelocityFromNeighbourVelocity() {
-        float[][][] velocity = new float[triangleNodes.length][numberOfTimestamps][2];
+        SurfaceFieldStore velocity = new SurfaceFieldStore(triangleNodes.length, numberOfTimestamps, 2, true);
         double nxLength, nyLength;//sum of normal in x/y direction
         double[][] normals = new double[3][2]; //[neighbourindex][0:x,1:y];
 //        double[] v=new double[3];
@@ -987,15 +1026,20 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                 double fy = Math.abs(normals[n][1]) / nyLength;
 
                 //Calculate velocities for every timeindex
+                float[] page = velocity.page(i);
+                int o = velocity.offset(i, 0);
                 for (int t = 0; t < numberOfTimestamps; t++) {
-                    float vnb = neighbourvelocity[i][n][t];
-                    velocity[i][t][0] += vnb * normals[n][0] * fx;
-                    velocity[i][t][1] += vnb * normals[n][1] * fy;
+                    float vnb = neighbourvelocity.get(i, t, n);
+                    page[o + t * 2] += vnb * normals[n][0] * fx;
+                    page[o + t * 2 + 1] += vnb * normals[n][1] * fy;
                 }
 
             }
         }
         this.triangleVelocity = velocity;
+        if (stepCache != null) {
+            stepCache.invalidate();
+        }
     }
 
     /**
@@ -1006,9 +1050,10 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      */
     public void calcTriangleVelocityFromNeighbourVelocity(int triangleID) {
 
-        if (triangleVelocity[triangleID] == null) {
-            triangleVelocity[triangleID] = new float[numberOfTimestamps][2];
+        if (triangleVelocity.isLoaded(triangleID)) {
+            return;
         }
+        float[] velocity = new float[numberOfTimestamps * 2];
 
         double nxLength, nyLength;//sum of normal in x/y direction
         double[][] normals = new double[3][2]; //[neighbourindex][0:x,1:y];
@@ -1048,13 +1093,13 @@ public class Surface extends Capacity implements TimeIndexCalculator {
 
             //Calculate velocities for every timeindex
             for (int t = 0; t < numberOfTimestamps; t++) {
-                float vnb = neighbourvelocity[i][n][t];
-                triangleVelocity[i][t][0] += vnb * normals[n][0] * fx;
-                triangleVelocity[i][t][1] += vnb * normals[n][1] * fy;
+                float vnb = neighbourvelocity.get(i, t, n);
+                velocity[t * 2] += vnb * normals[n][0] * fx;
+                velocity[t * 2 + 1] += vnb * normals[n][1] * fy;
             }
 
         }
-
+        triangleVelocity.put(triangleID, velocity);
     }
 
 //    /**
@@ -1116,11 +1161,8 @@ public class Surface extends Capacity implements TimeIndexCalculator {
 //        //Normalize
 //        dx/=length;
 //        dy/=length;
-        float[] velocity0 = triangleVelocity[triangleindex][timeindex];
-        float[] velocityNB = triangleVelocity[nb][timeindex];
-
-        float vx = (velocity0[0] + velocityNB[0]) * 0.5f;
-        float vy = (velocity0[1] + velocityNB[1]) * 0.5f;
+        float vx = (triangleVelocity.get(triangleindex, timeindex, 0) + triangleVelocity.get(nb, timeindex, 0)) * 0.5f;
+        float vy = (triangleVelocity.get(triangleindex, timeindex, 1) + triangleVelocity.get(nb, timeindex, 1)) * 0.5f;
         //Projektion auf abstandsvektor
         float factor = ((vx * dx + vy * dy) / (dx * dx + dy * dy));
         double[] vres = new double[]{factor * dx, factor * dy};
@@ -1140,11 +1182,11 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      */
     public void calcNeighbourVelocityFromTriangleVelocity() {
 //        this.numberOfTimestamps = this.triangleVelocity[0].length;
-        this.neighbourvelocity = new float[triangleNodes.length][3][numberOfTimestamps];
-        for (int t = 0; t < numberOfTimestamps; t++) {
-            for (int i = 0; i < triangleNodes.length; i++) {
+        this.neighbourvelocity = new SurfaceFieldStore(triangleNodes.length, numberOfTimestamps, 3, true);
+        for (int i = 0; i < triangleNodes.length; i++) {
+            for (int t = 0; t < numberOfTimestamps; t++) {
                 for (int j = 0; j < 3; j++) {
-                    this.neighbourvelocity[i][j][t] = calcNeighbourVelocityFromTriangleVelocity(t, i, j);
+                    this.neighbourvelocity.set(i, t, j, calcNeighbourVelocityFromTriangleVelocity(t, i, j));
                 }
             }
         }
@@ -1157,15 +1199,32 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         long dura = System.currentTimeMillis() - start;
         //System.out.println("triangleVeloCalc took: "+ dura/1000 + " s. With " + triangleVelocity);
 
-        velocityNodes = new float[NodeNeighbours.length][numberOfTimestamps][2];
+        velocityNodes = new SurfaceFieldStore(getNumberOfReferencedNodes(), numberOfTimestamps, 2, true);
+        if (topology != null) {
+            int[] offsets = topology.getNodeOffsets();
+            int[] nodeTriangles = topology.getNodeTriangles();
+            double[] nodeWeights = topology.getNodeWeights();
+            for (int j = 0; j < offsets.length - 1; j++) {
+                float[] nv = velocityNodes.page(j);
+                int no = velocityNodes.offset(j, 0);
+                for (int k = offsets[j]; k < offsets[j + 1]; k++) {
+                    int nbindex = mapTriangleIndex(nodeTriangles[k]);
+                    if (nbindex < 0) {
+                        continue;
+                    }
+                    double w = nodeWeights != null ? nodeWeights[k] : 1. / (offsets[j + 1] - offsets[j]);
+                    float[] tv = triangleVelocity.page(nbindex);
+                    int to = triangleVelocity.offset(nbindex, 0);
+                    for (int t = 0; t < numberOfTimestamps * 2; t++) {
+                        nv[no + t] += tv[to + t] * w;
+                    }
+                }
+            }
+            return;
+        }
         //System.out.println(getClass() + ":: calculateVelocity2d: Nodeneighbours:" + NodeNeighbours);
         for (int j = 0; j < NodeNeighbours.length; j++) {                   //welche vertice
             if (NodeNeighbours[j] == null) {
-                for (int t = 0; t < numberOfTimestamps; t++) {//wann
-                    for (int k = 0; k < 2; k++) {  //x und y                      
-                        velocityNodes[j][t][k] = 0; //triangleVelo: [triangle][timeindex][direction(0:x,1:y)]
-                    }
-                }
                 continue;
             }
             for (int n = 0; n < NodeNeighbours[j].length; n++) {        //welches triangle an vertice
@@ -1183,10 +1242,12 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                             continue;
                         }
                     }
-                    for (int t = 0; t < numberOfTimestamps; t++) {//wann
-                        for (int k = 0; k < 2; k++) {  //x und y                      
-                            velocityNodes[j][t][k] += triangleVelocity[nbindex][t][k] * weight[j][n]; //triangleVelo: [triangle][timeindex][direction(0:x,1:y)]
-                        }
+                    float[] tv = triangleVelocity.page(nbindex);
+                    int to = triangleVelocity.offset(nbindex, 0);
+                    float[] nv = velocityNodes.page(j);
+                    int no = velocityNodes.offset(j, 0);
+                    for (int t = 0; t < numberOfTimestamps * 2; t++) {//wann, x und y
+                        nv[no + t] += tv[to + t] * weight[j][n]; //triangleVelo: [triangle][timeindex][direction(0:x,1:y)]
                     }
                 }
             }
@@ -1195,22 +1256,25 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     }
 
     /**
-     * Get the velocity for this triangle. if it is not yet known. the
-     * information is loaded via the velocityloader connected for this surface.
+     * Make sure the velocity for this triangle is in the store. If it is not
+     * yet known, the information is loaded via the velocityloader connected
+     * for this surface.
      *
      * @param triangleID
-     * @return float[times][2:x,y] velocity (m/s)
+     * @return the page of the triangle velocity store containing this
+     * triangle. Values start at
+     * {@code triangleVelocity.offset(triangleID, timeindex)}.
      */
-    private float[][] getTriangleVelocity(int triangleID) {
-        if (triangleVelocity[triangleID] == null) {
+    private float[] loadTriangleVelocity(int triangleID) {
+        if (!triangleVelocity.isLoaded(triangleID)) {
             try {
-                triangleVelocity[triangleID] = velocityLoader.loadVelocity(triangleID);
+                triangleVelocity.put(triangleID, velocityLoader.loadVelocity(triangleID));
             } catch (Exception e) {
                 //Id Not found or equal exception. This triangle has no velocity information -> set everything to zero.
-                triangleVelocity[triangleID] = new float[numberOfTimestamps][2];
+                triangleVelocity.putZero(triangleID);
             }
         }
-        return triangleVelocity[triangleID];
+        return triangleVelocity.page(triangleID);
     }
 
     public float[] getTriangleVelocity(int triangleID, double indexDouble) {
@@ -1218,16 +1282,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     }
 
     public float[] getTriangleVelocity(int triangleID, double indexDouble, float[] tofill) {
-        if (tofill == null) {
-            System.out.println("create new float[2] to return interpolated velocity.");
-            tofill = new float[2];
-        }
-        float[] lower = getTriangleVelocity(triangleID)[(int) indexDouble];
-        float[] upper = getTriangleVelocity(triangleID)[(int) indexDouble + 1];
-        float frac = (float) (indexDouble % 1f);
-        tofill[0] = (lower[0] + (upper[0] - lower[0]) * frac);
-        tofill[1] = (lower[1] + (upper[1] - lower[1]) * frac);
-        return tofill;
+        return getTriangleVelocity(triangleID, (int) indexDouble, (float) (indexDouble % 1f), tofill);
     }
 
     public float[] getTriangleVelocity(int triangleID, int timeindexInt, float frac, float[] tofill) {
@@ -1235,22 +1290,26 @@ public class Surface extends Capacity implements TimeIndexCalculator {
             System.out.println("create new float[2] to return interpolated velocity.");
             tofill = new float[2];
         }
-        float[] lower = getTriangleVelocity(triangleID)[timeindexInt];
-        float[] upper = getTriangleVelocity(triangleID)[timeindexInt + 1];
-        tofill[0] = (lower[0] + (upper[0] - lower[0]) * frac);
-        tofill[1] = (lower[1] + (upper[1] - lower[1]) * frac);
+        float[] page = loadTriangleVelocity(triangleID);
+        int lower = triangleVelocity.offset(triangleID, timeindexInt);
+        tofill[0] = (page[lower] + (page[lower + 2] - page[lower]) * frac);
+        tofill[1] = (page[lower + 1] + (page[lower + 3] - page[lower + 1]) * frac);
         return tofill;
     }
 
     /**
      * Velocity[x,y] at the center of the triangle at the given timeindex.
+     * Creates a new array. Use
+     * {@link #getTriangleVelocity(int, int, float, float[])} in loops.
      *
      * @param triangleID
      * @param indexInteger
      * @return float[2] 0:x; 1:y velocity (m/s)
      */
     public float[] getTriangleVelocity(int triangleID, int indexInteger) {
-        return getTriangleVelocity(triangleID)[indexInteger];
+        float[] page = loadTriangleVelocity(triangleID);
+        int o = triangleVelocity.offset(triangleID, indexInteger);
+        return new float[]{page[o], page[o + 1]};
     }
 
     /**
@@ -1260,7 +1319,28 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      */
     public void loadSparseNodeVelocity2D(int nodeID) {
         if (velocityNodes == null) {
-            velocityNodes = new float[NodeNeighbours.length][][];
+            velocityNodes = new SurfaceFieldStore(getNumberOfReferencedNodes(), numberOfTimestamps, 2, false);
+        }
+        float[] nodeVelocity = new float[numberOfTimestamps * 2];
+        if (topology != null) {
+            int[] offsets = topology.getNodeOffsets();
+            int[] nodeTriangles = topology.getNodeTriangles();
+            double[] nodeWeights = topology.getNodeWeights();
+            int from = offsets[nodeID], to = offsets[nodeID + 1];
+            for (int k = from; k < to; k++) {
+                int triangleID = mapTriangleIndex(nodeTriangles[k]);
+                if (triangleID < 0 || !ensureTriangleVelocity(triangleID)) {
+                    continue;
+                }
+                double w = nodeWeights != null ? nodeWeights[k] : 1. / (to - from);
+                float[] tv = triangleVelocity.page(triangleID);
+                int o = triangleVelocity.offset(triangleID, 0);
+                for (int t = 0; t < numberOfTimestamps * 2; t++) {
+                    nodeVelocity[t] += tv[o + t] * w;
+                }
+            }
+            velocityNodes.put(nodeID, nodeVelocity);
+            return;
         }
         for (int n = 0; n < NodeNeighbours[nodeID].length; n++) {        //welches triangle an vertice
             if (NodeNeighbours[nodeID][n] >= 0) {
@@ -1277,33 +1357,61 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                         continue;
                     }
                 }
-                if (triangleVelocity[triangleID] == null) {
-
-                    if (velocityLoader != null) {
-                        getTriangleVelocity(triangleID);
-                    } else if (waterlevelLoader != null) {
-                        //Load waterlevel and calculate velocity
-                        initVelocityToNeighbours(triangleID);
-                        calcTriangleVelocityFromNeighbourVelocity(triangleID);
-                    }
+                if (!ensureTriangleVelocity(triangleID)) {
+                    continue;
                 }
-                velocityNodes[nodeID] = new float[numberOfTimestamps][2];
-                for (int t = 0; t < numberOfTimestamps; t++) {//wann
-                    for (int k = 0; k < 2; k++) {  //x und y         
-//                        System.out.println("weight.length="+weight[nodeID].length);
-//                        System.out.println("velocitynodes.length1: "+velocityNodes[nodeID].length+"\t 2: "+velocityNodes[nodeID][0].length);
-//                        System.out.println("triangleVelocity[triangleID][t][k]:"+triangleVelocity[triangleID].length+"\t2: "+triangleVelocity[triangleID][t].length);
-//                        System.out.println("triangleNode "+nodeID+"  ="+velocityNodes[nodeID][t][k]+" + "+triangleVelocity[triangleID][t][k]+" * "+weight[nodeID][n]);
-                        velocityNodes[nodeID][t][k] += triangleVelocity[triangleID][t][k] * weight[nodeID][n]; //triangleVelo: [triangle][timeindex][direction(0:x,1:y)]
-                    }
+                float[] tv = triangleVelocity.page(triangleID);
+                int to = triangleVelocity.offset(triangleID, 0);
+                for (int t = 0; t < numberOfTimestamps * 2; t++) {//wann, x und y
+                    nodeVelocity[t] += tv[to + t] * weight[nodeID][n]; //triangleVelo: [triangle][timeindex][direction(0:x,1:y)]
                 }
             }
         }
+        velocityNodes.put(nodeID, nodeVelocity);
 
 //        }
         //getmeanvelo2dNodes(velocityNodes);
     }
 
+    /**
+     * Triangle index in the velocity store for a triangle ID of the node
+     * references.
+     *
+     * @param triangleID
+     * @return index or -1 if the triangle is not mapped.
+     */
+    private int mapTriangleIndex(int triangleID) {
+        if (triangleID < 0 || this.mapIndizes == null) {
+            return triangleID;
+        }
+        Integer ninteger = mapIndizes.get(triangleID);
+        if (ninteger == null) {
+            return -1;
+        }
+        return ninteger;
+    }
+
+    /**
+     * Load or calculate the velocity of this triangle if it is not yet in the
+     * store.
+     *
+     * @param triangleID
+     * @return true if the velocity is available.
+     */
+    private boolean ensureTriangleVelocity(int triangleID) {
+        if (!triangleVelocity.isLoaded(triangleID)) {
+
+            if (velocityLoader != null) {
+                loadTriangleVelocity(triangleID);
+            } else if (waterlevelLoader != null) {
+                //Load waterlevel and calculate velocity
+                initVelocityToNeighbours(triangleID);
+                calcTriangleVelocityFromNeighbourVelocity(triangleID);
+            }
+        }
+        return triangleVelocity.isLoaded(triangleID);
+    }
+
     /**
      * Project the Traingle velocity on the neighbour-normal vector by using
      * rectangular angle on the triangle-velocity vector. Gives higher values
@@ -1319,10 +1427,8 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         if (nb < 0) {
             return 0; //Noflow boundary
         } //Triangle velocity 
-        float[] velocity0 = triangleVelocity[timeindex][triangleindex];
-        float[] velocityNB = triangleVelocity[timeindex][nb];
-        float vx = (velocity0[0]);// + velocityNB[0]) * 0.5f;
-        float vy = (velocity0[1]);// + velocityNB[1]) * 0.5f;
+        float vx = triangleVelocity.get(triangleindex, timeindex, 0);// + velocityNB[0]) * 0.5f;
+        float vy = triangleVelocity.get(triangleindex, timeindex, 1);// + velocityNB[1]) * 0.5f;
         float lengthVT = (float) Math.sqrt(vx * vx + vy * vy);
         if (lengthVT == 0) {
             return 0;
@@ -1375,13 +1481,13 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      * than a projection rectangular on the neighbour-vector.
      */
     public void calcNeighbourVelocityFromTriangleVelocityOuterProjection() {
-        this.numberOfTimestamps = this.triangleVelocity.length;
-        this.neighbourvelocity = new float[triangleNodes.length][3][numberOfTimestamps];
+        this.numberOfTimestamps = this.triangleVelocity.times;
+        this.neighbourvelocity = new SurfaceFieldStore(triangleNodes.length, numberOfTimestamps, 3, true);
 
         for (int i = 0; i < triangleNodes.length; i++) {
             for (int t = 0; t < numberOfTimestamps; t++) {
                 for (int j = 0; j < 3; j++) {
-                    this.neighbourvelocity[i][j][t] = calcNeighbourVelocityFromTriangleVelocityOuterProjection(t, i, j);
+                    this.neighbourvelocity.set(i, t, j, calcNeighbourVelocityFromTriangleVelocityOuterProjection(t, i, j));
                 }
             }
         }
@@ -1406,6 +1512,15 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         return triangleNodes;
     }
 
+    /**
+     * Coordinate reference system of the vertices (e.g. "EPSG:25832").
+     *
+     * @return
+     */
+    public String getSpatialReferenceCode() {
+        return spatialReferenceCode;
+    }
+
     /**
      * Vertices' coordinates
      *
@@ -1448,6 +1563,83 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         this.timeFrac = timeIndex % 1.;
         this.timeinvFrac = 1. - timeFrac;
         this.timeIndexInt = (int) this.timeIndex;
+        if (stepCache != null) {
+            stepCache.invalidate();
+        }
+    }
+
+    /**
+     * Table of the triangle edges for the target triangle search. Built on
+     * first request.
+     *
+     * @return
+     */
+    public SurfaceEdgeTable getEdgeTable() {
+        if (edgeTable == null) {
+            synchronized (this) {
+                if (edgeTable == null) {
+                    edgeTable = new SurfaceEdgeTable(vertices, triangleNodes, neumannNeighbours, triangleMids);
+                }
+            }
+        }
+        return edgeTable;
+    }
+
+    /**
+     * Cache for values that are shared by all particles in a triangle during
+     * one step. Created with the first request.
+     *
+     * @return
+     */
+    public SurfaceStepCache getStepCache() {
+        if (stepCache == null) {
+            synchronized (this) {
+                if (stepCache == null) {
+                    stepCache = new SurfaceStepCache(triangleNodes.length);
+                }
+            }
+        }
+        return stepCache;
+    }
+
+    /**
+     * Makes sure the step cache holds the velocity of this triangle at the
+     * actual time.
+     *
+     * @param cache
+     * @param triangleID
+     */
+    private void updateStepVelocity(SurfaceStepCache cache, int triangleID) {
+        if (cache.isVelocityValid(triangleID)) {
+            return;
+        }
+        float[] v = loadTriangleVelocity(triangleID);
+        int o = triangleVelocity.offset(triangleID, timeIndexInt);
+        if (timeInterpolatedValues) {
+            cache.setVelocity(triangleID, v[o] * timeinvFrac + v[o + 2] * timeFrac, v[o + 1] * timeinvFrac + v[o + 3] * timeFrac);
+        } else {
+            cache.setVelocity(triangleID, v[o], v[o + 1]);
+        }
+    }
+
+    /**
+     * Chezy coefficient kst*h^(1/6) for the actual waterlevel in this
+     * triangle.
+     *
+     * @param triangleID
+     * @return
+     */
+    public double getActualChezy(int triangleID) {
+        if (!cacheStepValues) {
+            return kst * Math.pow(getActualWaterlevel(triangleID), 1. / 6.);
+        }
+        SurfaceStepCache cache = getStepCache();
+        if (cache.isChezyValid(triangleID)) {
+            return cache.getChezy(triangleID);
+        }
+        double c = kst * Math.pow(getActualWaterlevel(triangleID), 1. / 6.);
+        cache.setChezy(triangleID, c);
+        return c;
     }
 
     public GeoTools getGeotools() {
@@ -1462,6 +1654,9 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     public void reset() {
         nextRecalculation = 0L;
         this.timeIndex = 0;
+        if (stepCache != null) {
+            stepCache.invalidate();
+        }
         this.statistics.clear();
         if (measurementRaster != null) {
             measurementRaster.reset();
@@ -1854,7 +2049,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      *
      * @return
      */
-    public float[][][] getTriangleVelocity() {
+    public SurfaceFieldStore getTriangleVelocity() {
         return triangleVelocity;
     }
 
@@ -1863,15 +2058,57 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      *
      * @param triangleVelocity
      */
-    public void setTriangleVelocity(float[][][] triangleVelocity) {
+    public void setTriangleVelocity(SurfaceFieldStore triangleVelocity) {
         this.triangleVelocity = triangleVelocity;
-        if (triangleVelocity[0] != null) {
-            int timesNew = triangleVelocity[0].length;
-            if (numberOfTimestamps > 0 && timesNew != numberOfTimestamps) {
-                System.err.println(getClass() + " number of timestamps from triangleVelocity (" + timesNew + ") is not the same as existing number of timestamps (" + numberOfTimestamps + ")");
+        if (stepCache != null) {
+            stepCache.invalidate();
+        }
+        int timesNew = triangleVelocity.times;
+        if (numberOfTimestamps > 0 && timesNew != numberOfTimestamps) {
+            System.err.println(getClass() + " number of timestamps from triangleVelocity (" + timesNew + ") is not the same as existing number of timestamps (" + numberOfTimestamps + ")");
+        }
+        numberOfTimestamps = timesNew;
+    }
+
+    /**
+     * Set velocities on triangle [triangle][timeindex][direction(0:x,1:y)].
+     * The values are copied into a dense {@link SurfaceFieldStore}.
+     *
+     * @param triangleVelocity
+     */
+    public void setTriangleVelocity(float[][][] triangleVelocity) {
+        int timesNew = numberOfTimestamps;
+        for (float[][] v : triangleVelocity) {
+            if (v != null) {
+                timesNew = v.length;
+                break;
             }
-            numberOfTimestamps = timesNew;
         }
+        SurfaceFieldStore store = new SurfaceFieldStore(triangleVelocity.length, timesNew, 2, true);
+        for (int i = 0; i < triangleVelocity.length; i++) {
+            if (triangleVelocity[i] != null) {
+                store.put(i, triangleVelocity[i]);
+            }
+        }
+        setTriangleVelocity(store);
+    }
+
+    /**
+     * Velocities to the three neighbours [triangle][timeindex][neighbour]
+     *
+     * @return
+     */
+    public SurfaceFieldStore getNeighbourVelocity() {
+        return neighbourvelocity;
+    }
+
+    /**
+     * Velocities on the vertices [vertex][timeindex][direction(0:x,1:y)]
+     *
+     * @return
+     */
+    public SurfaceFieldStore getNodeVelocity() {
+        return velocityNodes;
     }
 
     /**
@@ -1992,16 +2229,56 @@ public class Surface extends Capacity implements TimeIndexCalculator {
 
     /**
      * Lists Neumann neighbour triangle Id for each triangle (every row varies
-     * in length)
+     * in length). If only a {@link MeshTopology} is set, the jagged array is
+     * created on the first call and kept.
      *
      * @return [number of triangles][variable count of triangles]
      */
     public int[][] getNeumannNeighbours() {
+        if (mooreNeighbours == null && topology != null) {
+            synchronized (this) {
+                if (mooreNeighbours == null) {
+                    mooreNeighbours = topology.toMooreArrays();
+                }
+            }
+        }
         return mooreNeighbours;
     }
 
+    /**
+     * Spatial index for point location. Loaded from the surface directory or
+     * built on first request.
+     *
+     * @return
+     */
+    public SurfaceTriangleIndex getTriangleIndex() {
+        SurfaceTriangleIndex index = triangleIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = triangleIndex;
+                if (index == null) {
+                    index = SurfaceTriangleIndex.loadOrBuild(vertices, triangleNodes, fileTriangles);
+                    triangleIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Triangle containing the point or the triangle with the nearest midpoint
+     * if the point is outside of the surface.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
     public int calcContainingTriangle(double x, double y) {
-        return crawlNearestTriangle(x, y, 0);
+        int id = getTriangleIndex().findContainingTriangle(x, y);
+        if (id < 0) {
+            id = getTriangleIndex().findNearestTriangle(x, y);
+        }
+        return id;
     }
 
     public int calcContainingTriangleLongLat(double longitude, double latitude) {
@@ -2015,34 +2292,29 @@ public class Surface extends Capacity implements TimeIndexCalculator {
     }
 
     /**
-     * Checks every triangle for contining the given point. The test via
-     * barycnetric coordinates is only done, when the midpoint distance is below
-     * the minDistance parameter.
+     * Finds the triangle containing the given point via the spatial index
+     * (see {@link #getTriangleIndex()}).
      *
      * @param x
      * @param y
-     * @param minDistance should be around maximum edge length
-     * @return
+     * @param minDistance not needed any more with the spatial index. Kept for
+     * compatibility.
+     * @return triangle id or -1 if the point is not on the surface.
      */
     public int findContainingTriangle(double x, double y, double minDistance) {
-        for (int i = 0; i < triangleMids.length; i++) {
-            double[] mid = triangleMids[i];
-            if (Math.abs(mid[0] - x) > minDistance) {
-                continue;
-            }
-            if (Math.abs(mid[1] - y) > minDistance) {
-                continue;
-            }
-            //is coordinate in triangle?
-            int[] nodeIDs = triangleNodes[i];
-            double[] p0 = vertices[nodeIDs[0]];
-            double[] p1 = vertices[nodeIDs[1]];
-            double[] p2 = vertices[nodeIDs[2]];
-            if (GeometryTools.triangleContainsPoint(p0[0], p1[0], p2[0], p0[1], p1[1], p2[1], x, y)) {
-                return i;
-            }
-        }
-        return -1;
+        return getTriangleIndex().findContainingTriangle(x, y);
+    }
+
+    /**
+     *
+     * @param x
+     * @param y
+     * @param k number of triangles
+     * @return ids of the k triangles with the nearest midpoints, nearest
+     * first.
+     */
+    public int[] findNearestTriangles(double x, double y, int k) {
+        return getTriangleIndex().findNearestTriangles(x, y, k);
     }
 
     public int crawlNearestTriangle(double x, double y, int startTriangleID) {
@@ -2053,7 +2325,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         //start with first triangle
         int istID = startTriangleID;
         double[] istPos = triangleMids[istID];
-        double dist = Math.abs(istPos[0] - x) * Math.abs(istPos[1] - y);
+        double dist = (istPos[0] - x) * (istPos[0] - x) + (istPos[1] - y) * (istPos[1] - y);
         while (true) {
 
             if (dist < bestDistance) {
@@ -2061,19 +2333,28 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                 growCounter = 0;
                 //Find nearest neighbour
                 int[] neighbours;
-                if (mooreNeighbours != null) {
-                    neighbours = mooreNeighbours[istID];
+                int from = 0, to;
+                if (topology != null) {
+                    neighbours = topology.getMooreTriangles();
+                    from = topology.getMooreOffsets()[istID];
+                    to = topology.getMooreOffsets()[istID + 1];
                 } else {
-                    neighbours = this.neumannNeighbours[istID];
+                    if (mooreNeighbours != null) {
+                        neighbours = mooreNeighbours[istID];
+                    } else {
+                        neighbours = this.neumannNeighbours[istID];
+                    }
+                    to = neighbours.length;
                 }
                 double bestDist = Double.POSITIVE_INFINITY;
                 int bestID = -1;
-                for (int nbID : neighbours) {
+                for (int k = from; k < to; k++) {
+                    int nbID = neighbours[k];
                     if (nbID < 0) {
                         continue;
                     }
                     double[] nbPos = triangleMids[nbID];
-                    double nbDist = Math.abs(nbPos[0] - x) * Math.abs(nbPos[1] - y);
+                    double nbDist = (nbPos[0] - x) * (nbPos[0] - x) + (nbPos[1] - y) * (nbPos[1] - y);
                     if (nbDist < bestDist) {
                         bestDist = nbDist;
                         bestID = nbID;
@@ -2083,7 +2364,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                     System.err.println("Something wrong with crawling near triangle ");
                     break;
                 }
-                if (bestID == istID) {
+                if (bestID == istID || bestDist >= dist) {
                     //Found this triangle to be the best
                     break;
                 }
@@ -2133,19 +2414,39 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      * @return
      */
     public double[] getParticleVelocity2D(Particle p, int triangleID, double[] tofillVelocity, double[] tofillBarycentric) {
+        return getParticleVelocity2D(p.getPosition3d().x, p.getPosition3d().y, triangleID, tofillVelocity, tofillBarycentric);
+    }
+
+    /**
+     * Calculates the velocity [x,y] on the surface at the given position.
+     *
+     * @param px x-position of particle [UTM]
+     * @param py y-position of particle [UTM]
+     * @param triangleID triangle containing the position
+     * @param tofillVelocity can be given to prevent allocation
+     * @param tofillBarycentric can be given to prevent allocation
+     * @return
+     */
+    public double[] getParticleVelocity2D(double px, double py, int triangleID, double[] tofillVelocity, double[] tofillBarycentric) {
         if (!spatialInterpolationVelocity) {
             if (tofillVelocity == null) {
                 tofillVelocity = new double[2];
             }
+            if (cacheStepValues) {
+                SurfaceStepCache cache = getStepCache();
+                updateStepVelocity(cache, triangleID);
+                tofillVelocity[0] = cache.getVelocityX(triangleID);
+                tofillVelocity[1] = cache.getVelocityY(triangleID);
+                return tofillVelocity;
+            }
+            float[] vt = loadTriangleVelocity(triangleID);
+            int o = triangleVelocity.offset(triangleID, timeIndexInt);
             if (timeInterpolatedValues) {
-                float[] vt_t = getTriangleVelocity(triangleID, timeIndexInt);//triangleID, timeIndexInt, (float) timeFrac, toFillSurfaceVelocity[0][0]);
-                float[] vt_tp = getTriangleVelocity(triangleID, timeIndexInt + 1);//triangleID, timeIndexInt, (float) timeFrac, toFillSurfaceVelocity[0][0]);
-                tofillVelocity[0] = vt_t[0] * (timeinvFrac) + vt_tp[0] * timeFrac;
-                tofillVelocity[1] = vt_t[1] * (timeinvFrac) + vt_tp[1] * timeFrac;
+                tofillVelocity[0] = vt[o] * (timeinvFrac) + vt[o + 2] * timeFrac;
+                tofillVelocity[1] = vt[o + 1] * (timeinvFrac) + vt[o + 3] * timeFrac;
             } else {
-                float[] vt_t = getTriangleVelocity(triangleID, timeIndexInt);
-                tofillVelocity[0] = vt_t[0];
-                tofillVelocity[1] = vt_t[1];
+                tofillVelocity[0] = vt[o];
+                tofillVelocity[1] = vt[o + 1];
             }
             return tofillVelocity;
         }
@@ -2172,7 +2473,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
 //            System.out.println("create new double[3] for barycentric coordinates");
             tofillBarycentric = new double[3];
         }
-        getBarycentricWeighing_FillArray(vertices[t0][0], vertices[t1][0], vertices[t2][0], vertices[t0][1], vertices[t1][1], vertices[t2][1], p.getPosition3d().x, p.getPosition3d().y, tofillBarycentric);
+        getBarycentricWeighing_FillArray(vertices[t0][0], vertices[t1][0], vertices[t2][0], vertices[t0][1], vertices[t1][1], vertices[t2][1], px, py, tofillBarycentric);
 //        for (int i = 0; i < tofillBarycentric.length; i++) {
 //           if(tofillBarycentric[i]<0){
 //               System.out.println("weight is "+tofillBarycentric[i]);
@@ -2182,69 +2483,94 @@ public class Surface extends Capacity implements TimeIndexCalculator {
 
         double[] w = tofillBarycentric;
         if (calculateWeighted && velocityNodes != null) {
-            if (velocityNodes[t0] == null) {
+            if (!velocityNodes.isLoaded(t0)) {
                 loadSparseNodeVelocity2D(t0);
             }
-            if (velocityNodes[t1] == null) {
+            if (!velocityNodes.isLoaded(t1)) {
                 loadSparseNodeVelocity2D(t1);
             }
-            if (velocityNodes[t2] == null) {
+            if (!velocityNodes.isLoaded(t2)) {
                 loadSparseNodeVelocity2D(t2);
             }
 
             // particle velocity in x and y direction at given timeindex
             try {
-                velocityParticle[0] = w[0] * velocityNodes[t0][timeIndexInt][0] + w[1] * velocityNodes[t1][timeIndexInt][0] + w[2] * velocityNodes[t2][timeIndexInt][0];
-                velocityParticle[1] = w[0] * velocityNodes[t0][timeIndexInt][1] + w[1] * velocityNodes[t1][timeIndexInt][1] + w[2] * velocityNodes[t2][timeIndexInt][1];
+                float[] p0 = velocityNodes.page(t0), p1 = velocityNodes.page(t1), p2 = velocityNodes.page(t2);
+                int o0 = velocityNodes.offset(t0, timeIndexInt), o1 = velocityNodes.offset(t1, timeIndexInt), o2 = velocityNodes.offset(t2, timeIndexInt);
+                velocityParticle[0] = w[0] * p0[o0] + w[1] * p1[o1] + w[2] * p2[o2];
+                velocityParticle[1] = w[0] * p0[o0 + 1] + w[1] * p1[o1 + 1] + w[2] * p2[o2 + 1];
             } catch (Exception e) {
-                System.err.println("velocity nodes.length=" + velocityNodes.length + "  triangleNodes.length=" + triangleNodes.length + "\t tN0:" + triangleNodes[triangleID][0] + "\t1:" + triangleNodes[triangleID][1] + "\t2:" + triangleNodes[triangleID][2]);
+                System.err.println("velocity nodes.length=" + velocityNodes.elements + "  triangleNodes.length=" + triangleNodes.length + "\t tN0:" + triangleNodes[triangleID][0] + "\t1:" + triangleNodes[triangleID][1] + "\t2:" + triangleNodes[triangleID][2]);
                 e.printStackTrace();
             }
+        } else if (cacheStepValues) {
+            //Blend the velocities of this triangle and its neighbours, interpolated in time once per step.
+            SurfaceStepCache cache = getStepCache();
+            updateStepVelocity(cache, triangleID);
+            double vtx = cache.getVelocityX(triangleID), vty = cache.getVelocityY(triangleID);
+            double v0x = 0, v0y = 0, v1x = 0, v1y = 0, v2x = 0, v2y = 0;
+            int nb0 = neumannNeighbours[triangleID][0];
+            int nb1 = neumannNeighbours[triangleID][1];
+            int nb2 = neumannNeighbours[triangleID][2];
+            if (nb0 >= 0) {
+                updateStepVelocity(cache, nb0);
+                v0x = cache.getVelocityX(nb0);
+                v0y = cache.getVelocityY(nb0);
+            }
+            if (nb1 >= 0) {
+                updateStepVelocity(cache, nb1);
+                v1x = cache.getVelocityX(nb1);
+                v1y = cache.getVelocityY(nb1);
+            }
+            if (nb2 >= 0) {
+                updateStepVelocity(cache, nb2);
+                v2x = cache.getVelocityX(nb2);
+                v2y = cache.getVelocityY(nb2);
+            }
+            if (timeInterpolatedValues) {
+                velocityParticle[0] = ((1 - w[0]) * v0x + (1 - w[1]) * v1x + (1 - w[2]) * v2x + vtx) * 0.333f;
+                velocityParticle[1] = ((1 - w[0]) * v0y + (1 - w[1]) * v1y + (1 - w[2]) * v2y + vty) * 0.333f;
+            } else {
+                //Values are stored floats. Sum them in float precision like the uncached version.
+                velocityParticle[0] = ((1 - w[0]) * (float) (v0x + vtx) + (1 - w[1]) * (float) (v1x + vtx) + (1 - w[2]) * (float) (v2x + vtx)) * 0.25;
+                velocityParticle[1] = ((1 - w[0]) * (float) (v0y + vty) + (1 - w[1]) * (float) (v1y + vty) + (1 - w[2]) * (float) (v2y + vty)) * 0.25;
+            }
         } else {
             //If no weights are calculated, just use mean velocity from neighbouring triangle nodes.
             if (timeInterpolatedValues) {
 //                if (toFillSurfaceVelocity == null) {
 //                    toFillSurfaceVelocity = new float[4][2][2]; //4times 2 directions
 //                }
-                float[] vt_t = getTriangleVelocity(triangleID, timeIndexInt);//triangleID, timeIndexInt, (float) timeFrac, toFillSurfaceVelocity[0][0]);
-                float[] vt_tp = getTriangleVelocity(triangleID, timeIndexInt + 1);//triangleID, timeIndexInt, (float) timeFrac, toFillSurfaceVelocity[0][0]);
+                float[] vt = loadTriangleVelocity(triangleID);
+                int ot = triangleVelocity.offset(triangleID, timeIndexInt);
 
                 //neighbours:
                 int nb0 = neumannNeighbours[triangleID][0];
                 int nb1 = neumannNeighbours[triangleID][1];
                 int nb2 = neumannNeighbours[triangleID][2];
 
-                float[] v0_t;
-                float[] v0_tp;
-                if (nb0 < 0) {
-                    v0_t = zeroVelocity;
-                    v0_tp = zeroVelocity;
-                } else {
-                    v0_t = getTriangleVelocity(nb0, timeIndexInt);
-                    v0_tp = getTriangleVelocity(nb0, timeIndexInt + 1);
+                //Neighbours outside the domain have zero velocity
+                float[] v0 = zeroTimeVelocity, v1 = zeroTimeVelocity, v2 = zeroTimeVelocity;
+                int o0 = 0, o1 = 0, o2 = 0;
+                if (nb0 >= 0) {
+                    v0 = loadTriangleVelocity(nb0);
+                    o0 = triangleVelocity.offset(nb0, timeIndexInt);
                 }
-                float[] v1_t, v1_tp;
-                if (nb1 < 0) {
-                    v1_t = zeroVelocity;
-                    v1_tp = zeroVelocity;
-                } else {
-                    v1_t = getTriangleVelocity(nb1, timeIndexInt);
-                    v1_tp = getTriangleVelocity(nb1, timeIndexInt + 1);
+                if (nb1 >= 0) {
+                    v1 = loadTriangleVelocity(nb1);
+                    o1 = triangleVelocity.offset(nb1, timeIndexInt);
                 }
-                float[] v2_t, v2_tp;
-                if (nb2 < 0) {
-                    v2_t = zeroVelocity;
-                    v2_tp = zeroVelocity;
-                } else {
-                    v2_t = getTriangleVelocity(nb2, timeIndexInt);
-                    v2_tp = getTriangleVelocity(nb2, timeIndexInt + 1);
+                if (nb2 >= 0) {
+                    v2 = loadTriangleVelocity(nb2);
+                    o2 = triangleVelocity.offset(nb2, timeIndexInt);
                 }
 
-                velocityParticle[0] = ((1 - w[0]) * (v0_t[0] * timeinvFrac + v0_tp[0] * timeFrac) + (1 - w[1]) * (v1_t[0] * timeinvFrac + v1_tp[0] * timeFrac) + (1 - w[2]) * (v2_t[0] * timeinvFrac + v2_tp[0] * timeFrac) + (vt_t[0] * timeinvFrac + vt_tp[0] * timeFrac)) * 0.333f;
-                velocityParticle[1] = ((1 - w[0]) * (v0_t[1] * timeinvFrac + v0_tp[1] * timeFrac) + (1 - w[1]) * (v1_t[1] * timeinvFrac + v1_tp[1] * timeFrac) + (1 - w[2]) * (v2_t[1] * timeinvFrac + v2_tp[1] * timeFrac) + (vt_t[1] * timeinvFrac + vt_tp[1] * timeFrac)) * 0.333f;
+                velocityParticle[0] = ((1 - w[0]) * (v0[o0] * timeinvFrac + v0[o0 + 2] * timeFrac) + (1 - w[1]) * (v1[o1] * timeinvFrac + v1[o1 + 2] * timeFrac) + (1 - w[2]) * (v2[o2] * timeinvFrac + v2[o2 + 2] * timeFrac) + (vt[ot] * timeinvFrac + vt[ot + 2] * timeFrac)) * 0.333f;
+                velocityParticle[1] = ((1 - w[0]) * (v0[o0 + 1] * timeinvFrac + v0[o0 + 3] * timeFrac) + (1 - w[1]) * (v1[o1 + 1] * timeinvFrac + v1[o1 + 3] * timeFrac) + (1 - w[2]) * (v2[o2 + 1] * timeinvFrac + v2[o2 + 3] * timeFrac) + (vt[ot + 1] * timeinvFrac + vt[ot + 3] * timeFrac)) * 0.333f;
 
             } else {
-                float[] vt = getTriangleVelocity(triangleID)[timeIndexInt];
+                float[] vt = loadTriangleVelocity(triangleID);
+                int ot = triangleVelocity.offset(triangleID, timeIndexInt);
 //                float[] v0 = getTriangleVelocity(t0)[timeIndexInt];
 //                float[] v1 = getTriangleVelocity(t1)[timeIndexInt];
 //                float[] v2 = getTriangleVelocity(t2)[timeIndexInt];
@@ -2253,29 +2579,25 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                 int nb1 = neumannNeighbours[triangleID][1];
                 int nb2 = neumannNeighbours[triangleID][2];
 
-                float[] v0;
-                if (nb0 < 0) {
-                    v0 = zeroVelocity;
-                } else {
-                    v0 = getTriangleVelocity(nb0, timeIndexInt);
+                float[] v0 = zeroVelocity, v1 = zeroVelocity, v2 = zeroVelocity;
+                int o0 = 0, o1 = 0, o2 = 0;
+                if (nb0 >= 0) {
+                    v0 = loadTriangleVelocity(nb0);
+                    o0 = triangleVelocity.offset(nb0, timeIndexInt);
                 }
-                float[] v1;
-                if (nb1 < 0) {
-                    v1 = zeroVelocity;
-                } else {
-                    v1 = getTriangleVelocity(nb1, timeIndexInt);
+                if (nb1 >= 0) {
+                    v1 = loadTriangleVelocity(nb1);
+                    o1 = triangleVelocity.offset(nb1, timeIndexInt);
                 }
-                float[] v2;
-                if (nb2 < 0) {
-                    v2 = zeroVelocity;
-                } else {
-                    v2 = getTriangleVelocity(nb2, timeIndexInt);
+                if (nb2 >= 0) {
+                    v2 = loadTriangleVelocity(nb2);
+                    o2 = triangleVelocity.offset(nb2, timeIndexInt);
                 }
 //                velocityParticle[0] = ((1 - w[0]) * (v0[0] + vt[0]) + (1 - w[1]) * (v1[0] + vt[0]) + (1 - w[2]) * (v2[0] + vt[0])) * 0.25;
 //                velocityParticle[1] = ((1 - w[0]) * (v0[1] + vt[1]) + (1 - w[1]) * (v1[1] + vt[1]) + (1 - w[2]) * (v2[1] + vt[1])) * 0.25;
 
-                velocityParticle[0] = ((1 - w[0]) * (v0[0] + vt[0]) + (1 - w[1]) * (v1[0] + vt[0]) + (1 - w[2]) * (v2[0] + vt[0])) * 0.25;
-                velocityParticle[1] = ((1 - w[0]) * (v0[1] + vt[1]) + (1 - w[1]) * (v1[1] + vt[1]) + (1 - w[2]) * (v2[1] + vt[1])) * 0.25;
+                velocityParticle[0] = ((1 - w[0]) * (v0[o0] + vt[ot]) + (1 - w[1]) * (v1[o1] + vt[ot]) + (1 - w[2]) * (v2[o2] + vt[ot])) * 0.25;
+                velocityParticle[1] = ((1 - w[0]) * (v0[o0 + 1] + vt[ot + 1]) + (1 - w[1]) * (v1[o1 + 1] + vt[ot + 1]) + (1 - w[2]) * (v2[o2 + 1] + vt[ot + 1])) * 0.25;
 
 //                //Use only the samllest weight to interpolate velocity
 //                float[] v1t;
@@ -2305,6 +2627,12 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         return velocityParticle;
     }
 
+    /**
+     * Corrected position buffer per thread for
+     * {@link #getTargetTriangleID(model.particle.Particle, int, double, double, double, double, int, double[], double[][])}.
+     */
+    private static final ThreadLocal<double[]> targetPositionBuffer = ThreadLocal.withInitial(() -> new double[2]);
+
     /**
      * Returns the target triangle id or a BoundHitException with corrected
      * coordinates if the particle could not move out of the triangle
@@ -2321,6 +2649,42 @@ public class Surface extends Capacity implements TimeIndexCalculator {
      * @return id of the new triangle
      */
     public int getTargetTriangleID(Particle p, int id, double xold, double yold, double x, double y, int leftIterations, double[] bw, double[][] t) /*throws BoundHitException*/ {
+        double[] position = targetPositionBuffer.get();
+        id = getTargetTriangleID(id, xold, yold, x, y, leftIterations, bw, t, position);
+        p.surfaceCellID = id;
+        p.setPosition3D(position[0], position[1]);
+        return id;
+    }
+
+    /**
+     * Returns the target triangle id or a BoundHitException with corrected
+     * coordinates if the particle could not move out of the triangle
+     *
+     * @param id startTriangleID
+     * @param xold
+     * @param yold
+     * @param x calculated new Position with unknown particle id
+     * @param y
+     * @param leftIterations max number of iterations that shall be computet
+     * @param barycentric can be given to prevent new allocation
+     * @param temp_vertexcoordsarray can be given to prevent new allocation
+     * @param tofillPosition [x,y] is filled with the corrected position of the
+     * particle.
+     * @return id of the new triangle
+     */
+    public int getTargetTriangleID(int id, double xold, double yold, double x, double y, int leftIterations, double[] bw, double[][] t, double[] tofillPosition) /*throws BoundHitException*/ {
+        if (useEdgeTable && triangleMids != null) {
+            return getEdgeTable().findTarget(id, xold, yold, x, y, leftIterations, tofillPosition);
+        }
+        return getTargetTriangleIDRecursive(id, xold, yold, x, y, leftIterations, bw, t, tofillPosition);
+    }
+
+    /**
+     * Target triangle search without the {@link SurfaceEdgeTable}. Calculates
+     * the barycentric weights and searches the neighbour across the outgoing
+     * edge for every passed triangle.
+     */
+    private int getTargetTriangleIDRecursive(int id, double xold, double yold, double x, double y, int leftIterations, double[] bw, double[][] t, double[] tofillPosition) {
 
         // is particle still in start triangle? use barycentric weighing to check.
         int node0 = triangleNodes[id][0];
@@ -2357,7 +2721,8 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         }
         if (bestEdge < 0) {
             //Particle stays in this triangle;
-            p.setPosition3D(x, y);
+            tofillPosition[0] = x;
+            tofillPosition[1] = y;
             return id;
         }
 
@@ -2439,7 +2804,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
 
         if (nextID >= 0 && leftIterations > 0) {
             leftIterations--;
-            return getTargetTriangleID(p, nextID, xold, yold, x, y, leftIterations, bw, t);
+            return getTargetTriangleIDRecursive(nextID, xold, yold, x, y, leftIterations, bw, t, tofillPosition);
         }
 
         //no outgoing triangle
@@ -2461,8 +2826,8 @@ public class Surface extends Capacity implements TimeIndexCalculator {
             if (Math.abs(paralleldiff) < 0.0001) {
                 //Parallel movement& boundary -> Set to this tringle's midpoint
 //                System.out.println(" parallel movement p=" + paralleldiff);
-                p.surfaceCellID = id;
-                p.setPosition3D(triangleMids[id][0], triangleMids[id][1]);
+                tofillPosition[0] = triangleMids[id][0];
+                tofillPosition[1] = triangleMids[id][1];
 //                throw new BoundHitException(id, triangleMids[id][0], triangleMids[id][1]);
                 return id;
             } else {
@@ -2478,14 +2843,14 @@ public class Surface extends Capacity implements TimeIndexCalculator {
                     s = st1[0];
                     if (s < 0 || s > 1) {
                         //throw new BoundHitException(id, triangleMids[id][0], triangleMids[id][1]);
-                        p.surfaceCellID = id;
-                        p.setPosition3D(triangleMids[id][0], triangleMids[id][1]);
+                        tofillPosition[0] = triangleMids[id][0];
+                        tofillPosition[1] = triangleMids[id][1];
                         return id;
                         //
                     }
                 } else {
-                    p.surfaceCellID = id;
-                    p.setPosition3D(triangleMids[id][0], triangleMids[id][1]);
+                    tofillPosition[0] = triangleMids[id][0];
+                    tofillPosition[1] = triangleMids[id][1];
                     return id;
                     // throw new BoundHitException(id, triangleMids[id][0], triangleMids[id][1]);
                 }
@@ -2498,8 +2863,8 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         double xneu = xold + s * (x - xold);
         double yneu = yold + s * (y - yold);
         //Fire Message with the new position.
-        p.surfaceCellID = id;
-        p.setPosition3D(xneu, yneu);
+        tofillPosition[0] = xneu;
+        tofillPosition[1] = yneu;
         return id;
         //throw new BoundHitException(id, xneu, yneu);
     }
@@ -2773,7 +3138,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
             }
         }
         int closeNode = triangleNodes[id][minDistIndex]; // closest triangle node to new particle position
-        int nbOfTrianglesAtNode = NodeNeighbours[closeNode].length;
+        int nbOfTrianglesAtNode = getNumberOfTrianglesAtNode(closeNode);
         int[] TrianglesAtNode = new int[nbOfTrianglesAtNode]; // triangle ids that are on closenode
         double[][][] distNodes = new double[nbOfTrianglesAtNode][3][2]; // [NodeNeighbour][Ecke][x,y]
         int zähler = 0;   // for loop counter
@@ -2784,20 +3149,31 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         //___________________start for loop to test next nearest node until particle is found_____________________________________________________________________________________________
         //
         for (int f = 0; f < 25; f++) {
-            nbOfTrianglesAtNode = NodeNeighbours[closeNode].length;
+            //Triangles at the node: atNode[atNodeStart] to atNode[atNodeStart+nbOfTrianglesAtNode-1]
+            int[] atNode;
+            int atNodeStart;
+            if (topology != null) {
+                atNode = topology.getNodeTriangles();
+                atNodeStart = topology.getNodeOffsets()[closeNode];
+                nbOfTrianglesAtNode = topology.getNodeOffsets()[closeNode + 1] - atNodeStart;
+            } else {
+                atNode = NodeNeighbours[closeNode];
+                atNodeStart = 0;
+                nbOfTrianglesAtNode = atNode.length;
+            }
             TrianglesAtNode = new int[nbOfTrianglesAtNode]; // triangle ids that are on closenode
             distNodes = new double[nbOfTrianglesAtNode][3][2]; // [NodeNeighbour][Ecke][x,y]
             // get neighbouring triangles for testing if particle is inside
             for (int j = 0; j < nbOfTrianglesAtNode; j++) {
                 try {
-                    TrianglesAtNode[j] = NodeNeighbours[closeNode][j];
+                    TrianglesAtNode[j] = atNode[atNodeStart + j];
                     for (int k = 0; k < 2; k++) {                           //save already checked triangles in history
                         if (TrianglesAtNode[j] == triangleHistory[k][0]) {
                             triangleHistory[k][1] = j;
                         }
                     }
                 } catch (Exception e) {
-                    System.err.println("NodeNeighbours[" + closeNode + "][" + j + "]    length:" + NodeNeighbours[closeNode].length + "    nb:" + nbOfTrianglesAtNode);
+                    System.err.println("NodeNeighbours[" + closeNode + "][" + j + "]    nb:" + nbOfTrianglesAtNode);
                     e.printStackTrace();
                 }
             }
@@ -2944,7 +3320,7 @@ public class Surface extends Capacity implements TimeIndexCalculator {
             }
         }
         int closeNode = triangleNodes[id][minDistIndex]; // closest triangle node to new particle position
-        int nbOfTrianglesAtNode = NodeNeighbours[closeNode].length;
+        int nbOfTrianglesAtNode = getNumberOfTrianglesAtNode(closeNode);
         int[] TrianglesAtNode = new int[nbOfTrianglesAtNode]; // triangle ids that are on closenode
         double[][][] distNodes = new double[nbOfTrianglesAtNode][3][2]; // [NodeNeighbour][Ecke][x,y]
         int zähler = 0;   // for loop counter
@@ -2955,20 +3331,31 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         //___________________start for loop to test next nearest node until particle is found_____________________________________________________________________________________________
         //
         for (int f = 0; f < 25; f++) {
-            nbOfTrianglesAtNode = NodeNeighbours[closeNode].length;
+            //Triangles at the node: atNode[atNodeStart] to atNode[atNodeStart+nbOfTrianglesAtNode-1]
+            int[] atNode;
+            int atNodeStart;
+            if (topology != null) {
+                atNode = topology.getNodeTriangles();
+                atNodeStart = topology.getNodeOffsets()[closeNode];
+                nbOfTrianglesAtNode = topology.getNodeOffsets()[closeNode + 1] - atNodeStart;
+            } else {
+                atNode = NodeNeighbours[closeNode];
+                atNodeStart = 0;
+                nbOfTrianglesAtNode = atNode.length;
+            }
             TrianglesAtNode = new int[nbOfTrianglesAtNode]; // triangle ids that are on closenode
             distNodes = new double[nbOfTrianglesAtNode][3][2]; // [NodeNeighbour][Ecke][x,y]
             // get neighbouring triangles for testing if particle is inside
             for (int j = 0; j < nbOfTrianglesAtNode; j++) {
                 try {
-                    TrianglesAtNode[j] = NodeNeighbours[closeNode][j];
+                    TrianglesAtNode[j] = atNode[atNodeStart + j];
                     for (int k = 0; k < 2; k++) {                           //save already checked triangles in history
                         if (TrianglesAtNode[j] == triangleHistory[k][0]) {
                             triangleHistory[k][1] = j;
                         }
                     }
                 } catch (Exception e) {
-                    System.err.println("NodeNeighbours[" + closeNode + "][" + j + "]    length:" + NodeNeighbours[closeNode].length + "    nb:" + nbOfTrianglesAtNode);
+                    System.err.println("NodeNeighbours[" + closeNode + "][" + j + "]    nb:" + nbOfTrianglesAtNode);
                     e.printStackTrace();
                 }
             }
@@ -3217,12 +3604,26 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         return measurementRaster;
     }
 
+    /**
+     * Node to triangle references. If only a {@link MeshTopology} is set, the
+     * jagged array is created on the first call and kept.
+     *
+     * @return [nodeID][#assigned triangles] = triangleID
+     */
     public int[][] getNodeNeighbours() {
+        if (NodeNeighbours == null && topology != null) {
+            synchronized (this) {
+                if (NodeNeighbours == null) {
+                    NodeNeighbours = topology.toNodeTriangleArrays();
+                }
+            }
+        }
         return NodeNeighbours;
     }
 
     public void setNodeNeighbours(int[][] node2Tri, boolean calculateWeights) {
         this.NodeNeighbours = node2Tri;
+        this.topology = null;
 
         if (calculateWeights) {
             this.weight = new double[node2Tri.length][];
@@ -3241,6 +3642,45 @@ public class Surface extends Capacity implements TimeIndexCalculator {
         }
     }
 
+    public MeshTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Use the compressed node and moore neighbour references of the
+     * topology. Replaces the jagged NodeNeighbours, weight and
+     * mooreNeighbours arrays.
+     *
+     * @param topology
+     */
+    public void setTopology(MeshTopology topology) {
+        this.topology = topology;
+        if (topology != null) {
+            this.NodeNeighbours = null;
+            this.weight = null;
+            this.mooreNeighbours = null;
+        }
+    }
+
+    /**
+     * Number of nodes with node to triangle references.
+     *
+     * @return
+     */
+    private int getNumberOfReferencedNodes() {
+        if (topology != null) {
+            return topology.getNumberOfNodes();
+        }
+        return NodeNeighbours.length;
+    }
+
+    private int getNumberOfTrianglesAtNode(int nodeID) {
+        if (topology != null) {
+            return topology.getNodeOffsets()[nodeID + 1] - topology.getNodeOffsets()[nodeID];
+        }
+        return NodeNeighbours[nodeID].length;
+    }
+
     public void setTimeContainer(TimeIndexContainer times) {
 //        System.err.println("Surface.setTimeContainer: "+times);
         this.times = times;
@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.surface;
+
+import control.maths.GeometryTools;
+
+/**
+ * Flat table of the triangle edge geometry to find the target triangle of a
+ * moving particle without allocation and recursion.
+ *
+ * For every triangle the terms of the barycentric weighing that only depend
+ * on the triangle's vertices are stored in one double array (7 values per
+ * triangle). Together with the neighbour triangle across each edge, the test
+ * of one triangle only needs two multiplications per weight.
+ *
+ * The neighbour search and the arithmetic follow
+ * {@link Surface#getTargetTriangleID(int, double, double, double, double, int, double[], double[][], double[])}
+ * exactly, so both return the same triangles and positions.
+ *
+ * The table is immutable after construction and can be shared by all particle
+ * threads.
+ *
+ * @author saemann
+ */
+public class SurfaceEdgeTable {
+
+    /**
+     * Number of values per triangle in {@link #geom}.
+     */
+    private static final int STRIDE = 7;
+
+    /**
+     * [y1-y2, x2-x1, x0-x2, y0-y2, x2, y2, area term] for each triangle.
+     */
+    private final double[] geom;
+
+    /**
+     * Neighbour triangle across edge (i,i+1) [3*triangle+i], -1 for boundary
+     * edges.
+     */
+    private final int[] across;
+
+    /**
+     * Neighbour found by the reduced search for the second outgoing edge. Only
+     * the first two neighbours and their first two nodes are tested there, so
+     * this may differ from {@link #across}.
+     */
+    private final int[] acrossSecond;
+
+    private final double[][] vertices;
+    private final int[][] triangleNodes;
+    private final double[][] triangleMids;
+
+    public SurfaceEdgeTable(double[][] vertices, int[][] triangleNodes, int[][] neumannNeighbours, double[][] triangleMids) {
+        this.vertices = vertices;
+        this.triangleNodes = triangleNodes;
+        this.triangleMids = triangleMids;
+        int n = triangleNodes.length;
+        this.geom = new double[n * STRIDE];
+        this.across = new int[n * 3];
+        this.acrossSecond = new int[n * 3];
+
+        for (int id = 0; id < n; id++) {
+            int[] nodes = triangleNodes[id];
+            double x0 = vertices[nodes[0]][0], y0 = vertices[nodes[0]][1];
+            double x1 = vertices[nodes[1]][0], y1 = vertices[nodes[1]][1];
+            double x2 = vertices[nodes[2]][0], y2 = vertices[nodes[2]][1];
+            int g = id * STRIDE;
+            geom[g] = y1 - y2;
+            geom[g + 1] = x2 - x1;
+            geom[g + 2] = x0 - x2;
+            geom[g + 3] = y0 - y2;
+            geom[g + 4] = x2;
+            geom[g + 5] = y2;
+            geom[g + 6] = geom[g] * geom[g + 2] + geom[g + 1] * geom[g + 3];
+
+            for (int e = 0; e < 3; e++) {
+                int a = nodes[e];
+                int b = nodes[(e + 1) % 3];
+                across[id * 3 + e] = findNeighbour(neumannNeighbours[id], triangleNodes, a, b, 3);
+                acrossSecond[id * 3 + e] = findNeighbour(neumannNeighbours[id], triangleNodes, a, b, 2);
+            }
+        }
+    }
+
+    /**
+     * Neighbour that shares the edge a-b. Only the first 'tests' neighbours
+     * and their first 'tests' nodes are taken into account.
+     *
+     * @return triangle id or -1 if not found.
+     */
+    private static int findNeighbour(int[] neighbours, int[][] triangleNodes, int a, int b, int tests) {
+        for (int i = 0; i < tests; i++) {
+            int neighbourID = neighbours[i];
+            if (neighbourID < 0) {
+                continue;
+            }
+            boolean foundFirstEdgeNode = false;
+            for (int j = 0; j < tests; j++) {
+                int testEdgeNode = triangleNodes[neighbourID][j];
+                if (testEdgeNode == a || testEdgeNode == b) {
+                    if (foundFirstEdgeNode) {
+                        return neighbourID;
+                    }
+                    foundFirstEdgeNode = true;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the id of the triangle containing the new position (x,y) when
+     * moving from (xold,yold) starting in triangle id. If the particle hits
+     * the boundary, the position is set back onto the crossed edge.
+     *
+     * @param id start triangle
+     * @param xold
+     * @param yold
+     * @param x calculated new position
+     * @param y
+     * @param leftIterations max number of triangles to pass
+     * @param tofillPosition [x,y] is filled with the corrected position.
+     * @return id of the target triangle
+     */
+    public int findTarget(int id, double xold, double yold, double x, double y, int leftIterations, double[] tofillPosition) {
+        int bestEdge, secondBest;
+        while (true) {
+            int g = id * STRIDE;
+            double atri = geom[g + 6];
+            double w1 = (geom[g] * (x - geom[g + 4]) + geom[g + 1] * (y - geom[g + 5])) / atri;
+            double w2 = ((y - geom[g + 5]) * geom[g + 2] + (geom[g + 4] - x) * geom[g + 3]) / atri;
+            double w0 = 1. - w1 - w2;
+
+            bestEdge = -1;
+            secondBest = -1;
+            if (w0 < 0) {
+                bestEdge = 0;
+            }
+            if (w1 < 0) {
+                secondBest = bestEdge;
+                bestEdge = 1;
+            }
+            if (w2 < 0) {
+                secondBest = bestEdge;
+                bestEdge = 2;
+            }
+            if (bestEdge < 0) {
+                //Particle stays in this triangle
+                tofillPosition[0] = x;
+                tofillPosition[1] = y;
+                return id;
+            }
+            int nextID = across[id * 3 + bestEdge];
+            if (nextID < 0 && secondBest >= 0) {
+                nextID = acrossSecond[id * 3 + secondBest];
+            }
+            if (nextID < 0 || leftIterations <= 0) {
+                break;
+            }
+            leftIterations--;
+            id = nextID;
+        }
+
+        //No outgoing triangle: projection back to the triangle boundary
+        int[] nodes = triangleNodes[id];
+        double[] a = vertices[nodes[bestEdge]];
+        double[] b = vertices[nodes[(bestEdge + 1) % 3]];
+        double s = GeometryTools.lineIntersectionS(xold, yold, x, y, a[0], a[1], b[0], b[1]);
+
+        if (s < 0 || s > 1) {
+            double paralleldiff = ((y - yold) / (x - xold)) - ((b[1] - a[1]) / (b[0] - a[0]));
+            if (Math.abs(paralleldiff) < 0.0001 || secondBest < 0) {
+                tofillPosition[0] = triangleMids[id][0];
+                tofillPosition[1] = triangleMids[id][1];
+                return id;
+            }
+            //Try the other possible outgoing edge
+            a = vertices[nodes[secondBest]];
+            b = vertices[nodes[(secondBest + 1) % 3]];
+            s = GeometryTools.lineIntersectionS(xold, yold, x, y, a[0], a[1], b[0], b[1]);
+            if (s < 0 || s > 1) {
+                tofillPosition[0] = triangleMids[id][0];
+                tofillPosition[1] = triangleMids[id][1];
+                return id;
+            }
+        }
+        tofillPosition[0] = xold + s * (x - xold);
+        tofillPosition[1] = yold + s * (y - yold);
+        return id;
+    }
+
+    public int getNumberOfTriangles() {
+        return triangleNodes.length;
+    }
+
+    /**
+     * Size of the table arrays.
+     *
+     * @return bytes
+     */
+    public long getMemoryBytes() {
+        return geom.length * 8L + across.length * 4L + acrossSecond.length * 4L;
+    }
+}
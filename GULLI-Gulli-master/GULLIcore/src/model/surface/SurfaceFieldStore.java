@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.surface;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Flat primitive storage for a hydraulic field on the surface with values
+ * [element][timeindex][component]. All values live in a few large float pages
+ * instead of one small array per element and time. The values of one element
+ * are stored consecutively: the value of time t and component c is found at
+ * {@code page(e)[offset(e, t) + c]}, i.e. (slot*times+t)*components+c.
+ *
+ * A dense store holds all elements from the beginning. A sparse store only
+ * keeps the elements that have been put into it. Their slots are handed out
+ * in loading order and the pages are created on demand, so memory grows with
+ * the number of loaded elements.
+ *
+ * Reading is not synchronized. The values of a sparse element are written
+ * completely before the element is published as loaded.
+ *
+ * @author saemann
+ */
+public class SurfaceFieldStore {
+
+    /**
+     * Maximum number of floats in one page (16 MB).
+     */
+    public static int maxPageFloats = 1 << 22;
+
+    public final int elements;
+    public final int times;
+    public final int components;
+    /**
+     * Number of floats per element (times*components)
+     */
+    private final int stride;
+
+    private final int pageBits;
+    private final int pageMask;
+
+    /**
+     * Slot+1 of every element, 0 if not loaded. null for dense stores where
+     * the slot is the element index.
+     */
+    private final AtomicIntegerArray slots;
+    private volatile float[][] pages;
+    private int usedSlots = 0;
+
+    /**
+     *
+     * @param elements number of triangles/nodes
+     * @param times number of timesteps
+     * @param components number of values per element and time
+     * @param dense true: all elements are allocated and loaded (zero),
+     * false: elements have to be put before they can be read.
+     */
+    public SurfaceFieldStore(int elements, int times, int components, boolean dense) {
+        this.elements = elements;
+        this.times = times;
+        this.components = components;
+        this.stride = Math.max(1, times * components);
+        int bits = 0;
+        while ((2L << bits) * stride <= maxPageFloats && (1 << bits) < elements) {
+            bits++;
+        }
+        this.pageBits = bits;
+        this.pageMask = (1 << bits) - 1;
+        if (dense) {
+            this.slots = null;
+            int numberOfPages = (elements >> pageBits) + 1;
+            float[][] p = new float[numberOfPages][];
+            for (int i = 0; i < numberOfPages; i++) {
+                int n = Math.min(1 << pageBits, elements - (i << pageBits));
+                p[i] = new float[Math.max(0, n) * stride];
+            }
+            this.pages = p;
+            this.usedSlots = elements;
+        } else {
+            this.slots = new AtomicIntegerArray(elements);
+            this.pages = new float[4][];
+        }
+    }
+
+    public boolean isDense() {
+        return slots == null;
+    }
+
+    public boolean isLoaded(int element) {
+        return slots == null || slots.get(element) > 0;
+    }
+
+    private int slot(int element) {
+        if (slots == null) {
+            return element;
+        }
+        return slots.get(element) - 1;
+    }
+
+    /**
+     * The page array containing the values of this element. Element has to
+     * be loaded.
+     *
+     * @param element
+     * @return
+     */
+    public float[] page(int element) {
+        return pages[slot(element) >> pageBits];
+    }
+
+    /**
+     * Index of the first component at timeindex in the page of this element.
+     *
+     * @param element
+     * @param timeindex
+     * @return
+     */
+    public int offset(int element, int timeindex) {
+        return (slot(element) & pageMask) * stride + timeindex * components;
+    }
+
+    public float get(int element, int timeindex, int component) {
+        int s = slot(element);
+        return pages[s >> pageBits][(s & pageMask) * stride + timeindex * components + component];
+    }
+
+    /**
+     * Only for dense stores or elements that are already loaded.
+     *
+     * @param element
+     * @param timeindex
+     * @param component
+     * @param value
+     */
+    public void set(int element, int timeindex, int component, float value) {
+        int s = slot(element);
+        pages[s >> pageBits][(s & pageMask) * stride + timeindex * components + component] = value;
+    }
+
+    /**
+     * Only for dense stores or elements that are already loaded.
+     *
+     * @param element
+     * @param timeindex
+     * @param component
+     * @param value
+     */
+    public void add(int element, int timeindex, int component, float value) {
+        int s = slot(element);
+        pages[s >> pageBits][(s & pageMask) * stride + timeindex * components + component] += value;
+    }
+
+    /**
+     * Stores all values of an element and marks it as loaded. If the element
+     * is already loaded in a sparse store, the call is ignored.
+     *
+     * @param element
+     * @param values [times*components] in the order
+     * (timeindex*components+component)
+     */
+    public void put(int element, float[] values) {
+        if (slots == null) {
+            System.arraycopy(values, 0, page(element), offset(element, 0), stride);
+            return;
+        }
+        synchronized (this) {
+            if (slots.get(element) > 0) {
+                return;
+            }
+            int s = usedSlots++;
+            int pageIndex = s >> pageBits;
+            float[][] p = pages;
+            if (pageIndex >= p.length) {
+                float[][] np = new float[Math.max(p.length * 2, pageIndex + 1)][];
+                System.arraycopy(p, 0, np, 0, p.length);
+                p = np;
+            }
+            if (p[pageIndex] == null) {
+                p[pageIndex] = new float[(1 << pageBits) * stride];
+            }
+            pages = p;
+            System.arraycopy(values, 0, p[pageIndex], (s & pageMask) * stride, stride);
+            slots.set(element, s + 1);
+        }
+    }
+
+    /**
+     * Stores all values of an element and marks it as loaded.
+     *
+     * @param element
+     * @param values [times][components]
+     */
+    public void put(int element, float[][] values) {
+        float[] flat = new float[stride];
+        for (int t = 0; t < times && t < values.length; t++) {
+            System.arraycopy(values[t], 0, flat, t * components, components);
+        }
+        put(element, flat);
+    }
+
+    /**
+     * Marks the element as loaded with zero values.
+     *
+     * @param element
+     */
+    public void putZero(int element) {
+        if (slots == null) {
+            return;
+        }
+        put(element, new float[stride]);
+    }
+
+    /**
+     * Copy of the values of one element.
+     *
+     * @param element
+     * @return [times][components] or null if this element is not loaded.
+     */
+    public float[][] toArray(int element) {
+        if (!isLoaded(element)) {
+            return null;
+        }
+        float[][] a = new float[times][components];
+        float[] p = page(element);
+        int o = offset(element, 0);
+        for (int t = 0; t < times; t++) {
+            System.arraycopy(p, o + t * components, a[t], 0, components);
+        }
+        return a;
+    }
+
+    /**
+     * Number of elements that hold values.
+     *
+     * @return
+     */
+    public int getNumberOfLoadedElements() {
+        return usedSlots;
+    }
+
+    /**
+     * Allocated memory of the pages and slot table.
+     *
+     * @return bytes
+     */
+    public long getMemoryBytes() {
+        long bytes = slots == null ? 0 : 4L * elements;
+        for (float[] p : pages) {
+            if (p != null) {
+                bytes += 16 + 4L * p.length;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.surface;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Values of the surface triangles that only change with the simulation time:
+ * time interpolated velocity and Chezy coefficient. Many particles share a
+ * triangle, so the values are calculated once per triangle and step by the
+ * first particle thread that needs them and read by all others.
+ *
+ * A value is valid if its stamp equals the current step. Calling
+ * {@link #invalidate()} starts a new step and makes all values invalid without
+ * touching the arrays.
+ *
+ * @author saemann
+ */
+public class SurfaceStepCache {
+
+    private volatile int step = 1;
+
+    private final AtomicIntegerArray velocityStamp;
+    private final double[] vx, vy;
+
+    private final AtomicIntegerArray chezyStamp;
+    private final double[] chezy;
+
+    public SurfaceStepCache(int numberOfTriangles) {
+        this.velocityStamp = new AtomicIntegerArray(numberOfTriangles);
+        this.vx = new double[numberOfTriangles];
+        this.vy = new double[numberOfTriangles];
+        this.chezyStamp = new AtomicIntegerArray(numberOfTriangles);
+        this.chezy = new double[numberOfTriangles];
+    }
+
+    /**
+     * Start a new step. All cached values become invalid.
+     */
+    public void invalidate() {
+        step++;
+    }
+
+    public boolean isVelocityValid(int triangleID) {
+        return velocityStamp.get(triangleID) == step;
+    }
+
+    /**
+     * Store the velocity for the current step. Values are written before the
+     * stamp, so other threads never see a valid stamp with old values.
+     *
+     * @param triangleID
+     * @param x
+     * @param y
+     */
+    public void setVelocity(int triangleID, double x, double y) {
+        vx[triangleID] = x;
+        vy[triangleID] = y;
+        velocityStamp.lazySet(triangleID, step);
+    }
+
+    public double getVelocityX(int triangleID) {
+        return vx[triangleID];
+    }
+
+    public double getVelocityY(int triangleID) {
+        return vy[triangleID];
+    }
+
+    public boolean isChezyValid(int triangleID) {
+        return chezyStamp.get(triangleID) == step;
+    }
+
+    public void setChezy(int triangleID, double c) {
+        chezy[triangleID] = c;
+        chezyStamp.lazySet(triangleID, step);
+    }
+
+    public double getChezy(int triangleID) {
+        return chezy[triangleID];
+    }
+
+    public long getMemoryBytes() {
+        return 2L * 4 * vx.length + 3L * 8 * vx.length;
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.surface;
+
+import control.maths.GeometryTools;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Spatial index for point location on a triangulated surface. The triangles
+ * are binned into a uniform grid, packed into primitive arrays (compressed
+ * row storage): once by their bounding box (for point in triangle tests) and
+ * once by their centroid (for nearest triangle queries).
+ *
+ * A lookup only tests the few triangles of one grid cell, so finding the
+ * containing triangle is independent from the size of the surface.
+ *
+ * The index can be stored next to the mesh files (see {@link #FILENAME}) to
+ * prevent rebuilding it every time a surface is loaded.
+ *
+ * @author saemann
+ */
+public class SurfaceTriangleIndex {
+
+    /**
+     * Name of the file in the surface directory to store the index.
+     */
+    public static final String FILENAME = "GULLI_TRIANGLEINDEX.dat";
+
+    /**
+     * Store built indices next to the mesh files and reuse them on the next
+     * load.
+     */
+    public static boolean persist = true;
+
+    /**
+     * Mean number of triangles per grid cell.
+     */
+    public static double trianglesPerCell = 2;
+
+    public static boolean verbose = false;
+
+    private static final int MAGIC = 0x474C5449;//GLTI
+    private static final int VERSION = 2;
+
+    /**
+     * Name of the coordinates file next to the mesh file. Its modification
+     * time is part of the source timestamp.
+     */
+    private static final String COORDINATES_FILENAME = "X.dat";
+
+    private final double[][] vertices;
+    private final int[][] triangleNodes;
+
+    private final double minX, minY, cellSize;
+    private final int columns, rows;
+
+    /**
+     * Triangles whose bounding box overlaps a cell: cellTriangles[cellStart[c]]
+     * to cellTriangles[cellStart[c+1]-1] in ascending order.
+     */
+    private final int[] cellStart, cellTriangles;
+
+    /**
+     * Triangles whose centroid lies inside a cell.
+     */
+    private final int[] midStart, midTriangles;
+
+    private SurfaceTriangleIndex(double[][] vertices, int[][] triangleNodes, double minX, double minY, double cellSize, int columns, int rows, int[] cellStart, int[] cellTriangles, int[] midStart, int[] midTriangles) {
+        this.vertices = vertices;
+        this.triangleNodes = triangleNodes;
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellStart = cellStart;
+        this.cellTriangles = cellTriangles;
+        this.midStart = midStart;
+        this.midTriangles = midTriangles;
+    }
+
+    /**
+     * Builds the index for the given mesh.
+     *
+     * @param vertices [nodes][x,y(,z)]
+     * @param triangleNodes [triangles][3]
+     * @return
+     */
+    public static SurfaceTriangleIndex build(double[][] vertices, int[][] triangleNodes) {
+        int n = triangleNodes.length;
+        double minx = Double.POSITIVE_INFINITY, miny = Double.POSITIVE_INFINITY;
+        double maxx = Double.NEGATIVE_INFINITY, maxy = Double.NEGATIVE_INFINITY;
+        for (int[] nodes : triangleNodes) {
+            for (int node : nodes) {
+                double[] v = vertices[node];
+                minx = Math.min(minx, v[0]);
+                maxx = Math.max(maxx, v[0]);
+                miny = Math.min(miny, v[1]);
+                maxy = Math.max(maxy, v[1]);
+            }
+        }
+        if (n == 0) {
+            minx = miny = 0;
+            maxx = maxy = 1;
+        }
+        double width = Math.max(maxx - minx, 1E-6), height = Math.max(maxy - miny, 1E-6);
+        double cellsize = Math.sqrt(width * height * trianglesPerCell / Math.max(1, n));
+        //Limit the number of cells for degenerated (very long, thin) surfaces
+        cellsize = Math.max(cellsize, Math.max(width, height) / (4. * Math.max(1, n)));
+        int cols = (int) (width / cellsize) + 1;
+        int rws = (int) (height / cellsize) + 1;
+        int cells = cols * rws;
+
+        //Count
+        int[] cellStart = new int[cells + 1];
+        int[] midStart = new int[cells + 1];
+        int[] bounds = new int[4];
+        for (int t = 0; t < n; t++) {
+            cellBounds(vertices, triangleNodes[t], minx, miny, cellsize, cols, rws, bounds);
+            for (int r = bounds[1]; r <= bounds[3]; r++) {
+                for (int c = bounds[0]; c <= bounds[2]; c++) {
+                    cellStart[r * cols + c + 1]++;
+                }
+            }
+            midStart[midCell(vertices, triangleNodes[t], minx, miny, cellsize, cols, rws) + 1]++;
+        }
+        for (int i = 0; i < cells; i++) {
+            cellStart[i + 1] += cellStart[i];
+            midStart[i + 1] += midStart[i];
+        }
+        //Fill in ascending triangle order
+        int[] cellTriangles = new int[cellStart[cells]];
+        int[] midTriangles = new int[midStart[cells]];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+        int[] fillMid = Arrays.copyOf(midStart, cells);
+        for (int t = 0; t < n; t++) {
+            cellBounds(vertices, triangleNodes[t], minx, miny, cellsize, cols, rws, bounds);
+            for (int r = bounds[1]; r <= bounds[3]; r++) {
+                for (int c = bounds[0]; c <= bounds[2]; c++) {
+                    cellTriangles[fill[r * cols + c]++] = t;
+                }
+            }
+            midTriangles[fillMid[midCell(vertices, triangleNodes[t], minx, miny, cellsize, cols, rws)]++] = t;
+        }
+        return new SurfaceTriangleIndex(vertices, triangleNodes, minx, miny, cellsize, cols, rws, cellStart, cellTriangles, midStart, midTriangles);
+    }
+
+    private static int clamp(int v, int max) {
+        return v < 0 ? 0 : (v > max ? max : v);
+    }
+
+    private static void cellBounds(double[][] vertices, int[] nodes, double minx, double miny, double cellsize, int cols, int rws, int[] bounds) {
+        double[] v0 = vertices[nodes[0]], v1 = vertices[nodes[1]], v2 = vertices[nodes[2]];
+        bounds[0] = clamp((int) ((Math.min(v0[0], Math.min(v1[0], v2[0])) - minx) / cellsize), cols - 1);
+        bounds[1] = clamp((int) ((Math.min(v0[1], Math.min(v1[1], v2[1])) - miny) / cellsize), rws - 1);
+        bounds[2] = clamp((int) ((Math.max(v0[0], Math.max(v1[0], v2[0])) - minx) / cellsize), cols - 1);
+        bounds[3] = clamp((int) ((Math.max(v0[1], Math.max(v1[1], v2[1])) - miny) / cellsize), rws - 1);
+    }
+
+    private static int midCell(double[][] vertices, int[] nodes, double minx, double miny, double cellsize, int cols, int rws) {
+        double[] v0 = vertices[nodes[0]], v1 = vertices[nodes[1]], v2 = vertices[nodes[2]];
+        int c = clamp((int) (((v0[0] + v1[0] + v2[0]) / 3. - minx) / cellsize), cols - 1);
+        int r = clamp((int) (((v0[1] + v1[1] + v2[1]) / 3. - miny) / cellsize), rws - 1);
+        return r * cols + c;
+    }
+
+    /**
+     * Loads the stored index of a surface directory or builds it. A newly
+     * built index is stored if {@link #persist} is enabled.
+     *
+     * @param vertices
+     * @param triangleNodes
+     * @param meshFile file of the mesh (e.g. TRIMOD2.dat) to locate the
+     * directory and to check if the stored index is up to date. May be null.
+     * The stored index is only used if the modification times of the mesh
+     * file and the coordinates (X.dat) as well as the number of triangles and
+     * vertices are unchanged.
+     * @return
+     */
+    public static SurfaceTriangleIndex loadOrBuild(double[][] vertices, int[][] triangleNodes, File meshFile) {
+        File indexFile = null;
+        long sourceTimestamp = 0;
+        if (meshFile != null && meshFile.getParentFile() != null) {
+            indexFile = new File(meshFile.getParentFile(), FILENAME);
+            sourceTimestamp = getSourceTimestamp(meshFile);
+            if (indexFile.exists()) {
+                try {
+                    return read(indexFile, vertices, triangleNodes, sourceTimestamp);
+                } catch (IOException ex) {
+                    System.err.println("Can not use triangle index " + indexFile + ": " + ex.getLocalizedMessage());
+                }
+            }
+        }
+        long start = System.currentTimeMillis();
+        SurfaceTriangleIndex index = build(vertices, triangleNodes);
+        if (verbose) {
+            System.out.println("Built " + index + " in " + (System.currentTimeMillis() - start) + " ms.");
+        }
+        if (persist && indexFile != null) {
+            try {
+                index.write(indexFile, sourceTimestamp);
+            } catch (IOException ex) {
+                System.err.println("Can not store triangle index " + indexFile + ": " + ex.getLocalizedMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Latest modification of the mesh file and the coordinates file in the
+     * same directory.
+     *
+     * @param meshFile
+     * @return
+     */
+    private static long getSourceTimestamp(File meshFile) {
+        long t = meshFile.lastModified();
+        File coordinates = new File(meshFile.getParentFile(), COORDINATES_FILENAME);
+        if (coordinates.exists()) {
+            t = Math.max(t, coordinates.lastModified());
+        }
+        return t;
+    }
+
+    /**
+     * Reads a stored index without checking the source timestamp.
+     *
+     * @param file
+     * @param vertices mesh the index was built for
+     * @param triangleNodes mesh the index was built for
+     * @return
+     * @throws IOException if the file does not match the mesh.
+     */
+    public static SurfaceTriangleIndex read(File file, double[][] vertices, int[][] triangleNodes) throws IOException {
+        return read(file, vertices, triangleNodes, -1);
+    }
+
+    /**
+     * Reads a stored index.
+     *
+     * @param file
+     * @param vertices mesh the index was built for
+     * @param triangleNodes mesh the index was built for
+     * @param sourceTimestamp modification time of the mesh sources the index
+     * must have been built for. -1 to skip this check.
+     * @return
+     * @throws IOException if the file does not match the mesh.
+     */
+    public static SurfaceTriangleIndex read(File file, double[][] vertices, int[][] triangleNodes, long sourceTimestamp) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (dis.readInt() != MAGIC) {
+                throw new IOException(file + " is not a triangle index file.");
+            }
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version);
+            }
+            long timestamp = dis.readLong();
+            if (sourceTimestamp >= 0 && timestamp != sourceTimestamp) {
+                throw new IOException("Index is outdated, mesh files were modified.");
+            }
+            int numberTriangles = dis.readInt();
+            int numberVertices = dis.readInt();
+            if (numberTriangles != triangleNodes.length || numberVertices != vertices.length) {
+                throw new IOException("Index was built for " + numberTriangles + " triangles/" + numberVertices + " vertices, surface has " + triangleNodes.length + "/" + vertices.length);
+            }
+            double minx = dis.readDouble();
+            double miny = dis.readDouble();
+            double cellsize = dis.readDouble();
+            int cols = dis.readInt();
+            int rws = dis.readInt();
+            int[] cellStart = readArray(dis);
+            int[] cellTriangles = readArray(dis);
+            int[] midStart = readArray(dis);
+            int[] midTriangles = readArray(dis);
+            int cells = cols * rws;
+            if (cellStart.length != cells + 1 || midStart.length != cells + 1 || midTriangles.length != numberTriangles || cellStart[cells] != cellTriangles.length) {
+                throw new IOException("Inconsistent index file.");
+            }
+            return new SurfaceTriangleIndex(vertices, triangleNodes, minx, miny, cellsize, cols, rws, cellStart, cellTriangles, midStart, midTriangles);
+        }
+    }
+
+    private static int[] readArray(DataInputStream dis) throws IOException {
+        int[] array = new int[dis.readInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = dis.readInt();
+        }
+        return array;
+    }
+
+    private static void writeArray(DataOutputStream dos, int[] array) throws IOException {
+        dos.writeInt(array.length);
+        for (int v : array) {
+            dos.writeInt(v);
+        }
+    }
+
+    public void write(File file) throws IOException {
+        write(file, 0);
+    }
+
+    /**
+     * Stores the index.
+     *
+     * @param file
+     * @param sourceTimestamp modification time of the mesh sources, checked
+     * when the index is read again.
+     * @throws IOException
+     */
+    public void write(File file, long sourceTimestamp) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(sourceTimestamp);
+            dos.writeInt(triangleNodes.length);
+            dos.writeInt(vertices.length);
+            dos.writeDouble(minX);
+            dos.writeDouble(minY);
+            dos.writeDouble(cellSize);
+            dos.writeInt(columns);
+            dos.writeInt(rows);
+            writeArray(dos, cellStart);
+            writeArray(dos, cellTriangles);
+            writeArray(dos, midStart);
+            writeArray(dos, midTriangles);
+        }
+    }
+
+    private boolean contains(int triangle, double x, double y) {
+        int[] nodes = triangleNodes[triangle];
+        double[] p0 = vertices[nodes[0]];
+        double[] p1 = vertices[nodes[1]];
+        double[] p2 = vertices[nodes[2]];
+        return GeometryTools.triangleContainsPoint(p0[0], p1[0], p2[0], p0[1], p1[1], p2[1], x, y);
+    }
+
+    /**
+     * Exact point in triangle lookup.
+     *
+     * @param x
+     * @param y
+     * @return id of the triangle containing the point (the lowest id if the
+     * point is on a shared edge) or -1 if the point is outside the surface.
+     */
+    public int findContainingTriangle(double x, double y) {
+        int c = (int) Math.floor((x - minX) / cellSize);
+        int r = (int) Math.floor((y - minY) / cellSize);
+        if (c < 0 || r < 0 || c >= columns || r >= rows) {
+            return -1;
+        }
+        int cell = r * columns + c;
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+            if (contains(cellTriangles[i], x, y)) {
+                return cellTriangles[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param x
+     * @param y
+     * @return id of the triangle with the nearest centroid, -1 for an empty
+     * surface.
+     */
+    public int findNearestTriangle(double x, double y) {
+        int[] nearest = findNearestTriangles(x, y, 1);
+        return nearest.length > 0 ? nearest[0] : -1;
+    }
+
+    /**
+     * Searches the k triangles with the nearest centroids. The grid cells are
+     * visited in growing rings around the point until no closer centroid can
+     * be found.
+     *
+     * @param x
+     * @param y
+     * @param k
+     * @return triangle ids, nearest first. Shorter than k if the surface has
+     * less triangles.
+     */
+    public int[] findNearestTriangles(double x, double y, int k) {
+        k = Math.min(k, midTriangles.length);
+        int[] bestID = new int[k];
+        double[] bestDist = new double[k];
+        int found = 0;
+        if (k <= 0) {
+            return bestID;
+        }
+        int cx = clamp((int) Math.floor((x - minX) / cellSize), columns - 1);
+        int cy = clamp((int) Math.floor((y - minY) / cellSize), rows - 1);
+        for (int ring = 0;; ring++) {
+            int c0 = cx - ring, c1 = cx + ring, r0 = cy - ring, r1 = cy + ring;
+            for (int r = Math.max(0, r0); r <= Math.min(rows - 1, r1); r++) {
+                boolean edgeRow = r == r0 || r == r1;
+                for (int c = Math.max(0, c0); c <= Math.min(columns - 1, c1); c++) {
+                    if (!edgeRow && c != c0 && c != c1) {
+                        //Inner cells were visited in earlier rings
+                        c = c1 - 1;
+                        continue;
+                    }
+                    int cell = r * columns + c;
+                    for (int i = midStart[cell]; i < midStart[cell + 1]; i++) {
+                        int t = midTriangles[i];
+                        int[] nodes = triangleNodes[t];
+                        double[] v0 = vertices[nodes[0]], v1 = vertices[nodes[1]], v2 = vertices[nodes[2]];
+                        double dx = (v0[0] + v1[0] + v2[0]) / 3. - x;
+                        double dy = (v0[1] + v1[1] + v2[1]) / 3. - y;
+                        double d = dx * dx + dy * dy;
+                        if (found == k && d >= bestDist[k - 1]) {
+                            continue;
+                        }
+                        //insert sorted
+                        int pos = found < k ? found++ : k - 1;
+                        while (pos > 0 && bestDist[pos - 1] > d) {
+                            bestDist[pos] = bestDist[pos - 1];
+                            bestID[pos] = bestID[pos - 1];
+                            pos--;
+                        }
+                        bestDist[pos] = d;
+                        bestID[pos] = t;
+                    }
+                }
+            }
+            if (c0 <= 0 && r0 <= 0 && c1 >= columns - 1 && r1 >= rows - 1) {
+                //visited all cells
+                break;
+            }
+            if (found == k) {
+                //Distance from the point to the nearest cell outside of the visited box
+                //Sides that already reached the border of the grid have no cells left.
+                double bound = Double.POSITIVE_INFINITY;
+                if (c0 > 0) {
+                    bound = Math.min(bound, x - (minX + c0 * cellSize));
+                }
+                if (c1 < columns - 1) {
+                    bound = Math.min(bound, minX + (c1 + 1) * cellSize - x);
+                }
+                if (r0 > 0) {
+                    bound = Math.min(bound, y - (minY + r0 * cellSize));
+                }
+                if (r1 < rows - 1) {
+                    bound = Math.min(bound, minY + (r1 + 1) * cellSize - y);
+                }
+                if (bound * bound >= bestDist[k - 1]) {
+                    break;
+                }
+            }
+        }
+        return found < k ? Arrays.copyOf(bestID, found) : bestID;
+    }
+
+    /**
+     * Candidates of triangles whose bounding box may intersect the given
+     * rectangle.
+     *
+     * @param minx
+     * @param miny
+     * @param maxx
+     * @param maxy
+     * @return sorted triangle ids
+     */
+    public int[] queryTriangles(double minx, double miny, double maxx, double maxy) {
+        int c0 = clamp((int) Math.floor((minx - minX) / cellSize), columns - 1);
+        int c1 = clamp((int) Math.floor((maxx - minX) / cellSize), columns - 1);
+        int r0 = clamp((int) Math.floor((miny - minY) / cellSize), rows - 1);
+        int r1 = clamp((int) Math.floor((maxy - minY) / cellSize), rows - 1);
+        if (maxx < minX || maxy < minY || minx > minX + columns * cellSize || miny > minY + rows * cellSize) {
+            return new int[0];
+        }
+        int count = 0;
+        for (int r = r0; r <= r1; r++) {
+            count += cellStart[r * columns + c1 + 1] - cellStart[r * columns + c0];
+        }
+        int[] ids = new int[count];
+        int index = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int i = cellStart[r * columns + c0]; i < cellStart[r * columns + c1 + 1]; i++) {
+                ids[index++] = cellTriangles[i];
+            }
+        }
+        Arrays.sort(ids);
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (n == 0 || ids[i] != ids[n - 1]) {
+                ids[n++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Approximate memory [bytes] used by the index arrays.
+     *
+     * @return
+     */
+    public long getMemoryBytes() {
+        return 4L * (cellStart.length + cellTriangles.length + midStart.length + midTriangles.length);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + triangleNodes.length + " triangles, " + columns + "x" + rows + " cells of " + ((float) cellSize) + "m}";
+    }
+}
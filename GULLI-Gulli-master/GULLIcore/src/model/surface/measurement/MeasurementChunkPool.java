@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.surface.measurement;
+
+/**
+ * Pooled storage for the sparse time series of TriangleMeasurements. Values
+ * are stored in chunks of {@link #CHUNKSIZE} consecutive time indices. Only
+ * chunks of intervals in which a triangle was contaminated are allocated.
+ *
+ * Chunks are kept in pages of primitive arrays. Pages are never moved, so
+ * threads can write to their chunks while other threads allocate new ones.
+ * Chunks are never released, a new simulation run uses a new pool.
+ *
+ * @author saemann
+ */
+public class MeasurementChunkPool {
+
+    /**
+     * Number of time indices in one chunk. Must be a power of 2.
+     */
+    public static final int CHUNKSIZE = 16;
+    static final int CHUNKBITS = 4;
+    static final int CHUNKMASK = CHUNKSIZE - 1;
+
+    /**
+     * Number of chunks in one page.
+     */
+    private final int chunksPerPage;
+
+    private volatile double[][] massPages = new double[0][];
+    private volatile int[][] countPages = new int[0][];
+
+    /**
+     * Number of allocated chunks.
+     */
+    private int size = 0;
+
+    public MeasurementChunkPool() {
+        this(1024);
+    }
+
+    public MeasurementChunkPool(int chunksPerPage) {
+        this.chunksPerPage = chunksPerPage;
+    }
+
+    /**
+     * Reserve a new chunk filled with zeros.
+     *
+     * @return slot index of the chunk
+     */
+    public synchronized int allocate() {
+        int slot = size;
+        int page = slot / chunksPerPage;
+        if (page >= massPages.length) {
+            double[][] newMass = new double[page + 1][];
+            int[][] newCount = new int[page + 1][];
+            System.arraycopy(massPages, 0, newMass, 0, massPages.length);
+            System.arraycopy(countPages, 0, newCount, 0, countPages.length);
+            newMass[page] = new double[chunksPerPage * CHUNKSIZE];
+            newCount[page] = new int[chunksPerPage * CHUNKSIZE];
+            countPages = newCount;
+            massPages = newMass;
+        }
+        size++;
+        return slot;
+    }
+
+    public void add(int slot, int offset, double mass, int count) {
+        int page = slot / chunksPerPage;
+        int index = (slot % chunksPerPage) * CHUNKSIZE + offset;
+        massPages[page][index] += mass;
+        countPages[page][index] += count;
+    }
+
+    public double getMass(int slot, int offset) {
+        return massPages[slot / chunksPerPage][(slot % chunksPerPage) * CHUNKSIZE + offset];
+    }
+
+    public int getCount(int slot, int offset) {
+        return countPages[slot / chunksPerPage][(slot % chunksPerPage) * CHUNKSIZE + offset];
+    }
+
+    public int getNumberOfChunks() {
+        return size;
+    }
+
+    /**
+     * Allocated memory [bytes] of all pages.
+     *
+     * @return
+     */
+    public long getMemoryBytes() {
+        return (long) massPages.length * chunksPerPage * CHUNKSIZE * (8 + 4);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + size + " chunks, " + massPages.length + " pages}";
+    }
+}
@@ -57,7 +57,8 @@ public class SurfaceMeasurementLine {
             double[] linemid = new double[]{(utmXStart + utmXEnd) * 0.5, (utmYStart + utmYEnd) * 0.5};
             //Test wich triangle cuts the line
             LinkedList<Integer> triangleIDs = new LinkedList<>();
-            for (int i = 0; i < surf.getTriangleMids().length; i++) {
+            int[] candidates = surf.getTriangleIndex().queryTriangles(Math.min(utmXStart, utmXEnd), Math.min(utmYStart, utmYEnd), Math.max(utmXStart, utmXEnd), Math.max(utmYStart, utmYEnd));
+            for (int i : candidates) {
                 double[] mid = surf.getTriangleMids()[i];
                 //Test for bounding box
                 double dx = (mid[0] - linemid[0]);
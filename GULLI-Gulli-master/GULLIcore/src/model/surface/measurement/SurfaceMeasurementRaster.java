@@ -24,6 +24,7 @@
 package model.surface.measurement;
 
 import model.particle.Particle;
+import model.particle.ParticleStore;
 import model.timeline.array.TimeIndexContainer;
 
 /**
@@ -46,6 +47,16 @@ public abstract class SurfaceMeasurementRaster {
 
     public abstract void measureParticle(long time, Particle particle, int threadIndex);
 
+    /**
+     * Measure the particle with the given index in the ParticleStore.
+     *
+     * @param time
+     * @param store
+     * @param index
+     * @param threadIndex
+     */
+    public abstract void measureParticle(long time, ParticleStore store, int index, int threadIndex);
+
     public abstract void setNumberOfMaterials(int numberOfMaterials);
 
     public abstract void setTimeContainer(TimeIndexContainer times);
@@ -25,6 +25,7 @@ package model.surface.measurement;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import model.particle.Particle;
+import model.particle.ParticleStore;
 import model.surface.Surface;
 import model.timeline.array.TimeIndexContainer;
 
@@ -172,6 +173,59 @@ public class SurfaceMeasurementRectangleRaster extends SurfaceMeasurementRaster
         }
     }
 
+    @Override
+    public void measureParticle(long time, ParticleStore s, int i, int threadIndex) {
+        if (s.moveLengthCummulative[i] < minTravelLengthToMeasure) {
+            return;
+        }
+        if (this.times == null) {
+            throw new NullPointerException("TimeContainer in " + getClass() + " not set.");
+        }
+        int timeIndex = this.times.getTimeIndex(time);
+        int xindex = (int) ((s.x[i] - xmin) / xIntervalWidth);
+        int yindex = (int) ((s.y[i] - ymin) / YIntervalHeight);
+
+        if (xindex < 0 || yindex < 0 || xindex >= mass.length) {
+            return;
+        }
+        if (yindex >= numberYIntervals) {
+            return;
+        }
+        int materialIndex = s.materialIndex[i];
+        try {
+//create counters if non existing
+            if (mass[xindex] == null) {
+                synchronized (mass) {
+                    if (mass[xindex] == null) {
+                        mass[xindex] = new double[numberYIntervals][][];
+                        particlecounter[xindex] = new int[numberYIntervals][][];
+                    }
+                }
+            }
+            if (mass[xindex][yindex] == null) {
+                synchronized (mass) {
+                    if (mass[xindex][yindex] == null) {
+                        mass[xindex][yindex] = new double[times.getNumberOfTimes()][numberOfMaterials];
+                        particlecounter[xindex][yindex] = new int[times.getNumberOfTimes()][numberOfMaterials];
+                    }
+                }
+            }
+//count particle
+            if (synchronizeMeasures) {
+                synchronized (mass[xindex][yindex][timeIndex]) {
+                    mass[xindex][yindex][timeIndex][materialIndex] += s.mass[i];
+                    particlecounter[xindex][yindex][timeIndex][materialIndex]++;
+                }
+            } else {
+                mass[xindex][yindex][timeIndex][materialIndex] += s.mass[i];
+                particlecounter[xindex][yindex][timeIndex][materialIndex]++;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("X index: " + xindex + "    pos.x=" + s.x[i] + "    xmin=" + xmin + "     diff=" + ((s.x[i] - xmin) + "    xIwidth=" + xIntervalWidth));
+        }
+    }
+
     @Override
     public void setNumberOfMaterials(int numberOfMaterials
     ) {
@@ -23,7 +23,10 @@
  */
 package model.surface.measurement;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
 import model.particle.Particle;
+import model.particle.ParticleStore;
 import model.surface.Surface;
 import model.timeline.array.TimeIndexContainer;
 
@@ -41,6 +44,14 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
      */
     protected TriangleMeasurement[] measurements;
 
+    /**
+     * Sparse storage of the time series of all TriangleMeasurements. A new
+     * pool is created on {@link #reset()}, so TriangleMeasurements of the
+     * previous run, that are still referenced (e.g. by a view), keep their
+     * values.
+     */
+    protected MeasurementChunkPool pool = new MeasurementChunkPool();
+
     protected int numberOfMaterials = 1;
 
     protected int numberOfParticleThreads;
@@ -54,6 +65,32 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
 
     private boolean usedInCurrentStep = false;
 
+    /**
+     * If true, each ParticleThread counts into its own slot of the
+     * TriangleMeasurement (threadMass, threadParticleCounter) without any
+     * locking. The slots are reduced in the order of the thread index and
+     * added to the time series in {@link #synchronizeMeasurements()} at the
+     * end of every step. Unlike the locked counting, the summation order does
+     * not depend on the interleaving of the threads.
+     */
+    public static boolean accumulatePerThread = true;
+
+    /**
+     * IDs of the triangles, each thread has written to in the actual step.
+     * [thread][n]
+     */
+    private int[][] touchedCells;
+
+    /**
+     * Number of valid entries in touchedCells for every thread.
+     */
+    private int[] numberOfTouchedCells;
+
+    /**
+     * Buffer for the IDs of all touched triangles during synchronization.
+     */
+    private int[] cellsToSynchronize = new int[0];
+
 //    /**
 //     * if true the counting of each particle thread is done in seperate counters
 //     * for each thread. at the end a synchronization call is needed to store the
@@ -69,6 +106,8 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
         this.numberOfMaterials = numberOfMaterials;
         this.measurements = new TriangleMeasurement[surf.getTriangleNodes().length];
         this.numberOfParticleThreads = numberOfParticleThreads;
+        this.touchedCells = new int[numberOfParticleThreads][64];
+        this.numberOfTouchedCells = new int[numberOfParticleThreads];
     }
 
     @Override
@@ -117,15 +156,16 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
 //                }
 //
 //            } else 
-             if (synchronizeMeasures) {
+            if (accumulatePerThread && threadIndex < numberOfParticleThreads) {
+                addToThreadSlot(m, materialIndex, particle.particleMass, threadIndex);
+            } else if (synchronizeMeasures) {
                 if (m == null) {
                     System.err.println("monitor object is null for cell triangle " + id);
                 } else {
                     monitor[threadIndex] = m;
                     m.lock.lock();
                     try {
-                        m.mass[materialIndex][timeindex] += particle.particleMass;
-                        m.particlecounter[materialIndex][timeindex]++;
+                        m.add(materialIndex, timeindex, particle.particleMass, 1);
                     } catch (Exception e) {
                         e.printStackTrace();
                     } finally {
@@ -134,8 +174,7 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
                     }
                 }
             } else {
-                m.mass[materialIndex][timeindex] += particle.particleMass;
-                m.particlecounter[materialIndex][timeindex]++;
+                m.add(materialIndex, timeindex, particle.particleMass, 1);
             }
         } catch (IndexOutOfBoundsException e) {
             e.printStackTrace();
@@ -147,6 +186,85 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
         }
     }
 
+    @Override
+    public void measureParticle(long time, ParticleStore s, int i, int threadIndex) {
+        if (s.moveLengthCummulative[i] < minTravelLengthToMeasure) {
+            //for risk map do not show inertial particles
+            return;
+        }
+        int id = s.surfaceCellID[i];
+        if (id < 0) {
+            return;
+        }
+        if (!countStayingParticle) {
+            if (id == s.lastSurfaceCellID[i]) {
+                //Do not count particle, if it only stays at the same cell
+                return;
+            } else {
+                s.lastSurfaceCellID[i] = id;
+            }
+        }
+        if (time != this.lastIndexTime) {
+            //calculate the new index
+            this.timeindex = times.getTimeIndex(time);
+            this.lastIndexTime = time;
+        }
+        if (!usedInCurrentStep) {
+            usedInCurrentStep = true;
+        }
+        try {
+            int materialIndex = s.materialIndex[i];
+            TriangleMeasurement m = measurements[id];
+            if (m == null) {
+                m = createMeasurement(id);
+            }
+            if (accumulatePerThread && threadIndex < numberOfParticleThreads) {
+                addToThreadSlot(m, materialIndex, s.mass[i], threadIndex);
+            } else if (synchronizeMeasures) {
+                monitor[threadIndex] = m;
+                m.lock.lock();
+                try {
+                    m.add(materialIndex, timeindex, s.mass[i], 1);
+                } finally {
+                    m.lock.unlock();
+                    monitor[threadIndex] = null;
+                }
+            } else {
+                m.add(materialIndex, timeindex, s.mass[i], 1);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            e.printStackTrace();
+            System.err.println(getClass() + "::Request t=" + timeindex + " m=" + s.materialIndex[i] + "  times.length=" + times.getNumberOfTimes());
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Count the particle in the slot of this thread. Only this thread writes
+     * to the slot, no lock is needed.
+     *
+     * @param m
+     * @param materialIndex
+     * @param mass
+     * @param threadIndex
+     */
+    private void addToThreadSlot(TriangleMeasurement m, int materialIndex, double mass, int threadIndex) {
+        if (m.threadParticleCounter[materialIndex][threadIndex] == 0) {
+            //First particle of this thread in this cell during this step.
+            int n = numberOfTouchedCells[threadIndex];
+            if (n >= touchedCells[threadIndex].length) {
+                int[] newCells = new int[n * 2];
+                System.arraycopy(touchedCells[threadIndex], 0, newCells, 0, n);
+                touchedCells[threadIndex] = newCells;
+            }
+            touchedCells[threadIndex][n] = m.triangleID;
+            numberOfTouchedCells[threadIndex] = n + 1;
+        }
+        m.threadMass[materialIndex][threadIndex] += mass;
+        m.threadParticleCounter[materialIndex][threadIndex]++;
+    }
+
     /**
      * Creates a new Triangle Measurment, puts it into the hashMap and connects
      * it to a SurfaceTriangle if exitent.
@@ -160,7 +278,7 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
             if (this.measurements[triangleID] != null) {
                 return this.measurements[triangleID];
             } else {
-                TriangleMeasurement tm = new TriangleMeasurement(triangleID, times.getNumberOfTimes(), numberOfMaterials, numberOfParticleThreads);
+                TriangleMeasurement tm = new TriangleMeasurement(triangleID, times.getNumberOfTimes(), numberOfMaterials, numberOfParticleThreads, pool);
                 this.measurements[triangleID] = tm;
                 return tm;
             }
@@ -168,21 +286,46 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
 
     }
 
+    /**
+     * Adds the values counted by each thread in the last step to the time
+     * series of the triangle measurements. The triangles are processed in
+     * parallel, inside a triangle the threads are added in a fixed order.
+     */
     @Override
     public void synchronizeMeasurements() {
-        if (/*!synchronizeOnlyAtEnd*/true) {
+        if (!accumulatePerThread) {
             return;
         }
         if (!usedInCurrentStep) {
             return;//no need to go through the whole list.
         }
-        for (TriangleMeasurement measurement : measurements) {
-            if (measurement == null) {
-                continue;
+        //Collect all touched triangles once.
+        int total = 0;
+        for (int t = 0; t < numberOfTouchedCells.length; t++) {
+            total += numberOfTouchedCells[t];
+        }
+        if (cellsToSynchronize.length < total) {
+            cellsToSynchronize = new int[total];
+        }
+        final int[] cells = cellsToSynchronize;
+        int n = 0;
+        for (int t = 0; t < numberOfTouchedCells.length; t++) {
+            for (int k = 0; k < numberOfTouchedCells[t]; k++) {
+                TriangleMeasurement m = measurements[touchedCells[t][k]];
+                if (m != null && !m.used) {
+                    m.used = true;
+                    cells[n++] = m.triangleID;
+                }
             }
-            measurement.synchronizeMeasurements(timeindex);
+            numberOfTouchedCells[t] = 0;
         }
-        usedInCurrentStep=false;
+        final int ti = timeindex;
+        IntStream.range(0, n).parallel().forEach(i -> {
+            TriangleMeasurement m = measurements[cells[i]];
+            m.synchronizeMeasurements(ti);
+            m.used = false;
+        });
+        usedInCurrentStep = false;
     }
 
     @Override
@@ -216,7 +359,15 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
     @Override
     public void reset() {
         usedInCurrentStep=false;
-        measurements = new TriangleMeasurement[surf.getTriangleNodes().length];
+        if (measurements == null || measurements.length != surf.getTriangleNodes().length) {
+            measurements = new TriangleMeasurement[surf.getTriangleNodes().length];
+        } else {
+            Arrays.fill(measurements, null);
+        }
+        pool = new MeasurementChunkPool();
+        for (int t = 0; t < numberOfTouchedCells.length; t++) {
+            numberOfTouchedCells[t] = 0;
+        }
     }
 
     public Surface getSurface() {
@@ -227,6 +378,10 @@ public class SurfaceMeasurementTriangleRaster extends SurfaceMeasurementRaster {
         return numberOfMaterials;
     }
 
+    public MeasurementChunkPool getPool() {
+        return pool;
+    }
+
     @Override
     public void breakAllLocks() {
         if (measurements != null) {
@@ -26,27 +26,39 @@ package model.surface.measurement;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Stores number/mass of particles on a surface triangle
+ * Stores number/mass of particles on a surface triangle.
+ *
+ * The time series are stored sparse: for every material only chunks of time
+ * intervals with particles are allocated in a {@link MeasurementChunkPool}.
  *
  * @author saemann
  */
 public class TriangleMeasurement {
 
     int triangleID;
+
+    /**
+     * Number of time intervals.
+     */
+    final int numberOfTimes;
+
     /**
-     * [material index][timeindex]
+     * Slot of the chunk in the pool for [material index][timeindex/chunksize].
+     * -1 if the chunk is not allocated. null for materials without any
+     * particles.
      */
-    double[][] mass;
+    final int[][] chunkSlots;
+
+    /**
+     * Storage of mass and counter.
+     */
+    final MeasurementChunkPool pool;
 
     /**
      * temporal stores the counter for each thread seperately [material
      * index][thread]
      */
     double[][] threadMass;
-    /**
-     * [material index][timeindex]
-     */
-    int[][] particlecounter;
 
     /**
      * temporal stores the counter for each thread seperately [material
@@ -59,13 +71,16 @@ public class TriangleMeasurement {
     public ReentrantLock lock = new ReentrantLock();
 
     public TriangleMeasurement(int triangleID, int numberOfTimes, int numberOfMaterials, int numberOfThreads) {
+        this(triangleID, numberOfTimes, numberOfMaterials, numberOfThreads, new MeasurementChunkPool(8));
+    }
 
+    public TriangleMeasurement(int triangleID, int numberOfTimes, int numberOfMaterials, int numberOfThreads, MeasurementChunkPool pool) {
         this.triangleID = triangleID;
-        this.mass = new double[numberOfMaterials][numberOfTimes];
-        this.particlecounter = new int[numberOfMaterials][numberOfTimes];
+        this.numberOfTimes = numberOfTimes;
+        this.pool = pool;
+        this.chunkSlots = new int[numberOfMaterials][];
         this.threadMass = new double[numberOfMaterials][numberOfThreads];
         this.threadParticleCounter = new int[numberOfMaterials][numberOfThreads];
-
     }
 
     public int getTriangleID() {
@@ -73,21 +88,162 @@ public class TriangleMeasurement {
     }
 
     /**
-     * [material index][timeindex]
+     * Add mass and number of particles to the given time interval. Not
+     * threadsafe for the same triangle.
+     *
+     * @param materialIndex
+     * @param timeindex
+     * @param mass
+     * @param particles
+     */
+    public void add(int materialIndex, int timeindex, double mass, int particles) {
+        int[] slots = chunkSlots[materialIndex];
+        if (slots == null) {
+            slots = new int[(numberOfTimes + MeasurementChunkPool.CHUNKMASK) >> MeasurementChunkPool.CHUNKBITS];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = -1;
+            }
+            chunkSlots[materialIndex] = slots;
+        }
+        int chunk = timeindex >> MeasurementChunkPool.CHUNKBITS;
+        int slot = slots[chunk];
+        if (slot < 0) {
+            slot = pool.allocate();
+            slots[chunk] = slot;
+        }
+        pool.add(slot, timeindex & MeasurementChunkPool.CHUNKMASK, mass, particles);
+    }
+
+    /**
+     * Mass [kg] of a material in a time interval.
+     *
+     * @param materialIndex
+     * @param timeindex
+     * @return
+     */
+    public double getMass(int materialIndex, int timeindex) {
+        int slot = getSlot(materialIndex, timeindex);
+        if (slot < 0) {
+            return 0;
+        }
+        return pool.getMass(slot, timeindex & MeasurementChunkPool.CHUNKMASK);
+    }
+
+    /**
+     * Number of counted particles of a material in a time interval.
+     *
+     * @param materialIndex
+     * @param timeindex
+     * @return
+     */
+    public int getParticlecount(int materialIndex, int timeindex) {
+        int slot = getSlot(materialIndex, timeindex);
+        if (slot < 0) {
+            return 0;
+        }
+        return pool.getCount(slot, timeindex & MeasurementChunkPool.CHUNKMASK);
+    }
+
+    private int getSlot(int materialIndex, int timeindex) {
+        if (materialIndex >= chunkSlots.length || chunkSlots[materialIndex] == null) {
+            return -1;
+        }
+        return chunkSlots[materialIndex][timeindex >> MeasurementChunkPool.CHUNKBITS];
+    }
+
+    /**
+     * Mass [kg] of a material summed up over all time intervals.
+     *
+     * @param materialIndex
+     * @return
+     */
+    public double getTotalMass(int materialIndex) {
+        double sum = 0;
+        if (materialIndex >= chunkSlots.length || chunkSlots[materialIndex] == null) {
+            return sum;
+        }
+        int[] slots = chunkSlots[materialIndex];
+        for (int c = 0; c < slots.length; c++) {
+            if (slots[c] < 0) {
+                continue;
+            }
+            int last = Math.min(MeasurementChunkPool.CHUNKSIZE, numberOfTimes - c * MeasurementChunkPool.CHUNKSIZE);
+            for (int o = 0; o < last; o++) {
+                sum += pool.getMass(slots[c], o);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Number of particles of a material summed up over all time intervals.
+     *
+     * @param materialIndex
+     * @return
+     */
+    public int getTotalParticlecount(int materialIndex) {
+        int sum = 0;
+        if (materialIndex >= chunkSlots.length || chunkSlots[materialIndex] == null) {
+            return sum;
+        }
+        int[] slots = chunkSlots[materialIndex];
+        for (int c = 0; c < slots.length; c++) {
+            if (slots[c] < 0) {
+                continue;
+            }
+            int last = Math.min(MeasurementChunkPool.CHUNKSIZE, numberOfTimes - c * MeasurementChunkPool.CHUNKSIZE);
+            for (int o = 0; o < last; o++) {
+                sum += pool.getCount(slots[c], o);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Dense copy of the mass time series [material index][timeindex]. Use
+     * {@link #getMass(int, int)} to read single values without allocation.
      *
      * @return
      */
     public double[][] getMass() {
+        double[][] mass = new double[chunkSlots.length][numberOfTimes];
+        for (int m = 0; m < mass.length; m++) {
+            if (chunkSlots[m] == null) {
+                continue;
+            }
+            for (int t = 0; t < numberOfTimes; t++) {
+                mass[m][t] = getMass(m, t);
+            }
+        }
         return mass;
     }
 
     /**
-     * [material index][timeindex]
+     * Dense copy of the particle counter [material index][timeindex]. Use
+     * {@link #getParticlecount(int, int)} to read single values without
+     * allocation.
      *
      * @return
      */
     public int[][] getParticlecount() {
-        return particlecounter;
+        int[][] count = new int[chunkSlots.length][numberOfTimes];
+        for (int m = 0; m < count.length; m++) {
+            if (chunkSlots[m] == null) {
+                continue;
+            }
+            for (int t = 0; t < numberOfTimes; t++) {
+                count[m][t] = getParticlecount(m, t);
+            }
+        }
+        return count;
+    }
+
+    public int getNumberOfMaterials() {
+        return chunkSlots.length;
+    }
+
+    public int getNumberOfTimes() {
+        return numberOfTimes;
     }
 
     @Override
@@ -97,23 +253,36 @@ public class TriangleMeasurement {
 
     public int totalParticleCount() {
         int counter = 0;
-        for (int i = 0; i < particlecounter.length; i++) {
-            for (int j = 0; j < particlecounter[i].length; j++) {
-                counter += particlecounter[i][j];
-            }
+        for (int i = 0; i < chunkSlots.length; i++) {
+            counter += getTotalParticlecount(i);
         }
         return counter;
     }
 
+    /**
+     * Adds the values collected separately by each thread to the time index
+     * and clears the thread counters. The thread slots are summed up in the
+     * order of the thread index and added to the time series at once, so the
+     * result does not depend on the order in which the threads finished.
+     *
+     * @param timeindex
+     */
     public void synchronizeMeasurements(int timeindex) {
-        for (int i = 0; i < mass.length; i++) {
-            for (int j = 0; j < threadMass[0].length; j++) {
-                mass[i][timeindex] += threadMass[i][j];
+        for (int i = 0; i < threadMass.length; i++) {
+            double sumMass = 0;
+            int sumCount = 0;
+            for (int j = 0; j < threadMass[i].length; j++) {
+                if (threadParticleCounter[i][j] == 0) {
+                    continue;
+                }
+                sumMass += threadMass[i][j];
+                sumCount += threadParticleCounter[i][j];
                 threadMass[i][j] = 0;
-                particlecounter[i][timeindex] += particlecounter[i][j];
-                particlecounter[i][j] = 0;
+                threadParticleCounter[i][j] = 0;
+            }
+            if (sumCount > 0) {
+                add(i, timeindex, sumMass, sumCount);
             }
         }
-
     }
 }
@@ -264,6 +264,36 @@ public class ArrayTimeLineMeasurement {
         }
     }
 
+    /**
+     * Count a particle by its attributes. Used for particles in a
+     * {@link model.particle.ParticleStore}. ID sharp counting is not possible
+     * here.
+     *
+     * @param materialIndex
+     * @param particleMass [kg]
+     * @param dtfactor fraction of time spend on this capacity in relation to
+     * the whole timestep.
+     */
+    public void addParticle(int materialIndex, float particleMass, float dtfactor) {
+        if (!active) {
+            return;
+        }
+        if (synchronizeMeasures) {
+            lock.lock();
+            try {
+                this.particleMassInTimestep += particleMass * dtfactor;
+                this.numberOfParticlesInTimestep++;
+                addParticleMassperMaterial(materialIndex, particleMass * dtfactor);
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            this.particleMassInTimestep += particleMass * dtfactor;
+            this.numberOfParticlesInTimestep++;
+            addParticleMassperMaterial(materialIndex, particleMass * dtfactor);
+        }
+    }
+
     /**
      * Clears all counters to start a new sampling action.
      */
@@ -15,8 +15,6 @@ public class ArrayTimeLinePipe implements TimeLinePipe {
     protected float h_max = 0, h_mean = 0;
     protected float mf_max = 0, mf_mean = 0; //massflux [kg/s]
     protected float c_max = 0, c_mean = 0; //concentration [kg/m³]
-    private long lastcallTime;
-    private float vLastCall;
 
     public long getTimeMilliseconds(int timeIndex) {
         return container.getTimeMilliseconds(timeIndex);
@@ -245,12 +243,7 @@ public class ArrayTimeLinePipe implements TimeLinePipe {
     public float getVelocity() {
 
         if (container.calculaion_Method == ArrayTimeLinePipeContainer.CALCULATION.LINEAR_INTERPOLATE) {
-            if (container.getActualTime() == lastcallTime) {
-                return vLastCall;
-            }
-            vLastCall = this.getVelocity_DoubleIndex(container.getActualTimeIndex_double());
-            lastcallTime = container.getActualTime();
-            return vLastCall;
+            return this.getVelocity_DoubleIndex(container.getActualTimeIndex_double());
         } else if (container.calculaion_Method == ArrayTimeLinePipeContainer.CALCULATION.STEPS) {
             return this.getVelocity(container.getActualTimeIndex());
         } else if (container.calculaion_Method == ArrayTimeLinePipeContainer.CALCULATION.MAXIMUM) {
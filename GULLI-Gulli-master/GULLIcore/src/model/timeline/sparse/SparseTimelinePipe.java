@@ -71,7 +71,11 @@ public class SparseTimelinePipe implements TimeLinePipe {
     private float[][] concentration_reference;
 
     private float actualVelocity, actualWaterlevel, actualDischarge, actualVolume;
-    private long actualTimestamp;
+    /**
+     * Written after the actual values, so readers outside the lock see
+     * complete values for this timestamp.
+     */
+    private volatile long actualTimestamp = Long.MIN_VALUE;
 
     private ReentrantLock lock = new ReentrantLock();
 
@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.topology;
+
+import java.util.Collection;
+import java.util.stream.IntStream;
+import model.timeline.array.TimeIndexCalculator;
+import model.timeline.array.TimeLineManhole;
+import model.timeline.array.TimeLinePipe;
+
+/**
+ * Hydraulic state of all pipes and manholes at the actual time of the
+ * timelines. Velocity, waterlevel, discharge and volume are interpolated once
+ * per simulation step in one parallel loop and stored in flat arrays by a
+ * dense index. Pipes and manholes read their actual values from here instead
+ * of interpolating their timeline on every call.
+ *
+ * If the actual time of the timelines differs from the time this state was
+ * built for, pipes and manholes fall back to their timelines.
+ *
+ * @author saemann
+ */
+public class NetworkHydraulicState {
+
+    /**
+     * If true the ThreadController fills the hydraulic state for every
+     * simulation step.
+     */
+    public static boolean enabled = true;
+
+    private static volatile NetworkHydraulicState current;
+
+    private final Collection<Pipe> sourcePipes;
+    private final Collection<Manhole> sourceManholes;
+    private final TimeIndexCalculator times;
+
+    private final Pipe[] pipes;
+    private final StorageVolume[] manholes;
+
+    /**
+     * Velocity in pipe [m/s]
+     */
+    final float[] velocity;
+    /**
+     * Waterlevel above pipe sole [m]
+     */
+    final float[] waterlevel;
+    /**
+     * Volume flow in pipe [m³/s]
+     */
+    final float[] discharge;
+    /**
+     * Fluid volume in pipe [m³]
+     */
+    final float[] volume;
+
+    /**
+     * Water height above sea level in manhole [m üNN]
+     */
+    final float[] manholeWaterZ;
+    /**
+     * Waterlevel as given by the manhole timeline
+     */
+    final float[] manholeWaterlevel;
+    /**
+     * Flow from manhole to surface [m³/s]
+     */
+    final float[] manholeFlowToSurface;
+
+    private volatile long builtTime = Long.MIN_VALUE;
+
+    /**
+     * Creates the state arrays and assigns the dense index to every pipe and
+     * manhole.
+     *
+     * @param pipes all pipes of the network
+     * @param manholes all manholes of the network
+     * @param times time container of the pipe timelines
+     */
+    public NetworkHydraulicState(Collection<Pipe> pipes, Collection<Manhole> manholes, TimeIndexCalculator times) {
+        this.sourcePipes = pipes;
+        this.sourceManholes = manholes;
+        this.times = times;
+        this.pipes = pipes.toArray(new Pipe[pipes.size()]);
+        this.manholes = manholes.toArray(new StorageVolume[manholes.size()]);
+        this.velocity = new float[this.pipes.length];
+        this.waterlevel = new float[this.pipes.length];
+        this.discharge = new float[this.pipes.length];
+        this.volume = new float[this.pipes.length];
+        this.manholeWaterZ = new float[this.manholes.length];
+        this.manholeWaterlevel = new float[this.manholes.length];
+        this.manholeFlowToSurface = new float[this.manholes.length];
+        for (int i = 0; i < this.pipes.length; i++) {
+            this.pipes[i].hydraulicState = this;
+            this.pipes[i].hydraulicIndex = i;
+        }
+        for (int i = 0; i < this.manholes.length; i++) {
+            this.manholes[i].hydraulicState = this;
+            this.manholes[i].hydraulicIndex = i;
+        }
+    }
+
+    /**
+     * Creates the state if the existing one was built for other pipes,
+     * manholes or timelines and brings it to the actual time.
+     *
+     * @param pipes all pipes of the network
+     * @param manholes all manholes of the network
+     * @param times time container of the pipe timelines
+     * @return the state read by all pipes and manholes
+     */
+    public static NetworkHydraulicState prepare(Collection<Pipe> pipes, Collection<Manhole> manholes, TimeIndexCalculator times) {
+        NetworkHydraulicState state = current;
+        if (state == null || !state.isBuiltFor(pipes, manholes, times)) {
+            state = new NetworkHydraulicState(pipes, manholes, times);
+            current = state;
+        }
+        state.ensureCurrent();
+        return state;
+    }
+
+    public static NetworkHydraulicState getCurrent() {
+        return current;
+    }
+
+    /**
+     * Interpolates the values of all pipes and manholes for the actual time
+     * of the timelines.
+     */
+    public synchronized void update() {
+        long t = times.getActualTime();
+        IntStream.range(0, pipes.length).parallel().forEach(i -> fillPipe(i));
+        IntStream.range(0, manholes.length).parallel().forEach(i -> fillManhole(i));
+        builtTime = t;
+    }
+
+    /**
+     * Updates the state if the actual time of the timelines has changed since
+     * the last update.
+     */
+    public void ensureCurrent() {
+        if (times.getActualTime() != builtTime) {
+            synchronized (this) {
+                if (times.getActualTime() != builtTime) {
+                    update();
+                }
+            }
+        }
+    }
+
+    /**
+     * True if the values represent the actual time of the timelines.
+     *
+     * @return
+     */
+    public boolean isCurrent() {
+        return builtTime == times.getActualTime();
+    }
+
+    private void fillPipe(int i) {
+        TimeLinePipe tl = pipes[i].getStatusTimeLine();
+        if (tl == null) {
+            velocity[i] = 0;
+            waterlevel[i] = Float.NEGATIVE_INFINITY;
+            discharge[i] = 0;
+            volume[i] = 0;
+            return;
+        }
+        velocity[i] = tl.getVelocity();
+        waterlevel[i] = (float) tl.getWaterlevel();
+        discharge[i] = (float) tl.getDischarge();
+        volume[i] = (float) tl.getVolume();
+    }
+
+    private void fillManhole(int i) {
+        TimeLineManhole tl = manholes[i].getStatusTimeLine();
+        if (tl == null) {
+            manholeWaterZ[i] = 0;
+            manholeWaterlevel[i] = 0;
+            manholeFlowToSurface[i] = 0;
+            return;
+        }
+        manholeWaterZ[i] = tl.getActualWaterZ();
+        manholeWaterlevel[i] = tl.getActualWaterLevel();
+        manholeFlowToSurface[i] = tl.getActualFlowToSurface();
+    }
+
+    /**
+     * True if this state was created for these pipes, manholes and
+     * timelines.
+     *
+     * @param pipes
+     * @param manholes
+     * @param times
+     * @return
+     */
+    public boolean isBuiltFor(Collection<Pipe> pipes, Collection<Manhole> manholes, TimeIndexCalculator times) {
+        return this.sourcePipes == pipes && this.sourceManholes == manholes && this.times == times
+                && this.pipes.length == pipes.size() && this.manholes.length == manholes.size();
+    }
+
+    public int getNumberOfPipes() {
+        return pipes.length;
+    }
+
+    public int getNumberOfManholes() {
+        return manholes.length;
+    }
+
+    public long getBuiltTime() {
+        return builtTime;
+    }
+}
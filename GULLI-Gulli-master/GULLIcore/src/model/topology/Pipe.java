@@ -78,6 +78,12 @@ public class Pipe extends Capacity {
 //    protected double water_level=0;
     private TimeLinePipe timelineStatus;
     private ArrayTimeLineMeasurement timelineMeasurement;
+    /**
+     * Actual values of all pipes, filled once per simulation step. May be
+     * null.
+     */
+    NetworkHydraulicState hydraulicState;
+    int hydraulicIndex = -1;
 
 //    private SimplePipeStamp actualValues;
 //    private double fillRate;
@@ -186,6 +192,10 @@ public class Pipe extends Capacity {
 
     @Override
     public double getFluidVolume() {
+        NetworkHydraulicState state = hydraulicState;
+        if (state != null && state.isCurrent()) {
+            return state.volume[hydraulicIndex];
+        }
         return this.timelineStatus.getVolume();
 //        try {
 //            return this.profile.getFlowArea(timelineStatus.getWaterlevel()) * length;
@@ -413,6 +423,10 @@ public class Pipe extends Capacity {
     }
 
     public float averageVelocity_actual() {
+        NetworkHydraulicState state = hydraulicState;
+        if (state != null && state.isCurrent()) {
+            return state.velocity[hydraulicIndex];
+        }
         if (timelineStatus != null) {
             return timelineStatus.getVelocity();
         }
@@ -889,6 +903,10 @@ public class Pipe extends Capacity {
 
     @Override
     public double getWaterlevel() {
+        NetworkHydraulicState state = hydraulicState;
+        if (state != null && state.isCurrent()) {
+            return state.waterlevel[hydraulicIndex];
+        }
         if(this.timelineStatus==null)return Double.NEGATIVE_INFINITY;
         return this.timelineStatus.getWaterlevel();
     }
@@ -899,6 +917,10 @@ public class Pipe extends Capacity {
      * @return q [m³/s]
      */
     public double getFlowActual() {
+        NetworkHydraulicState state = hydraulicState;
+        if (state != null && state.isCurrent()) {
+            return state.discharge[hydraulicIndex];
+        }
         if(this.timelineStatus==null)return 0;
         return this.timelineStatus.getDischarge();
     }
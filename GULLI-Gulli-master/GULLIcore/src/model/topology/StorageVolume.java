@@ -38,6 +38,13 @@ public class StorageVolume extends Capacity {
     protected int numberOutgoings, numberIncomings;
     
     protected TimeLineManhole timelineStatus;
+
+    /**
+     * Actual values of all manholes, filled once per simulation step. May be
+     * null.
+     */
+    NetworkHydraulicState hydraulicState;
+    int hydraulicIndex = -1;
     
     protected String name;
 
@@ -103,6 +110,10 @@ public class StorageVolume extends Capacity {
      */
     @Override
     public double getWaterHeight() {
+        NetworkHydraulicState state = hydraulicState;
+        if (state != null && state.isCurrent()) {
+            return state.manholeWaterZ[hydraulicIndex];
+        }
         return timelineStatus.getActualWaterZ();
     }
     
@@ -177,8 +188,29 @@ public class StorageVolume extends Capacity {
 
     @Override
     public double getWaterlevel() {
+        NetworkHydraulicState state = hydraulicState;
+        if (state != null && state.isCurrent()) {
+            return state.manholeWaterlevel[hydraulicIndex];
+        }
         return timelineStatus.getActualWaterLevel();//timelineStatus.getActualWaterZ()-this.getSole_height();
     }
+
+    /**
+     * Flow from this volume to the surface at the actual time [m³/s]. Inflow
+     * from the surface has negative values.
+     *
+     * @return 0 if no timeline is set.
+     */
+    public float getFlowToSurfaceActual() {
+        NetworkHydraulicState state = hydraulicState;
+        if (state != null && state.isCurrent()) {
+            return state.manholeFlowToSurface[hydraulicIndex];
+        }
+        if (timelineStatus == null) {
+            return 0;
+        }
+        return timelineStatus.getActualFlowToSurface();
+    }
     
     
 
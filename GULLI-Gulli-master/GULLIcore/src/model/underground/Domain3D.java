@@ -67,6 +67,11 @@ public class Domain3D {
      */
     public final ArrayList<Obstacle3D> obstacles=new ArrayList<>(0);
 
+    /**
+     * Spatial index over the node positions. Built on first search.
+     */
+    private volatile KDTree3D nodeTree;
+
     /**
      * Create a 3D Domain
      *
@@ -99,6 +104,25 @@ public class Domain3D {
         maxZ = mz[1];
     }
 
+    /**
+     * KD-tree over all node positions.
+     *
+     * @return
+     */
+    public KDTree3D getNodeTree() {
+        KDTree3D tree = nodeTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = nodeTree;
+                if (tree == null) {
+                    tree = new KDTree3D(position);
+                    nodeTree = tree;
+                }
+            }
+        }
+        return tree;
+    }
+
     /**
      * Find nearest Node for the given Coordinate
      *
@@ -106,6 +130,32 @@ public class Domain3D {
      * @return
      */
     public int getNearestCoordinateIndex(Coordinate c) {
+        return getNodeTree().nearest(c.x, c.y, c.z, -1);
+    }
+
+    /**
+     * Find nearest Node for the given Coordinate. The search starts with the
+     * given node as first guess, which makes it fast for particles that only
+     * move a short distance.
+     *
+     * @param c Coordinate in same CRS as nodes
+     * @param lastIndex nearest node of the last search or -1
+     * @return
+     */
+    public int getNearestCoordinateIndex(Coordinate c, int lastIndex) {
+        return getNodeTree().nearest(c.x, c.y, c.z, lastIndex);
+    }
+
+    /**
+     * Linear search over all nodes within a window of 50m (xy) and 250m (z).
+     * Only used for reference, use
+     * {@link #getNearestCoordinateIndex(com.vividsolutions.jts.geom.Coordinate)}
+     * instead.
+     *
+     * @param c Coordinate in same CRS as nodes
+     * @return index of the nearest node in the window, -1 if none.
+     */
+    public int searchNearestCoordinateIndexLinear(Coordinate c) {
         int bestindex = -1;
         double bestdistance = Double.POSITIVE_INFINITY;
         float maxdistanceXY = 50;
@@ -170,36 +220,12 @@ public class Domain3D {
         Coordinate c = geotools.toUTM(latlon.getLongitude(), latlon.getLatitude());
         System.out.println("Search converted from " + latlon + "\tto " + c);
         c.z = z;
-        int bestindex = -1;
-        double bestdistance = Double.POSITIVE_INFINITY;
-        float maxdistanceXY = 50;
-        float maxdistanceZ = 50;
-        int i = -1;
-        for (Coordinate p : position) {
-            i++;
-
-            if (Math.abs(p.x - c.x) > maxdistanceXY) {
-                continue;
-            }
-            if (Math.abs(p.y - c.y) > maxdistanceXY) {
-                continue;
-            }
-            if (Math.abs(p.z - c.z) > maxdistanceZ) {
-                continue;
-            }
-            double dx = (p.x - c.x);
-            double dy = (p.y - c.y);
-            double dz = (p.z - c.z);
-            double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
-            if (distance < bestdistance) {
-                bestdistance = distance;
-                bestindex = i;
-            }
-
+        int bestindex = getNearestCoordinateIndex(c);
+        if (bestindex >= 0) {
+            Coordinate p = position[bestindex];
+            System.out.println("index= " + bestindex + "  best distance=" + Math.sqrt((p.x - c.x) * (p.x - c.x) + (p.y - c.y) * (p.y - c.y) + (p.z - c.z) * (p.z - c.z)) + "m");
         }
 
-        System.out.println("index= " + bestindex + "  best distance=" + bestdistance + "m  nothing found");
-
         return bestindex;
     }
 
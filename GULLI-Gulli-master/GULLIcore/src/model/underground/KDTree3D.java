@@ -0,0 +1,255 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 saemann.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package model.underground;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * KD-tree for nearest node search in 3D. The tree is stored implicitly in
+ * flat arrays: the nodes are reordered so that every range [lo,hi) has its
+ * splitting node in the middle, smaller coordinates of the split axis left
+ * and larger ones right of it.
+ *
+ * A search may start with a hint (e.g. the nearest node of the last step of
+ * a particle). Its distance is used as initial bound, so only the few
+ * branches near the query point are visited.
+ *
+ * @author saemann
+ */
+public class KDTree3D {
+
+    /**
+     * Coordinates in tree order.
+     */
+    private final double[] x, y, z;
+
+    /**
+     * Original index of the node at each tree position.
+     */
+    private final int[] node;
+
+    /**
+     * Tree position of each original node index.
+     */
+    private final int[] treePosition;
+
+    /**
+     * Split axis (0:x, 1:y, 2:z) of the node at each tree position.
+     */
+    private final byte[] axis;
+
+    public KDTree3D(Coordinate[] positions) {
+        int n = positions.length;
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+        node = new int[n];
+        axis = new byte[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = positions[i].x;
+            y[i] = positions[i].y;
+            z[i] = Double.isNaN(positions[i].z) ? 0 : positions[i].z;
+            node[i] = i;
+        }
+        build(0, n);
+        treePosition = new int[n];
+        for (int i = 0; i < n; i++) {
+            treePosition[node[i]] = i;
+        }
+    }
+
+    private double coordinate(int a, int i) {
+        return a == 0 ? x[i] : (a == 1 ? y[i] : z[i]);
+    }
+
+    private void build(int lo, int hi) {
+        while (hi - lo > 1) {
+            //Split along the axis with the largest extent
+            double minx = Double.POSITIVE_INFINITY, maxx = Double.NEGATIVE_INFINITY;
+            double miny = Double.POSITIVE_INFINITY, maxy = Double.NEGATIVE_INFINITY;
+            double minz = Double.POSITIVE_INFINITY, maxz = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                minx = Math.min(minx, x[i]);
+                maxx = Math.max(maxx, x[i]);
+                miny = Math.min(miny, y[i]);
+                maxy = Math.max(maxy, y[i]);
+                minz = Math.min(minz, z[i]);
+                maxz = Math.max(maxz, z[i]);
+            }
+            byte a = 0;
+            double extent = maxx - minx;
+            if (maxy - miny > extent) {
+                a = 1;
+                extent = maxy - miny;
+            }
+            if (maxz - minz > extent) {
+                a = 2;
+            }
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, a);
+            axis[mid] = a;
+            //Recursion for the smaller part, loop for the larger
+            if (mid - lo < hi - mid - 1) {
+                build(lo, mid);
+                lo = mid + 1;
+            } else {
+                build(mid + 1, hi);
+                hi = mid;
+            }
+        }
+    }
+
+    /**
+     * Quickselect: position k gets the element it would have in sorted
+     * order of axis a within [left,right].
+     */
+    private void select(int left, int right, int k, int a) {
+        while (right > left) {
+            //median of three as pivot
+            int m = (left + right) >>> 1;
+            if (coordinate(a, m) < coordinate(a, left)) {
+                swap(m, left);
+            }
+            if (coordinate(a, right) < coordinate(a, left)) {
+                swap(right, left);
+            }
+            if (coordinate(a, right) < coordinate(a, m)) {
+                swap(right, m);
+            }
+            double pivot = coordinate(a, m);
+            int i = left, j = right;
+            while (i <= j) {
+                while (coordinate(a, i) < pivot) {
+                    i++;
+                }
+                while (coordinate(a, j) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double t = x[i];
+        x[i] = x[j];
+        x[j] = t;
+        t = y[i];
+        y[i] = y[j];
+        y[j] = t;
+        t = z[i];
+        z[i] = z[j];
+        z[j] = t;
+        int n = node[i];
+        node[i] = node[j];
+        node[j] = n;
+    }
+
+    private double distance2(int i, double qx, double qy, double qz) {
+        double dx = x[i] - qx, dy = y[i] - qy, dz = z[i] - qz;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Index of the node nearest to the given point. If several nodes have
+     * the same distance, the lowest index is returned.
+     *
+     * @param qx
+     * @param qy
+     * @param qz
+     * @param hint index of a node near the point (e.g. result of the last
+     * search) or -1.
+     * @return node index, -1 if there are no nodes.
+     */
+    public int nearest(double qx, double qy, double qz, int hint) {
+        if (node.length == 0) {
+            return -1;
+        }
+        int best = hint >= 0 && hint < node.length ? treePosition[hint] : -1;
+        best = nearest(0, node.length, qx, qy, qz, best);
+        return node[best];
+    }
+
+    private int nearest(int lo, int hi, double qx, double qy, double qz, int best) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double d = distance2(mid, qx, qy, qz);
+            if (best < 0) {
+                best = mid;
+            } else {
+                double bestD = distance2(best, qx, qy, qz);
+                if (d < bestD || (d == bestD && node[mid] < node[best])) {
+                    best = mid;
+                }
+            }
+            byte a = axis[mid];
+            double diff = coordinate(a, mid) - (a == 0 ? qx : (a == 1 ? qy : qz));
+            int nearLo, nearHi, farLo, farHi;
+            if (diff > 0) {
+                nearLo = lo;
+                nearHi = mid;
+                farLo = mid + 1;
+                farHi = hi;
+            } else {
+                nearLo = mid + 1;
+                nearHi = hi;
+                farLo = lo;
+                farHi = mid;
+            }
+            best = nearest(nearLo, nearHi, qx, qy, qz, best);
+            if (diff * diff > distance2(best, qx, qy, qz)) {
+                //Far side can not contain a nearer node
+                return best;
+            }
+            //Continue with far side in this loop
+            lo = farLo;
+            hi = farHi;
+        }
+        return best;
+    }
+
+    public int size() {
+        return node.length;
+    }
+
+    /**
+     * Approximate memory [bytes] used by the tree arrays.
+     *
+     * @return
+     */
+    public long getMemoryBytes() {
+        return node.length * (3L * 8 + 4 + 4 + 1);
+    }
+}
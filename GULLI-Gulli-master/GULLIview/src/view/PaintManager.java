@@ -8,6 +8,7 @@ import control.Action.Action;
 import control.Controller;
 import control.LocationIDListener;
 import control.ShapeTools;
+import control.listener.AsyncSimulationListener;
 import control.listener.CapacitySelectionListener;
 import control.listener.LoadingActionListener;
 import control.listener.ParticleListener;
@@ -45,6 +46,7 @@ import model.GeoTools;
 import model.particle.HistoryParticle;
 import model.particle.Particle;
 import model.surface.Surface;
+import model.surface.SurfaceFieldStore;
 import model.surface.measurement.SurfaceMeasurementTriangleRaster;
 import model.surface.SurfacePathStatistics;
 import model.surface.SurfaceTriangle;
@@ -199,6 +201,12 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
 
     public int repaintPerLoops = 300;
 
+    /**
+     * loop / repaintPerLoops of the last repaint. Steps are coalesced, so the
+     * loop of a multiple of repaintPerLoops may never be reported.
+     */
+    private long lastRepaintStage = -1;
+
     public final Thread repaintThread;
 
 //    private final ArrayList<Particle> particles = new ArrayList<>();
@@ -235,7 +243,8 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
         this.control = con;
         if (control != null) {
             control.addActioListener(this);
-            control.addSimulationListener(this);
+            //Repaints must not stall the particle threads.
+            control.addAsyncSimulationListener(this, AsyncSimulationListener.POLICY.COALESCE, 1);
             control.addParticleListener(this);
             control.getThreadController().paintingInterval = repaintPerLoops;
         }
@@ -1145,40 +1154,21 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
                             if (raster.getMeasurements() != null) {
                                 for (int mid = 0; mid < raster.getMeasurements().length; mid++) {
                                     TriangleMeasurement measurement = raster.getMeasurements()[mid];
-                                    if (measurement == null || measurement.getParticlecount() == null || measurement.getParticlecount().length == 0) {
+                                    if (measurement == null || measurement.getNumberOfMaterials() == 0) {
                                         continue;
                                     }
 
                                     int red = 0;
                                     int green = 0;
                                     int blue = 0;
-                                    if (measurement.getParticlecount()[0] != null) {
-                                        for (int j = 0; j < measurement.getParticlecount()[0].length; j++) {
-                                            if (measurement.getParticlecount()[0][j] > 0) {
-                                                red = 255;
-                                                break;
-                                            }
-                                        }
+                                    if (measurement.getTotalParticlecount(0) > 0) {
+                                        red = 255;
                                     }
-                                    if (measurement.getParticlecount().length > 1) {
-                                        if (measurement.getParticlecount()[1] != null) {
-                                            for (int j = 0; j < measurement.getParticlecount()[1].length; j++) {
-                                                if (measurement.getParticlecount()[1][j] > 0) {
-                                                    green = 255;
-                                                    break;
-                                                }
-                                            }
-                                        }
+                                    if (measurement.getNumberOfMaterials() > 1 && measurement.getTotalParticlecount(1) > 0) {
+                                        green = 255;
                                     }
-                                    if (measurement.getParticlecount().length > 2) {
-                                        if (measurement.getParticlecount()[2] != null) {
-                                            for (int j = 0; j < measurement.getParticlecount()[2].length; j++) {
-                                                if (measurement.getParticlecount()[2][j] > 0) {
-                                                    blue = 255;
-                                                    break;
-                                                }
-                                            }
-                                        }
+                                    if (measurement.getNumberOfMaterials() > 2 && measurement.getTotalParticlecount(2) > 0) {
+                                        blue = 255;
                                     }
                                     Color color = new Color(red, green, blue);
 
@@ -1303,10 +1293,8 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
                             }
 //                            int i = (int) tri.getTriangleID();
                             int particlesum = 0;
-                            for (int[] particlecount : triangleMeasurement.getParticlecount()) {
-                                for (int c : particlecount) {
-                                    particlesum += c;
-                                }
+                            for (int m = 0; m < triangleMeasurement.getNumberOfMaterials(); m++) {
+                                particlesum += triangleMeasurement.getTotalParticlecount(m);
                             }
                             Color color;
                             if (particlesum == 0) {
@@ -2015,23 +2003,24 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
                 }
 //                System.out.println("show velocity timeindex " + t);
 //                int counter = 0;
-                if (surface.getTriangleVelocity() != null) {
+                SurfaceFieldStore triangleVelocity = surface.getTriangleVelocity();
+                if (triangleVelocity != null) {
                     for (int i = 0; i < surface.triangleNodes.length; i++) {
                         if (showSurfaceTriangle != null && showSurfaceTriangle[i] == false) {
                             continue;
                         }
                         //Triangle Arrow
                         //on triangle
-                        if (surface.getTriangleVelocity()[i] == null) {
+                        if (!triangleVelocity.isLoaded(i)) {
                             continue;
                         }
-                        float[] v = surface.getTriangleVelocity()[i][ti];
-                        if (Math.abs(v[0]) < 0.0001 && Math.abs(v[1]) < 0.0001) {
+                        float[] v = triangleVelocity.page(i);
+                        int o = triangleVelocity.offset(i, ti);
+                        if (Math.abs(v[o]) < 0.0001 && Math.abs(v[o + 1]) < 0.0001) {
                             continue;
                         }
-                        float[] v2 = surface.getTriangleVelocity()[i][ti + 1];
-                        float vx = v[0] + (v2[0] - v[0]) * frac;
-                        float vy = v[1] + (v2[1] - v[1]) * frac;
+                        float vx = v[o] + (v[o + 2] - v[o]) * frac;
+                        float vy = v[o + 1] + (v[o + 3] - v[o + 1]) * frac;
 
                         double[] mid = surface.getTriangleMids()[i];
                         Coordinate midPoint = surface.getGeotools().toGlobal(new Coordinate(mid[0], mid[1]));
@@ -2607,12 +2596,8 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
                             str.append("none");
                         } else {
                             int sum = 0;
-                            for (int i = 0; i < measurement.getParticlecount().length; i++) {
-                                int materialsum = 0;
-                                for (int t = 0; t < measurement.getParticlecount()[i].length; t++) {
-                                    materialsum += measurement.getParticlecount()[i][t];
-
-                                }
+                            for (int i = 0; i < measurement.getNumberOfMaterials(); i++) {
+                                int materialsum = measurement.getTotalParticlecount(i);
                                 str.append(materialsum).append(", ");
                                 sum += materialsum;
                             }
@@ -3334,6 +3319,7 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
 
     @Override
     public void simulationINIT(Object caller) {
+        lastRepaintStage = -1;
         resetSurfaceShapes();
         clearInjectionLocations();
         try {
@@ -3360,7 +3346,9 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
      */
     @Override
     public void simulationSTEPFINISH(long loop, Object caller) {
-        if (loop % repaintPerLoops == 0) {
+        long stage = loop / repaintPerLoops;
+        if (stage != lastRepaintStage) {
+            lastRepaintStage = stage;
             synchronized (repaintThread) {
                 //run garbage collector to prevent hanging on stopped Particlethreads. They are stopped by the GC and are sometimes not correctly reinitialized (locks on MeasurementRaster.TriangleMeasurements are not correctly released).
 //                System.gc();
@@ -3391,6 +3379,7 @@ public class PaintManager implements LocationIDListener, LoadingActionListener,
 
     @Override
     public void simulationRESET(Object caller) {
+        lastRepaintStage = -1;
         resetSurfaceShapes();
         clearInjectionLocations();
         try {
@@ -890,7 +890,7 @@ public class CapacityTimelinePanel extends JPanel implements CapacitySelectionLi
         TimeSeries lvl = new TimeSeries(new SeriesKey("Waterlvl", "lvl", "m", Color.cyan, new AxisKey("h", "Waterlevel [m]")), "m", "Time");
         TimeSeries v = new TimeSeries(new SeriesKey("Velocity", "v", "m/s", Color.red, new AxisKey("v", "Velocity [m/s]")), "m/s", "Time");
         // Measurements
-        int numberOfMaterials = triM.getParticlecount().length;
+        int numberOfMaterials = triM.getNumberOfMaterials();
 
         TimeSeries[] mass = new TimeSeries[numberOfMaterials];//(new SeriesKey("Mass", "m", "kg", Color.orange, new AxisKey("m")), "kg", "Time");
         TimeSeries[] count = new TimeSeries[numberOfMaterials];//(new SeriesKey("Particles", "N", " ", Color.orange, new AxisKey("N")), " ", "Time");
@@ -916,10 +916,12 @@ public class CapacityTimelinePanel extends JPanel implements CapacitySelectionLi
             double mass_s = 0;
             int count_s = 0;
             for (int j = 0; j < numberOfMaterials; j++) {
-                mass[j].addOrUpdate(time, triM.getMass()[j][i] * timescale);
-                count[j].addOrUpdate(time, triM.getParticlecount()[j][i] * timescale);
-                mass_s += triM.getMass()[j][i];
-                count_s += triM.getParticlecount()[j][i];
+                double m = triM.getMass(j, i);
+                int n = triM.getParticlecount(j, i);
+                mass[j].addOrUpdate(time, m * timescale);
+                count[j].addOrUpdate(time, n * timescale);
+                mass_s += m;
+                count_s += n;
             }
             mass_sum.addOrUpdate(time, mass_s * timescale);
             count_sum.addOrUpdate(time, count_s * timescale);
@@ -934,7 +936,7 @@ public class CapacityTimelinePanel extends JPanel implements CapacitySelectionLi
             }
             float[][] vxy = null;
             if (controller.getSurface().getTriangleVelocity() != null) {
-                vxy = controller.getSurface().getTriangleVelocity()[triM.getTriangleID()];
+                vxy = controller.getSurface().getTriangleVelocity().toArray(triM.getTriangleID());
             }
             if (wl != null) {
                 for (int i = 0; i < wl.length; i++) {